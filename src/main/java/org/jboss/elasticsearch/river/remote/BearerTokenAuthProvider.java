@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.Map;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+/**
+ * Authentication provider using bearer token (eg. OAuth 2 client credentials grant). Token is obtained from JSON
+ * response of the <code>remote/authUrl</code> call, <code>access_token</code> field contains token and optional
+ * <code>expires_in</code> field its lifetime in seconds. Token is sent in <code>Authorization: Bearer</code> header.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class BearerTokenAuthProvider extends HttpAuthProviderBase {
+
+	@Override
+	protected String login(HttpClientContext context, long[] lifetime) throws Exception {
+		byte[] content = performAuthCall(context);
+		if (content == null)
+			throw new Exception("Authentication response from " + authUrl + " is empty");
+		Map<String, Object> response = XContentHelper.convertToMap(content, false).v2();
+		String token = Utils.trimToNull(XContentMapValues.nodeStringValue(response.get("access_token"), null));
+		if (token == null)
+			throw new Exception("Authentication response from " + authUrl + " doesn't contain 'access_token'");
+		Object expiresIn = response.get("expires_in");
+		if (expiresIn != null) {
+			lifetime[0] = XContentMapValues.nodeLongValue(expiresIn) * 1000;
+		}
+		return token;
+	}
+
+	@Override
+	protected void applyCredential(HttpRequestBase request, String credential) {
+		request.setHeader("Authorization", "Bearer " + credential);
+	}
+
+}
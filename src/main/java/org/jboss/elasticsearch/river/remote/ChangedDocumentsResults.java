@@ -34,6 +34,17 @@ public class ChangedDocumentsResults {
 	 */
 	private List<Map<String, Object>> documents;
 
+	/**
+	 * Cursor (opaque continuation token or next page URL) to be used to get next page of documents over
+	 * {@link IRemoteSystemClientCursorPaging}. Optional (null means not available from response).
+	 */
+	private String nextCursor;
+
+	/**
+	 * Size of the remote system response in bytes. Optional (-1 means not available).
+	 */
+	private long responseBytes = -1;
+
 	/**
 	 * Constructor.
 	 * 
@@ -54,6 +65,22 @@ public class ChangedDocumentsResults {
 		this.total = total;
 	}
 
+	/**
+	 * Constructor.
+	 * 
+	 * @param documents returned from the remote system
+	 * @param startAt Starting position of returned documents in complete list of documents matching search in the remote
+	 *          system. 0 based.
+	 * @param total number of documents in the remote system matching performed search criteria. Optional.
+	 * @param nextCursor cursor to get next page of documents. Optional (null if this is the last page or cursor is not
+	 *          available from the remote system).
+	 * @see #ChangedDocumentsResults(List, Integer, Integer)
+	 */
+	public ChangedDocumentsResults(List<Map<String, Object>> documents, Integer startAt, Integer total, String nextCursor) {
+		this(documents, startAt, total);
+		this.nextCursor = nextCursor;
+	}
+
 	/**
 	 * @return the startAt
 	 */
@@ -68,6 +95,27 @@ public class ChangedDocumentsResults {
 		return total;
 	}
 
+	/**
+	 * @return the nextCursor
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * @return size of the remote system response in bytes, -1 if not available
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @param responseBytes size of the remote system response in bytes
+	 */
+	public void setResponseBytes(long responseBytes) {
+		this.responseBytes = responseBytes;
+	}
+
 	/**
 	 * @return the documents
 	 */
@@ -89,7 +137,7 @@ public class ChangedDocumentsResults {
 
 	@Override
 	public String toString() {
-		return "ChangedDocumentsResults [startAt=" + startAt + ", total=" + total + ", documents=" + documents + "]";
+		return "ChangedDocumentsResults [startAt=" + startAt + ", total=" + total + ", nextCursor=" + nextCursor + ", documents=" + documents + "]";
 	}
 
 }
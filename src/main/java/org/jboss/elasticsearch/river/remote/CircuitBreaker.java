@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+/**
+ * Circuit breaker for calls to one remote host. Breaker opens after configured number of consecutive failed calls, and
+ * all calls are rejected for configured time then. After this time one probe call is allowed, breaker closes if it
+ * succeeds or opens again if it fails.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class CircuitBreaker {
+
+	protected final int failureThreshold;
+
+	protected final long openTimeMillis;
+
+	private int consecutiveFailures = 0;
+
+	/**
+	 * Time when breaker opened or last probe call was allowed, -1 if closed.
+	 */
+	private long openedAt = -1;
+
+	/**
+	 * @param failureThreshold number of consecutive failures to open breaker, 0 or less means breaker never opens
+	 * @param openTimeMillis time breaker stays open before probe call is allowed
+	 */
+	public CircuitBreaker(int failureThreshold, long openTimeMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openTimeMillis = openTimeMillis;
+	}
+
+	/**
+	 * Check if call may be performed now. Caller must report result of allowed call over {@link #recordSuccess()} or
+	 * {@link #recordFailure()}. Next probe call is allowed after open time again if result of previous one is not
+	 * reported.
+	 *
+	 * @return true if call may be performed
+	 */
+	public synchronized boolean allowRequest() {
+		if (openedAt < 0)
+			return true;
+		long now = System.currentTimeMillis();
+		if (now >= openedAt + openTimeMillis) {
+			openedAt = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record successful call, breaker is closed.
+	 */
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		openedAt = -1;
+	}
+
+	/**
+	 * Record failed call, breaker is opened if threshold is reached, or kept open if probe call failed.
+	 */
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (failureThreshold > 0 && (openedAt >= 0 || consecutiveFailures >= failureThreshold)) {
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return true if breaker is open and calls are rejected now. False if closed or probe call may be performed.
+	 */
+	public synchronized boolean isOpen() {
+		return openedAt >= 0 && System.currentTimeMillis() < openedAt + openTimeMillis;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.CacheStats;
+import org.elasticsearch.common.cache.Weigher;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+
+/**
+ * LRU cache of document details obtained from remote system, shared by all space indexers of the river. Detail is
+ * cached for space key, document id and last update timestamp of document, so it is reused only if document was not
+ * updated in the remote system. Details are stored serialized (in SMILE format) so cached data can't be changed during
+ * indexing and size of cache is limited by number of bytes.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class DocumentDetailCache {
+
+	private static final ESLogger logger = Loggers.getLogger(DocumentDetailCache.class);
+
+	protected static final String FIELD_DETAIL = "d";
+
+	protected final Cache<String, BytesReference> cache;
+
+	protected final long maxSizeBytes;
+
+	/**
+	 * Create cache.
+	 * 
+	 * @param maxSizeBytes maximal size of cached details in bytes
+	 */
+	public DocumentDetailCache(long maxSizeBytes) {
+		this.maxSizeBytes = maxSizeBytes;
+		this.cache = CacheBuilder.newBuilder().maximumWeight(maxSizeBytes).weigher(new Weigher<String, BytesReference>() {
+			@Override
+			public int weigh(String key, BytesReference value) {
+				return key.length() * 2 + value.length();
+			}
+		}).recordStats().build();
+	}
+
+	/**
+	 * Get cached detail of document.
+	 * 
+	 * @param spaceKey of space document is placed in
+	 * @param documentId of document
+	 * @param updated last update timestamp of document. Null is never cached.
+	 * @return document detail or null if not cached
+	 */
+	public Object get(String spaceKey, String documentId, Date updated) {
+		if (updated == null)
+			return null;
+		BytesReference value = cache.getIfPresent(prepareKey(spaceKey, documentId, updated));
+		if (value == null)
+			return null;
+		try {
+			return XContentHelper.convertToMap(value, false).v2().get(FIELD_DETAIL);
+		} catch (Exception e) {
+			logger.warn("Unable to read cached detail for document {}: {}", documentId, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Put detail of document into cache.
+	 * 
+	 * @param spaceKey of space document is placed in
+	 * @param documentId of document
+	 * @param updated last update timestamp of document. Detail is not cached if null.
+	 * @param detail to cache. Not cached if null.
+	 */
+	public void put(String spaceKey, String documentId, Date updated, Object detail) {
+		if (updated == null || detail == null)
+			return;
+		try {
+			XContentBuilder builder = XContentFactory.smileBuilder();
+			builder.startObject().field(FIELD_DETAIL, detail).endObject();
+			cache.put(prepareKey(spaceKey, documentId, updated), builder.bytes());
+		} catch (IOException e) {
+			logger.warn("Unable to cache detail for document {}: {}", documentId, e.getMessage());
+		}
+	}
+
+	/**
+	 * Write cache statistics into builder, object must be started by caller.
+	 * 
+	 * @param builder to write stats into
+	 * @throws IOException
+	 */
+	public void buildStats(XContentBuilder builder) throws IOException {
+		CacheStats stats = cache.stats();
+		builder.field("max_size_bytes", maxSizeBytes);
+		builder.field("entries", cache.size());
+		builder.field("hits", stats.hitCount());
+		builder.field("misses", stats.missCount());
+		builder.field("evictions", stats.evictionCount());
+	}
+
+	protected static String prepareKey(String spaceKey, String documentId, Date updated) {
+		return spaceKey + "\n" + documentId + "\n" + updated.getTime();
+	}
+
+}
@@ -0,0 +1,311 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Balancer of HTTP calls between equivalent remote system endpoints (replicas). Calls to the primary host (the one from
+ * configured url) are redirected to one of endpoints selected by round-robin or by lowest number of outstanding calls.
+ * Endpoint is ejected from balancing for configured time after configured number of consecutive failed calls (passive
+ * health check). After this time endpoint is half-open, exactly one probe call is admitted to it and other calls are
+ * not sent to it till the probe finishes. Successful call closes ejection, failed one ejects endpoint again. Calls to
+ * other hosts are not balanced.
+ * <p>
+ * Thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class EndpointBalancer {
+
+	/**
+	 * Balancing strategy.
+	 */
+	public static enum Strategy {
+		ROUND_ROBIN, LEAST_OUTSTANDING;
+
+		/**
+		 * Parse strategy from configuration value.
+		 *
+		 * @param value to parse, <code>round_robin</code> or <code>least_outstanding</code>, case insensitive
+		 * @return strategy or null if value is not supported
+		 */
+		public static Strategy parse(String value) {
+			for (Strategy s : values()) {
+				if (s.name().equalsIgnoreCase(value))
+					return s;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * One balanced endpoint with its stats.
+	 */
+	public static final class Endpoint {
+
+		protected final HttpHost host;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private long calls = 0;
+
+		private long failures = 0;
+
+		private long latencySum = 0;
+
+		private long latencyMax = 0;
+
+		private int consecutiveFailures = 0;
+
+		private long ejectedUntil = -1;
+
+		private boolean probeInFlight = false;
+
+		private long ejections = 0;
+
+		protected Endpoint(HttpHost host) {
+			this.host = host;
+		}
+
+		public HttpHost getHost() {
+			return host;
+		}
+
+		/**
+		 * @return number of calls to this endpoint in flight now
+		 */
+		public int getOutstanding() {
+			return outstanding.get();
+		}
+
+		public synchronized long getCalls() {
+			return calls;
+		}
+
+		public synchronized long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return average latency of finished calls [ms]
+		 */
+		public synchronized long getLatencyAvg() {
+			return calls > 0 ? latencySum / calls : 0;
+		}
+
+		/**
+		 * @param now current time in millis
+		 * @return true if endpoint is ejected from balancing now, half-open endpoint with probe call in flight is ejected
+		 *         too
+		 */
+		public synchronized boolean isEjected(long now) {
+			return ejectedUntil >= 0 && (now < ejectedUntil || probeInFlight);
+		}
+
+		/**
+		 * Admit probe call to half-open endpoint.
+		 *
+		 * @param now current time in millis
+		 * @return true if ejection time elapsed and no other probe call is in flight, so this call is the probe
+		 */
+		private synchronized boolean tryStartProbe(long now) {
+			if (ejectedUntil < 0 || now < ejectedUntil || probeInFlight)
+				return false;
+			probeInFlight = true;
+			return true;
+		}
+
+		private synchronized long getEjectedUntil() {
+			return ejectedUntil;
+		}
+
+		private synchronized void finished(long latency, boolean failed, int failureThreshold, long ejectTime) {
+			calls++;
+			latencySum += latency;
+			if (latency > latencyMax)
+				latencyMax = latency;
+			if (failed) {
+				failures++;
+				consecutiveFailures++;
+				if (failureThreshold > 0 && (ejectedUntil >= 0 || consecutiveFailures >= failureThreshold)) {
+					if (ejectedUntil < 0)
+						ejections++;
+					ejectedUntil = System.currentTimeMillis() + ejectTime;
+					probeInFlight = false;
+				}
+			} else {
+				consecutiveFailures = 0;
+				ejectedUntil = -1;
+				probeInFlight = false;
+			}
+		}
+
+		private synchronized void buildStats(XContentBuilder builder, long now) throws IOException {
+			builder.startObject();
+			builder.field("endpoint", host.toURI());
+			builder.field("available", !isEjected(now));
+			builder.field("outstanding", outstanding.get());
+			builder.field("calls", calls);
+			builder.field("failures", failures);
+			builder.field("ejections", ejections);
+			builder.field("latency_avg", getLatencyAvg());
+			builder.field("latency_max", latencyMax);
+			builder.endObject();
+		}
+	}
+
+	protected final HttpHost primaryHost;
+
+	protected final List<Endpoint> endpoints;
+
+	protected final Strategy strategy;
+
+	protected final int failureThreshold;
+
+	protected final long ejectTime;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Create balancer.
+	 *
+	 * @param hosts of balanced endpoints, first one is primary host calls of which are balanced
+	 * @param strategy of balancing
+	 * @param failureThreshold number of consecutive failed calls to eject endpoint, 0 or less means never ejected
+	 * @param ejectTime time endpoint is ejected for [ms]
+	 */
+	public EndpointBalancer(List<HttpHost> hosts, Strategy strategy, int failureThreshold, long ejectTime) {
+		if (hosts == null || hosts.isEmpty())
+			throw new IllegalArgumentException("hosts must not be empty");
+		this.primaryHost = hosts.get(0);
+		this.endpoints = new ArrayList<Endpoint>();
+		for (HttpHost host : hosts) {
+			if (!containsHost(host))
+				endpoints.add(new Endpoint(host));
+		}
+		this.strategy = strategy != null ? strategy : Strategy.ROUND_ROBIN;
+		this.failureThreshold = failureThreshold;
+		this.ejectTime = ejectTime;
+	}
+
+	private boolean containsHost(HttpHost host) {
+		for (Endpoint e : endpoints) {
+			if (e.host.equals(host))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return balanced endpoints
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Select endpoint for the call to host. Half-open endpoint which admits probe call is preferred, ejected ones are
+	 * skipped. Call must be finished by {@link #finished(Endpoint, long, boolean)} if endpoint is returned.
+	 *
+	 * @param targetHost of the call
+	 * @return endpoint to be used for the call or null if call to this host is not balanced
+	 */
+	public Endpoint select(HttpHost targetHost) {
+		if (!primaryHost.equals(targetHost))
+			return null;
+		long now = System.currentTimeMillis();
+		int size = endpoints.size();
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+		for (int i = 0; i < size; i++) {
+			Endpoint e = endpoints.get((start + i) % size);
+			if (e.tryStartProbe(now)) {
+				e.outstanding.incrementAndGet();
+				return e;
+			}
+		}
+		Endpoint selected = null;
+		for (int i = 0; i < size; i++) {
+			Endpoint e = endpoints.get((start + i) % size);
+			// skip ejected and half-open endpoints
+			if (e.getEjectedUntil() >= 0)
+				continue;
+			if (strategy == Strategy.ROUND_ROBIN) {
+				selected = e;
+				break;
+			}
+			if (selected == null || e.getOutstanding() < selected.getOutstanding())
+				selected = e;
+		}
+		if (selected == null) {
+			// all endpoints ejected, use the one which is ejected for longest time
+			selected = endpoints.get(start);
+			for (Endpoint e : endpoints) {
+				if (e.getEjectedUntil() < selected.getEjectedUntil())
+					selected = e;
+			}
+		}
+		selected.outstanding.incrementAndGet();
+		return selected;
+	}
+
+	/**
+	 * Record finished call to endpoint selected by {@link #select(HttpHost)}.
+	 *
+	 * @param endpoint the call was performed to
+	 * @param latency of the call [ms]
+	 * @param failed true if call failed due remote system problem, see {@link RetryPolicy#isRemoteSystemFailure(Exception)}
+	 */
+	public void finished(Endpoint endpoint, long latency, boolean failed) {
+		endpoint.outstanding.decrementAndGet();
+		endpoint.finished(latency, failed, failureThreshold, ejectTime);
+	}
+
+	/**
+	 * Rewrite url so it points to the endpoint. Scheme, host and port are replaced, rest of the url is kept.
+	 *
+	 * @param url to rewrite
+	 * @param endpoint to rewrite url to
+	 * @return rewritten url
+	 * @throws URISyntaxException if url is invalid
+	 */
+	public static String rewriteUrl(String url, Endpoint endpoint) throws URISyntaxException {
+		URI uri = new URI(url);
+		StringBuilder sb = new StringBuilder(endpoint.host.toURI());
+		if (uri.getRawPath() != null)
+			sb.append(uri.getRawPath());
+		if (uri.getRawQuery() != null)
+			sb.append("?").append(uri.getRawQuery());
+		if (uri.getRawFragment() != null)
+			sb.append("#").append(uri.getRawFragment());
+		return sb.toString();
+	}
+
+	/**
+	 * Write stats of all endpoints into array field <code>endpoints</code>.
+	 *
+	 * @param builder to write stats into
+	 * @throws IOException
+	 */
+	public void buildStats(XContentBuilder builder) throws IOException {
+		long now = System.currentTimeMillis();
+		builder.field("balancing", strategy.name().toLowerCase());
+		builder.startArray("endpoints");
+		for (Endpoint e : endpoints) {
+			e.buildStats(builder, now);
+		}
+		builder.endArray();
+	}
+
+}
@@ -5,23 +5,33 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
+import org.elasticsearch.common.jackson.core.JsonParseException;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.util.concurrent.Futures;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
@@ -33,11 +43,17 @@ import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundExce
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
-public class GetJSONClient extends HttpRemoteSystemClientBase {
+public class GetJSONClient extends HttpRemoteSystemClientBase implements IRemoteSystemClientAsync, IRemoteSystemClientCursorPaging,
+		IRemoteSystemClientBatchDetails, IRemoteSystemClientTimeWindows,
+		IRemoteSystemClientPageSize {
 
 	protected static final String CFG_GET_DOCS_RES_FIELD_TOTALCOUNT = "getDocsResFieldTotalcount";
 
 	protected static final String CFG_GET_DOCS_RES_FIELD_DOCUMENTS = "getDocsResFieldDocuments";
+
+	protected static final String CFG_GET_DOCS_RES_FIELD_NEXT_CURSOR = "getDocsResFieldNextCursor";
+
+	protected static final String CFG_GET_DOCS_RES_STREAMING = "getDocsResStreaming";
 	
 	protected static final String CFG_GET_ROOT_RES_FIELDS_MAPPING="getRootResFieldsMapping";
 
@@ -54,6 +70,10 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 
 	protected static final String CFG_URL_GET_DOCUMENT_DETAILS = "urlGetDocumentDetails";
 	protected static final String CFG_URL_GET_DOCUMENT_DETAILS_FIELD = "urlGetDocumentDetailsField";
+	protected static final String CFG_URL_GET_DOCUMENT_DETAILS_BATCH = "urlGetDocumentDetailsBatch";
+	protected static final String CFG_GET_DOC_DETAILS_BATCH_RES_FIELD = "getDocDetailsBatchResField";
+	protected static final String CFG_GET_DOC_DETAILS_BATCH_RES_FIELD_ID = "getDocDetailsBatchResFieldId";
+	protected static final String CFG_GET_DOC_DETAILS_BATCH_MAX_SIZE = "getDocDetailsBatchMaxSize";
 	
 	protected static final String CFG_UPDATED_AFTER_FORMAT = "updatedAfterFormat";
 	protected static final String CFG_UPDATED_AFTER_INITIAL_VALUE = "updatedAfterInitialValue";
@@ -74,7 +94,24 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 	
 	protected Map<String,Object> getRootResFieldsMapping;
 
+	/**
+	 * Tree of fields read from List Documents response, see {@link #preparePathTree(Collection)}.
+	 */
+	protected Map<String, Object> getDocsResPathTree;
+
+	/**
+	 * If true then List Documents response is parsed directly from http response stream. Parsed documents are still
+	 * collected into whole page, only the copy of response body is avoided.
+	 */
+	protected boolean getDocsResStreaming = false;
+
 	protected String getDocsResFieldTotalcount;
+
+	/**
+	 * Field in List Documents response with cursor (opaque token or next page URL) for next page. If set then cursor
+	 * based pagination is used.
+	 */
+	protected String getDocsResFieldNextCursor;
 	
 	protected String updatedAfterFormat;
 	
@@ -85,6 +122,16 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 	protected HttpMethodType httpMethod;
 	
 	protected String urlGetDocuments;
+
+	/**
+	 * {@link #urlGetDocuments} compiled in init.
+	 */
+	protected UrlTemplate urlGetDocumentsTemplate;
+
+	/**
+	 * Page size for <code>{pageSize}</code> placeholder in {@link #urlGetDocuments} per space key.
+	 */
+	protected final Map<String, Integer> pageSizes = new ConcurrentHashMap<String, Integer>();
 	
 	protected Long minGetDocumentsDelay;
 	
@@ -93,13 +140,32 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 
 	protected String urlGetDocumentDetails;
 
+	protected UrlTemplate urlGetDocumentDetailsTemplate;
+
 	protected String urlGetDocumentDetailsField;
 
+	/**
+	 * URL to get details for more documents by one call, with <code>{ids}</code> placeholder.
+	 */
+	protected String urlGetDocumentDetailsBatch;
+
+	protected UrlTemplate urlGetDocumentDetailsBatchTemplate;
+
+	protected String getDocDetailsBatchResField;
+
+	protected String getDocDetailsBatchResFieldId;
+
+	protected int getDocDetailsBatchMaxSize;
+
 	protected String embedUrlApiKey;
 
 	protected String embedUrlApiKeyUsername;
 
-	protected AtomicReference<Long> blockHttpCallsTill = new AtomicReference<Long>();
+	/**
+	 * Rate limiter for Get Documents calls shared by all indexing threads. Keeps <code>minGetDocumentsDelay</code>
+	 * between calls and pauses calls if requested by <code>forcedIndexingPauseField</code>.
+	 */
+	protected RateLimiter getDocumentsRateLimiter;
 
 	protected static final String HEADER_ACCEPT_DEFAULT = "application/json";
 
@@ -110,6 +176,7 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 			IPwdLoader pwdLoader) {
 		logger = esIntegration.createLogger(GetJSONClient.class);
 		urlGetDocuments = getUrlFromConfig(config, CFG_URL_GET_DOCUMENTS, true);
+		urlGetDocumentsTemplate = UrlTemplate.compile(urlGetDocuments);
 		
 		String minGetDocumentsDelayStr = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_MIN_GET_DOCUMENTS_DELAY),null));
 		if(minGetDocumentsDelayStr!=null) {
@@ -122,6 +189,8 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 		    }
 		}
 
+		getDocumentsRateLimiter = new RateLimiter(minGetDocumentsDelay != null ? 1000d / minGetDocumentsDelay : 0, 1, false);
+
 		embedUrlApiKeyUsername = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_EMBED_URL_API_KEY_USERNAME),null));
 		embedUrlApiKey = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_EMBED_URL_API_KEY), null));
 
@@ -152,6 +221,7 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 		}
 		
 		urlGetDocumentDetails = getUrlFromConfig(config, CFG_URL_GET_DOCUMENT_DETAILS, false);
+		urlGetDocumentDetailsTemplate = urlGetDocumentDetails != null ? UrlTemplate.compile(urlGetDocumentDetails) : null;
 		urlGetDocumentDetailsField = Utils.trimToNull(XContentMapValues.nodeStringValue(
 				config.get(CFG_URL_GET_DOCUMENT_DETAILS_FIELD), null));
 
@@ -160,13 +230,56 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 					+ CFG_URL_GET_DOCUMENT_DETAILS_FIELD + " configuration parametr.");
 		}
 
+		urlGetDocumentDetailsBatch = getUrlFromConfig(config, CFG_URL_GET_DOCUMENT_DETAILS_BATCH, false);
+		if (urlGetDocumentDetailsBatch != null) {
+			if (urlGetDocumentDetailsField != null) {
+				throw new SettingsException("You can use only one of remote/" + CFG_URL_GET_DOCUMENT_DETAILS_BATCH
+						+ " and remote/" + CFG_URL_GET_DOCUMENT_DETAILS_FIELD + " configuration parametr.");
+			}
+			urlGetDocumentDetailsBatchTemplate = UrlTemplate.compile(urlGetDocumentDetailsBatch);
+			if (!urlGetDocumentDetailsBatchTemplate.hasPlaceholder("ids")) {
+				throw new SettingsException("remote/" + CFG_URL_GET_DOCUMENT_DETAILS_BATCH
+						+ " configuration parameter must contain {ids} placeholder.");
+			}
+			getDocDetailsBatchResField = Utils.trimToNull(XContentMapValues.nodeStringValue(
+					config.get(CFG_GET_DOC_DETAILS_BATCH_RES_FIELD), null));
+			getDocDetailsBatchResFieldId = Utils.trimToNull(XContentMapValues.nodeStringValue(
+					config.get(CFG_GET_DOC_DETAILS_BATCH_RES_FIELD_ID), null));
+			if (getDocDetailsBatchResFieldId == null) {
+				throw new SettingsException("remote/" + CFG_GET_DOC_DETAILS_BATCH_RES_FIELD_ID
+						+ " configuration parameter must be defined if remote/" + CFG_URL_GET_DOCUMENT_DETAILS_BATCH + " is used.");
+			}
+			getDocDetailsBatchMaxSize = XContentMapValues.nodeIntegerValue(config.get(CFG_GET_DOC_DETAILS_BATCH_MAX_SIZE),
+					50);
+			if (getDocDetailsBatchMaxSize < 1) {
+				throw new SettingsException("remote/" + CFG_GET_DOC_DETAILS_BATCH_MAX_SIZE
+						+ " configuration parameter must be positive number.");
+			}
+		}
+
 		getDocsResFieldDocuments = Utils.trimToNull(XContentMapValues.nodeStringValue(
 				config.get(CFG_GET_DOCS_RES_FIELD_DOCUMENTS), null));
 		getDocsResFieldTotalcount = Utils.trimToNull(XContentMapValues.nodeStringValue(
 				config.get(CFG_GET_DOCS_RES_FIELD_TOTALCOUNT), null));
+		getDocsResFieldNextCursor = Utils.trimToNull(XContentMapValues.nodeStringValue(
+				config.get(CFG_GET_DOCS_RES_FIELD_NEXT_CURSOR), null));
 		getRootResFieldsMapping = config.get(CFG_GET_ROOT_RES_FIELDS_MAPPING)!=null ? XContentMapValues.nodeMapValue(config.get(CFG_GET_ROOT_RES_FIELDS_MAPPING),
 				CFG_GET_ROOT_RES_FIELDS_MAPPING) : null;
 		getRootResFieldsMapping = getRootResFieldsMapping==null || getRootResFieldsMapping.size()==0 ? null : getRootResFieldsMapping;
+
+		List<String> getDocsResPaths = new ArrayList<String>();
+		getDocsResPaths.add(getDocsResFieldDocuments);
+		getDocsResPaths.add(getDocsResFieldTotalcount);
+		getDocsResPaths.add(getDocsResFieldNextCursor);
+		getDocsResPaths.add(forcedIndexingPauseField);
+		if (getRootResFieldsMapping != null) {
+			for (Object sourceFieldName : getRootResFieldsMapping.values()) {
+				if (sourceFieldName != null)
+					getDocsResPaths.add(sourceFieldName.toString());
+			}
+		}
+		getDocsResPathTree = preparePathTree(getDocsResPaths);
+		getDocsResStreaming = XContentMapValues.nodeBooleanValue(config.get(CFG_GET_DOCS_RES_STREAMING), false);
 		
 		updatedAfterFormat = Utils.trimToNull(XContentMapValues.nodeStringValue(
                 config.get(CFG_UPDATED_AFTER_FORMAT), DateTimeUtils.CUSTOM_MILLISEC_EPOCH_DATETIME_FORMAT ));
@@ -207,7 +320,7 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 					null));
 		}
 
-		String remoteUsername = initHttpClient(logger, config, pwdLoader, urlGetDocuments);
+		String remoteUsername = initHttpClient(logger, config, pwdLoader, urlGetDocuments, esIntegration);
 
 		logger
 				.info(
@@ -222,8 +335,14 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 	@Override
 	@SuppressWarnings("unchecked")
 	public List<String> getAllSpaces() throws Exception {
-		byte[] responseData = performHttpGetCall(urlGetSpaces, headers).content;
-		logger.debug("Get Spaces REST response data: {}", new String(responseData));
+		byte[] responseData = performWithRetry(listCallRetryPolicy, urlGetSpaces, new Callable<HttpResponseContent>() {
+			@Override
+			public HttpResponseContent call() throws Exception {
+				return performHttpGetCall(urlGetSpaces, headers);
+			}
+		}).content;
+		if (logger.isDebugEnabled())
+			logger.debug("Get Spaces REST response data: {}", new String(responseData, "UTF-8"));
 
 		Object responseParsed = parseJSONResponse(responseData);
 
@@ -266,104 +385,384 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 	 * @throws IOException
 	 */
 	protected Object parseJSONResponse(byte[] responseData) throws UnsupportedEncodingException, IOException {
+		return parseJSONResponse(responseData, null);
+	}
+
+	/**
+	 * Parse JSON response into Object Structure, read only fields defined by <code>pathTree</code> if root of the
+	 * response is object. Other fields are skipped without creation of objects for them.
+	 * 
+	 * @param responseData to parse
+	 * @param pathTree tree of fields to read, see {@link #preparePathTree(Collection)}. Whole response is read if null.
+	 * @return parsed response (May be Map, or List, or simple value)
+	 * @throws IOException
+	 */
+	protected Object parseJSONResponse(byte[] responseData, Map<String, Object> pathTree) throws IOException {
 		XContentParser parser = null;
-		// wrap response so we are able to process JSON array of values on root level of response, which is not supported
-		// by XContentFactory
 		try {
-			StringBuilder sb = new StringBuilder();
-			sb.append("{ \"wrapit\" : ").append(new String(responseData, "UTF-8")).append("}");
-			responseData = sb.toString().getBytes("UTF-8");
 			parser = XContentFactory.xContent(XContentType.JSON).createParser(responseData);
-			Map<String, Object> wrappedResponseParsed = parser.mapAndClose();
-			return wrappedResponseParsed.get("wrapit");
+			return readJSONResponse(parser, pathTree);
 		} finally {
 			if (parser != null)
 				parser.close();
 		}
 	}
 
-	@Override
-	public Object getChangedDocumentDetails(String spaceKey, String documentId, Map<String, Object> document)
-			throws Exception, RemoteDocumentNotFoundException {
+	/**
+	 * Parse JSON response from stream into Object Structure, read only fields defined by <code>pathTree</code> if root
+	 * of the response is object.
+	 * 
+	 * @param responseData stream to parse
+	 * @param pathTree tree of fields to read, see {@link #preparePathTree(Collection)}. Whole response is read if null.
+	 * @return parsed response (May be Map, or List, or simple value)
+	 * @throws IOException
+	 */
+	protected Object parseJSONResponse(InputStream responseData, Map<String, Object> pathTree) throws IOException {
+		XContentParser parser = null;
 		try {
-			String url = null;
-			if (urlGetDocumentDetailsField != null) {
-				if (document != null) {
-					try {
-						url = Utils.trimToNull((String) XContentMapValues.extractValue(urlGetDocumentDetailsField, document));
-					} catch (Exception e) {
-						// warning logged later
-					}
-				}
-				if (url == null) {
-					logger.warn("Document detail URL not found in field '{}' for space '" + spaceKey + "' and document id="
-							+ documentId, urlGetDocumentDetailsField);
+			parser = XContentFactory.xContent(XContentType.JSON).createParser(responseData);
+			return readJSONResponse(parser, pathTree);
+		} finally {
+			if (parser != null)
+				parser.close();
+		}
+	}
+
+	private static Object readJSONResponse(XContentParser parser, Map<String, Object> pathTree) throws IOException {
+		XContentParser.Token token = parser.nextToken();
+		if (token == null)
+			throw new JsonParseException("No JSON content in response", null);
+		if (pathTree != null && token == XContentParser.Token.START_OBJECT)
+			return readJSONObject(parser, pathTree);
+		return readJSONValue(parser, token);
+	}
+
+	/**
+	 * Prepare tree of fields to be read from JSON response from list of fields in dot notation. Leafs of the tree are
+	 * marked by {@link Boolean#TRUE}, whole value is read for them.
+	 * 
+	 * @param paths list of fields in dot notation, null values are ignored
+	 * @return tree of fields
+	 */
+	@SuppressWarnings("unchecked")
+	protected static Map<String, Object> preparePathTree(Collection<String> paths) {
+		Map<String, Object> tree = new HashMap<String, Object>();
+		for (String path : paths) {
+			if (path == null)
+				continue;
+			Map<String, Object> node = tree;
+			String[] parts = path.split("\\.");
+			for (int i = 0; i < parts.length; i++) {
+				if (i == parts.length - 1) {
+					node.put(parts[i], Boolean.TRUE);
 				} else {
-					try {
-						new URL(url);
-					} catch (MalformedURLException e) {
-						logger.warn("Invalid document detail URL '{}' obtained from field '{}' for space '" + spaceKey
-								+ "' and document id=" + documentId, new Object[] { url, urlGetDocumentDetailsField });
-						url = null;
+					Object sub = node.get(parts[i]);
+					if (sub == Boolean.TRUE)
+						break;
+					if (sub == null) {
+						sub = new HashMap<String, Object>();
+						node.put(parts[i], sub);
 					}
+					node = (Map<String, Object>) sub;
 				}
-			} else if (urlGetDocumentDetails != null) {
-				url = enhanceUrlGetDocumentDetails(urlGetDocumentDetails, spaceKey, documentId);
 			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Read JSON object from parser positioned at its start, only fields from <code>pathTree</code> are read, others are
+	 * skipped.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readJSONObject(XContentParser parser, Map<String, Object> pathTree)
+			throws IOException {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		XContentParser.Token token;
+		while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+			String name = parser.currentName();
+			token = parser.nextToken();
+			Object subtree = pathTree.get(name);
+			if (subtree == null) {
+				parser.skipChildren();
+			} else if (subtree instanceof Map && token == XContentParser.Token.START_OBJECT) {
+				ret.put(name, readJSONObject(parser, (Map<String, Object>) subtree));
+			} else {
+				ret.put(name, readJSONValue(parser, token));
+			}
+		}
+		return ret;
+	}
+
+	private static Object readJSONValue(XContentParser parser, XContentParser.Token token) throws IOException {
+		switch (token) {
+		case START_OBJECT:
+			return parser.map();
+		case START_ARRAY:
+			List<Object> list = new ArrayList<Object>();
+			while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+				list.add(readJSONValue(parser, token));
+			}
+			return list;
+		case VALUE_STRING:
+			return parser.text();
+		case VALUE_NUMBER:
+			return parser.numberValue();
+		case VALUE_BOOLEAN:
+			return parser.booleanValue();
+		case VALUE_NULL:
+			return null;
+		default:
+			return parser.objectText();
+		}
+	}
+
+	@Override
+	public Object getChangedDocumentDetails(String spaceKey, String documentId, Map<String, Object> document)
+			throws Exception, RemoteDocumentNotFoundException {
+		try {
+			final String url = getDocumentDetailsUrl(spaceKey, documentId, document);
 			if (url == null)
 				return null;
-			byte[] responseData = performHttpGetCall(url, headers).content;
+			byte[] responseData = performWithRetry(detailCallRetryPolicy, url, new Callable<HttpResponseContent>() {
+				@Override
+				public HttpResponseContent call() throws Exception {
+					return performHedgedHttpGetCall(url, headers);
+				}
+			}).content;
 			return parseJSONResponse(responseData);
 		} catch (HttpCallException e) {
-			if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-				throw new RemoteDocumentNotFoundException(e);
+			throw handleDocumentDetailsHttpCallException(e);
+		}
+	}
+
+	@Override
+	public Future<Object> getChangedDocumentDetailsAsync(String spaceKey, String documentId, Map<String, Object> document)
+			throws Exception {
+		String url = getDocumentDetailsUrl(spaceKey, documentId, document);
+		if (url == null)
+			return Futures.immediateFuture(null);
+		return new HttpCallProcessingFuture<Object>(performHttpCallAsync(detailCallRetryPolicy, url, headers,
+				HttpMethodType.GET)) {
+
+			@Override
+			protected Object process(Future<HttpResponseContent> call) throws Exception {
+				try {
+					return parseJSONResponse(waitForHttpCall(call).content);
+				} catch (HttpCallException e) {
+					throw handleDocumentDetailsHttpCallException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Get URL of document detail from configuration.
+	 * 
+	 * @param spaceKey of space where document is placed
+	 * @param documentId of document
+	 * @param document data from List Documents call
+	 * @return URL or null if not available
+	 * @throws UnsupportedEncodingException
+	 */
+	protected String getDocumentDetailsUrl(String spaceKey, String documentId, Map<String, Object> document)
+			throws UnsupportedEncodingException {
+		String url = null;
+		if (urlGetDocumentDetailsField != null) {
+			if (document != null) {
+				try {
+					url = Utils.trimToNull((String) XContentMapValues.extractValue(urlGetDocumentDetailsField, document));
+				} catch (Exception e) {
+					// warning logged later
+				}
+			}
+			if (url == null) {
+				logger.warn("Document detail URL not found in field '{}' for space '" + spaceKey + "' and document id="
+						+ documentId, urlGetDocumentDetailsField);
 			} else {
+				try {
+					new URL(url);
+				} catch (MalformedURLException e) {
+					logger.warn("Invalid document detail URL '{}' obtained from field '{}' for space '" + spaceKey
+							+ "' and document id=" + documentId, new Object[] { url, urlGetDocumentDetailsField });
+					url = null;
+				}
+			}
+		} else if (urlGetDocumentDetails != null) {
+			url = enhanceUrlGetDocumentDetails(urlGetDocumentDetailsTemplate, spaceKey, documentId);
+		}
+		return url;
+	}
+
+	private Exception handleDocumentDetailsHttpCallException(HttpCallException e) {
+		if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+			return new RemoteDocumentNotFoundException(e);
+		} else {
+			return e;
+		}
+	}
+
+	@Override
+	public boolean isBatchDetailsEnabled() {
+		return urlGetDocumentDetailsBatch != null;
+	}
+
+	@Override
+	public Map<String, Object> getChangedDocumentDetails(String spaceKey, List<String> documentIds) throws Exception {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		for (int i = 0; i < documentIds.size(); i += getDocDetailsBatchMaxSize) {
+			List<String> batch = documentIds.subList(i, Math.min(i + getDocDetailsBatchMaxSize, documentIds.size()));
+			final String url = enhanceUrlGetDocumentDetailsBatch(urlGetDocumentDetailsBatchTemplate, spaceKey, batch);
+			byte[] responseData = null;
+			try {
+				responseData = performWithRetry(detailCallRetryPolicy, url, new Callable<HttpResponseContent>() {
+					@Override
+					public HttpResponseContent call() throws Exception {
+						return performHttpGetCall(url, headers);
+					}
+				}).content;
+			} catch (HttpCallException e) {
+				// none of documents found
+				if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND)
+					continue;
 				throw e;
 			}
+			splitDocumentDetailsBatchResponse(parseJSONResponse(responseData), ret);
 		}
+		return ret;
+	}
+
+	/**
+	 * Put details from batch detail response into map by document id.
+	 * 
+	 * @param responseParsed batch detail response
+	 * @param details map to put details into
+	 * @throws Exception if response structure is invalid
+	 */
+	@SuppressWarnings("unchecked")
+	protected void splitDocumentDetailsBatchResponse(Object responseParsed, Map<String, Object> details)
+			throws Exception {
+		Object items = responseParsed;
+		if (getDocDetailsBatchResField != null) {
+			items = responseParsed instanceof Map ? XContentMapValues.extractValue(getDocDetailsBatchResField,
+					(Map<String, Object>) responseParsed) : null;
+		}
+		if (items == null)
+			return;
+		if (!(items instanceof List))
+			throw new Exception("Get Document Details batch REST response structure is invalid " + responseParsed);
+		for (Object item : (List<Object>) items) {
+			if (item instanceof Map) {
+				Object id = XContentMapValues.extractValue(getDocDetailsBatchResFieldId, (Map<String, Object>) item);
+				if (id != null)
+					details.put(id.toString(), item);
+			}
+		}
+	}
+
+	protected static String enhanceUrlGetDocumentDetailsBatch(UrlTemplate url, String spaceKey, List<String> documentIds) {
+		StringBuilder ids = new StringBuilder();
+		for (String documentId : documentIds) {
+			if (ids.length() > 0)
+				ids.append(",");
+			ids.append(UrlTemplate.encode(documentId));
+		}
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("space", UrlTemplate.encode(spaceKey));
+		values.put("ids", ids.toString());
+		return url.expand(values);
 	}
 
 	protected static String enhanceUrlGetDocumentDetails(String url, String spaceKey, String documentId)
 			throws UnsupportedEncodingException {
-		url = url.replaceAll("\\{space\\}", URLEncoder.encode(spaceKey, "UTF-8"));
-		url = url.replaceAll("\\{id\\}", URLEncoder.encode(documentId, "UTF-8"));
-		return url;
+		return enhanceUrlGetDocumentDetails(UrlTemplate.compile(url), spaceKey, documentId);
+	}
+
+	protected static String enhanceUrlGetDocumentDetails(UrlTemplate url, String spaceKey, String documentId) {
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("space", UrlTemplate.encode(spaceKey));
+		values.put("id", UrlTemplate.encode(documentId));
+		return url.expand(values);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, boolean fullUpdate, Date updatedAfter)
 			throws Exception {
-		String url = enhanceUrlGetDocuments(urlGetDocuments, spaceKey, updatedAfter, updatedAfterFormat, updatedAfterInitialValue, updatedBeforeTimeSpanFromUpdatedAfter, startAt, fullUpdate, embedUrlApiKey);
+		return getChangedDocuments(spaceKey, startAt, null, fullUpdate, updatedAfter);
+	}
 
-		if( blockHttpCallsTill.get()!=null ) {
-			
-			// IF THE THREAD PAUSE TIME HAPPENS TO BE IN THE PAST WE JUST CLEAR THE VALUE AND CONTINUE PROCESSING.
-			if( blockHttpCallsTill.get() <= System.currentTimeMillis() ) {
-				blockHttpCallsTill.set(null);
-			} else {
-				try {
-		            Thread.sleep( Math.abs( blockHttpCallsTill.get()-System.currentTimeMillis() ) );
-		        } catch( InterruptedException e ) {
-		            logger.warn("Thread was unexpectedly woken up from sleep. Trying to keep indexing the content.");
-		        }
-			}
-		}
-		
-		if( minGetDocumentsDelay!=null ) {
-	    	try {
-	            Thread.sleep( minGetDocumentsDelay );
-	        } catch( InterruptedException e ) {
-	            logger.warn("Thread was unexpectedly woken up from sleep. Trying to keep indexing the content.");
-	        }
-		}
-		
-		byte[] responseData = performHttpCall(url, headers, httpMethod).content;
+	@Override
+	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter) throws Exception {
+		return getChangedDocuments(spaceKey, startAt, cursor, fullUpdate, updatedAfter, null);
+	}
+
+	@Override
+	public boolean isTimeWindowsSupported() {
+		return urlGetDocumentsTemplate != null && urlGetDocumentsTemplate.hasPlaceholder("updatedBefore");
+	}
+
+	@Override
+	public Date getUpdatedAfterInitialValue() {
+		return updatedAfterInitialValue != null ? new Date(updatedAfterInitialValue) : null;
+	}
+
+	@Override
+	public boolean isPageSizeSupported() {
+		return urlGetDocumentsTemplate != null && urlGetDocumentsTemplate.hasPlaceholder("pageSize");
+	}
+
+	@Override
+	public void setPageSize(String spaceKey, int pageSize) {
+		pageSizes.put(spaceKey, pageSize);
+	}
+
+	@Override
+	public Long getUpdatedBeforeTimeSpan() {
+		return updatedBeforeTimeSpanFromUpdatedAfter;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter, Date updatedBefore) throws Exception {
+		final String url = prepareUrlGetDocuments(spaceKey, startAt, cursor, fullUpdate, updatedAfter, updatedBefore);
 
-		logger.debug("Get Documents REST response data: {}", new String(responseData));
+		Object responseParsed = null;
+		final AtomicLong responseBytes = new AtomicLong(-1);
+		if (getDocsResStreaming) {
+			responseParsed = performWithRetry(listCallRetryPolicy, url, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					acquireGetDocumentsRateLimit();
+					return performHttpCall(url, headers, httpMethod, new HttpResponseStreamProcessor<Object>() {
+						@Override
+						public Object process(String contentType, InputStream content) throws Exception {
+							ByteCountingInputStream counting = new ByteCountingInputStream(content);
+							Object ret = parseJSONResponse(counting, getDocsResPathTree);
+							responseBytes.set(counting.count);
+							return ret;
+						}
+					});
+				}
+			});
+		} else {
+			byte[] responseData = performWithRetry(listCallRetryPolicy, url, new Callable<HttpResponseContent>() {
+				@Override
+				public HttpResponseContent call() throws Exception {
+					acquireGetDocumentsRateLimit();
+					if (httpMethod == HttpMethodType.POST)
+						return performHttpCall(url, headers, httpMethod);
+					return performConditionalHttpGetCall(url, headers);
+				}
+			}).content;
+			if (logger.isDebugEnabled())
+				logger.debug("Get Documents REST response data: {}", new String(responseData, "UTF-8"));
+			responseParsed = parseJSONResponse(responseData, getDocsResPathTree);
+			responseBytes.set(responseData.length);
+		}
 
 		try {
-			Object responseParsed = parseJSONResponse(responseData);
 			
 			// Check if REST API didn't return indexing pause parameter. 
 			// In this case we'll have to wait with the next call.
@@ -379,8 +778,8 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 						}
 						
 						// We increase waiting time by 10% just to be absolutely sure to obey the limit.
-						blockHttpCallsTill.set( System.currentTimeMillis()
-								+ (long)(forcedIndexingPauseFieldTimeUnit.toMillis(forceIndexingPauseVal)*1.1) );
+						getDocumentsRateLimiter.pauseUntil(System.currentTimeMillis()
+								+ (long) (forcedIndexingPauseFieldTimeUnit.toMillis(forceIndexingPauseVal) * 1.1));
                         
 					} catch (NumberFormatException e) {
 						logger.warn("Value from configured "+CFG_FORCED_INDEXING_PAUSE_FIELD+
@@ -432,30 +831,149 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 				values.putAll(additionalFieldsForEntries);
 			}
 
-			return new ChangedDocumentsResults(documents, startAt, total);
+			String nextCursor = null;
+			if (getDocsResFieldNextCursor != null) {
+				Object cursorObj = XContentMapValues.extractValue(getDocsResFieldNextCursor, (Map) responseParsed);
+				if (cursorObj != null)
+					nextCursor = Utils.trimToNull(cursorObj.toString());
+				// no cursor means last page, so total is known now and indexer stops
+				if (nextCursor == null || documents.isEmpty()) {
+					nextCursor = null;
+					total = startAt + documents.size();
+				}
+			}
+
+			ChangedDocumentsResults ret = new ChangedDocumentsResults(documents, startAt, total, nextCursor);
+			ret.setResponseBytes(responseBytes.get());
+			return ret;
 		} catch (ClassCastException e) {
-			throw new Exception("Get Documents REST response structure is invalid " + responseData);
+			throw new Exception("Get Documents REST response structure is invalid " + responseParsed);
+		}
+	}
+
+	/**
+	 * Wait for {@link #getDocumentsRateLimiter} before List Documents call. Called for each attempt of retried call, so
+	 * retries respect <code>remote/minGetDocumentsDelay</code> too.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	protected void acquireGetDocumentsRateLimit() throws InterruptedException {
+		long wait = getDocumentsRateLimiter.acquire();
+		if (wait > 0) {
+			rateLimitWaitMillis.addAndGet(wait);
+			if (logger.isDebugEnabled())
+				logger.debug("Get Documents call delayed for {} ms", wait);
+		}
+	}
+
+	/**
+	 * Prepare URL for List Documents call. If cursor is absolute or relative URL then it is used directly, otherwise it
+	 * is placed into <code>{cursor}</code> placeholder of configured URL.
+	 * 
+	 * @param spaceKey to get documents for
+	 * @param startAt index of first document
+	 * @param cursor from previous call, null for first page
+	 * @param fullUpdate true if full update is performed
+	 * @param updatedAfter to get documents updated after
+	 * @return URL to call
+	 * @throws Exception
+	 */
+	protected String prepareUrlGetDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter) throws Exception {
+		return prepareUrlGetDocuments(spaceKey, startAt, cursor, fullUpdate, updatedAfter, null);
+	}
+
+	/**
+	 * Prepare URL for List Documents call in time window.
+	 * 
+	 * @see #prepareUrlGetDocuments(String, int, String, boolean, Date)
+	 * @param updatedBefore end of time window placed into <code>{updatedBefore}</code>, if null then
+	 *          {@link #updatedBeforeTimeSpanFromUpdatedAfter} is used
+	 */
+	protected String prepareUrlGetDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter, Date updatedBefore) throws Exception {
+		if (cursor != null && (cursor.startsWith("http://") || cursor.startsWith("https://")))
+			return checkCursorUrl(cursor);
+		boolean relativeUrl = cursor != null && (cursor.startsWith("/") || cursor.startsWith("?"));
+		Map<String, String> values = prepareUrlGetDocumentsValues(urlGetDocumentsTemplate, spaceKey, updatedAfter,
+				updatedAfterFormat, updatedAfterInitialValue, updatedBeforeTimeSpanFromUpdatedAfter, updatedBefore, startAt,
+				fullUpdate, embedUrlApiKey);
+		values.put("cursor", cursor != null && !relativeUrl ? UrlTemplate.encode(cursor) : "");
+		Integer pageSize = pageSizes.get(spaceKey);
+		values.put("pageSize", pageSize != null ? pageSize.toString() : "");
+		String url = urlGetDocumentsTemplate.expand(values);
+		if (relativeUrl) {
+			if (cursor.startsWith("?")) {
+				int q = url.indexOf('?');
+				return (q > -1 ? url.substring(0, q) : url) + cursor;
+			}
+			// protocol relative cursor (//host/path) may point to other host
+			return checkCursorUrl(new URI(url).resolve(cursor).toString());
+		}
+		return url;
+	}
+
+	/**
+	 * Check that next page URL taken from cursor points to the same scheme, host and port as
+	 * {@link #urlGetDocuments} or one of its replicas from {@link #endpointBalancer}, so authentication credentials are
+	 * never sent to other host referenced by remote system response.
+	 * 
+	 * @param cursorUrl to check
+	 * @return cursorUrl if it is allowed
+	 * @throws Exception if URL points to other scheme, host or port
+	 */
+	protected String checkCursorUrl(String cursorUrl) throws Exception {
+		URL checked = null;
+		try {
+			checked = new URL(cursorUrl);
+		} catch (MalformedURLException e) {
+			throw new Exception("Get Documents REST response contains malformed next page URL " + cursorUrl);
+		}
+		Set<String> allowed = prepareAuthHosts(urlGetDocuments, endpointBalancer);
+		if (!allowed.contains(getAuthHostKey(new HttpHost(checked.getHost(), checked.getPort(), checked.getProtocol())))) {
+			throw new Exception("Get Documents REST response contains next page URL " + cursorUrl
+					+ " pointing to other scheme, host or port than remote/" + CFG_URL_GET_DOCUMENTS + " or its replicas");
 		}
+		return cursorUrl;
 	}
 
 	protected static String enhanceUrlGetDocuments(String url, String spaceKey, Date updatedAfter, String updatedAfterFormat,
 	        Long updatedAfterInitialValue, Long updatedBeforeTimeSpan, int startAt, boolean fullUpdate, String embedApiKeyCode) throws UnsupportedEncodingException {
+		UrlTemplate template = UrlTemplate.compile(url);
+		return template.expand(prepareUrlGetDocumentsValues(template, spaceKey, updatedAfter, updatedAfterFormat,
+				updatedAfterInitialValue, updatedBeforeTimeSpan, null, startAt, fullUpdate, embedApiKeyCode));
+	}
+
+	/**
+	 * Prepare values of placeholders for List Documents URL. Dates are formatted only if used in the URL.
+	 * 
+	 * @param url template values are for
+	 * @param updatedBefore explicit end of time window, null to compute it from <code>updatedBeforeTimeSpan</code>
+	 * @return values, may be extended by caller
+	 */
+	protected static Map<String, String> prepareUrlGetDocumentsValues(UrlTemplate url, String spaceKey, Date updatedAfter,
+			String updatedAfterFormat, Long updatedAfterInitialValue, Long updatedBeforeTimeSpan, Date updatedBefore,
+			int startAt, boolean fullUpdate, String embedApiKeyCode) {
 
 	    String dateFormatToUse = updatedAfterFormat!=null && updatedAfterFormat.length()!=0
 	            ? updatedAfterFormat
 	            : DateTimeUtils.CUSTOM_MILLISEC_EPOCH_DATETIME_FORMAT;
 	    
 	    updatedAfter = updatedAfter!=null ? updatedAfter : ( updatedAfterInitialValue!=null ? new Date(updatedAfterInitialValue) : null ) ;
-	    
-		url = url.replaceAll("\\{space\\}", URLEncoder.encode(spaceKey, "UTF-8"));
-		url = url.replaceAll("\\{updatedAfter\\}", updatedAfter != null ? URLEncoder.encode(DateTimeUtils.formatDateTime(updatedAfter, dateFormatToUse), "UTF-8") : "");
-		url = url.replaceAll("\\{updatedBefore\\}", updatedBeforeTimeSpan != null && updatedAfter!=null
-		        ? URLEncoder.encode(DateTimeUtils.formatDateTime(new Date(updatedAfter.getTime()+updatedBeforeTimeSpan), dateFormatToUse), "UTF-8") : "");
-		url = url.replaceAll("\\{startAtIndex\\}", startAt + "");
-		url = url.replaceAll("\\{indexingType\\}", fullUpdate ? "full" : "inc");
-		url = url.replaceAll("\\{apiKey\\}", embedApiKeyCode != null ? embedApiKeyCode : "");
 
-		return url;
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("space", UrlTemplate.encode(spaceKey));
+		if (url.hasPlaceholder("updatedAfter"))
+			values.put("updatedAfter", updatedAfter != null ? UrlTemplate.encode(DateTimeUtils.formatDateTime(updatedAfter, dateFormatToUse)) : "");
+		if (url.hasPlaceholder("updatedBefore")) {
+			if (updatedBefore == null && updatedBeforeTimeSpan != null && updatedAfter != null)
+				updatedBefore = new Date(updatedAfter.getTime() + updatedBeforeTimeSpan);
+			values.put("updatedBefore", updatedBefore != null ? UrlTemplate.encode(DateTimeUtils.formatDateTime(updatedBefore, dateFormatToUse)) : "");
+		}
+		values.put("startAtIndex", Integer.toString(startAt));
+		values.put("indexingType", fullUpdate ? "full" : "inc");
+		values.put("apiKey", embedApiKeyCode != null ? embedApiKeyCode : "");
+		return values;
 	}
 
 	@Override
@@ -468,4 +986,39 @@ public class GetJSONClient extends HttpRemoteSystemClientBase {
 		return indexStructureBuilder;
 	}
 
+	/**
+	 * Input stream counting bytes read from wrapped stream.
+	 */
+	protected static class ByteCountingInputStream extends FilterInputStream {
+
+		protected long count = 0;
+
+		protected ByteCountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
 }
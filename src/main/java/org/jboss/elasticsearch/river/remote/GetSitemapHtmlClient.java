@@ -6,25 +6,42 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.Futures;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
 import org.jboss.elasticsearch.river.remote.sitemap.AbstractSiteMap;
 import org.jboss.elasticsearch.river.remote.sitemap.SiteMap;
+import org.jboss.elasticsearch.river.remote.sitemap.SiteMapHandler;
 import org.jboss.elasticsearch.river.remote.sitemap.SiteMapParser;
 import org.jboss.elasticsearch.river.remote.sitemap.SiteMapURL;
 import org.jsoup.Jsoup;
@@ -42,16 +59,46 @@ import org.jsoup.select.NodeVisitor;
  * <p>
  * Document structure returned from {@link #getChangedDocuments(String, int, Date)} contains fields defined in
  * <code>DOC_FIELD_xx</code> constants.
+ * <p>
+ * If sitemap index is obtained then child sitemaps are fetched in parallel. Each child sitemap is returned as one page
+ * of documents with cursor pointing to the next one if <code>pagination</code> List Documents mode is used, documents
+ * from all child sitemaps are returned at once otherwise.
+ * <p>
+ * If <code>sitemapIncremental</code> is enabled then last modification dates of all URLs from sitemap are persisted, and
+ * only new and changed URLs are returned during incremental update. URLs not present in sitemap anymore are returned as
+ * documents with {@link #DOC_FIELD_DELETED} field set to <code>true</code>.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
-public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase {
+public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase implements IRemoteSystemClientAsync,
+		IRemoteSystemClientCursorPaging, IRemoteSystemClientIncremental {
 
 	protected static final String CFG_HM_STRIP_HTML = "stripHtml";
 	protected static final String CFG_HM_CSS_SELECTOR = "cssSelector";
 	protected static final String CFG_HM_VALUE_ATTRIBUTE = "valueAttribute";
 	protected static final String CFG_URL_GET_SITEMAP = "urlGetSitemap";
 	protected static final String CFG_HTML_MAPPING = "htmlMapping";
+	protected static final String CFG_SITEMAP_STREAMING = "sitemapStreaming";
+	protected static final String CFG_SITEMAP_MAX_URLS = "sitemapMaxUrls";
+	protected static final String CFG_SITEMAP_INDEX_CONCURRENCY = "sitemapIndexConcurrency";
+	protected static final String CFG_LIST_DOCUMENTS_MODE = "listDocumentsMode";
+	protected static final String CFG_SITEMAP_INCREMENTAL = "sitemapIncremental";
+	protected static final String CFG_CRAWLER_HOST_CONCURRENCY = "crawlerHostConcurrency";
+	protected static final String CFG_CRAWLER_POLITENESS_DELAY = "crawlerPolitenessDelay";
+	protected static final String CFG_CRAWLER_THREADS = "crawlerThreads";
+	protected static final String CFG_CRAWLER_PARSE_THREADS = "crawlerParseThreads";
+
+	/**
+	 * Name of property used to persist last modification dates of child sitemaps from sitemap index.
+	 */
+	protected static final String STORE_PROPERTYNAME_SITEMAP_INDEX = "sitemapIndexLastModified";
+
+	/**
+	 * Name of property used to persist last modification dates of URLs from sitemap for incremental update.
+	 * 
+	 * @see SitemapUrlsState
+	 */
+	protected static final String STORE_PROPERTYNAME_SITEMAP_URLS = "sitemapUrlsLastModified";
 
 	private ESLogger logger = Loggers.getLogger(GetSitemapHtmlClient.class);
 
@@ -59,6 +106,7 @@ public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase {
 	public static final String DOC_FIELD_URL = "url";
 	public static final String DOC_FIELD_LAST_MODIFIED = "last_modified";
 	public static final String DOC_FIELD_PRIORITY = "priority";
+	public static final String DOC_FIELD_DELETED = "deleted";
 
 	/**
 	 * Extensions of sitemap provided URLs which are always ignored, so no detail document is downloaded for them
@@ -84,21 +132,68 @@ public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase {
 
 	protected String urlGetSitemap;
 
-	protected Map<String, Map<String, Object>> htmlMapping;
+	/**
+	 * Extraction plan compiled from <code>remote/htmlMapping</code> configuration, null if not configured.
+	 */
+	protected HtmlMappingExtractionPlan htmlMappingPlan;
 
 	protected SiteMapParser sitemapParser = new SiteMapParser();
 
+	protected boolean sitemapStreaming = false;
+
+	/**
+	 * True if child sitemaps of sitemap index are returned page by page over cursor.
+	 */
+	protected boolean sitemapIndexPaging = false;
+
+	protected int sitemapIndexConcurrency = 4;
+
+	/**
+	 * Executor used to fetch child sitemaps of sitemap index. Created lazily, shut down on {@link #close()}.
+	 */
+	protected ExecutorService sitemapIndexExecutor;
+
+	/**
+	 * Running fetches of sitemap index for each space.
+	 */
+	protected final ConcurrentMap<String, SitemapIndexFetch> sitemapIndexFetches = new ConcurrentHashMap<String, SitemapIndexFetch>();
+
+	/**
+	 * True if only new and changed URLs are returned during incremental update.
+	 */
+	protected boolean sitemapIncremental = false;
+
+	/**
+	 * State of incremental update for each space, waiting to be persisted once indexing run finishes.
+	 */
+	protected final ConcurrentMap<String, SitemapUrlsState> sitemapUrlsStates = new ConcurrentHashMap<String, SitemapUrlsState>();
+
+	/**
+	 * Last modification dates of child sitemaps from sitemap index for each space, waiting to be persisted once indexing
+	 * run finishes.
+	 */
+	protected final ConcurrentMap<String, Map<String, Object>> sitemapIndexLastModified = new ConcurrentHashMap<String, Map<String, Object>>();
+
+	/**
+	 * Crawler used to fetch and parse HTML of documents, null if not configured. Shut down on {@link #close()}.
+	 */
+	protected PageCrawler crawler;
+
+	protected IESIntegration esIntegration;
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public void init(IESIntegration esIntegration, Map<String, Object> config, boolean spaceListLoadingEnabled,
 			IPwdLoader pwdLoader) {
 		logger = esIntegration.createLogger(GetSitemapHtmlClient.class);
+		this.esIntegration = esIntegration;
 		urlGetSitemap = getUrlFromConfig(config, CFG_URL_GET_SITEMAP, true);
 
-		try {
-			htmlMapping = (Map<String, Map<String, Object>>) config.get(CFG_HTML_MAPPING);
-		} catch (ClassCastException e) {
-			throw new SettingsException("'remote/" + CFG_HTML_MAPPING + "' configuration section is invalid");
+		Object htmlMapping = config.get(CFG_HTML_MAPPING);
+		if (htmlMapping != null) {
+			if (!(htmlMapping instanceof Map))
+				throw new SettingsException("'remote/" + CFG_HTML_MAPPING + "' configuration section is invalid");
+			htmlMappingPlan = HtmlMappingExtractionPlan.compile((Map<String, Object>) htmlMapping);
 		}
 
 		if (spaceListLoadingEnabled) {
@@ -106,7 +201,39 @@ public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase {
 					"Dynamic Spaces obtaining is not supported, use 'remote/spacesIndexed' to configure one space or static list");
 		}
 
-		String remoteUsername = initHttpClient(logger, config, pwdLoader, urlGetSitemap);
+		sitemapStreaming = XContentMapValues.nodeBooleanValue(config.get(CFG_SITEMAP_STREAMING), false);
+		int sitemapMaxUrls = XContentMapValues.nodeIntegerValue(config.get(CFG_SITEMAP_MAX_URLS), SiteMapParser.MAX_URLS);
+		if (sitemapMaxUrls < 1) {
+			throw new SettingsException("remote/" + CFG_SITEMAP_MAX_URLS + " configuration parameter must be positive number.");
+		}
+		sitemapParser.setMaxUrls(sitemapMaxUrls);
+
+		shutdownSitemapIndexExecutor();
+		sitemapIndexConcurrency = XContentMapValues.nodeIntegerValue(config.get(CFG_SITEMAP_INDEX_CONCURRENCY), 4);
+		if (sitemapIndexConcurrency < 1) {
+			throw new SettingsException("remote/" + CFG_SITEMAP_INDEX_CONCURRENCY
+					+ " configuration parameter must be positive number.");
+		}
+		sitemapIndexPaging = SpaceIndexingMode.parseConfiguration(XContentMapValues.nodeStringValue(
+				config.get(CFG_LIST_DOCUMENTS_MODE), null)) == SpaceIndexingMode.PAGINATION;
+		sitemapIncremental = XContentMapValues.nodeBooleanValue(config.get(CFG_SITEMAP_INCREMENTAL), false);
+
+		shutdownCrawler();
+		int crawlerHostConcurrency = XContentMapValues.nodeIntegerValue(config.get(CFG_CRAWLER_HOST_CONCURRENCY), 0);
+		if (crawlerHostConcurrency > 0) {
+			int crawlerThreads = XContentMapValues.nodeIntegerValue(config.get(CFG_CRAWLER_THREADS), crawlerHostConcurrency);
+			int crawlerParseThreads = XContentMapValues.nodeIntegerValue(config.get(CFG_CRAWLER_PARSE_THREADS), Runtime
+					.getRuntime().availableProcessors());
+			if (crawlerThreads < 1 || crawlerParseThreads < 1) {
+				throw new SettingsException("remote/" + CFG_CRAWLER_THREADS + " and remote/" + CFG_CRAWLER_PARSE_THREADS
+						+ " configuration parameters must be positive numbers.");
+			}
+			long crawlerPolitenessDelay = Utils.parseTimeValue(config, CFG_CRAWLER_POLITENESS_DELAY, 0, TimeUnit.MILLISECONDS);
+			crawler = new PageCrawler(crawlerHostConcurrency, crawlerPolitenessDelay, crawlerThreads, crawlerParseThreads,
+					"remote_river_crawler");
+		}
+
+		String remoteUsername = initHttpClient(logger, config, pwdLoader, urlGetSitemap, esIntegration);
 
 		logger.info("Configured sitemap.xml HTML client for URL '{}', remote system user '{}'.", urlGetSitemap,
 				remoteUsername != null ? remoteUsername : "Anonymous access");
@@ -121,41 +248,472 @@ public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase {
 	@Override
 	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, boolean fullUpdate, Date updatedAfter)
 			throws Exception {
-		HttpResponseContent responseData = performHttpGetCall(urlGetSitemap, null);
+		SitemapIndexFetch previous = sitemapIndexFetches.remove(spaceKey);
+		if (previous != null)
+			previous.cancel();
+		sitemapUrlsStates.remove(spaceKey);
+		sitemapIndexLastModified.remove(spaceKey);
+
+		SitemapUrlsState urlsState = null;
+		if (sitemapIncremental) {
+			urlsState = new SitemapUrlsState(fullUpdate ? null : esIntegration.readObjectValue(spaceKey,
+					STORE_PROPERTYNAME_SITEMAP_URLS));
+		}
 
-		logger.debug("HTTP GET sitemap response data: {}", responseData);
+		SitemapContent sitemap = fetchSitemap(urlGetSitemap);
+		if (!sitemap.index) {
+			List<Map<String, Object>> documents = sitemap.documents;
+			if (urlsState != null) {
+				documents = urlsState.update(urlGetSitemap, null, documents, fullUpdate);
+				if (!fullUpdate)
+					documents.addAll(urlsState.getDeletedDocuments());
+				sitemapUrlsStates.put(spaceKey, urlsState);
+			}
+			return new ChangedDocumentsResults(documents, 0, documents.size());
+		}
 
-		List<Map<String, Object>> documents = processSitemap(responseData, urlGetSitemap);
+		if (urlsState != null)
+			sitemapUrlsStates.put(spaceKey, urlsState);
+		SitemapIndexFetch fetch = new SitemapIndexFetch(spaceKey, sitemap.sitemaps, fullUpdate, urlsState);
+		if (sitemapIndexPaging) {
+			sitemapIndexFetches.put(spaceKey, fetch);
+			return fetch.nextPage(startAt);
+		}
 
+		List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>();
+		ChangedDocumentsResults page;
+		do {
+			page = fetch.nextPage(documents.size());
+			documents.addAll(page.getDocuments());
+		} while (page.getNextCursor() != null);
 		return new ChangedDocumentsResults(documents, 0, documents.size());
 	}
 
-	protected List<Map<String, Object>> processSitemap(HttpResponseContent response, String url) throws Exception {
-		AbstractSiteMap asm = sitemapParser.parseSiteMap(response.contentType, response.content, new URL(url));
+	@Override
+	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter) throws Exception {
+		SitemapIndexFetch fetch = sitemapIndexFetches.get(spaceKey);
+		if (fetch == null || !cursor.equals(fetch.getCursor())) {
+			throw new IllegalStateException("Fetch of sitemap index for space " + spaceKey + " and cursor " + cursor
+					+ " is not running");
+		}
+		return fetch.nextPage(startAt);
+	}
 
-		if (asm.isIndex()) {
-			throw new Exception("Sitemap index format is not supported by this river!");
+	@Override
+	public boolean isIncrementalUpdateSupported() {
+		return sitemapIncremental;
+	}
+
+	@Override
+	public void indexingFinished(String spaceKey) throws Exception {
+		SitemapUrlsState urlsState = sitemapUrlsStates.remove(spaceKey);
+		if (urlsState != null)
+			esIntegration.storeObjectValue(spaceKey, STORE_PROPERTYNAME_SITEMAP_URLS, urlsState.current);
+		Map<String, Object> lastModified = sitemapIndexLastModified.remove(spaceKey);
+		if (lastModified != null)
+			esIntegration.storeObjectValue(spaceKey, STORE_PROPERTYNAME_SITEMAP_INDEX, lastModified);
+	}
+
+	@Override
+	public void close() {
+		shutdownSitemapIndexExecutor();
+		shutdownCrawler();
+		super.close();
+	}
+
+	/**
+	 * Shut down {@link #crawler} if created, running fetches of documents are interrupted.
+	 */
+	protected synchronized void shutdownCrawler() {
+		if (crawler != null) {
+			crawler.shutdown();
+			crawler = null;
 		}
+	}
 
-		SiteMap sm = (SiteMap) asm;
+	/**
+	 * Get sitemap from remote system and parse it.
+	 * 
+	 * @param url of sitemap
+	 * @return parsed sitemap
+	 * @throws Exception
+	 */
+	protected SitemapContent fetchSitemap(final String url) throws Exception {
+		if (sitemapStreaming) {
+			return performWithRetry(listCallRetryPolicy, url, new Callable<SitemapContent>() {
+				@Override
+				public SitemapContent call() throws Exception {
+					return performHttpCall(url, null, HttpMethodType.GET, new HttpResponseStreamProcessor<SitemapContent>() {
+						@Override
+						public SitemapContent process(String contentType, InputStream content) throws Exception {
+							return processSitemap(contentType, content, url);
+						}
+					});
+				}
+			});
+		}
 
-		List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>();
-		for (SiteMapURL smurl : sm.getSiteMapUrls()) {
-
-			String durl = smurl.getUrl().toExternalForm();
-			String ext = Utils.getFileExtensionLowercase(durl);
-			if (ext == null || !IGNORED_EXTENSIONS.contains(ext)) {
-				Map<String, Object> document = new HashMap<String, Object>();
-				document.put(DOC_FIELD_ID, createIdFromUrl(durl));
-				document.put(DOC_FIELD_URL, durl);
-				document.put(DOC_FIELD_LAST_MODIFIED, DateTimeUtils.formatISODateTime(smurl.getLastModified()));
-				document.put(DOC_FIELD_PRIORITY, new Double(smurl.getPriority()));
-				documents.add(document);
-			} else {
-				logger.debug("Ignored URL as it contains ignored file extension: " + durl);
+		HttpResponseContent responseData = performWithRetry(listCallRetryPolicy, url, new Callable<HttpResponseContent>() {
+			@Override
+			public HttpResponseContent call() throws Exception {
+				return performConditionalHttpGetCall(url, null);
+			}
+		});
+
+		logger.debug("HTTP GET sitemap response data: {}", responseData);
+
+		return processSitemap(responseData.contentType, new ByteArrayInputStream(responseData.content), url);
+	}
+
+	/**
+	 * Parse sitemap and create documents for URLs from it. Sitemap is parsed by streaming parser, so only created
+	 * documents are kept in memory.
+	 * 
+	 * @param contentType of sitemap, can be null
+	 * @param content stream to read sitemap from
+	 * @param url of sitemap
+	 * @return parsed sitemap
+	 * @throws Exception if sitemap can't be parsed
+	 */
+	protected SitemapContent processSitemap(String contentType, InputStream content, String url) throws Exception {
+		final SitemapContent ret = new SitemapContent();
+		AbstractSiteMap asm = sitemapParser.parseSiteMap(contentType, content, new URL(url), new SiteMapHandler() {
+
+			@Override
+			public void handleSiteMapUrl(SiteMapURL smurl) {
+				String durl = smurl.getUrl().toExternalForm();
+				String ext = Utils.getFileExtensionLowercase(durl);
+				if (ext == null || !IGNORED_EXTENSIONS.contains(ext)) {
+					Map<String, Object> document = new HashMap<String, Object>();
+					document.put(DOC_FIELD_ID, createIdFromUrl(durl));
+					document.put(DOC_FIELD_URL, durl);
+					document.put(DOC_FIELD_LAST_MODIFIED, DateTimeUtils.formatISODateTime(smurl.getLastModified()));
+					document.put(DOC_FIELD_PRIORITY, new Double(smurl.getPriority()));
+					ret.documents.add(document);
+				} else {
+					logger.debug("Ignored URL as it contains ignored file extension: " + durl);
+				}
+			}
+
+			@Override
+			public void handleSitemap(SiteMap sitemap) {
+				ret.sitemaps.add(sitemap);
 			}
+		});
+		ret.index = asm.isIndex();
+		return ret;
+	}
+
+	/**
+	 * Content of one parsed sitemap.
+	 */
+	protected static class SitemapContent {
+
+		/**
+		 * Documents for URLs from sitemap.
+		 */
+		protected final List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>();
+
+		/**
+		 * Child sitemaps if sitemap is index.
+		 */
+		protected final List<SiteMap> sitemaps = new ArrayList<SiteMap>();
+
+		protected boolean index;
+	}
+
+	protected synchronized ExecutorService getSitemapIndexExecutor() {
+		if (sitemapIndexExecutor == null) {
+			sitemapIndexExecutor = Executors.newFixedThreadPool(sitemapIndexConcurrency,
+					EsExecutors.daemonThreadFactory("remote_river_sitemap_fetch"));
+		}
+		return sitemapIndexExecutor;
+	}
+
+	/**
+	 * Shut down {@link #sitemapIndexExecutor} if created, running fetches of child sitemaps are interrupted.
+	 */
+	protected synchronized void shutdownSitemapIndexExecutor() {
+		if (sitemapIndexExecutor != null) {
+			sitemapIndexExecutor.shutdownNow();
+			sitemapIndexExecutor = null;
+		}
+	}
+
+	/**
+	 * Fetch of child sitemaps from one sitemap index. Up to <code>sitemapIndexConcurrency</code> child sitemaps are
+	 * fetched in parallel ahead of the one which is requested, and each child sitemap with documents is returned as one
+	 * page. Child sitemap is skipped during incremental update if its last modification date in the index is the same as
+	 * in the last run. Last modification dates are persisted once indexing run finishes, or kept in
+	 * {@link SitemapUrlsState} if incremental update by URL last modification dates is used.
+	 */
+	protected class SitemapIndexFetch {
+
+		protected final String spaceKey;
+
+		protected final boolean fullUpdate;
+
+		protected final SitemapUrlsState urlsState;
+
+		protected final List<SiteMap> sitemaps = new ArrayList<SiteMap>();
+
+		protected final Map<String, Object> lastModified = new HashMap<String, Object>();
+
+		private final Deque<Future<SitemapContent>> running = new ArrayDeque<Future<SitemapContent>>();
+
+		private int nextScheduled = 0;
+
+		private int nextReturned = 0;
+
+		/**
+		 * Create fetch.
+		 * 
+		 * @param spaceKey fetch is for
+		 * @param indexSitemaps child sitemaps from index
+		 * @param fullUpdate if false then child sitemaps not modified since last run are skipped
+		 * @param urlsState state of incremental update by URL last modification dates, null if not used
+		 * @throws Exception
+		 */
+		protected SitemapIndexFetch(String spaceKey, List<SiteMap> indexSitemaps, boolean fullUpdate,
+				SitemapUrlsState urlsState) throws Exception {
+			this.spaceKey = spaceKey;
+			this.fullUpdate = fullUpdate;
+			this.urlsState = urlsState;
+			Map<String, Object> lastRun = fullUpdate || urlsState != null ? null : esIntegration.readObjectValue(spaceKey,
+					STORE_PROPERTYNAME_SITEMAP_INDEX);
+			for (SiteMap sitemap : indexSitemaps) {
+				String url = sitemap.getUrl().toExternalForm();
+				String lm = DateTimeUtils.formatISODateTime(sitemap.getLastModified());
+				if (lm != null) {
+					lastModified.put(url, lm);
+					if ((lastRun != null && lm.equals(lastRun.get(url)))
+							|| (urlsState != null && !fullUpdate && urlsState.keepIfNotModified(url, lm))) {
+						logger.debug("Child sitemap {} skipped as it is not modified since last run", url);
+						continue;
+					}
+				}
+				sitemaps.add(sitemap);
+			}
+			logger.info("Sitemap index for space {} contains {} child sitemaps, {} of them are going to be processed",
+					spaceKey, indexSitemaps.size(), sitemaps.size());
+		}
+
+		/**
+		 * @return cursor for next page, null if there are no more child sitemaps to return
+		 */
+		protected synchronized String getCursor() {
+			return nextReturned < sitemaps.size() ? Integer.toString(nextReturned) : null;
+		}
+
+		/**
+		 * Get documents from next child sitemap containing some.
+		 * 
+		 * @param startAt position of first returned document in complete list of documents
+		 * @return page of documents, total is set for the last page only
+		 * @throws Exception if child sitemap can't be obtained, whole fetch is cancelled in this case
+		 */
+		protected synchronized ChangedDocumentsResults nextPage(int startAt) throws Exception {
+			try {
+				while (nextReturned < sitemaps.size()) {
+					schedule();
+					SitemapContent content = waitFor(running.pollFirst());
+					SiteMap sitemap = sitemaps.get(nextReturned++);
+					if (content.index) {
+						logger.warn("Nested sitemap index {} ignored", sitemap.getUrl());
+						continue;
+					}
+					List<Map<String, Object>> documents = content.documents;
+					if (urlsState != null) {
+						String url = sitemap.getUrl().toExternalForm();
+						documents = urlsState.update(url, (String) lastModified.get(url), documents, fullUpdate);
+					}
+					if (!documents.isEmpty()) {
+						String cursor = getCursor();
+						if (cursor != null) {
+							schedule();
+							return new ChangedDocumentsResults(documents, startAt, null, cursor);
+						}
+						return lastPage(documents, startAt);
+					}
+				}
+				return lastPage(new ArrayList<Map<String, Object>>(), startAt);
+			} catch (Exception e) {
+				cancel();
+				throw e;
+			}
+		}
+
+		private void schedule() {
+			while (running.size() < sitemapIndexConcurrency && nextScheduled < sitemaps.size()) {
+				final String url = sitemaps.get(nextScheduled++).getUrl().toExternalForm();
+				running.addLast(getSitemapIndexExecutor().submit(new Callable<SitemapContent>() {
+					@Override
+					public SitemapContent call() throws Exception {
+						logger.debug("Go to fetch child sitemap {}", url);
+						return fetchSitemap(url);
+					}
+				}));
+			}
+		}
+
+		private SitemapContent waitFor(Future<SitemapContent> future) throws Exception {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+
+		private ChangedDocumentsResults lastPage(List<Map<String, Object>> documents, int startAt) throws Exception {
+			sitemapIndexFetches.remove(spaceKey, this);
+			if (urlsState == null) {
+				sitemapIndexLastModified.put(spaceKey, lastModified);
+			} else if (!fullUpdate) {
+				documents.addAll(urlsState.getDeletedDocuments());
+			}
+			return new ChangedDocumentsResults(documents, startAt, startAt + documents.size());
+		}
+
+		/**
+		 * Cancel all running fetches of child sitemaps.
+		 */
+		protected synchronized void cancel() {
+			sitemapIndexFetches.remove(spaceKey, this);
+			for (Future<SitemapContent> f : running) {
+				f.cancel(true);
+			}
+			running.clear();
+		}
+	}
+
+	/**
+	 * State of incremental update by last modification dates of URLs. URL last modification dates are kept for each
+	 * sitemap they are obtained from (main sitemap or child sitemap from sitemap index), so URLs from child sitemap not
+	 * modified since last run are kept without fetching it. Persisted structure is:
+	 * 
+	 * <pre>
+	 * { "sitemap url" : { "lastModified" : "sitemap last modification date", "urls" : { "url" : "url last modification date" } } }
+	 * </pre>
+	 * 
+	 * Empty string is used for URLs without last modification date.
+	 */
+	protected static class SitemapUrlsState {
+
+		protected static final String KEY_LAST_MODIFIED = "lastModified";
+		protected static final String KEY_URLS = "urls";
+
+		/**
+		 * State persisted during last run.
+		 */
+		protected final Map<String, Object> previous;
+
+		/**
+		 * Last modification dates of all URLs from last run.
+		 */
+		protected final Map<String, Object> previousUrls = new HashMap<String, Object>();
+
+		/**
+		 * State of current run, to be persisted when it finishes.
+		 */
+		protected final Map<String, Object> current = new HashMap<String, Object>();
+
+		/**
+		 * Create state.
+		 * 
+		 * @param previous state persisted during last run, null if not available or full update is performed
+		 */
+		@SuppressWarnings("unchecked")
+		protected SitemapUrlsState(Map<String, Object> previous) {
+			this.previous = previous != null ? previous : Collections.<String, Object> emptyMap();
+			for (Object sitemap : this.previous.values()) {
+				Map<String, Object> urls = getUrls(sitemap);
+				if (urls != null)
+					previousUrls.putAll(urls);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private static Map<String, Object> getUrls(Object sitemap) {
+			if (sitemap instanceof Map) {
+				Object urls = ((Map<String, Object>) sitemap).get(KEY_URLS);
+				if (urls instanceof Map)
+					return (Map<String, Object>) urls;
+			}
+			return null;
+		}
+
+		/**
+		 * Keep URLs of child sitemap from last run if it is not modified since then.
+		 * 
+		 * @param sitemapUrl URL of child sitemap
+		 * @param lastModified of child sitemap from sitemap index
+		 * @return true if child sitemap is not modified since last run so its URLs are kept, false if it must be fetched
+		 */
+		@SuppressWarnings("unchecked")
+		protected synchronized boolean keepIfNotModified(String sitemapUrl, String lastModified) {
+			Object sitemap = previous.get(sitemapUrl);
+			if (getUrls(sitemap) != null && lastModified.equals(((Map<String, Object>) sitemap).get(KEY_LAST_MODIFIED))) {
+				current.put(sitemapUrl, sitemap);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Record URLs from sitemap into current state and select documents which are new or changed since last run.
+		 * 
+		 * @param sitemapUrl URL of sitemap documents are from
+		 * @param lastModified of sitemap, can be null
+		 * @param documents for all URLs from sitemap
+		 * @param fullUpdate if true then all documents are returned
+		 * @return documents to be indexed
+		 */
+		protected synchronized List<Map<String, Object>> update(String sitemapUrl, String lastModified,
+				List<Map<String, Object>> documents, boolean fullUpdate) {
+			List<Map<String, Object>> ret = fullUpdate ? documents : new ArrayList<Map<String, Object>>();
+			Map<String, Object> urls = new HashMap<String, Object>();
+			for (Map<String, Object> document : documents) {
+				String url = (String) document.get(DOC_FIELD_URL);
+				String lm = (String) document.get(DOC_FIELD_LAST_MODIFIED);
+				if (lm == null)
+					lm = "";
+				urls.put(url, lm);
+				if (!fullUpdate && (lm.isEmpty() || !lm.equals(previousUrls.get(url))))
+					ret.add(document);
+			}
+			Map<String, Object> sitemap = new HashMap<String, Object>();
+			if (lastModified != null)
+				sitemap.put(KEY_LAST_MODIFIED, lastModified);
+			sitemap.put(KEY_URLS, urls);
+			current.put(sitemapUrl, sitemap);
+			return ret;
+		}
+
+		/**
+		 * Get documents for URLs from last run which are not present in any sitemap in current run.
+		 * 
+		 * @return documents marked as deleted
+		 */
+		protected synchronized List<Map<String, Object>> getDeletedDocuments() {
+			Set<String> present = new HashSet<String>();
+			for (Object sitemap : current.values()) {
+				present.addAll(getUrls(sitemap).keySet());
+			}
+			List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+			for (String url : previousUrls.keySet()) {
+				if (!present.contains(url)) {
+					Map<String, Object> document = new HashMap<String, Object>();
+					document.put(DOC_FIELD_ID, createIdFromUrl(url));
+					document.put(DOC_FIELD_URL, url);
+					document.put(DOC_FIELD_DELETED, "true");
+					ret.add(document);
+				}
+			}
+			return ret;
 		}
-		return documents;
 	}
 
 	/**
@@ -190,89 +748,150 @@ public class GetSitemapHtmlClient extends HttpRemoteSystemClientBase {
 	public Object getChangedDocumentDetails(String spaceKey, String documentId, Map<String, Object> document)
 			throws Exception, RemoteDocumentNotFoundException {
 		try {
-			String url = (String) document.get(DOC_FIELD_URL);
-			if (url == null) {
+			final String url = (String) document.get(DOC_FIELD_URL);
+			if (url == null || document.containsKey(DOC_FIELD_DELETED)) {
 				return null;
 			}
 
-			HttpResponseContent response = performHttpGetCall(url, null);
+			if (crawler != null) {
+				try {
+					return crawlDocumentDetails(url).get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+			}
 
-			if (response.contentType != null && response.contentType.contains("text/html")) {
+			return processDocumentDetails(url, fetchDocumentDetails(url));
+		} catch (Exception e) {
+			throw handleDocumentDetailsException(e);
+		}
+	}
+
+	/**
+	 * Fetch HTML of document from remote system.
+	 * 
+	 * @param url of document
+	 * @return response from remote system
+	 * @throws Exception
+	 */
+	protected HttpResponseContent fetchDocumentDetails(final String url) throws Exception {
+		return performWithRetry(detailCallRetryPolicy, url, new Callable<HttpResponseContent>() {
+			@Override
+			public HttpResponseContent call() throws Exception {
+				return performHedgedHttpGetCall(url, null);
+			}
+		});
+	}
 
+	/**
+	 * Submit document to {@link #crawler} to fetch and process its HTML. Crawler queue is not bounded, number of
+	 * submitted documents is limited by caller, see {@link SpaceIndexerBase#startDocumentDetailsFetch(List)}.
+	 * 
+	 * @param url of document
+	 * @return future with document detail, {@link RemoteDocumentNotFoundException} is thrown from it if document is not
+	 *         found
+	 */
+	protected Future<Object> crawlDocumentDetails(final String url) {
+		return crawler.submit(url, new Callable<HttpResponseContent>() {
+			@Override
+			public HttpResponseContent call() throws Exception {
 				try {
-					Document doc = Jsoup.parse(new ByteArrayInputStream(response.content), null, url);
-
-					if (htmlMapping == null) {
-						return doc.html();
-					} else {
-						Map<String, String> ret = new HashMap<>();
-						for (String dataField : htmlMapping.keySet()) {
-							String value = null;
-							Map<String, Object> fieldMappingConfig = htmlMapping.get(dataField);
-							String cssSelector = Utils.trimToNull((String) fieldMappingConfig.get(CFG_HM_CSS_SELECTOR));
-							boolean stripHtml = XContentMapValues.nodeBooleanValue(fieldMappingConfig.get(CFG_HM_STRIP_HTML), false);
-							if (cssSelector != null) {
-								Elements elements = doc.select(cssSelector);
-								if (elements != null && !elements.isEmpty()) {
-									String valueAttribute = Utils.trimToNull((String) fieldMappingConfig.get(CFG_HM_VALUE_ATTRIBUTE));
-									if (valueAttribute != null) {
-										StringBuilder sb = new StringBuilder();
-										for (Element e : elements) {
-											String v = Utils.trimToNull(e.attr(valueAttribute));
-											if (v != null) {
-												if (sb.length() > 0) {
-													sb.append(" ");
-												}
-												sb.append(v);
-											}
-										}
-										value = Utils.trimToNull(sb.toString());
-									} else {
-										if (stripHtml) {
-											value = convertElementsToText(elements);
-										} else {
-											if (elements.size() == 1) {
-												value = elements.html();
-											} else {
-												value = elements.outerHtml();
-											}
-										}
-									}
-								}
-							} else {
-								if (stripHtml) {
-									value = convertNodeToText(doc);
-								} else {
-									value = doc.html();
-								}
-							}
-							ret.put(dataField, value);
-						}
-						return ret;
-					}
-				} catch (ClassCastException e) {
-					throw new SettingsException("'remote/" + CFG_HTML_MAPPING + "' configuration section is invalid");
+					return fetchDocumentDetails(url);
 				} catch (Exception e) {
-					throw new RemoteDocumentNotFoundException("HTML document can't be processed: " + e.getMessage(), e);
+					throw handleDocumentDetailsException(e);
+				}
+			}
+		}, new PageCrawler.PageProcessor<HttpResponseContent, Object>() {
+			@Override
+			public Object process(String url, HttpResponseContent content) throws Exception {
+				return processDocumentDetails(url, content);
+			}
+		});
+	}
+
+	@Override
+	public boolean isAsyncTransportEnabled() {
+		return crawler != null || super.isAsyncTransportEnabled();
+	}
+
+	@Override
+	public Future<Object> getChangedDocumentDetailsAsync(String spaceKey, String documentId, Map<String, Object> document)
+			throws Exception {
+		final String url = (String) document.get(DOC_FIELD_URL);
+		if (url == null || document.containsKey(DOC_FIELD_DELETED)) {
+			return Futures.immediateFuture(null);
+		}
+		if (crawler != null) {
+			return crawlDocumentDetails(url);
+		}
+		return new HttpCallProcessingFuture<Object>(performHttpCallAsync(detailCallRetryPolicy, url, null,
+				HttpMethodType.GET)) {
+
+			@Override
+			protected Object process(Future<HttpResponseContent> call) throws Exception {
+				try {
+					return processDocumentDetails(url, waitForHttpCall(call));
+				} catch (Exception e) {
+					throw handleDocumentDetailsException(e);
 				}
-			} else {
-				throw new RemoteDocumentNotFoundException("HTML document can't be processed as it is not html but: "
-						+ response.contentType);
 			}
-		} catch (ClientProtocolException e) {
+		};
+	}
+
+	/**
+	 * Process HTML document obtained from remote system into detail data.
+	 * 
+	 * @param url of document
+	 * @param response with document content
+	 * @return document detail
+	 * @throws RemoteDocumentNotFoundException if document can't be processed
+	 */
+	protected Object processDocumentDetails(String url, HttpResponseContent response)
+			throws RemoteDocumentNotFoundException {
+		if (response.contentType != null && response.contentType.contains("text/html")) {
+
+			try {
+				Document doc = Jsoup.parse(new ByteArrayInputStream(response.content), null, url);
+
+				if (htmlMappingPlan == null) {
+					return doc.html();
+				} else {
+					return htmlMappingPlan.extract(doc);
+				}
+			} catch (Exception e) {
+				throw new RemoteDocumentNotFoundException("HTML document can't be processed: " + e.getMessage(), e);
+			}
+		} else {
+			throw new RemoteDocumentNotFoundException("HTML document can't be processed as it is not html but: "
+					+ response.contentType);
+		}
+	}
+
+	@Override
+	public void buildStats(XContentBuilder builder) throws IOException {
+		super.buildStats(builder);
+		if (crawler != null)
+			crawler.buildStats(builder);
+	}
+
+	private Exception handleDocumentDetailsException(Exception e) {
+		if (e instanceof ClientProtocolException) {
 			if (e.getCause() != null)
-				throw new RemoteDocumentNotFoundException(e.getCause());
+				return new RemoteDocumentNotFoundException(e.getCause());
 			else
-				throw new RemoteDocumentNotFoundException(e);
-		} catch (HttpCallException e) {
-			if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-				throw new RemoteDocumentNotFoundException(e);
+				return new RemoteDocumentNotFoundException(e);
+		} else if (e instanceof HttpCallException) {
+			if (((HttpCallException) e).getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+				return new RemoteDocumentNotFoundException(e);
 			} else {
-				throw e;
+				return e;
 			}
-		} catch (URISyntaxException e) {
-			throw new RemoteDocumentNotFoundException("URL of sitemap is invalid: " + e.getMessage(), e);
+		} else if (e instanceof URISyntaxException) {
+			return new RemoteDocumentNotFoundException("URL of sitemap is invalid: " + e.getMessage(), e);
 		}
+		return e;
 	}
 
 	protected static String convertNodeToText(Node node) {
@@ -0,0 +1,364 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+
+/**
+ * Extraction plan compiled from <code>remote/htmlMapping</code> configuration of {@link GetSitemapHtmlClient}. All
+ * configuration values are validated and css selectors are parsed once when plan is compiled, so configuration errors
+ * are reported when river starts and no selector is parsed again for each document.
+ * <p>
+ * Fields with selectors sharing the same ancestor (eg. <code>head title</code> and <code>head meta[name=description]</code>)
+ * select ancestor elements only once per document, and the rest of selector is evaluated inside of them. Fields with the
+ * same selector share selected elements.
+ * <p>
+ * Immutable, so thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public final class HtmlMappingExtractionPlan {
+
+	/**
+	 * <code>QueryParser.parse(String)</code> method from jsoup used to pre-parse selectors. It is not public in the jsoup
+	 * version we use, so it is obtained over reflection. Null if not available, selectors are parsed by jsoup for each
+	 * document then.
+	 */
+	private static final Method QUERY_PARSER_PARSE = findQueryParser();
+
+	private static Method findQueryParser() {
+		try {
+			Method m = Class.forName("org.jsoup.select.QueryParser").getDeclaredMethod("parse", String.class);
+			m.setAccessible(true);
+			return m;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Css selector with pre-parsed evaluator.
+	 */
+	protected static final class CompiledSelector {
+
+		protected final String selector;
+
+		/**
+		 * Pre-parsed selector, null if not available.
+		 */
+		protected final Evaluator evaluator;
+
+		protected CompiledSelector(String selector, Evaluator evaluator) {
+			this.selector = selector;
+			this.evaluator = evaluator;
+		}
+
+		/**
+		 * Select elements matching this selector from root element and its descendants.
+		 *
+		 * @param root to select from
+		 * @return selected elements in document order
+		 */
+		protected Elements select(Element root) {
+			if (evaluator != null)
+				return Collector.collect(evaluator, root);
+			return root.select(selector);
+		}
+	}
+
+	/**
+	 * Extraction of one field.
+	 */
+	protected static final class FieldExtractor {
+
+		protected final String field;
+
+		/**
+		 * Selector of field, null means whole document.
+		 */
+		protected final CompiledSelector selector;
+
+		/**
+		 * Ancestor shared with other fields, null if selector is evaluated against whole document.
+		 */
+		protected final CompiledSelector ancestor;
+
+		/**
+		 * Rest of selector evaluated inside of {@link #ancestor} elements, null if ancestor is not used.
+		 */
+		protected final CompiledSelector relative;
+
+		protected final String valueAttribute;
+
+		protected final boolean stripHtml;
+
+		protected FieldExtractor(String field, CompiledSelector selector, CompiledSelector ancestor,
+				CompiledSelector relative, String valueAttribute, boolean stripHtml) {
+			this.field = field;
+			this.selector = selector;
+			this.ancestor = ancestor;
+			this.relative = relative;
+			this.valueAttribute = valueAttribute;
+			this.stripHtml = stripHtml;
+		}
+
+		/**
+		 * Convert selected elements into field value.
+		 *
+		 * @param elements selected for this field
+		 * @return value, null if no element is selected
+		 */
+		protected String toValue(Elements elements) {
+			if (elements == null || elements.isEmpty())
+				return null;
+			if (valueAttribute != null) {
+				StringBuilder sb = new StringBuilder();
+				for (Element e : elements) {
+					String v = Utils.trimToNull(e.attr(valueAttribute));
+					if (v != null) {
+						if (sb.length() > 0) {
+							sb.append(" ");
+						}
+						sb.append(v);
+					}
+				}
+				return Utils.trimToNull(sb.toString());
+			}
+			if (stripHtml)
+				return GetSitemapHtmlClient.convertElementsToText(elements);
+			if (elements.size() == 1)
+				return elements.html();
+			return elements.outerHtml();
+		}
+	}
+
+	protected final List<FieldExtractor> fields;
+
+	private HtmlMappingExtractionPlan(List<FieldExtractor> fields) {
+		this.fields = Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * Compile extraction plan from configuration.
+	 *
+	 * @param htmlMapping configuration structure, key is name of field in detail, value is map with
+	 *          <code>cssSelector</code>, <code>valueAttribute</code> and <code>stripHtml</code> config fields
+	 * @return compiled plan
+	 * @throws SettingsException if configuration is invalid
+	 */
+	@SuppressWarnings("unchecked")
+	public static HtmlMappingExtractionPlan compile(Map<String, Object> htmlMapping) throws SettingsException {
+		Map<String, CompiledSelector> selectors = new HashMap<String, CompiledSelector>();
+		Map<String, Map<String, Object>> fieldConfigs = new LinkedHashMap<String, Map<String, Object>>();
+		Map<String, Integer> ancestorUsage = new HashMap<String, Integer>();
+		for (Map.Entry<String, Object> entry : htmlMapping.entrySet()) {
+			if (!(entry.getValue() instanceof Map))
+				throw new SettingsException("'remote/" + GetSitemapHtmlClient.CFG_HTML_MAPPING + "/" + entry.getKey()
+						+ "' configuration section is invalid");
+			Map<String, Object> fieldConfig = (Map<String, Object>) entry.getValue();
+			fieldConfigs.put(entry.getKey(), fieldConfig);
+			String[] split = splitAncestor(getString(entry.getKey(), fieldConfig, GetSitemapHtmlClient.CFG_HM_CSS_SELECTOR));
+			if (split != null) {
+				Integer count = ancestorUsage.get(split[0]);
+				ancestorUsage.put(split[0], count != null ? count + 1 : 1);
+			}
+		}
+
+		List<FieldExtractor> fields = new ArrayList<FieldExtractor>();
+		for (Map.Entry<String, Map<String, Object>> entry : fieldConfigs.entrySet()) {
+			String field = entry.getKey();
+			Map<String, Object> fieldConfig = entry.getValue();
+			String cssSelector = getString(field, fieldConfig, GetSitemapHtmlClient.CFG_HM_CSS_SELECTOR);
+			CompiledSelector selector = null;
+			CompiledSelector ancestor = null;
+			CompiledSelector relative = null;
+			if (cssSelector != null) {
+				selector = compileSelector(field, cssSelector, selectors);
+				String[] split = splitAncestor(cssSelector);
+				if (split != null && ancestorUsage.get(split[0]) > 1) {
+					ancestor = compileSelector(field, split[0], selectors);
+					relative = compileSelector(field, split[1], selectors);
+				}
+			}
+			fields.add(new FieldExtractor(field, selector, ancestor, relative, getString(field, fieldConfig,
+					GetSitemapHtmlClient.CFG_HM_VALUE_ATTRIBUTE), XContentMapValues.nodeBooleanValue(
+					fieldConfig.get(GetSitemapHtmlClient.CFG_HM_STRIP_HTML), false)));
+		}
+		return new HtmlMappingExtractionPlan(fields);
+	}
+
+	private static String getString(String field, Map<String, Object> fieldConfig, String key) {
+		Object value = fieldConfig.get(key);
+		if (value != null && !(value instanceof String))
+			throw new SettingsException("'remote/" + GetSitemapHtmlClient.CFG_HTML_MAPPING + "/" + field + "/" + key
+					+ "' configuration value must be string");
+		return Utils.trimToNull((String) value);
+	}
+
+	private static CompiledSelector compileSelector(String field, String cssSelector,
+			Map<String, CompiledSelector> selectors) {
+		CompiledSelector ret = selectors.get(cssSelector);
+		if (ret == null) {
+			try {
+				Evaluator evaluator = null;
+				if (QUERY_PARSER_PARSE != null) {
+					try {
+						evaluator = (Evaluator) QUERY_PARSER_PARSE.invoke(null, cssSelector);
+					} catch (InvocationTargetException e) {
+						if (e.getCause() instanceof RuntimeException)
+							throw (RuntimeException) e.getCause();
+						throw new IllegalArgumentException(e.getCause());
+					} catch (IllegalAccessException e) {
+						// not accessible, validated below and parsed for each document
+					}
+				}
+				if (evaluator == null)
+					new Document("").select(cssSelector);
+				ret = new CompiledSelector(cssSelector, evaluator);
+			} catch (RuntimeException e) {
+				throw new SettingsException("'remote/" + GetSitemapHtmlClient.CFG_HTML_MAPPING + "/" + field + "/"
+						+ GetSitemapHtmlClient.CFG_HM_CSS_SELECTOR + "' is invalid css selector: " + e.getMessage());
+			}
+			selectors.put(cssSelector, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Split selector into the first (ancestor) part and the rest, if they are joined by descendant combinator (space).
+	 * Only selectors containing descendant combinators only are split, as other combinators, selector groups and pseudo
+	 * selectors may select different elements if evaluated inside of ancestor.
+	 *
+	 * @param cssSelector to split, can be null
+	 * @return array with ancestor selector and the rest, or null if selector can't be split
+	 */
+	protected static String[] splitAncestor(String cssSelector) {
+		if (cssSelector == null)
+			return null;
+		char quote = 0;
+		int depth = 0;
+		int split = -1;
+		for (int i = 0; i < cssSelector.length(); i++) {
+			char c = cssSelector.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+				continue;
+			}
+			switch (c) {
+			case '\'':
+			case '"':
+				quote = c;
+				break;
+			case '[':
+			case '(':
+				depth++;
+				break;
+			case ']':
+			case ')':
+				depth--;
+				break;
+			case ',':
+			case '>':
+			case '+':
+			case '~':
+			case ':':
+				if (depth == 0)
+					return null;
+				break;
+			default:
+				if (depth == 0 && split < 0 && Character.isWhitespace(c))
+					split = i;
+			}
+		}
+		if (split < 0)
+			return null;
+		return new String[] { cssSelector.substring(0, split).trim(), cssSelector.substring(split).trim() };
+	}
+
+	/**
+	 * Extract field values from HTML document.
+	 *
+	 * @param doc to extract values from
+	 * @return map with field values, key is field name
+	 */
+	public Map<String, String> extract(Document doc) {
+		Map<String, String> ret = new HashMap<String, String>();
+		Map<CompiledSelector, Elements> selected = new IdentityHashMap<CompiledSelector, Elements>();
+		String html = null;
+		String text = null;
+		for (FieldExtractor fe : fields) {
+			String value = null;
+			if (fe.selector == null) {
+				if (fe.stripHtml) {
+					if (text == null)
+						text = GetSitemapHtmlClient.convertNodeToText(doc);
+					value = text;
+				} else {
+					if (html == null)
+						html = doc.html();
+					value = html;
+				}
+			} else {
+				Elements elements = selected.get(fe.selector);
+				if (elements == null) {
+					if (fe.ancestor != null) {
+						Elements ancestors = selected.get(fe.ancestor);
+						if (ancestors == null) {
+							ancestors = fe.ancestor.select(doc);
+							selected.put(fe.ancestor, ancestors);
+						}
+						elements = selectInAncestors(fe.relative, ancestors);
+					} else {
+						elements = fe.selector.select(doc);
+					}
+					selected.put(fe.selector, elements);
+				}
+				value = fe.toValue(elements);
+			}
+			ret.put(fe.field, value);
+		}
+		return ret;
+	}
+
+	/**
+	 * Select elements inside of ancestors, so they are same as selected by whole selector from document.
+	 *
+	 * @param relative selector evaluated inside of ancestors
+	 * @param ancestors in document order
+	 * @return selected elements in document order
+	 */
+	private static Elements selectInAncestors(CompiledSelector relative, Elements ancestors) {
+		Elements ret = new Elements();
+		Set<Element> found = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+		for (Element ancestor : ancestors) {
+			for (Element e : relative.select(ancestor)) {
+				// nested ancestors select same elements again
+				if (e != ancestor && found.add(e))
+					ret.add(e);
+			}
+		}
+		return ret;
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
+
+/**
+ * Base for {@link IHttpAuthProvider} implementations which obtain credential by POST request to the
+ * <code>remote/authUrl</code> with form parameters from <code>remote/authParams</code>. Credential is cached and
+ * obtained again <code>remote/authRefreshAhead</code> before it expires, or after it is invalidated.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public abstract class HttpAuthProviderBase implements IHttpAuthProvider {
+
+	protected static final String CFG_AUTH_URL = "authUrl";
+
+	protected static final String CFG_AUTH_PARAMS = "authParams";
+
+	protected static final String CFG_AUTH_REFRESH_AHEAD = "authRefreshAhead";
+
+	protected static final String CFG_AUTH_TTL = "authTtl";
+
+	protected ESLogger logger;
+
+	protected CloseableHttpClient httpclient;
+
+	protected String authUrl;
+
+	protected final Map<String, String> authParams = new LinkedHashMap<String, String>();
+
+	/**
+	 * Time before expiration when credential is obtained again [ms].
+	 */
+	protected long refreshAhead;
+
+	/**
+	 * Lifetime of credential used if remote system doesn't provide it [ms].
+	 */
+	protected long ttl;
+
+	private String credential;
+
+	private long refreshAt;
+
+	private long logins = 0;
+
+	@Override
+	public void init(ESLogger logger, Map<String, Object> config, String username, String password,
+			CloseableHttpClient httpclient) throws SettingsException {
+		this.logger = logger;
+		this.httpclient = httpclient;
+		authUrl = HttpRemoteSystemClientBase.getUrlFromConfig(config, CFG_AUTH_URL, true);
+		authParams.clear();
+		Object params = config.get(CFG_AUTH_PARAMS);
+		if (params != null) {
+			if (!(params instanceof Map))
+				throw new SettingsException("remote/" + CFG_AUTH_PARAMS + " must be an object");
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) params).entrySet()) {
+				String value = XContentMapValues.nodeStringValue(e.getValue(), "");
+				value = value.replace("{username}", username != null ? username : "");
+				value = value.replace("{pwd}", password != null ? password : "");
+				authParams.put(e.getKey().toString(), value);
+			}
+		}
+		refreshAhead = Utils.parseTimeValue(config, CFG_AUTH_REFRESH_AHEAD, 60, TimeUnit.SECONDS);
+		ttl = Utils.parseTimeValue(config, CFG_AUTH_TTL, 30, TimeUnit.MINUTES);
+		synchronized (this) {
+			credential = null;
+		}
+	}
+
+	@Override
+	public String authenticate(HttpRequestBase request) throws Exception {
+		String c = getCredential();
+		applyCredential(request, c);
+		return c;
+	}
+
+	/**
+	 * Get cached credential, or obtain new one if not available or if it expires soon.
+	 *
+	 * @return credential
+	 * @throws Exception if credential can't be obtained
+	 */
+	protected synchronized String getCredential() throws Exception {
+		long now = System.currentTimeMillis();
+		if (credential == null || now >= refreshAt) {
+			HttpClientContext context = HttpClientContext.create();
+			long[] lifetime = new long[] { ttl };
+			credential = login(context, lifetime);
+			logins++;
+			refreshAt = now + lifetime[0] - Math.min(refreshAhead, lifetime[0] / 2);
+			logger.debug("Remote system authentication credential obtained from {}, valid for {} ms", authUrl, lifetime[0]);
+		}
+		return credential;
+	}
+
+	@Override
+	public synchronized void invalidate(String credential) {
+		if (credential != null && credential.equals(this.credential)) {
+			logger.debug("Remote system authentication credential refused, going to obtain new one");
+			this.credential = null;
+		}
+	}
+
+	/**
+	 * @return number of credentials obtained from remote system
+	 */
+	public synchronized long getLogins() {
+		return logins;
+	}
+
+	/**
+	 * Perform authentication POST request to the <code>remote/authUrl</code>.
+	 *
+	 * @param context used for request
+	 * @return response content
+	 * @throws HttpCallException if remote system doesn't respond with HTTP 200
+	 * @throws Exception in case of unsuccessful call
+	 */
+	protected byte[] performAuthCall(HttpClientContext context) throws Exception {
+		HttpPost post = new HttpPost(authUrl);
+		List<NameValuePair> params = new ArrayList<NameValuePair>();
+		for (Map.Entry<String, String> e : authParams.entrySet()) {
+			params.add(new BasicNameValuePair(e.getKey(), e.getValue()));
+		}
+		post.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+		CloseableHttpResponse response = null;
+		try {
+			response = httpclient.execute(HttpRemoteSystemClientBase.getTargetHost(post), post, context);
+			byte[] content = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : null;
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode != HttpStatus.SC_OK) {
+				throw new HttpCallException(authUrl, statusCode, content != null ? new String(content, "UTF-8") : "");
+			}
+			return content;
+		} finally {
+			if (response != null)
+				response.close();
+			post.releaseConnection();
+		}
+	}
+
+	/**
+	 * Obtain new credential from remote system.
+	 *
+	 * @param context to be used for authentication call
+	 * @param lifetime one element array with lifetime of credential [ms], preset to <code>remote/authTtl</code>, set
+	 *          other value if remote system provides it
+	 * @return credential
+	 * @throws Exception if credential can't be obtained
+	 */
+	protected abstract String login(HttpClientContext context, long[] lifetime) throws Exception;
+
+	/**
+	 * Add credential into request.
+	 *
+	 * @param request to add credential into
+	 * @param credential to add
+	 */
+	protected abstract void applyCredential(HttpRequestBase request, String credential);
+
+}
@@ -0,0 +1,372 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.Cancellable;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpMethodType;
+import org.jboss.elasticsearch.river.remote.exception.RemoteSystemUnavailableException;
+
+/**
+ * Pipeline of HTTP calls performed by {@link HttpRemoteSystemClientBase}. Calls over all transports (<code>sync</code>
+ * with response in memory or processed from stream, conditional GET, and <code>async</code>) pass the same stages
+ * here, so they can't differ in behavior:
+ * <ol>
+ * <li>retry - call failed due transient problem is repeated as {@link RetryPolicy} allows, see
+ * {@link #performWithRetry(RetryPolicy, String, Callable, Future)}</li>
+ * <li>circuit breaker - call is not performed while {@link CircuitBreaker} of remote host is open</li>
+ * <li>balance - replica endpoint is selected by {@link EndpointBalancer} and url is rewritten to it, see
+ * {@link #startAttempt(String, Map, HttpMethodType)}</li>
+ * <li>hedge - request is registered so it can be aborted if it loses hedged call</li>
+ * <li>rate limit - request waits for {@link RateLimiter} of target host. <code>sync</code> transport waits in calling
+ * thread, <code>async</code> transport schedules start of the request so no thread is blocked.</li>
+ * </ol>
+ * Execution of the HTTP request itself is left to the client.
+ * <p>
+ * Thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpCallPipeline {
+
+	protected final HttpRemoteSystemClientBase client;
+
+	/**
+	 * Scheduler of <code>async</code> requests delayed by rate limiter, created when necessary. It only starts
+	 * non-blocking requests, so one thread is enough.
+	 */
+	private ScheduledExecutorService asyncStartScheduler;
+
+	/**
+	 * Create pipeline.
+	 *
+	 * @param client calls are performed for
+	 */
+	public HttpCallPipeline(HttpRemoteSystemClientBase client) {
+		this.client = client;
+	}
+
+	/**
+	 * Perform call to the remote system with retries if it fails due transient problem. Calls are not performed while
+	 * circuit breaker for remote host is open.
+	 *
+	 * @param policy of retries
+	 * @param url called, used to select circuit breaker
+	 * @param call to perform, typically one of <code>performHttpXXCall</code> methods
+	 * @param firstAttempt already started first attempt of the call allowed by circuit breaker, can be null
+	 * @return result of successful call
+	 * @throws RemoteSystemUnavailableException if circuit breaker for remote host is open
+	 * @throws Exception from last failed call
+	 */
+	public <T> T performWithRetry(RetryPolicy policy, String url, Callable<T> call, Future<T> firstAttempt)
+			throws Exception {
+		CircuitBreaker breaker = client.getCircuitBreaker(url);
+		int retry = 0;
+		while (true) {
+			T ret;
+			try {
+				if (retry == 0 && firstAttempt != null) {
+					// allowed by circuit breaker when started
+					ret = HttpRemoteSystemClientBase.waitForHttpCall(firstAttempt);
+				} else {
+					if (!breaker.allowRequest())
+						throw newRemoteSystemUnavailableException(url);
+					ret = call.call();
+				}
+			} catch (RemoteSystemUnavailableException e) {
+				throw e;
+			} catch (Exception e) {
+				if (retry == 0 && firstAttempt != null && client.isAuthRetryNeeded(e)) {
+					// async first attempt refused credential, repeat it immediately with new one
+					firstAttempt = null;
+					continue;
+				}
+				if (!RetryPolicy.isRemoteSystemFailure(e))
+					breaker.recordSuccess();
+				else
+					breaker.recordFailure();
+				if (!RetryPolicy.isRetryable(e) || retry >= policy.getMaxRetries())
+					throw e;
+				long wait = policy.getBackoffMillis(retry++);
+				client.retries.incrementAndGet();
+				client.myLogger.warn("Remote system call to {} failed due '{}', retry {} of {} in {} ms", url, e.getMessage(),
+						retry, policy.getMaxRetries(), wait);
+				Thread.sleep(wait);
+				continue;
+			}
+			breaker.recordSuccess();
+			return ret;
+		}
+	}
+
+	/**
+	 * Check that circuit breaker for remote host allows call, used before first attempt started out of
+	 * {@link #performWithRetry(RetryPolicy, String, Callable, Future)}.
+	 *
+	 * @param url called
+	 * @throws RemoteSystemUnavailableException if circuit breaker for remote host is open
+	 * @throws Exception if url is invalid
+	 */
+	public void checkCircuitBreaker(String url) throws Exception {
+		if (!client.getCircuitBreaker(url).allowRequest())
+			throw newRemoteSystemUnavailableException(url);
+	}
+
+	private RemoteSystemUnavailableException newRemoteSystemUnavailableException(String url) {
+		return new RemoteSystemUnavailableException("Remote system call to " + url
+				+ " not performed as remote host is unavailable (circuit breaker is open)");
+	}
+
+	/**
+	 * Start one attempt of HTTP call - select replica endpoint, prepare and authenticate request. Attempt must be
+	 * finished by {@link Attempt#finished(Exception)}.
+	 *
+	 * @param url to perform request for
+	 * @param headers to be used for request. Can be null.
+	 * @param methodType either GET(default) or POST http method type.
+	 * @return attempt
+	 * @throws Exception if request can't be prepared or authenticated
+	 */
+	public Attempt startAttempt(String url, Map<String, String> headers, HttpMethodType methodType) throws Exception {
+		EndpointBalancer.Endpoint endpoint = client.selectEndpoint(url);
+		long start = System.currentTimeMillis();
+		try {
+			String callUrl = endpoint != null ? EndpointBalancer.rewriteUrl(url, endpoint) : url;
+			HttpRequestBase method = client.prepareHttpRequest(callUrl, headers, methodType);
+			return new Attempt(callUrl, method, client.authenticateRequest(method), endpoint, start);
+		} catch (Exception e) {
+			client.endpointFinished(endpoint, start, RetryPolicy.isRemoteSystemFailure(e));
+			throw e;
+		}
+	}
+
+	/**
+	 * Register request of the attempt for hedging and start it once rate limiter of target host allows it, without
+	 * blocking of the calling thread. Used by <code>async</code> transport.
+	 *
+	 * @param attempt to start
+	 * @param execution starting the request
+	 */
+	public void startAsync(Attempt attempt, AsyncExecution execution) {
+		AsyncStart start = new AsyncStart(attempt, execution);
+		client.registerHedgedCall(start);
+		long wait = attempt.reserveRateLimit();
+		if (wait > 0) {
+			try {
+				start.setScheduled(getAsyncStartScheduler().schedule(start, wait, TimeUnit.MILLISECONDS));
+			} catch (Exception e) {
+				start.notStarted(e);
+			}
+		} else {
+			start.run();
+		}
+	}
+
+	protected synchronized ScheduledExecutorService getAsyncStartScheduler() {
+		if (asyncStartScheduler == null) {
+			// delayed requests are started also after close, so they fail on closed client instead of waiting forever
+			asyncStartScheduler = new ScheduledThreadPoolExecutor(1,
+					EsExecutors.daemonThreadFactory("remote_river_http_rate_limit"));
+		}
+		return asyncStartScheduler;
+	}
+
+	/**
+	 * Close pipeline. Requests delayed by rate limiter are still started, new scheduler is created if necessary.
+	 */
+	public synchronized void close() {
+		if (asyncStartScheduler != null) {
+			asyncStartScheduler.shutdown();
+			asyncStartScheduler = null;
+		}
+	}
+
+	/**
+	 * One attempt of HTTP call, see {@link HttpCallPipeline#startAttempt(String, Map, HttpMethodType)}.
+	 */
+	public class Attempt {
+
+		/**
+		 * Url of request, rewritten to selected replica endpoint.
+		 */
+		public final String url;
+
+		public final HttpRequestBase method;
+
+		public final HttpHost targetHost;
+
+		protected final String credential;
+
+		protected final EndpointBalancer.Endpoint endpoint;
+
+		protected long start;
+
+		private boolean finished = false;
+
+		protected Attempt(String url, HttpRequestBase method, String credential, EndpointBalancer.Endpoint endpoint,
+				long start) {
+			this.url = url;
+			this.method = method;
+			this.targetHost = HttpRemoteSystemClientBase.getTargetHost(method);
+			this.credential = credential;
+			this.endpoint = endpoint;
+			this.start = start;
+		}
+
+		/**
+		 * Register request for hedging and wait for rate limiter of target host in calling thread. Used by
+		 * <code>sync</code> transport.
+		 *
+		 * @throws InterruptedException if waiting thread is interrupted
+		 */
+		public void awaitStart() throws InterruptedException {
+			client.registerHedgedCall(new Cancellable() {
+				@Override
+				public boolean cancel() {
+					method.abort();
+					return true;
+				}
+			});
+			long wait = client.getRateLimiter(targetHost).acquire();
+			rateLimited(wait);
+		}
+
+		protected long reserveRateLimit() {
+			long wait = client.getRateLimiter(targetHost).reserve();
+			rateLimited(wait);
+			return wait;
+		}
+
+		private void rateLimited(long wait) {
+			if (wait > 0) {
+				client.rateLimitWaitMillis.addAndGet(wait);
+				if (client.myLogger.isDebugEnabled())
+					client.myLogger.debug("HTTP call to {} delayed by rate limiter for {} ms", targetHost, wait);
+			}
+			// latency of endpoint doesn't contain time waited for rate limiter
+			start = System.currentTimeMillis() + Math.max(0, wait);
+		}
+
+		/**
+		 * Finish attempt - report result to replica endpoint and invalidate refused credential. Next calls are ignored.
+		 *
+		 * @param e attempt failed with, null if successful or cancelled
+		 */
+		public void finished(Exception e) {
+			synchronized (this) {
+				if (finished)
+					return;
+				finished = true;
+			}
+			if (e != null)
+				client.authFailed(e, credential);
+			client.endpointFinished(endpoint, start,
+					e != null && RetryPolicy.isRemoteSystemFailure(e) && !method.isAborted());
+		}
+	}
+
+	/**
+	 * Start of <code>async</code> request, see {@link HttpCallPipeline#startAsync(Attempt, AsyncExecution)}.
+	 */
+	public static interface AsyncExecution {
+
+		/**
+		 * Start HTTP request. Called once rate limiter allows it, from scheduler thread if delayed.
+		 *
+		 * @return future of started request, used to cancel it
+		 * @throws Exception if request can't be started
+		 */
+		Future<?> start() throws Exception;
+
+		/**
+		 * Request was not started as it failed or was cancelled before start. Attempt is finished already.
+		 *
+		 * @param e failure, null if cancelled
+		 */
+		void notStarted(Exception e);
+	}
+
+	private static class AsyncStart implements Runnable, Cancellable {
+
+		private final Attempt attempt;
+		private final AsyncExecution execution;
+
+		private Future<?> scheduled;
+		private Future<?> request;
+		private boolean done = false;
+		private boolean cancelled = false;
+
+		AsyncStart(Attempt attempt, AsyncExecution execution) {
+			this.attempt = attempt;
+			this.execution = execution;
+		}
+
+		synchronized void setScheduled(Future<?> scheduled) {
+			this.scheduled = scheduled;
+			if (done)
+				scheduled.cancel(false);
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (done)
+					return;
+				done = true;
+			}
+			Future<?> r = null;
+			try {
+				r = execution.start();
+			} catch (Exception e) {
+				attempt.finished(e);
+				execution.notStarted(e);
+				return;
+			}
+			boolean cancel = false;
+			synchronized (this) {
+				request = r;
+				cancel = cancelled;
+			}
+			if (cancel && r != null)
+				r.cancel(true);
+		}
+
+		void notStarted(Exception e) {
+			synchronized (this) {
+				if (done)
+					return;
+				done = true;
+			}
+			attempt.finished(e);
+			execution.notStarted(e);
+		}
+
+		@Override
+		public boolean cancel() {
+			Future<?> r = null;
+			synchronized (this) {
+				cancelled = true;
+				if (scheduled != null)
+					scheduled.cancel(false);
+				r = request;
+			}
+			if (r != null)
+				return r.cancel(true);
+			notStarted(null);
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * HTTP interceptor used by {@link HttpRemoteSystemClientBase} for both <code>sync</code> and <code>async</code>
+ * transport. Advertises <code>gzip</code> and <code>deflate</code> content encodings in requests, decompresses
+ * response content while it is read, and counts bytes received from the remote system and bytes after decompression.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpContentEncodingInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+	protected static final String ACCEPT_ENCODING_VALUE = "gzip,deflate";
+
+	protected final boolean compressionEnabled;
+
+	protected final AtomicLong bytesReceived;
+
+	protected final AtomicLong bytesDecoded;
+
+	/**
+	 * @param compressionEnabled if true then compressed response content is requested from remote system
+	 * @param bytesReceived counter of response content bytes as received from remote system
+	 * @param bytesDecoded counter of response content bytes after decompression
+	 */
+	public HttpContentEncodingInterceptor(boolean compressionEnabled, AtomicLong bytesReceived, AtomicLong bytesDecoded) {
+		this.compressionEnabled = compressionEnabled;
+		this.bytesReceived = bytesReceived;
+		this.bytesDecoded = bytesDecoded;
+	}
+
+	@Override
+	public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+		if (compressionEnabled && !request.containsHeader("Accept-Encoding")) {
+			request.addHeader("Accept-Encoding", ACCEPT_ENCODING_VALUE);
+		}
+	}
+
+	@Override
+	public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+		HttpEntity entity = response.getEntity();
+		if (entity == null)
+			return;
+		entity = new CountingEntity(entity, bytesReceived);
+		Header ceh = entity.getContentEncoding();
+		if (ceh != null) {
+			boolean decoded = false;
+			for (HeaderElement codec : ceh.getElements()) {
+				String codecName = codec.getName().toLowerCase();
+				if ("gzip".equals(codecName) || "x-gzip".equals(codecName)) {
+					entity = new GzipDecompressingEntity(entity);
+					decoded = true;
+				} else if ("deflate".equals(codecName)) {
+					entity = new DeflateDecompressingEntity(entity);
+					decoded = true;
+				} else if (!"identity".equals(codecName)) {
+					throw new HttpException("Unsupported Content-Encoding: " + codec.getName());
+				}
+			}
+			if (decoded) {
+				response.removeHeaders("Content-Length");
+				response.removeHeaders("Content-Encoding");
+				response.removeHeaders("Content-MD5");
+			}
+		}
+		response.setEntity(new CountingEntity(entity, bytesDecoded));
+	}
+
+	/**
+	 * Entity wrapper counting bytes read from its content.
+	 */
+	protected static class CountingEntity extends HttpEntityWrapper {
+
+		private final AtomicLong counter;
+
+		public CountingEntity(HttpEntity wrappedEntity, AtomicLong counter) {
+			super(wrappedEntity);
+			this.counter = counter;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			InputStream is = super.getContent();
+			return is != null ? new CountingInputStream(is, counter) : null;
+		}
+
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException {
+			InputStream is = getContent();
+			if (is == null)
+				return;
+			try {
+				byte[] buffer = new byte[4096];
+				int l;
+				while ((l = is.read(buffer)) != -1) {
+					outstream.write(buffer, 0, l);
+				}
+			} finally {
+				is.close();
+			}
+		}
+	}
+
+	/**
+	 * Input stream counting bytes read from it.
+	 */
+	protected static class CountingInputStream extends FilterInputStream {
+
+		private final AtomicLong counter;
+
+		protected CountingInputStream(InputStream in, AtomicLong counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1)
+				counter.incrementAndGet();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int l = super.read(b, off, len);
+			if (l > 0)
+				counter.addAndGet(l);
+			return l;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long l = super.skip(n);
+			if (l > 0)
+				counter.addAndGet(l);
+			return l;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+}
@@ -5,16 +5,40 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.Consts;
 import org.apache.http.Header;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.HttpStatus;
+import org.apache.http.auth.AuthScheme;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
@@ -26,8 +50,12 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.config.ConnectionConfig;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
@@ -35,17 +63,31 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.Futures;
+import org.elasticsearch.common.util.concurrent.SettableFuture;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.jboss.elasticsearch.river.remote.exception.RemoteSystemUnavailableException;
 
 /**
  * Base class used for HTTP based remote clients. Solves authentication etc.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
-public abstract class HttpRemoteSystemClientBase implements IRemoteSystemClient {
+public abstract class HttpRemoteSystemClientBase implements IRemoteSystemClient, IRemoteSystemClientStats,
+		IRemoteSystemClientAvailability, IRemoteSystemClientCloseable {
 
 	protected static final String CFG_PASSWORD = "pwd";
 
@@ -57,12 +99,184 @@ public abstract class HttpRemoteSystemClientBase implements IRemoteSystemClient
 
 	protected static final String CFG_EMBED_URL_API_KEY_USERNAME = "embedUrlApiKeyUsername";
 
+	protected static final String CFG_HTTP_TRANSPORT = "httpTransport";
+
+	protected static final String CFG_HTTP_MAX_CONNECTIONS = "httpMaxConnections";
+
+	protected static final String CFG_HTTP_SHARED_POOL = "httpSharedPool";
+
+	protected static final String CFG_HTTP_CONDITIONAL_GET = "httpConditionalGet";
+
+	protected static final String CFG_HTTP_CONDITIONAL_GET_MAX_ENTRIES = "httpConditionalGetMaxEntries";
+
+	protected static final String CFG_HTTP_CONDITIONAL_GET_MAX_CONTENT_SIZE = "httpConditionalGetMaxContentSize";
+
+	protected static final String CFG_HTTP_COMPRESSION = "httpCompression";
+
+	protected static final String CFG_HTTP_RATE_LIMIT = "httpRateLimit";
+
+	protected static final String CFG_HTTP_RATE_LIMIT_BURST = "httpRateLimitBurst";
+
+	protected static final String CFG_HTTP_RETRY_LIST = "httpRetryList";
+
+	protected static final String CFG_HTTP_RETRY_DETAIL = "httpRetryDetail";
+
+	protected static final String CFG_HTTP_RETRY_BACKOFF = "httpRetryBackoff";
+
+	protected static final String CFG_HTTP_RETRY_BACKOFF_MAX = "httpRetryBackoffMax";
+
+	protected static final String CFG_CIRCUIT_BREAKER_THRESHOLD = "circuitBreakerThreshold";
+
+	protected static final String CFG_CIRCUIT_BREAKER_OPEN_TIME = "circuitBreakerOpenTime";
+
+	protected static final String CFG_AUTH_TYPE = "authType";
+
+	protected static final String AUTH_TYPE_BASIC = "basic";
+
+	protected static final String AUTH_TYPE_BEARER = "bearer";
+
+	protected static final String AUTH_TYPE_SESSION = "session";
+
+	protected static final String CFG_URL_REPLICAS = "urlReplicas";
+
+	protected static final String CFG_LOAD_BALANCING = "loadBalancing";
+
+	protected static final String CFG_REPLICA_FAILURE_THRESHOLD = "replicaFailureThreshold";
+
+	protected static final String CFG_REPLICA_EJECT_TIME = "replicaEjectTime";
+
+	protected static final String CFG_HTTP_HEDGE_DETAIL_PERCENTILE = "httpHedgeDetailPercentile";
+
+	protected static final String CFG_HTTP_HEDGE_BUDGET = "httpHedgeBudget";
+
+	protected static final String CFG_HTTP_HEDGE_MIN_DELAY = "httpHedgeMinDelay";
+
+	protected static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+
+	protected static final String HTTP_TRANSPORT_SYNC = "sync";
+
+	protected static final String HTTP_TRANSPORT_ASYNC = "async";
+
 	protected ESLogger myLogger = null;
 
 	protected CloseableHttpClient httpclient;
 
+	/**
+	 * Node-wide connection pool used by {@link #httpclient} if <code>httpSharedPool</code> is configured, null otherwise.
+	 */
+	protected SharedHttpConnectionPool sharedConnectionPool;
+
+	/**
+	 * Non blocking HTTP client used if <code>async</code> transport is configured, null otherwise.
+	 */
+	protected CloseableHttpAsyncClient httpAsyncClient;
+
+	/**
+	 * Cache of validators used for conditional GET requests if enabled, null otherwise.
+	 */
+	protected HttpValidatorCache validatorCache;
+
 	protected boolean isAuthConfigured = false;
 
+	/**
+	 * Auth caches with preemptive HTTP Basic authentication for remote hosts, reused by all calls if
+	 * {@link #isAuthConfigured}.
+	 */
+	protected final Map<HttpHost, AuthCache> authCaches = new ConcurrentHashMap<HttpHost, AuthCache>();
+
+	/**
+	 * Provider of other than HTTP Basic authentication if configured over <code>authType</code>, null otherwise.
+	 */
+	protected IHttpAuthProvider authProvider;
+
+	/**
+	 * Hosts credential from {@link #authProvider} is sent to - host of configured url and hosts of
+	 * <code>urlReplicas</code>. Normalized by {@link #getAuthHostKey(HttpHost)}.
+	 */
+	protected Set<String> authHosts = new HashSet<String>();
+
+	/**
+	 * Counter of calls repeated due to refused authentication credential.
+	 */
+	protected final AtomicLong authRetries = new AtomicLong();
+
+	/**
+	 * Counter of response content bytes as received from remote system (compressed if compression is used).
+	 */
+	protected final AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * Counter of response content bytes after decompression.
+	 */
+	protected final AtomicLong bytesDecoded = new AtomicLong();
+
+	/**
+	 * Maximal rate of HTTP calls per second for one remote host, 0 means no limit.
+	 */
+	protected double rateLimit = 0;
+
+	protected int rateLimitBurst = 1;
+
+	/**
+	 * Rate limiters for remote hosts, shared by all threads using this client.
+	 */
+	protected final Map<HttpHost, RateLimiter> rateLimiters = new ConcurrentHashMap<HttpHost, RateLimiter>();
+
+	/**
+	 * Counter of time spent by waiting for rate limiters.
+	 */
+	protected final AtomicLong rateLimitWaitMillis = new AtomicLong();
+
+	/**
+	 * Retry policy for calls listing documents.
+	 */
+	protected RetryPolicy listCallRetryPolicy = RetryPolicy.NONE;
+
+	/**
+	 * Retry policy for calls getting document details.
+	 */
+	protected RetryPolicy detailCallRetryPolicy = RetryPolicy.NONE;
+
+	/**
+	 * Counter of retried calls.
+	 */
+	protected final AtomicLong retries = new AtomicLong();
+
+	protected int circuitBreakerThreshold = 0;
+
+	protected long circuitBreakerOpenTime = 60 * 1000;
+
+	/**
+	 * Circuit breakers for remote hosts, shared by all threads using this client.
+	 */
+	protected final Map<HttpHost, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<HttpHost, CircuitBreaker>();
+
+	/**
+	 * Pipeline all HTTP calls pass - retry, circuit breaker, replica balancing, hedging and rate limiting.
+	 */
+	protected final HttpCallPipeline callPipeline = new HttpCallPipeline(this);
+
+	/**
+	 * Balancer of calls between replicas of remote system if <code>urlReplicas</code> are configured, null otherwise.
+	 */
+	protected EndpointBalancer endpointBalancer;
+
+	/**
+	 * Policy of hedged document detail calls if <code>httpHedgeDetailPercentile</code> is configured, null otherwise.
+	 */
+	protected RequestHedger requestHedger;
+
+	/**
+	 * Executor performing hedged calls, created together with {@link #requestHedger}. Number of threads is limited to
+	 * twice of <code>httpMaxConnections</code>, calls over it wait in queue. Shut down by {@link #close()} and next init.
+	 */
+	protected ExecutorService hedgeExecutor;
+
+	/**
+	 * Handle of hedged call performed by the current thread, see {@link #registerHedgedCall(Cancellable)}.
+	 */
+	private static final ThreadLocal<HedgedCallHandle> hedgedCallHandle = new ThreadLocal<HedgedCallHandle>();
+
 	protected IDocumentIndexStructureBuilder indexStructureBuilder;
 
 	/**
@@ -73,42 +287,178 @@ public abstract class HttpRemoteSystemClientBase implements IRemoteSystemClient
 	 * @param pwdLoader to be used (can be null)
 	 * @param url base url to be used for authentication config - host part is used
 	 * @return username for authentication if any configured
+	 * @see #initHttpClient(ESLogger, Map, IPwdLoader, String, IESIntegration)
 	 */
 	protected String initHttpClient(ESLogger logger, Map<String, Object> config, IPwdLoader pwdLoader, String url) {
+		return initHttpClient(logger, config, pwdLoader, url, null);
+	}
+
+	/**
+	 * DO NOT FORGET to call this from {@link #init(Map, boolean, IPwdLoader)} in your subclass!!!!
+	 * 
+	 * @param logger to beused
+	 * @param config to be read
+	 * @param pwdLoader to be used (can be null)
+	 * @param url base url to be used for authentication config - host part is used
+	 * @param esIntegration used to persist validators for conditional GET requests (can be null, conditional GET is
+	 *          not available then)
+	 * @return username for authentication if any configured
+	 */
+	protected String initHttpClient(ESLogger logger, Map<String, Object> config, IPwdLoader pwdLoader, String url,
+			IESIntegration esIntegration) {
 		this.myLogger = logger;
 
-		PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
-		connManager.setDefaultMaxPerRoute(20);
-		connManager.setMaxTotal(20);
+		validatorCache = null;
+		if (esIntegration != null && XContentMapValues.nodeBooleanValue(config.get(CFG_HTTP_CONDITIONAL_GET), false)) {
+			int maxEntries = XContentMapValues.nodeIntegerValue(config.get(CFG_HTTP_CONDITIONAL_GET_MAX_ENTRIES),
+					HttpValidatorCache.DEFAULT_MAX_ENTRIES);
+			if (maxEntries < 1) {
+				throw new SettingsException("remote/" + CFG_HTTP_CONDITIONAL_GET_MAX_ENTRIES + " must be 1 or more");
+			}
+			long maxContentSize = HttpValidatorCache.DEFAULT_MAX_CONTENT_SIZE;
+			String maxContentSizeStr = Utils.trimToNull(XContentMapValues.nodeStringValue(
+					config.get(CFG_HTTP_CONDITIONAL_GET_MAX_CONTENT_SIZE), null));
+			if (maxContentSizeStr != null) {
+				try {
+					maxContentSize = ByteSizeValue.parseBytesSizeValue(maxContentSizeStr).bytes();
+				} catch (Exception e) {
+					throw new SettingsException("remote/" + CFG_HTTP_CONDITIONAL_GET_MAX_CONTENT_SIZE + " is invalid: "
+							+ e.getMessage());
+				}
+			}
+			validatorCache = new HttpValidatorCache(logger, esIntegration, maxEntries, maxContentSize);
+		}
+
+		rateLimit = XContentMapValues.nodeDoubleValue(config.get(CFG_HTTP_RATE_LIMIT), 0);
+		rateLimitBurst = XContentMapValues.nodeIntegerValue(config.get(CFG_HTTP_RATE_LIMIT_BURST), 1);
+		if (rateLimit < 0 || rateLimitBurst < 1) {
+			throw new SettingsException("remote/" + CFG_HTTP_RATE_LIMIT + " can't be negative and remote/"
+					+ CFG_HTTP_RATE_LIMIT_BURST + " must be 1 or more");
+		}
+		rateLimiters.clear();
+
+		long retryBackoff = Utils.parseTimeValue(config, CFG_HTTP_RETRY_BACKOFF, 1, TimeUnit.SECONDS);
+		long retryBackoffMax = Utils.parseTimeValue(config, CFG_HTTP_RETRY_BACKOFF_MAX, 30, TimeUnit.SECONDS);
+		listCallRetryPolicy = new RetryPolicy(XContentMapValues.nodeIntegerValue(config.get(CFG_HTTP_RETRY_LIST), 0),
+				retryBackoff, retryBackoffMax);
+		detailCallRetryPolicy = new RetryPolicy(XContentMapValues.nodeIntegerValue(config.get(CFG_HTTP_RETRY_DETAIL), 0),
+				retryBackoff, retryBackoffMax);
+		circuitBreakerThreshold = XContentMapValues.nodeIntegerValue(config.get(CFG_CIRCUIT_BREAKER_THRESHOLD), 0);
+		circuitBreakerOpenTime = Utils.parseTimeValue(config, CFG_CIRCUIT_BREAKER_OPEN_TIME, 60, TimeUnit.SECONDS);
+		circuitBreakers.clear();
+		endpointBalancer = createEndpointBalancer(config, url);
+
+		int hedgePercentile = XContentMapValues.nodeIntegerValue(config.get(CFG_HTTP_HEDGE_DETAIL_PERCENTILE), 0);
+		if (hedgePercentile < 0 || hedgePercentile > 99) {
+			throw new SettingsException("remote/" + CFG_HTTP_HEDGE_DETAIL_PERCENTILE + " must be between 0 and 99");
+		}
+		if (hedgePercentile > 0) {
+			double hedgeBudget = XContentMapValues.nodeDoubleValue(config.get(CFG_HTTP_HEDGE_BUDGET), 10);
+			if (hedgeBudget <= 0 || hedgeBudget > 100) {
+				throw new SettingsException("remote/" + CFG_HTTP_HEDGE_BUDGET + " must be between 0 and 100");
+			}
+			requestHedger = new RequestHedger(hedgePercentile, hedgeBudget / 100, Utils.parseTimeValue(config,
+					CFG_HTTP_HEDGE_MIN_DELAY, 20, TimeUnit.MILLISECONDS));
+		} else {
+			requestHedger = null;
+		}
+
+		int maxConnections = XContentMapValues.nodeIntegerValue(config.get(CFG_HTTP_MAX_CONNECTIONS), 20);
+		// executor from previous init is replaced
+		shutdownHedgeExecutor();
+		if (requestHedger != null) {
+			hedgeExecutor = EsExecutors.newScaling(0, 2 * Math.max(1, maxConnections), 60, TimeUnit.SECONDS,
+					EsExecutors.daemonThreadFactory("remote_river_http_hedge"));
+		}
+		boolean asyncTransport = isAsyncTransportConfigured(config);
 
 		ConnectionConfig connectionConfig = ConnectionConfig.custom().setCharset(Consts.UTF_8).build();
-		connManager.setDefaultConnectionConfig(connectionConfig);
+		HttpClientConnectionManager connManager = null;
+		if (XContentMapValues.nodeBooleanValue(config.get(CFG_HTTP_SHARED_POOL), false)) {
+			sharedConnectionPool = SharedHttpConnectionPool.getInstance();
+			connManager = sharedConnectionPool.getConnectionManager();
+		} else {
+			sharedConnectionPool = null;
+			PoolingHttpClientConnectionManager poolingConnManager = new PoolingHttpClientConnectionManager();
+			poolingConnManager.setDefaultMaxPerRoute(maxConnections);
+			poolingConnManager.setMaxTotal(maxConnections);
+			poolingConnManager.setDefaultConnectionConfig(connectionConfig);
+			connManager = poolingConnManager;
+		}
+
+		HttpContentEncodingInterceptor contentEncodingInterceptor = new HttpContentEncodingInterceptor(
+				XContentMapValues.nodeBooleanValue(config.get(CFG_HTTP_COMPRESSION), true), bytesReceived, bytesDecoded);
 
-		HttpClientBuilder clientBuilder = HttpClients.custom().setConnectionManager(connManager);
+		HttpClientBuilder clientBuilder = HttpClients.custom().setConnectionManager(connManager)
+				.disableContentCompression().addInterceptorLast((HttpRequestInterceptor) contentEncodingInterceptor)
+				.addInterceptorLast((HttpResponseInterceptor) contentEncodingInterceptor);
+		if (sharedConnectionPool != null)
+			clientBuilder.setKeepAliveStrategy(sharedConnectionPool.getKeepAliveStrategy());
+		HttpAsyncClientBuilder asyncClientBuilder = null;
 
 		Integer timeout = new Long(Utils.parseTimeValue(config, CFG_TIMEOUT, 5, TimeUnit.SECONDS)).intValue();
 
+		if (asyncTransport) {
+			try {
+				IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setConnectTimeout(timeout).setSoTimeout(timeout)
+						.build();
+				PoolingNHttpClientConnectionManager asyncConnManager = new PoolingNHttpClientConnectionManager(
+						new DefaultConnectingIOReactor(ioReactorConfig, EsExecutors.daemonThreadFactory("remote_river_http_io")));
+				asyncConnManager.setDefaultMaxPerRoute(maxConnections);
+				asyncConnManager.setMaxTotal(maxConnections);
+				asyncConnManager.setDefaultConnectionConfig(connectionConfig);
+				asyncClientBuilder = HttpAsyncClients.custom().setConnectionManager(asyncConnManager)
+						.setThreadFactory(EsExecutors.daemonThreadFactory("remote_river_http_async"))
+						.addInterceptorLast((HttpRequestInterceptor) contentEncodingInterceptor)
+						.addInterceptorLast((HttpResponseInterceptor) contentEncodingInterceptor);
+			} catch (IOReactorException e) {
+				throw new IllegalStateException("Unable to start I/O reactor for async HTTP transport: " + e.getMessage(), e);
+			}
+		}
+
 		if (timeout != null) {
 			RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(timeout).setConnectTimeout(timeout).build();
 			clientBuilder.setDefaultRequestConfig(requestConfig);
+			if (asyncClientBuilder != null)
+				asyncClientBuilder.setDefaultRequestConfig(requestConfig);
+		}
+
+		authCaches.clear();
+		isAuthConfigured = false;
+		authProvider = createAuthProvider(config);
+		authHosts = prepareAuthHosts(url, endpointBalancer);
+		if (authProvider instanceof SessionCookieAuthProvider) {
+			// session cookies are sent by provider only
+			clientBuilder.disableCookieManagement();
+			if (asyncClientBuilder != null)
+				asyncClientBuilder.disableCookieManagement();
 		}
 
 		String remoteUsername = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_USERNAME), null));
 		String remotePassword = XContentMapValues.nodeStringValue(config.get(CFG_PASSWORD), null);
-		HashMap <String,String> dan;
 		if (remoteUsername != null) {
 			if (remotePassword == null && pwdLoader != null) {
 				remotePassword = (pwdLoader.loadKey(remoteUsername)).get("pwd");
 
 			}
-			if (remotePassword != null) {
+			if (authProvider != null) {
+				// credentials are used by provider
+			} else if (remotePassword != null) {
 				try {
 					URL urlParsed = new URL(url);
 					String host = urlParsed.getHost();
 					CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-					credentialsProvider.setCredentials(new AuthScope(host, AuthScope.ANY_PORT), new UsernamePasswordCredentials(
-							remoteUsername, remotePassword));
+					UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(remoteUsername, remotePassword);
+					credentialsProvider.setCredentials(new AuthScope(host, AuthScope.ANY_PORT), credentials);
+					if (endpointBalancer != null) {
+						for (EndpointBalancer.Endpoint endpoint : endpointBalancer.getEndpoints()) {
+							credentialsProvider.setCredentials(new AuthScope(endpoint.getHost().getHostName(), AuthScope.ANY_PORT),
+									credentials);
+						}
+					}
 					clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+					if (asyncClientBuilder != null)
+						asyncClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
 					isAuthConfigured = true;
 				} catch (MalformedURLException e) {
 					// this should never happen due validation before
@@ -120,10 +470,166 @@ public abstract class HttpRemoteSystemClientBase implements IRemoteSystemClient
 		} else {
 			remoteUsername = null;
 		}
+		// clients from previous init are replaced
+		closeHttpClients();
 		httpclient = clientBuilder.build();
+		if (asyncClientBuilder != null) {
+			httpAsyncClient = asyncClientBuilder.build();
+			httpAsyncClient.start();
+		}
+		if (authProvider != null) {
+			authProvider.init(logger, config, remoteUsername, remotePassword, httpclient);
+		}
 		return remoteUsername;
 	}
 
+	/**
+	 * Close HTTP clients, so their connections and threads (I/O reactor of {@link #httpAsyncClient}) are released.
+	 */
+	protected void closeHttpClients() {
+		CloseableHttpClient c = httpclient;
+		httpclient = null;
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				if (myLogger != null)
+					myLogger.warn("HTTP client close failed: {}", e.getMessage());
+			}
+		}
+		CloseableHttpAsyncClient ac = httpAsyncClient;
+		httpAsyncClient = null;
+		if (ac != null) {
+			try {
+				ac.close();
+			} catch (IOException e) {
+				if (myLogger != null)
+					myLogger.warn("Async HTTP client close failed: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Shut down {@link #hedgeExecutor}, running hedged calls are interrupted.
+	 */
+	protected void shutdownHedgeExecutor() {
+		ExecutorService e = hedgeExecutor;
+		hedgeExecutor = null;
+		if (e != null)
+			e.shutdownNow();
+	}
+
+	@Override
+	public void close() {
+		shutdownHedgeExecutor();
+		callPipeline.close();
+		closeHttpClients();
+	}
+
+	/**
+	 * Create authentication provider based on <code>authType</code> configuration.
+	 * 
+	 * @param config to read from
+	 * @return provider or null if HTTP Basic authentication is used
+	 * @throws SettingsException for unsupported value
+	 */
+	protected static IHttpAuthProvider createAuthProvider(Map<String, Object> config) throws SettingsException {
+		String authType = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_AUTH_TYPE), null));
+		if (authType == null || AUTH_TYPE_BASIC.equalsIgnoreCase(authType))
+			return null;
+		if (AUTH_TYPE_BEARER.equalsIgnoreCase(authType))
+			return new BearerTokenAuthProvider();
+		if (AUTH_TYPE_SESSION.equalsIgnoreCase(authType))
+			return new SessionCookieAuthProvider();
+		try {
+			return (IHttpAuthProvider) Class.forName(authType).newInstance();
+		} catch (Exception e) {
+			throw new SettingsException("remote/" + CFG_AUTH_TYPE + " value '" + authType
+					+ "' is not supported, use 'basic', 'bearer', 'session' or name of class implementing "
+					+ IHttpAuthProvider.class.getName() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Create balancer of calls between remote system replicas from configuration.
+	 * 
+	 * @param config to read from
+	 * @param url base url of remote system, its host is primary one and calls to it are balanced
+	 * @return balancer or null if no replicas are configured
+	 * @throws SettingsException for invalid configuration
+	 */
+	protected static EndpointBalancer createEndpointBalancer(Map<String, Object> config, String url)
+			throws SettingsException {
+		List<String> replicas = null;
+		Object value = config.get(CFG_URL_REPLICAS);
+		if (value instanceof List) {
+			replicas = new ArrayList<String>();
+			for (Object o : (List<?>) value) {
+				String r = Utils.trimToNull(XContentMapValues.nodeStringValue(o, null));
+				if (r != null)
+					replicas.add(r);
+			}
+		} else {
+			replicas = Utils.parseCsvString(XContentMapValues.nodeStringValue(value, null));
+		}
+		if (replicas == null || replicas.isEmpty() || url == null)
+			return null;
+
+		String lb = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_LOAD_BALANCING), null));
+		EndpointBalancer.Strategy strategy = EndpointBalancer.Strategy.ROUND_ROBIN;
+		if (lb != null) {
+			strategy = EndpointBalancer.Strategy.parse(lb);
+			if (strategy == null)
+				throw new SettingsException("remote/" + CFG_LOAD_BALANCING + " value '" + lb
+						+ "' is not supported, use 'round_robin' or 'least_outstanding'");
+		}
+
+		List<HttpHost> hosts = new ArrayList<HttpHost>();
+		try {
+			// url may contain placeholders not allowed in URI
+			URL urlParsed = new URL(url);
+			hosts.add(new HttpHost(urlParsed.getHost(), urlParsed.getPort(), urlParsed.getProtocol()));
+			for (String r : replicas) {
+				URI uri = new URI(r);
+				if (uri.getHost() == null || uri.getScheme() == null)
+					throw new SettingsException("remote/" + CFG_URL_REPLICAS + " contains invalid URL " + r);
+				hosts.add(getTargetHost(uri));
+			}
+		} catch (URISyntaxException e) {
+			throw new SettingsException("remote/" + CFG_URL_REPLICAS + " contains malformed URL " + e.getMessage());
+		} catch (MalformedURLException e) {
+			// this should never happen due validation before
+			throw new SettingsException("URL is malformed " + e.getMessage());
+		}
+		return new EndpointBalancer(hosts, strategy, XContentMapValues.nodeIntegerValue(
+				config.get(CFG_REPLICA_FAILURE_THRESHOLD), 3), Utils.parseTimeValue(config, CFG_REPLICA_EJECT_TIME, 30,
+				TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Read HTTP transport type from configuration.
+	 * 
+	 * @param config to read from
+	 * @return true if <code>async</code> transport is configured, false for default <code>sync</code> transport
+	 * @throws SettingsException for unsupported value
+	 */
+	protected static boolean isAsyncTransportConfigured(Map<String, Object> config) throws SettingsException {
+		String transport = Utils.trimToNull(XContentMapValues.nodeStringValue(config.get(CFG_HTTP_TRANSPORT), null));
+		if (transport == null || HTTP_TRANSPORT_SYNC.equalsIgnoreCase(transport))
+			return false;
+		if (HTTP_TRANSPORT_ASYNC.equalsIgnoreCase(transport))
+			return true;
+		throw new SettingsException("remote/" + CFG_HTTP_TRANSPORT + " value '" + transport + "' is not supported, use '"
+				+ HTTP_TRANSPORT_SYNC + "' or '" + HTTP_TRANSPORT_ASYNC + "'");
+	}
+
+	/**
+	 * @return true if non blocking <code>async</code> HTTP transport is used by this client
+	 */
+	public boolean isAsyncTransportEnabled() {
+		return httpAsyncClient != null;
+	}
+
 	/**
 	 * Get url from configuration and validate it for format, and for presence.
 	 * 
@@ -182,103 +688,967 @@ public abstract class HttpRemoteSystemClientBase implements IRemoteSystemClient
     }
 	
 	/**
-     * This method performs a HTTP request with the defined GET or POST method. Using GET as default if not defined.
-     * @param url to perform GET request for
-     * @param headers to be used for request. Can be null.
-     * @param method either GET(default) or POST http method type.
-     * @return response from server if successful
-     * @throws HttpCallException in case of failed http call
-     * @throws Exception in case of unsuccessful call
-     */
-    protected HttpResponseContent performHttpCall(String url, Map<String, String> headers, HttpMethodType methodType) 
-           throws Exception, HttpCallException {
-        
-        myLogger.debug("Going to perform remote system HTTP request to the the {}", url);
-        
-        HttpRequestBase method = null;
-        URIBuilder builder = null;
-        if ( methodType!=null && methodType.compareTo(HttpMethodType.POST)==0 ) {
-            
-            // For POST method we need to migrate URL parameters to POST params.
-            builder = new URIBuilder(url);
-            String urlWithoutParams = url.split("\\?")[0];
-            HttpPost postMethod = new HttpPost(urlWithoutParams);
-            postMethod.setEntity(new UrlEncodedFormEntity(builder.getQueryParams()));
-            method = postMethod;
-            
-        } else {
-            
-            builder = new URIBuilder(url);
-            method = new HttpGet(builder.build());
-            
-        }
-        
-        if (headers != null) {
-            for (String headerName : headers.keySet())
-                method.addHeader(headerName, headers.get(headerName));
-        }
-        CloseableHttpResponse response = null;
-        try {
-            HttpHost targetHost = new HttpHost(builder.getHost(), builder.getPort(), builder.getScheme());
-     
-            HttpClientContext localcontext = HttpClientContext.create();
-            if (isAuthConfigured) {
-                AuthCache authCache = new BasicAuthCache();
-                BasicScheme basicAuth = new BasicScheme();
-                authCache.put(targetHost, basicAuth);
-                localcontext.setAuthCache(authCache);
-            }
-     
-            response = httpclient.execute(targetHost, method, localcontext);
-            int statusCode = response.getStatusLine().getStatusCode();
-            byte[] responseContent = null;
-            if (response.getEntity() != null) {
-                responseContent = EntityUtils.toByteArray(response.getEntity());
-            }
-            if (statusCode != HttpStatus.SC_OK) {
-                throw new HttpCallException(url, statusCode, responseContent != null ? new String(responseContent) : "");
-            }
-            Header h = response.getFirstHeader("Content-Type");
-     
-            return new HttpResponseContent(h != null ? h.getValue() : null, responseContent);
-        } finally {
-            if (response != null)
-                response.close();
-            method.releaseConnection();
-        }
-    }
-
-	public static final class HttpResponseContent {
-		public String contentType;
-		public byte[] content;
+	 * Perform HTTP GET request for document detail, hedged if <code>httpHedgeDetailPercentile</code> is configured.
+	 * Duplicate request is sent if original one is not answered within configured percentile of recent latencies and
+	 * hedging budget allows it, first successful response is used then and HTTP request of the other call is aborted,
+	 * so its blocking read is interrupted and connection released. Aborted call is not counted as endpoint failure.
+	 * 
+	 * @param url to perform GET request for
+	 * @param headers to be used for request. Can be null.
+	 * @return response from server if successful
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call
+	 * @see RequestHedger
+	 */
+	protected HttpResponseContent performHedgedHttpGetCall(final String url, final Map<String, String> headers)
+			throws Exception, HttpCallException {
+		RequestHedger hedger = requestHedger;
+		if (hedger == null)
+			return performHttpGetCall(url, headers);
 
-		public HttpResponseContent(String contentType, byte[] content) {
-			super();
-			this.contentType = contentType;
-			this.content = content;
+		hedger.recordRequest();
+		long delay = hedger.getHedgeDelay();
+		long start = System.currentTimeMillis();
+		if (delay < 0) {
+			HttpResponseContent ret = performHttpGetCall(url, headers);
+			hedger.recordLatency(System.currentTimeMillis() - start);
+			return ret;
 		}
 
-		@Override
-		public String toString() {
-			return "HttpResponseContent [contentType=" + contentType + ", content=" + content != null ? new String(content)
-					: "" + "]";
+		HedgedCallHandle originalHandle = new HedgedCallHandle();
+		HedgedCallHandle hedgeHandle = null;
+		CompletionService<HttpResponseContent> calls = new ExecutorCompletionService<HttpResponseContent>(hedgeExecutor);
+		Future<HttpResponseContent> original = calls.submit(createHedgedCall(url, headers, originalHandle));
+		Future<HttpResponseContent> hedge = null;
+		long hedgeStart = 0;
+		try {
+			Future<HttpResponseContent> finished = calls.poll(delay, TimeUnit.MILLISECONDS);
+			if (finished == null) {
+				if (hedger.tryAcquireHedge()) {
+					myLogger.debug("Remote system call to {} not answered in {} ms, hedged request sent", url, delay);
+					hedgeStart = System.currentTimeMillis();
+					hedgeHandle = new HedgedCallHandle();
+					hedge = calls.submit(createHedgedCall(url, headers, hedgeHandle));
+				}
+				finished = calls.take();
+			}
+			HttpResponseContent ret;
+			try {
+				ret = waitForHttpCall(finished);
+			} catch (Exception e) {
+				if (hedge == null)
+					throw e;
+				// first finished call failed, so wait for the other one
+				finished = calls.take();
+				ret = waitForHttpCall(finished);
+			}
+			if (finished == hedge) {
+				hedger.recordHedgeWin();
+				hedger.recordLatency(System.currentTimeMillis() - hedgeStart);
+			} else {
+				hedger.recordLatency(System.currentTimeMillis() - start);
+			}
+			return ret;
+		} finally {
+			// winner is finished already, so only the other call is really aborted
+			originalHandle.abort();
+			original.cancel(true);
+			if (hedge != null) {
+				hedgeHandle.abort();
+				hedge.cancel(true);
+			}
 		}
+	}
 
+	private Callable<HttpResponseContent> createHedgedCall(final String url, final Map<String, String> headers,
+			final HedgedCallHandle handle) {
+		return new Callable<HttpResponseContent>() {
+			@Override
+			public HttpResponseContent call() throws Exception {
+				hedgedCallHandle.set(handle);
+				try {
+					return performHttpGetCall(url, headers);
+				} finally {
+					hedgedCallHandle.remove();
+				}
+			}
+		};
 	}
 
-	public static final class HttpCallException extends Exception {
-		int statusCode;
+	/**
+	 * Register HTTP request performed by the current thread, so it can be aborted if it is part of hedged call which
+	 * lost, see {@link #performHedgedHttpGetCall(String, Map)}. Nothing is done if thread doesn't perform hedged call.
+	 * 
+	 * @param request to be aborted
+	 */
+	protected void registerHedgedCall(Cancellable request) {
+		HedgedCallHandle handle = hedgedCallHandle.get();
+		if (handle != null)
+			handle.setRequest(request);
+	}
 
-		public HttpCallException(String url, int statusCode, String responseContent) {
-			super("Failed remote system HTTP GET request to the url '" + url + "'. HTTP error code: " + statusCode
-					+ " Response body: " + responseContent);
-			this.statusCode = statusCode;
+	/**
+	 * Handle of one call performed by {@link #performHedgedHttpGetCall(String, Map)}, used to abort its HTTP request.
+	 * Request registered after abort is aborted immediately.
+	 */
+	protected static class HedgedCallHandle {
+
+		private Cancellable request;
+
+		private boolean aborted = false;
+
+		protected synchronized void setRequest(Cancellable request) {
+			this.request = request;
+			if (aborted)
+				request.cancel();
 		}
 
-		public int getStatusCode() {
-			return statusCode;
+		protected synchronized void abort() {
+			aborted = true;
+			if (request != null)
+				request.cancel();
+		}
+	}
+
+	/**
+	 * This method performs a HTTP request with the defined GET or POST method. Using GET as default if not defined.
+	 * Calling thread is blocked until response is available, also if <code>async</code> transport is used.
+	 * 
+	 * @param url to perform GET request for
+	 * @param headers to be used for request. Can be null.
+	 * @param method either GET(default) or POST http method type.
+	 * @return response from server if successful
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call
+	 * @see #performConditionalHttpGetCall(String, Map)
+	 */
+	protected HttpResponseContent performHttpCall(String url, Map<String, String> headers, HttpMethodType methodType)
+			throws Exception, HttpCallException {
+		return executeHttpCall(url, headers, methodType);
+	}
+
+	/**
+	 * Perform HTTP GET request as conditional if <code>httpConditionalGet</code> is enabled, content of previous
+	 * response is returned if remote system responds with <code>304 Not Modified</code>. Used for List Documents and
+	 * sitemap calls only, as validators and content are persisted for each called url. Unconditional
+	 * {@link #performHttpGetCall(String, Map)} is used if conditional GET is not enabled.
+	 * 
+	 * @param url to perform GET request for
+	 * @param headers to be used for request. Can be null.
+	 * @return response from server if successful
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call
+	 */
+	protected HttpResponseContent performConditionalHttpGetCall(String url, Map<String, String> headers)
+			throws Exception, HttpCallException {
+
+		if (validatorCache == null) {
+			return performHttpGetCall(url, headers);
 		}
 
+		HttpValidatorCache.Entry validators = validatorCache.get(url);
+		if (validators != null) {
+			Map<String, String> conditionalHeaders = new HashMap<String, String>();
+			if (headers != null)
+				conditionalHeaders.putAll(headers);
+			if (validators.etag != null)
+				conditionalHeaders.put("If-None-Match", validators.etag);
+			if (validators.lastModified != null)
+				conditionalHeaders.put("If-Modified-Since", validators.lastModified);
+			try {
+				HttpResponseContent response = performHttpGetCall(url, conditionalHeaders);
+				validatorCache.put(url, response);
+				return response;
+			} catch (HttpCallException e) {
+				if (e.getStatusCode() != HttpStatus.SC_NOT_MODIFIED)
+					throw e;
+				HttpResponseContent response = validatorCache.getContent(url);
+				if (response != null) {
+					myLogger.debug("Remote system responded 'Not Modified' for {}, cached content used", url);
+					return response;
+				}
+				myLogger.debug("Cached content not available for {}, going to repeat request as unconditional", url);
+				validatorCache.invalidate(url);
+			}
+		}
+		HttpResponseContent response = performHttpGetCall(url, headers);
+		validatorCache.put(url, response);
+		return response;
+	}
+
+	/**
+	 * Perform HTTP request with the defined GET or POST method, without any caching. Calling thread is blocked until
+	 * response is available, also if <code>async</code> transport is used.
+	 * 
+	 * @param url to perform request for
+	 * @param headers to be used for request. Can be null.
+	 * @param methodType either GET(default) or POST http method type.
+	 * @return response from server if successful
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call
+	 */
+	private HttpResponseContent executeHttpCall(String url, Map<String, String> headers, HttpMethodType methodType)
+			throws Exception, HttpCallException {
+		return executeHttpCall(url, headers, methodType, new HttpResponseHandler<HttpResponseContent>() {
+			@Override
+			public HttpResponseContent handle(String url, HttpResponse response) throws Exception {
+				return processHttpResponse(url, response);
+			}
+
+			@Override
+			public HttpResponseContent handle(HttpResponseContent response) throws Exception {
+				return response;
+			}
+		});
+	}
+
+	/**
+	 * Perform HTTP request with the defined GET or POST method and process response content directly from the response
+	 * stream, so it is not necessary to hold whole response in memory. Response is read into memory before processing if
+	 * <code>async</code> transport is used. Request is never conditional, as response content is not available for
+	 * caching.
+	 * 
+	 * @param url to perform request for
+	 * @param headers to be used for request. Can be null.
+	 * @param methodType either GET(default) or POST http method type.
+	 * @param processor used to process response content if call is successful
+	 * @return result of processing
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call or processing
+	 */
+	protected <T> T performHttpCall(String url, Map<String, String> headers, HttpMethodType methodType,
+			final HttpResponseStreamProcessor<T> processor) throws Exception, HttpCallException {
+		return executeHttpCall(url, headers, methodType, new HttpResponseHandler<T>() {
+			@Override
+			public T handle(String url, HttpResponse response) throws Exception {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					// throws HttpCallException
+					processHttpResponse(url, response);
+				}
+				Header h = response.getFirstHeader("Content-Type");
+				InputStream content = response.getEntity() != null ? response.getEntity().getContent() : null;
+				try {
+					return processor.process(h != null ? h.getValue() : null, content);
+				} finally {
+					if (content != null)
+						content.close();
+				}
+			}
+
+			@Override
+			public T handle(HttpResponseContent response) throws Exception {
+				return processor.process(response.contentType, response.content != null ? new ByteArrayInputStream(
+						response.content) : null);
+			}
+		});
+	}
+
+	/**
+	 * Handler of HTTP response, either read from <code>sync</code> transport or already read into memory by
+	 * <code>async</code> one.
+	 * 
+	 * @param <T> type of result
+	 */
+	private static interface HttpResponseHandler<T> {
+
+		T handle(String url, HttpResponse response) throws Exception;
+
+		T handle(HttpResponseContent response) throws Exception;
+	}
+
+	private <T> T executeHttpCall(String url, Map<String, String> headers, HttpMethodType methodType,
+			HttpResponseHandler<T> handler) throws Exception, HttpCallException {
+		try {
+			return executeHttpCallOnce(url, headers, methodType, handler);
+		} catch (HttpCallException e) {
+			if (!isAuthRetryNeeded(e))
+				throw e;
+			return executeHttpCallOnce(url, headers, methodType, handler);
+		}
+	}
+
+	private <T> T executeHttpCallOnce(String url, Map<String, String> headers, HttpMethodType methodType,
+			HttpResponseHandler<T> handler) throws Exception, HttpCallException {
+
+		if (httpAsyncClient != null) {
+			return handler.handle(waitForHttpCall(performHttpCallAsync(url, headers, methodType)));
+		}
+
+		HttpCallPipeline.Attempt attempt = callPipeline.startAttempt(url, headers, methodType);
+
+		myLogger.debug("Going to perform remote system HTTP request to the the {}", attempt.url);
+
+		CloseableHttpResponse response = null;
+		Exception failure = null;
+		try {
+			attempt.awaitStart();
+			response = httpclient.execute(attempt.targetHost, attempt.method, prepareHttpContext(attempt.targetHost));
+			return handler.handle(attempt.url, response);
+		} catch (Exception e) {
+			failure = e;
+			throw e;
+		} finally {
+			if (response != null)
+				response.close();
+			attempt.method.releaseConnection();
+			attempt.finished(failure);
+		}
+	}
+
+	/**
+	 * Processor of HTTP response content read directly from response stream.
+	 * 
+	 * @param <T> type of processing result
+	 * @see HttpRemoteSystemClientBase#performHttpCall(String, Map, HttpMethodType, HttpResponseStreamProcessor)
+	 */
+	protected static interface HttpResponseStreamProcessor<T> {
+
+		/**
+		 * Process response content.
+		 * 
+		 * @param contentType of response, can be null
+		 * @param content stream to read response content from, can be null if response has no content. It is closed after processing.
+		 * @return result of processing
+		 * @throws Exception in case of processing problem
+		 */
+		T process(String contentType, InputStream content) throws Exception;
+	}
+
+	/**
+	 * Perform HTTP request with the defined GET or POST method without blocking of the calling thread if
+	 * <code>async</code> transport is configured. Call is performed immediately in calling thread for <code>sync</code>
+	 * transport and already completed future is returned. Conditional GET is used for <code>sync</code> transport only.
+	 * Request delayed by rate limiter is started later for <code>async</code> transport, so calling thread is not
+	 * blocked by it.
+	 * 
+	 * @param url to perform request for
+	 * @param headers to be used for request. Can be null.
+	 * @param methodType either GET(default) or POST http method type.
+	 * @return future with response from server, {@link HttpCallException} or other exception is thrown from
+	 *         {@link Future#get()} wrapped in {@link ExecutionException} in case of failed http call.
+	 * @see #waitForHttpCall(Future)
+	 */
+	protected Future<HttpResponseContent> performHttpCallAsync(final String url, Map<String, String> headers,
+			HttpMethodType methodType) {
+		if (httpAsyncClient == null) {
+			try {
+				return Futures.immediateFuture(performHttpCall(url, headers, methodType));
+			} catch (Exception e) {
+				return Futures.immediateFailedFuture(e);
+			}
+		}
+
+		final SettableFuture<HttpResponseContent> ret = SettableFuture.create();
+		try {
+			final HttpCallPipeline.Attempt attempt = callPipeline.startAttempt(url, headers, methodType);
+			final CloseableHttpAsyncClient client = httpAsyncClient;
+
+			myLogger.debug("Going to perform remote system async HTTP request to the the {}", attempt.url);
+
+			callPipeline.startAsync(attempt, new HttpCallPipeline.AsyncExecution() {
+
+				@Override
+				public Future<?> start() throws Exception {
+					return client.execute(attempt.targetHost, attempt.method, prepareHttpContext(attempt.targetHost),
+							new FutureCallback<HttpResponse>() {
+
+								@Override
+								public void completed(HttpResponse response) {
+									try {
+										HttpResponseContent content = processHttpResponse(attempt.url, response);
+										attempt.finished(null);
+										ret.set(content);
+									} catch (Exception e) {
+										attempt.finished(e);
+										ret.setException(e);
+									}
+								}
+
+								@Override
+								public void failed(Exception ex) {
+									attempt.finished(ex);
+									ret.setException(ex);
+								}
+
+								@Override
+								public void cancelled() {
+									attempt.finished(null);
+									ret.cancel(false);
+								}
+							});
+				}
+
+				@Override
+				public void notStarted(Exception e) {
+					if (e != null)
+						ret.setException(e);
+					else
+						ret.cancel(false);
+				}
+			});
+		} catch (Exception e) {
+			ret.setException(e);
+		}
+		return ret;
+	}
+
+	/**
+	 * Wait for result of HTTP call started by {@link #performHttpCallAsync(String, Map, HttpMethodType)}.
+	 * 
+	 * @param call to wait for
+	 * @return response from server if successful
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call
+	 */
+	protected static <T> T waitForHttpCall(Future<T> call) throws Exception, HttpCallException {
+		try {
+			return call.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Prepare HTTP request with the defined GET or POST method. Using GET as default if not defined.
+	 * 
+	 * @param url to perform request for
+	 * @param headers to be used for request. Can be null.
+	 * @param methodType either GET(default) or POST http method type.
+	 * @return request
+	 * @throws Exception if request can't be prepared, eg. due invalid url
+	 */
+	protected HttpRequestBase prepareHttpRequest(String url, Map<String, String> headers, HttpMethodType methodType)
+			throws Exception {
+		HttpRequestBase method = null;
+		URIBuilder builder = new URIBuilder(url);
+		if (methodType != null && methodType.compareTo(HttpMethodType.POST) == 0) {
+
+			// For POST method we need to migrate URL parameters to POST params.
+			String urlWithoutParams = url.split("\\?")[0];
+			HttpPost postMethod = new HttpPost(urlWithoutParams);
+			postMethod.setEntity(new UrlEncodedFormEntity(builder.getQueryParams()));
+			method = postMethod;
+
+		} else {
+
+			method = new HttpGet(builder.build());
+
+		}
+
+		if (headers != null) {
+			for (String headerName : headers.keySet())
+				method.addHeader(headerName, headers.get(headerName));
+		}
+		return method;
+	}
+
+	/**
+	 * Perform call to the remote system with retries if it fails due transient problem. Calls are not performed while
+	 * circuit breaker for remote host is open.
+	 * 
+	 * @param policy of retries
+	 * @param url called, used to select circuit breaker
+	 * @param call to perform, typically one of <code>performHttpXXCall</code> methods
+	 * @return result of successful call
+	 * @throws RemoteSystemUnavailableException if circuit breaker for remote host is open
+	 * @throws Exception from last failed call
+	 */
+	protected <T> T performWithRetry(RetryPolicy policy, String url, Callable<T> call) throws Exception {
+		return callPipeline.performWithRetry(policy, url, call, null);
+	}
+
+	/**
+	 * Perform HTTP request without blocking of the calling thread if <code>async</code> transport is configured, with
+	 * retries if it fails due transient problem. First attempt is performed using
+	 * {@link #performHttpCallAsync(String, Map, HttpMethodType)}, retries are performed from {@link Future#get()} of
+	 * returned future.
+	 * 
+	 * @param policy of retries
+	 * @param url to perform request for
+	 * @param headers to be used for request. Can be null.
+	 * @param methodType either GET(default) or POST http method type.
+	 * @return future with response from server
+	 * @see #performWithRetry(RetryPolicy, String, Callable)
+	 */
+	protected Future<HttpResponseContent> performHttpCallAsync(RetryPolicy policy, final String url,
+			final Map<String, String> headers, final HttpMethodType methodType) {
+		try {
+			callPipeline.checkCircuitBreaker(url);
+		} catch (Exception e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		final RetryPolicy p = policy;
+		return new HttpCallProcessingFuture<HttpResponseContent>(performHttpCallAsync(url, headers, methodType)) {
+
+			@Override
+			protected HttpResponseContent process(Future<HttpResponseContent> call) throws Exception {
+				return callPipeline.performWithRetry(p, url, new Callable<HttpResponseContent>() {
+					@Override
+					public HttpResponseContent call() throws Exception {
+						return performHttpCall(url, headers, methodType);
+					}
+				}, call);
+			}
+		};
+	}
+
+	/**
+	 * Get circuit breaker for remote host of the url.
+	 * 
+	 * @param url to get breaker for
+	 * @return breaker, never null
+	 * @throws URISyntaxException if url is invalid
+	 */
+	protected CircuitBreaker getCircuitBreaker(String url) throws URISyntaxException {
+		HttpHost targetHost = getTargetHost(new URI(url));
+		CircuitBreaker ret = circuitBreakers.get(targetHost);
+		if (ret == null) {
+			synchronized (circuitBreakers) {
+				ret = circuitBreakers.get(targetHost);
+				if (ret == null) {
+					ret = new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenTime);
+					circuitBreakers.put(targetHost, ret);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Select replica endpoint for the call if balancing is configured.
+	 * 
+	 * @param url of the call
+	 * @return endpoint the call has to be performed to or null if the call is not balanced. Call has to be reported over
+	 *         {@link #endpointFinished(EndpointBalancer.Endpoint, long, boolean)} if not null.
+	 * @throws URISyntaxException if url is invalid
+	 */
+	protected EndpointBalancer.Endpoint selectEndpoint(String url) throws URISyntaxException {
+		if (endpointBalancer == null)
+			return null;
+		return endpointBalancer.select(getTargetHost(new URI(url)));
+	}
+
+	/**
+	 * Report finished call to the endpoint selected by {@link #selectEndpoint(String)}.
+	 * 
+	 * @param endpoint the call was performed to, nothing is done if null
+	 * @param start time of the call in millis
+	 * @param failed true if call failed due remote system problem
+	 */
+	protected void endpointFinished(EndpointBalancer.Endpoint endpoint, long start, boolean failed) {
+		if (endpoint == null)
+			return;
+		endpointBalancer.finished(endpoint, System.currentTimeMillis() - start, failed);
+		if (failed && myLogger != null && myLogger.isDebugEnabled())
+			myLogger.debug("Remote system call to {} failed, endpoint available: {}", endpoint.getHost(),
+					!endpoint.isEjected(System.currentTimeMillis()));
+	}
+
+	@Override
+	public boolean isRemoteSystemAvailable() {
+		for (CircuitBreaker cb : circuitBreakers.values()) {
+			if (cb.isOpen())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get rate limiter for remote host. It limits rate if <code>httpRateLimit</code> is configured, and pauses calls if
+	 * <code>Retry-After</code> is returned by remote host.
+	 * 
+	 * @param targetHost to get limiter for
+	 * @return rate limiter, never null
+	 */
+	protected RateLimiter getRateLimiter(HttpHost targetHost) {
+		RateLimiter ret = rateLimiters.get(targetHost);
+		if (ret == null) {
+			synchronized (rateLimiters) {
+				ret = rateLimiters.get(targetHost);
+				if (ret == null) {
+					ret = new RateLimiter(rateLimit, rateLimitBurst, true);
+					rateLimiters.put(targetHost, ret);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Parse value of <code>Retry-After</code> HTTP header.
+	 * 
+	 * @param value of header, either number of seconds or HTTP date
+	 * @param now current time in millis
+	 * @return number of millis to wait or null if value is not valid
+	 */
+	protected static Long parseRetryAfter(String value, long now) {
+		value = Utils.trimToNull(value);
+		if (value == null)
+			return null;
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000);
+		} catch (NumberFormatException e) {
+			Date d = DateUtils.parseDate(value);
+			if (d != null)
+				return Math.max(0, d.getTime() - now);
+		}
+		return null;
+	}
+
+	/**
+	 * Add authentication into request if {@link #authProvider} is configured. Request is authenticated only if it is
+	 * sent to one of {@link #authHosts}, so credential never leaks to other host (eg. referenced from remote system
+	 * response).
+	 * 
+	 * @param method to authenticate
+	 * @return credential used for request, null if not authenticated by provider
+	 * @throws Exception if credential can't be obtained
+	 */
+	protected String authenticateRequest(HttpRequestBase method) throws Exception {
+		if (authProvider == null)
+			return null;
+		HttpHost targetHost = getTargetHost(method);
+		if (!authHosts.contains(getAuthHostKey(targetHost))) {
+			myLogger.debug("Authentication credential not sent to {} as it is not host of configured url or replica",
+					targetHost);
+			return null;
+		}
+		return authProvider.authenticate(method);
+	}
+
+	/**
+	 * Prepare set of hosts credential from {@link #authProvider} is sent to.
+	 * 
+	 * @param url configured url of remote system, can be null
+	 * @param endpointBalancer to get replica hosts from, can be null
+	 * @return set of hosts normalized by {@link #getAuthHostKey(HttpHost)}
+	 */
+	protected static Set<String> prepareAuthHosts(String url, EndpointBalancer endpointBalancer) {
+		Set<String> ret = new HashSet<String>();
+		if (url != null) {
+			try {
+				// url may contain placeholders not allowed in URI
+				URL urlParsed = new URL(url);
+				ret.add(getAuthHostKey(new HttpHost(urlParsed.getHost(), urlParsed.getPort(), urlParsed.getProtocol())));
+			} catch (MalformedURLException e) {
+				// this should never happen due validation before
+			}
+		}
+		if (endpointBalancer != null) {
+			for (EndpointBalancer.Endpoint endpoint : endpointBalancer.getEndpoints()) {
+				ret.add(getAuthHostKey(endpoint.getHost()));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Get key of host used in {@link #authHosts}. Scheme and host name are lower cased, default port of scheme is used
+	 * if not defined.
+	 * 
+	 * @param host to get key for
+	 * @return key
+	 */
+	protected static String getAuthHostKey(HttpHost host) {
+		String scheme = host.getSchemeName() != null ? host.getSchemeName().toLowerCase(Locale.ENGLISH) : "http";
+		int port = host.getPort();
+		if (port < 0)
+			port = "https".equals(scheme) ? 443 : 80;
+		return scheme + "://" + host.getHostName().toLowerCase(Locale.ENGLISH) + ":" + port;
+	}
+
+	/**
+	 * Invalidate credential in {@link #authProvider} if call failed due to refused authentication.
+	 * 
+	 * @param e call failed with
+	 * @param credential used for the call, nothing is done if null
+	 */
+	protected void authFailed(Exception e, String credential) {
+		if (credential != null && e instanceof HttpCallException
+				&& ((HttpCallException) e).getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+			authProvider.invalidate(credential);
+		}
+	}
+
+	/**
+	 * Check if call should be repeated with new credential, as it failed due to refused authentication.
+	 * 
+	 * @param e call failed with
+	 * @return true if call should be repeated
+	 */
+	protected boolean isAuthRetryNeeded(Exception e) {
+		if (authProvider != null && e instanceof HttpCallException
+				&& ((HttpCallException) e).getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+			authRetries.incrementAndGet();
+			myLogger.debug("Remote system refused authentication credential, call repeated with new one");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get target host for HTTP request.
+	 * 
+	 * @param method to get host for
+	 * @return host
+	 */
+	protected static HttpHost getTargetHost(HttpRequestBase method) {
+		return getTargetHost(method.getURI());
+	}
+
+	/**
+	 * Get target host for HTTP request URI.
+	 * 
+	 * @param uri to get host for
+	 * @return host
+	 */
+	protected static HttpHost getTargetHost(URI uri) {
+		return new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+	}
+
+	/**
+	 * Prepare context for one HTTP call, with preemptive authentication if configured.
+	 * 
+	 * @param targetHost of the call
+	 * @return context
+	 */
+	protected HttpClientContext prepareHttpContext(HttpHost targetHost) {
+		HttpClientContext localcontext = HttpClientContext.create();
+		if (isAuthConfigured) {
+			AuthCache authCache = authCaches.get(targetHost);
+			if (authCache == null) {
+				authCache = new SharedAuthCache();
+				authCache.put(targetHost, new BasicScheme());
+				authCaches.put(targetHost, authCache);
+			}
+			localcontext.setAuthCache(authCache);
+		}
+		return localcontext;
+	}
+
+	/**
+	 * Auth cache shared by concurrent calls to one host. Preemptive Basic scheme is never removed from it, so challenge
+	 * round-trip is not necessary also after failed authentication.
+	 */
+	protected static final class SharedAuthCache extends BasicAuthCache {
+
+		@Override
+		public synchronized void put(HttpHost host, AuthScheme authScheme) {
+			super.put(host, authScheme);
+		}
+
+		@Override
+		public synchronized AuthScheme get(HttpHost host) {
+			return super.get(host);
+		}
+
+		@Override
+		public synchronized void remove(HttpHost host) {
+			// kept for next calls
+		}
+
+		@Override
+		public synchronized void clear() {
+			// kept for next calls
+		}
+	}
+
+	/**
+	 * Process HTTP response - read its content and check status code.
+	 * 
+	 * @param url of performed call
+	 * @param response to process
+	 * @return response content
+	 * @throws HttpCallException in case of failed http call
+	 * @throws Exception in case of unsuccessful call
+	 */
+	protected HttpResponseContent processHttpResponse(String url, HttpResponse response) throws Exception,
+			HttpCallException {
+		int statusCode = response.getStatusLine().getStatusCode();
+		byte[] responseContent = null;
+		if (response.getEntity() != null) {
+			responseContent = EntityUtils.toByteArray(response.getEntity());
+		}
+		if (statusCode != HttpStatus.SC_OK) {
+			HttpCallException e = new HttpCallException(url, statusCode, responseContent != null ? new String(responseContent)
+					: "");
+			if (statusCode == HTTP_STATUS_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+				Header h = response.getFirstHeader("Retry-After");
+				if (h != null) {
+					long now = System.currentTimeMillis();
+					e.retryAfter = parseRetryAfter(h.getValue(), now);
+					if (e.retryAfter != null) {
+						myLogger.info("Remote system responded with HTTP {}, calls to {} paused for {} ms", statusCode, url,
+								e.retryAfter);
+						getRateLimiter(getTargetHost(new URI(url))).pauseUntil(now + e.retryAfter);
+					}
+				}
+			}
+			throw e;
+		}
+		Header h = response.getFirstHeader("Content-Type");
+
+		HttpResponseContent ret = new HttpResponseContent(h != null ? h.getValue() : null, responseContent);
+		h = response.getFirstHeader("ETag");
+		if (h != null)
+			ret.etag = h.getValue();
+		h = response.getFirstHeader("Last-Modified");
+		if (h != null)
+			ret.lastModified = h.getValue();
+		return ret;
+	}
+
+	/**
+	 * Future with result of HTTP call processed by client. Processing is performed lazily in the thread which asks for
+	 * result, so non blocking transport threads are not occupied by it.
+	 * 
+	 * @param <T> type of processed result
+	 */
+	protected static abstract class HttpCallProcessingFuture<T> implements Future<T> {
+
+		protected final Future<HttpResponseContent> call;
+
+		private boolean processed = false;
+		private T result;
+		private Exception exception;
+
+		public HttpCallProcessingFuture(Future<HttpResponseContent> call) {
+			this.call = call;
+		}
+
+		/**
+		 * Process HTTP call result. Use {@link HttpRemoteSystemClientBase#waitForHttpCall(Future)} to obtain it.
+		 * 
+		 * @param call to process result of
+		 * @return processed result
+		 * @throws Exception if call failed or processing failed
+		 */
+		protected abstract T process(Future<HttpResponseContent> call) throws Exception;
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return call.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return call.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return call.isDone();
+		}
+
+		@Override
+		public synchronized T get() throws InterruptedException, ExecutionException {
+			if (!processed) {
+				try {
+					call.get();
+				} catch (ExecutionException e) {
+					// passed to the processing
+				}
+			}
+			return getProcessed();
+		}
+
+		@Override
+		public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			if (!processed) {
+				try {
+					call.get(timeout, unit);
+				} catch (ExecutionException e) {
+					// passed to the processing
+				}
+			}
+			return getProcessed();
+		}
+
+		private T getProcessed() throws ExecutionException {
+			if (!processed) {
+				try {
+					result = process(call);
+				} catch (Exception e) {
+					exception = e;
+				}
+				processed = true;
+			}
+			if (exception != null)
+				throw new ExecutionException(exception);
+			return result;
+		}
+	}
+
+	public static final class HttpResponseContent {
+		public String contentType;
+		public byte[] content;
+		/**
+		 * Value of <code>ETag</code> response header, can be null.
+		 */
+		public String etag;
+		/**
+		 * Value of <code>Last-Modified</code> response header, can be null.
+		 */
+		public String lastModified;
+
+		public HttpResponseContent(String contentType, byte[] content) {
+			super();
+			this.contentType = contentType;
+			this.content = content;
+		}
+
+		@Override
+		public String toString() {
+			return "HttpResponseContent [contentType=" + contentType + ", content=" + content != null ? new String(content)
+					: "" + "]";
+		}
+
+	}
+
+	public static final class HttpCallException extends Exception {
+		int statusCode;
+		Long retryAfter;
+
+		public HttpCallException(String url, int statusCode, String responseContent) {
+			super("Failed remote system HTTP GET request to the url '" + url + "'. HTTP error code: " + statusCode
+					+ " Response body: " + responseContent);
+			this.statusCode = statusCode;
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		/**
+		 * @return number of millis remote system asked to wait before next call over <code>Retry-After</code> header, null
+		 *         if not provided
+		 */
+		public Long getRetryAfter() {
+			return retryAfter;
+		}
+
+	}
+
+	@Override
+	public void buildStats(XContentBuilder builder) throws IOException {
+		builder.startObject("http");
+		builder.field("bytes_received", bytesReceived.get());
+		builder.field("bytes_decoded", bytesDecoded.get());
+		builder.field("rate_limit_wait_millis", rateLimitWaitMillis.get());
+		builder.field("retries", retries.get());
+		builder.field("available", isRemoteSystemAvailable());
+		if (endpointBalancer != null)
+			endpointBalancer.buildStats(builder);
+		if (requestHedger != null)
+			requestHedger.buildStats(builder);
+		if (authProvider != null)
+			builder.field("auth_retries", authRetries.get());
+		if (sharedConnectionPool != null)
+			sharedConnectionPool.buildStats(builder);
+		builder.endObject();
 	}
 
 	@Override
@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.Base64;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.logging.ESLogger;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseContent;
+
+/**
+ * Cache of HTTP validators (<code>ETag</code> and <code>Last-Modified</code> response headers) used to perform
+ * conditional HTTP GET requests. Validators and content of last successful response are persisted for each URL into
+ * river configuration area over {@link IESIntegration#storeObjectValue(String, String, Map)}, so they survive river
+ * restart. Only validators are held in memory, content is read from persistent store when remote system responds with
+ * <code>304 Not Modified</code>.
+ * <p>
+ * Persistent store is bounded. Each URL is stored into one of configured number of slots selected by hash of URL, so
+ * URL stored later into the same slot evicts the previous one. Response with content bigger than configured limit is
+ * not persisted at all.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpValidatorCache {
+
+	protected static final String STORE_PROPERTYNAME_PREFIX = "httpCache_";
+
+	protected static final String STORE_FIELD_URL = "url";
+	protected static final String STORE_FIELD_ETAG = "etag";
+	protected static final String STORE_FIELD_LAST_MODIFIED = "lastModified";
+	protected static final String STORE_FIELD_CONTENT_TYPE = "contentType";
+	protected static final String STORE_FIELD_CONTENT = "content";
+
+	/**
+	 * Marker for URL with no validators available, to not ask persistent store again.
+	 */
+	protected static final Entry NONE = new Entry(null, null);
+
+	protected static final int MEMORY_CACHE_MAX_SIZE = 1000;
+
+	protected static final int DEFAULT_MAX_ENTRIES = 100;
+
+	protected static final long DEFAULT_MAX_CONTENT_SIZE = 1024 * 1024;
+
+	protected final ESLogger logger;
+
+	protected final IESIntegration esIntegration;
+
+	protected final Cache<String, Entry> memoryCache;
+
+	/**
+	 * Number of slots in persistent store.
+	 */
+	protected final int maxEntries;
+
+	/**
+	 * Maximal size of response content persisted [bytes].
+	 */
+	protected final long maxContentSize;
+
+	/**
+	 * Create cache with default limits.
+	 *
+	 * @param logger to be used
+	 * @param esIntegration used to persist validators and content
+	 */
+	public HttpValidatorCache(ESLogger logger, IESIntegration esIntegration) {
+		this(logger, esIntegration, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CONTENT_SIZE);
+	}
+
+	/**
+	 * Create cache.
+	 *
+	 * @param logger to be used
+	 * @param esIntegration used to persist validators and content
+	 * @param maxEntries maximal number of URL's persisted
+	 * @param maxContentSize maximal size of response content persisted [bytes], bigger responses are not cached
+	 */
+	public HttpValidatorCache(ESLogger logger, IESIntegration esIntegration, int maxEntries, long maxContentSize) {
+		this.logger = logger;
+		this.esIntegration = esIntegration;
+		this.maxEntries = maxEntries;
+		this.maxContentSize = maxContentSize;
+		this.memoryCache = CacheBuilder.newBuilder().maximumSize(Math.min(MEMORY_CACHE_MAX_SIZE, maxEntries)).build();
+	}
+
+	/**
+	 * Get validators for given URL.
+	 *
+	 * @param url to get validators for
+	 * @return validators or null if not available
+	 */
+	public Entry get(String url) {
+		Entry e = memoryCache.getIfPresent(url);
+		if (e == null) {
+			e = NONE;
+			Map<String, Object> stored = readStored(url);
+			if (stored != null) {
+				e = new Entry((String) stored.get(STORE_FIELD_ETAG), (String) stored.get(STORE_FIELD_LAST_MODIFIED));
+			}
+			memoryCache.put(url, e);
+		}
+		return e.hasValidators() ? e : null;
+	}
+
+	/**
+	 * Store successful response for given URL. Response without any validator or with too big content is not
+	 * persisted, only previously persisted validators for same URL are invalidated. Response with the same validators as
+	 * already persisted is not persisted again.
+	 *
+	 * @param url response is for
+	 * @param response to store
+	 */
+	public void put(String url, HttpResponseContent response) {
+		Entry e = new Entry(response.etag, response.lastModified);
+		if (response.content != null && response.content.length > maxContentSize)
+			e = NONE;
+		Entry old = memoryCache.getIfPresent(url);
+		if (!e.hasValidators()) {
+			memoryCache.put(url, NONE);
+			if (old == null || !old.hasValidators())
+				return;
+		} else {
+			memoryCache.put(url, e);
+			if (e.equals(old))
+				return;
+		}
+		Map<String, Object> value = new HashMap<String, Object>();
+		value.put(STORE_FIELD_URL, url);
+		if (e.hasValidators()) {
+			value.put(STORE_FIELD_ETAG, e.etag);
+			value.put(STORE_FIELD_LAST_MODIFIED, e.lastModified);
+			value.put(STORE_FIELD_CONTENT_TYPE, response.contentType);
+			if (response.content != null)
+				value.put(STORE_FIELD_CONTENT, Base64.encodeBytes(response.content));
+		}
+		try {
+			esIntegration.storeObjectValue(null, preparePropertyName(url), value);
+		} catch (Exception ex) {
+			logger.warn("Unable to store HTTP validators for url {}: {}", url, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Get content of last successful response for given URL from persistent store. Used when remote system responds
+	 * with <code>304 Not Modified</code>.
+	 *
+	 * @param url to get content for
+	 * @return content or null if not available
+	 */
+	public HttpResponseContent getContent(String url) {
+		Map<String, Object> stored = readStored(url);
+		if (stored == null || (stored.get(STORE_FIELD_ETAG) == null && stored.get(STORE_FIELD_LAST_MODIFIED) == null))
+			return null;
+		byte[] content = null;
+		String c = (String) stored.get(STORE_FIELD_CONTENT);
+		if (c != null) {
+			try {
+				content = Base64.decode(c);
+			} catch (IOException e) {
+				logger.warn("Unable to decode cached HTTP response content for url {}: {}", url, e.getMessage());
+				return null;
+			}
+		}
+		HttpResponseContent ret = new HttpResponseContent((String) stored.get(STORE_FIELD_CONTENT_TYPE), content);
+		ret.etag = (String) stored.get(STORE_FIELD_ETAG);
+		ret.lastModified = (String) stored.get(STORE_FIELD_LAST_MODIFIED);
+		return ret;
+	}
+
+	/**
+	 * Remove validators for given URL from memory, eg. if persisted content is not available.
+	 *
+	 * @param url to remove validators for
+	 */
+	public void invalidate(String url) {
+		memoryCache.put(url, NONE);
+	}
+
+	protected Map<String, Object> readStored(String url) {
+		try {
+			Map<String, Object> stored = esIntegration.readObjectValue(null, preparePropertyName(url));
+			// check url as slot may be used by other url
+			if (stored != null && url.equals(stored.get(STORE_FIELD_URL)))
+				return stored;
+		} catch (Exception e) {
+			logger.warn("Unable to read HTTP validators for url {}: {}", url, e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Prepare name of property used to persist validators for given URL. Name contains number of slot selected by hash
+	 * of URL.
+	 *
+	 * @param url to prepare name for
+	 * @return property name
+	 */
+	protected String preparePropertyName(String url) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(url.getBytes("UTF-8"));
+			int hash = ((digest[0] & 0xFF) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8)
+					| (digest[3] & 0xFF);
+			return STORE_PROPERTYNAME_PREFIX + ((hash & Integer.MAX_VALUE) % maxEntries);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Validators for one URL.
+	 */
+	public static final class Entry {
+		public final String etag;
+		public final String lastModified;
+
+		public Entry(String etag, String lastModified) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		public boolean hasValidators() {
+			return etag != null || lastModified != null;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry))
+				return false;
+			Entry other = (Entry) obj;
+			return (etag == null ? other.etag == null : etag.equals(other.etag))
+					&& (lastModified == null ? other.lastModified == null : lastModified.equals(other.lastModified));
+		}
+
+		@Override
+		public int hashCode() {
+			return (etag != null ? etag.hashCode() : 0) * 31 + (lastModified != null ? lastModified.hashCode() : 0);
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ package org.jboss.elasticsearch.river.remote;
 import java.io.IOException;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
@@ -87,6 +88,29 @@ public interface IESIntegration {
 	 */
 	boolean deleteDatetimeValue(String spaceKey, String propertyName);
 
+	/**
+	 * Persistently store structured value for remote system Space as document into ElasticSearch river configuration
+	 * area. Value is stored only, it is not indexed for search.
+	 * 
+	 * @param spaceKey remote system space key this value is for, can be null for values not related to any space
+	 * @param propertyName name of property for this value identification
+	 * @param value to be stored
+	 * @throws Exception
+	 * @see #readObjectValue(String, String)
+	 */
+	void storeObjectValue(String spaceKey, String propertyName, Map<String, Object> value) throws Exception;
+
+	/**
+	 * Read structured value for remote system Space from document in ElasticSearch river configuration persistent area.
+	 * 
+	 * @param spaceKey remote system space key this value is for, can be null for values not related to any space
+	 * @param propertyName name of property for this value identification
+	 * @return value or null if do not exists
+	 * @throws Exception
+	 * @see #storeObjectValue(String, String, Map)
+	 */
+	Map<String, Object> readObjectValue(String spaceKey, String propertyName) throws Exception;
+
 	/**
 	 * Prepare ElasticSearch bulk request to be used for index update by more issues.
 	 * 
@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.Map;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.settings.SettingsException;
+
+/**
+ * Provider of authentication for HTTP calls performed by {@link HttpRemoteSystemClientBase}, used for other than HTTP
+ * Basic authentication (eg. bearer tokens or session cookies). Configured over <code>remote/authType</code>.
+ * Implementation must be thread safe, as it is shared by all threads performing calls to the remote system.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public interface IHttpAuthProvider {
+
+	/**
+	 * Initialize provider.
+	 *
+	 * @param logger to be used
+	 * @param config <code>remote</code> section of river configuration
+	 * @param username configured in <code>remote/username</code>, can be null
+	 * @param password configured in <code>remote/pwd</code> or loaded from <code>_pwd</code> document, can be null
+	 * @param httpclient to be used for authentication calls
+	 * @throws SettingsException in case of configuration problem
+	 */
+	public void init(ESLogger logger, Map<String, Object> config, String username, String password,
+			CloseableHttpClient httpclient) throws SettingsException;
+
+	/**
+	 * Add authentication into the request. Credential is obtained from remote system if not available yet or if it
+	 * expires soon.
+	 *
+	 * @param request to authenticate
+	 * @return credential used for request, passed to {@link #invalidate(String)} if remote system refuses it
+	 * @throws Exception if credential can't be obtained
+	 */
+	public String authenticate(HttpRequestBase request) throws Exception;
+
+	/**
+	 * Invalidate credential refused by remote system (HTTP 401 response), so new one is obtained for next request. Nothing
+	 * is done if credential was already replaced by other thread.
+	 *
+	 * @param credential returned from {@link #authenticate(HttpRequestBase)}
+	 */
+	public void invalidate(String credential);
+
+}
@@ -0,0 +1,38 @@
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to fetch document details without
+ * blocking of the calling thread. Space indexers use it for parallel document details fetching if available.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public interface IRemoteSystemClientAsync extends IRemoteSystemClient {
+
+	/**
+	 * Check if client is configured to use non blocking transport.
+	 *
+	 * @return true if {@link #getChangedDocumentDetailsAsync(String, String, Map)} doesn't block calling thread
+	 */
+	public boolean isAsyncTransportEnabled();
+
+	/**
+	 * Start fetch of detail for document from remote system. Same as
+	 * {@link IRemoteSystemClient#getChangedDocumentDetails(String, String, Map)} but result is returned as future.
+	 * {@link RemoteDocumentNotFoundException} is thrown from {@link Future#get()} wrapped in
+	 * {@link java.util.concurrent.ExecutionException} if document is not found.
+	 *
+	 * @param spaceKey of space where document is placed
+	 * @param documentId of document to get detail for
+	 * @param document data obtained from {@link #getChangedDocuments(String, int, boolean, java.util.Date)} call
+	 * @return future with detail data of document (null if detail is not available)
+	 * @throws Exception in case of processing problem
+	 */
+	public Future<Object> getChangedDocumentDetailsAsync(String spaceKey, String documentId, Map<String, Object> document)
+			throws Exception;
+
+}
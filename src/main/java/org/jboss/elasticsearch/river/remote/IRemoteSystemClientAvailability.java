@@ -0,0 +1,19 @@
+package org.jboss.elasticsearch.river.remote;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to detect that remote system is
+ * unavailable. Space indexing is not started while remote system is unavailable.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see SpaceIndexerCoordinator
+ */
+public interface IRemoteSystemClientAvailability {
+
+	/**
+	 * Check if remote system is available for indexing.
+	 * 
+	 * @return false if remote system is known to be unavailable now (eg. circuit breaker is open)
+	 */
+	public boolean isRemoteSystemAvailable();
+
+}
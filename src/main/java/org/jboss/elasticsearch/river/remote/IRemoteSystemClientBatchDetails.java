@@ -0,0 +1,32 @@
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to fetch details for more documents by
+ * one call to the remote system. Space indexers use it to fetch details for whole page of documents if available,
+ * {@link IRemoteSystemClient#getChangedDocumentDetails(String, String, Map)} is used otherwise.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public interface IRemoteSystemClientBatchDetails extends IRemoteSystemClient {
+
+	/**
+	 * Check if client is configured to fetch document details in batches.
+	 * 
+	 * @return true if {@link #getChangedDocumentDetails(String, List)} can be used
+	 */
+	public boolean isBatchDetailsEnabled();
+
+	/**
+	 * Get details for more documents from remote system.
+	 * 
+	 * @param spaceKey of space where documents are placed
+	 * @param documentIds of documents to get details for
+	 * @return map with detail for each document id, document not found in the remote system is missing in the map
+	 * @throws Exception in case of processing problem
+	 */
+	public Map<String, Object> getChangedDocumentDetails(String spaceKey, List<String> documentIds) throws Exception;
+
+}
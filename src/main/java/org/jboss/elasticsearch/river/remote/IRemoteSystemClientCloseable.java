@@ -0,0 +1,18 @@
+package org.jboss.elasticsearch.river.remote;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients holding resources (threads, connections)
+ * which must be released when client is not used anymore.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see RemoteRiver#close()
+ */
+public interface IRemoteSystemClientCloseable {
+
+	/**
+	 * Release resources held by client. Called by river when it is closed or stopped, and before client is replaced by
+	 * new one during reconfiguration. Client is not used after this call. Must be safe to call it more times.
+	 */
+	public void close();
+
+}
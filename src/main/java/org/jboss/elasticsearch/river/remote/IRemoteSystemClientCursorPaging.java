@@ -0,0 +1,31 @@
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.Date;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to continue listing of changed
+ * documents from cursor (opaque continuation token or next page URL) returned in previous
+ * {@link ChangedDocumentsResults#getNextCursor()}. Space indexers use it instead of offset based pagination if cursor
+ * is returned from remote system.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public interface IRemoteSystemClientCursorPaging extends IRemoteSystemClient {
+
+	/**
+	 * Get next page of changed documents. Same as {@link IRemoteSystemClient#getChangedDocuments(String, int, boolean, Date)}
+	 * but next page is identified by cursor obtained from previous call.
+	 * 
+	 * @param spaceKey of space to get documents for
+	 * @param startAt position of first document in complete list of documents, used only to fill
+	 *          {@link ChangedDocumentsResults#getStartAt()}
+	 * @param cursor returned in {@link ChangedDocumentsResults#getNextCursor()} of previous call
+	 * @param fullUpdate true if full update is performed
+	 * @param updatedAfter same value as used for previous call
+	 * @return next page of changed documents
+	 * @throws Exception in case of processing problem
+	 */
+	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter) throws Exception;
+
+}
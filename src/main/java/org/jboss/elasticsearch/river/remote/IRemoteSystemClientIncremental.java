@@ -0,0 +1,31 @@
+package org.jboss.elasticsearch.river.remote;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to perform incremental update even if
+ * <code>simple</code> or <code>pagination</code> List Documents mode is used. Such client returns only new and
+ * changed documents from {@link IRemoteSystemClient#getChangedDocuments(String, int, boolean, java.util.Date)} called
+ * with <code>fullUpdate=false</code>, and documents removed from remote system are returned marked as deleted (see
+ * {@link IDocumentIndexStructureBuilder#extractDocumentDeleted(java.util.Map)}).
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see SpaceIndexerCoordinator
+ */
+public interface IRemoteSystemClientIncremental {
+
+	/**
+	 * Check if incremental update is supported by configured client.
+	 *
+	 * @return true if incremental update is supported
+	 */
+	public boolean isIncrementalUpdateSupported();
+
+	/**
+	 * Called when all changed documents obtained from client during indexing run are indexed successfully, so client can
+	 * persist state used to detect changes during next run. Not called if indexing run fails.
+	 *
+	 * @param spaceKey indexing run finished for
+	 * @throws Exception in case of problem
+	 */
+	public void indexingFinished(String spaceKey) throws Exception;
+
+}
@@ -0,0 +1,26 @@
+package org.jboss.elasticsearch.river.remote;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to request given number of documents
+ * per page from remote system. Space indexers use it to tune page size over {@link PageSizeController}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public interface IRemoteSystemClientPageSize extends IRemoteSystemClient {
+
+	/**
+	 * Check if remote system call is configured so page size can be requested.
+	 * 
+	 * @return true if page size set over {@link #setPageSize(String, int)} is used
+	 */
+	public boolean isPageSizeSupported();
+
+	/**
+	 * Set number of documents requested in next calls of List Documents for given space.
+	 * 
+	 * @param spaceKey to set page size for
+	 * @param pageSize number of documents per page
+	 */
+	public void setPageSize(String spaceKey, int pageSize);
+
+}
@@ -0,0 +1,24 @@
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to provide runtime statistics of
+ * communication with remote system. Statistics are shown in river operation info if available.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see RemoteRiver#getRiverOperationInfo(org.elasticsearch.cluster.node.DiscoveryNode, java.util.Date)
+ */
+public interface IRemoteSystemClientStats {
+
+	/**
+	 * Write statistics as fields into opened JSON object.
+	 * 
+	 * @param builder to write statistics into
+	 * @throws IOException
+	 */
+	public void buildStats(XContentBuilder builder) throws IOException;
+
+}
@@ -0,0 +1,52 @@
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.Date;
+
+/**
+ * Optional extension of {@link IRemoteSystemClient} implemented by clients able to list changed documents in explicit
+ * time window. {@link SpaceByLastUpdateTimestampIndexer} uses it to split long history into windows processed in
+ * parallel (backfill).
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public interface IRemoteSystemClientTimeWindows extends IRemoteSystemClient {
+
+	/**
+	 * Check if remote system call is configured so documents can be listed in time window.
+	 *
+	 * @return true if {@link #getChangedDocuments(String, int, String, boolean, Date, Date)} can be used
+	 */
+	public boolean isTimeWindowsSupported();
+
+	/**
+	 * Get date used as start of the space history if no other is known.
+	 *
+	 * @return initial date or null if not configured
+	 */
+	public Date getUpdatedAfterInitialValue();
+
+	/**
+	 * Get configured time span between start and end of time window.
+	 *
+	 * @return time span [ms] or null if not configured
+	 */
+	public Long getUpdatedBeforeTimeSpan();
+
+	/**
+	 * Get changed documents updated in time window. Same as
+	 * {@link IRemoteSystemClient#getChangedDocuments(String, int, boolean, Date)} but documents updated after
+	 * <code>updatedBefore</code> are not returned.
+	 *
+	 * @param spaceKey of space to get documents for
+	 * @param startAt position of first document in complete list of documents
+	 * @param cursor returned in {@link ChangedDocumentsResults#getNextCursor()} of previous call, null for first page
+	 * @param fullUpdate true if full update is performed
+	 * @param updatedAfter start of time window
+	 * @param updatedBefore end of time window
+	 * @return page of changed documents
+	 * @throws Exception in case of processing problem
+	 */
+	public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, String cursor, boolean fullUpdate,
+			Date updatedAfter, Date updatedBefore) throws Exception;
+
+}
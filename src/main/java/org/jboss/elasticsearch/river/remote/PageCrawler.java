@@ -0,0 +1,371 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Bounded concurrent crawler of web pages. Pages are queued per host, at most configured number of pages is fetched
+ * from one host in parallel, and next fetch from the host is not started sooner than politeness delay after the
+ * previous one. Fetched page is processed (parsed) by separate threads, so fetch thread continues with the next page
+ * and network and CPU work overlap.
+ * <p>
+ * Each page is returned as {@link Future}, so caller can consume results in any order it needs, eg. in the order pages
+ * were submitted.
+ * <p>
+ * Host queues are not bounded, so caller has to limit number of pages submitted and not consumed yet, as
+ * {@link SpaceIndexerBase#startDocumentDetailsFetch(java.util.List)} does.
+ * <p>
+ * Thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class PageCrawler {
+
+	/**
+	 * Processor of fetched page.
+	 *
+	 * @param <F> type of fetched content
+	 * @param <T> type of processing result
+	 */
+	public static interface PageProcessor<F, T> {
+
+		/**
+		 * Process fetched page.
+		 *
+		 * @param url of page
+		 * @param content of page returned by fetch
+		 * @return result of processing
+		 * @throws Exception in case of processing problem
+		 */
+		T process(String url, F content) throws Exception;
+	}
+
+	protected final int hostConcurrency;
+
+	protected final long politenessDelay;
+
+	/**
+	 * {@link #politenessDelay} in nanoseconds.
+	 */
+	private final long politenessDelayNanos;
+
+	protected final ScheduledExecutorService fetchExecutor;
+
+	protected final ExecutorService processExecutor;
+
+	/**
+	 * Queue and state of each host, guarded by this.
+	 */
+	protected final Map<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+
+	private long fetched = 0;
+
+	private long fetchFailures = 0;
+
+	/**
+	 * Create crawler.
+	 *
+	 * @param hostConcurrency maximal number of pages fetched from one host in parallel
+	 * @param politenessDelay minimal time between start of two fetches from one host [ms], 0 means no delay
+	 * @param fetchThreads number of threads used to fetch pages from all hosts
+	 * @param processThreads number of threads used to process fetched pages
+	 * @param threadNamePrefix prefix of thread names
+	 */
+	public PageCrawler(int hostConcurrency, long politenessDelay, int fetchThreads, int processThreads,
+			String threadNamePrefix) {
+		if (hostConcurrency < 1)
+			throw new IllegalArgumentException("hostConcurrency must be positive");
+		if (fetchThreads < 1)
+			throw new IllegalArgumentException("fetchThreads must be positive");
+		if (processThreads < 1)
+			throw new IllegalArgumentException("processThreads must be positive");
+		this.hostConcurrency = hostConcurrency;
+		this.politenessDelay = politenessDelay;
+		this.politenessDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, politenessDelay));
+		this.fetchExecutor = Executors.newScheduledThreadPool(fetchThreads,
+				EsExecutors.daemonThreadFactory(threadNamePrefix + "_fetch"));
+		this.processExecutor = Executors.newFixedThreadPool(processThreads,
+				EsExecutors.daemonThreadFactory(threadNamePrefix + "_process"));
+	}
+
+	/**
+	 * Submit page to crawl.
+	 *
+	 * @param url of page, host is taken from it
+	 * @param fetch callable performing fetch of page content
+	 * @param processor of fetched content
+	 * @return future with result of processing, fetch or processing exception is thrown from {@link Future#get()}
+	 *         wrapped in {@link java.util.concurrent.ExecutionException}. Page is not fetched if future is cancelled
+	 *         before fetch starts.
+	 */
+	public <F, T> Future<T> submit(String url, Callable<F> fetch, PageProcessor<F, T> processor) {
+		String host = getHost(url);
+		CrawlTask<F, T> task = new CrawlTask<F, T>(host, url, fetch, processor);
+		synchronized (this) {
+			HostQueue hq = hosts.get(host);
+			if (hq == null) {
+				hq = new HostQueue(host, System.nanoTime() - politenessDelayNanos);
+				hosts.put(host, hq);
+			}
+			hq.queue.addLast(task);
+			dispatch(hq);
+		}
+		return task.result;
+	}
+
+	/**
+	 * Get host key of url, used to select host queue.
+	 *
+	 * @param url to get host from
+	 * @return lowercase host, or whole url if it can't be parsed
+	 */
+	protected static String getHost(String url) {
+		try {
+			String host = new URI(url).getHost();
+			if (host != null)
+				return host.toLowerCase();
+		} catch (Exception e) {
+			// invalid url fails in fetch
+		}
+		return url;
+	}
+
+	/**
+	 * Start fetches from host queue allowed by limits. Must be called when holding lock on this. Fetch thread may start
+	 * handed over fetch later, so politeness delay is enforced again when fetch really starts, see
+	 * {@link #fetchStarting(String)}.
+	 *
+	 * @param hq host queue to dispatch
+	 */
+	private void dispatch(final HostQueue hq) {
+		while (hq.running < hostConcurrency && !hq.queue.isEmpty()) {
+			long delay = hq.nextFetchAllowed - System.nanoTime();
+			if (delay > 0) {
+				if (!hq.dispatchScheduled) {
+					hq.dispatchScheduled = true;
+					fetchExecutor.schedule(new Runnable() {
+						@Override
+						public void run() {
+							synchronized (PageCrawler.this) {
+								hq.dispatchScheduled = false;
+								dispatch(hq);
+							}
+						}
+					}, delay, TimeUnit.NANOSECONDS);
+				}
+				return;
+			}
+			CrawlTask<?, ?> task = hq.queue.pollFirst();
+			if (task.result.isCancelled())
+				continue;
+			hq.running++;
+			hq.nextFetchAllowed = System.nanoTime() + politenessDelayNanos;
+			fetchExecutor.execute(task);
+		}
+		// idle host is forgotten once politeness delay elapses
+		if (hq.running == 0 && hq.queue.isEmpty() && !hq.dispatchScheduled
+				&& hq.lastFetchStart + politenessDelayNanos - System.nanoTime() <= 0)
+			hosts.remove(hq.host);
+	}
+
+	/**
+	 * Called by fetch thread when fetch of page is going to start.
+	 *
+	 * @param host of page
+	 * @return 0 if fetch may start now, its start time is recorded then. Remaining time of politeness delay since the
+	 *         previous fetch start from the host otherwise [ns].
+	 */
+	private synchronized long fetchStarting(String host) {
+		HostQueue hq = hosts.get(host);
+		if (hq == null)
+			return 0;
+		long now = System.nanoTime();
+		long delay = hq.lastFetchStart + politenessDelayNanos - now;
+		if (delay > 0)
+			return delay;
+		hq.lastFetchStart = now;
+		if (hq.nextFetchAllowed - (now + politenessDelayNanos) < 0)
+			hq.nextFetchAllowed = now + politenessDelayNanos;
+		return 0;
+	}
+
+	private synchronized void fetchFinished(String host, boolean performed, boolean failed) {
+		if (performed)
+			fetched++;
+		if (failed)
+			fetchFailures++;
+		HostQueue hq = hosts.get(host);
+		if (hq != null) {
+			hq.running--;
+			dispatch(hq);
+		}
+	}
+
+	/**
+	 * @return number of pages waiting in host queues for fetch
+	 */
+	public synchronized int getQueued() {
+		int ret = 0;
+		for (HostQueue hq : hosts.values()) {
+			ret += hq.queue.size();
+		}
+		return ret;
+	}
+
+	/**
+	 * @return number of pages being fetched now
+	 */
+	public synchronized int getRunning() {
+		int ret = 0;
+		for (HostQueue hq : hosts.values()) {
+			ret += hq.running;
+		}
+		return ret;
+	}
+
+	public synchronized long getFetched() {
+		return fetched;
+	}
+
+	public synchronized long getFetchFailures() {
+		return fetchFailures;
+	}
+
+	/**
+	 * Write crawler stats into <code>crawler</code> object.
+	 *
+	 * @param builder to write into
+	 * @throws IOException
+	 */
+	public synchronized void buildStats(XContentBuilder builder) throws IOException {
+		builder.startObject("crawler");
+		builder.field("host_concurrency", hostConcurrency);
+		builder.field("politeness_delay", politenessDelay);
+		builder.field("hosts", hosts.size());
+		builder.field("queued", getQueued());
+		builder.field("running", getRunning());
+		builder.field("fetched", fetched);
+		builder.field("fetch_failures", fetchFailures);
+		builder.endObject();
+	}
+
+	/**
+	 * Stop all threads of crawler. Running fetches are interrupted, queued pages are never fetched.
+	 */
+	public void shutdown() {
+		fetchExecutor.shutdownNow();
+		processExecutor.shutdownNow();
+	}
+
+	/**
+	 * Queue of pages from one host.
+	 */
+	protected static final class HostQueue {
+
+		protected final String host;
+
+		protected final Deque<CrawlTask<?, ?>> queue = new ArrayDeque<CrawlTask<?, ?>>();
+
+		protected int running = 0;
+
+		/**
+		 * Time when next fetch may be handed over to fetch thread [ns, {@link System#nanoTime()}].
+		 */
+		protected long nextFetchAllowed;
+
+		/**
+		 * Time when the last fetch really started [ns, {@link System#nanoTime()}].
+		 */
+		protected long lastFetchStart;
+
+		protected boolean dispatchScheduled = false;
+
+		protected HostQueue(String host, long lastFetchStart) {
+			this.host = host;
+			this.lastFetchStart = lastFetchStart;
+			this.nextFetchAllowed = lastFetchStart;
+		}
+	}
+
+	/**
+	 * Fetch of one page run in fetch thread. Processing of fetched content is passed to process thread then.
+	 */
+	protected final class CrawlTask<F, T> implements Runnable {
+
+		protected final String host;
+
+		protected final String url;
+
+		protected final Callable<F> fetch;
+
+		/**
+		 * Result handed to the caller. Completed by processing of fetched content, or by fetch exception.
+		 */
+		protected final FutureTask<T> result;
+
+		private volatile F content;
+
+		private volatile Exception fetchException;
+
+		protected CrawlTask(String host, final String url, Callable<F> fetch, final PageProcessor<F, T> processor) {
+			this.host = host;
+			this.url = url;
+			this.fetch = fetch;
+			this.result = new FutureTask<T>(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					if (fetchException != null)
+						throw fetchException;
+					return processor.process(url, content);
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+			if (!result.isCancelled()) {
+				long delay = fetchStarting(host);
+				if (delay > 0) {
+					// fetch thread was busy, so previous fetch from host started later than planned
+					fetchExecutor.schedule(this, delay, TimeUnit.NANOSECONDS);
+					return;
+				}
+			}
+			boolean performed = false;
+			try {
+				if (!result.isCancelled()) {
+					performed = true;
+					content = fetch.call();
+				}
+			} catch (Exception e) {
+				fetchException = e;
+			} finally {
+				fetchFinished(host, performed, fetchException != null);
+			}
+			if (fetchException != null)
+				result.run();
+			else if (!result.isCancelled())
+				processExecutor.execute(result);
+		}
+	}
+
+}
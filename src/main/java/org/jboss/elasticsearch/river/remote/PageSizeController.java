@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Controller of number of documents requested in one page of List Documents call for one space. Page size is tuned
+ * after each page so processing of the page (remote call, details fetch, ES bulk) takes configured target time, and
+ * remote response is not bigger than configured size. Page size is changed at most two times in one step, and is kept
+ * between configured bounds.
+ * <p>
+ * Thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class PageSizeController {
+
+	/**
+	 * Name of property page size is stored under over {@link IESIntegration#storeObjectValue(String, String, Map)}.
+	 */
+	protected static final String STORE_PROPERTYNAME_PAGE_SIZE = "pageSize";
+
+	protected static final String STORE_FIELD_PAGE_SIZE = "page_size";
+
+	/**
+	 * Page size used if nothing is stored.
+	 */
+	protected static final int DEFAULT_PAGE_SIZE = 50;
+
+	protected final int minPageSize;
+
+	protected final int maxPageSize;
+
+	protected final long targetPageTime;
+
+	protected final long maxPageBytes;
+
+	protected volatile int pageSize;
+
+	/**
+	 * Create controller.
+	 *
+	 * @param minPageSize minimal page size
+	 * @param maxPageSize maximal page size
+	 * @param targetPageTime time [ms] one page processing should take
+	 * @param maxPageBytes maximal size of remote system response [bytes], 0 means not limited
+	 * @param pageSize initial page size, bounds are applied to it
+	 */
+	public PageSizeController(int minPageSize, int maxPageSize, long targetPageTime, long maxPageBytes, int pageSize) {
+		if (minPageSize < 1)
+			throw new IllegalArgumentException("minPageSize must be positive");
+		if (maxPageSize < minPageSize)
+			throw new IllegalArgumentException("maxPageSize must not be lower than minPageSize");
+		this.minPageSize = minPageSize;
+		this.maxPageSize = maxPageSize;
+		this.targetPageTime = targetPageTime;
+		this.maxPageBytes = maxPageBytes;
+		this.pageSize = limit(pageSize);
+	}
+
+	/**
+	 * Get current page size.
+	 *
+	 * @return page size
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Tune page size based on processing of one page.
+	 *
+	 * @param documents number of documents in the page
+	 * @param remoteLatency time of remote system call [ms]
+	 * @param responseBytes size of remote system response [bytes], -1 if not known
+	 * @param processingTime time of page processing in river (details fetch, ES bulk) [ms]
+	 * @return new page size
+	 */
+	public synchronized int update(int documents, long remoteLatency, long responseBytes, long processingTime) {
+		if (documents <= 0)
+			return pageSize;
+		long next;
+		long time = Math.max(0, remoteLatency) + Math.max(0, processingTime);
+		if (time > 0 && targetPageTime > 0) {
+			next = (long) ((double) targetPageTime * documents / time);
+		} else {
+			next = (long) pageSize * 2;
+		}
+		if (maxPageBytes > 0 && responseBytes > 0) {
+			next = Math.min(next, (long) ((double) maxPageBytes * documents / responseBytes));
+		}
+		next = Math.max(pageSize / 2, Math.min((long) pageSize * 2, next));
+		pageSize = limit(next);
+		return pageSize;
+	}
+
+	private int limit(long size) {
+		return (int) Math.max(minPageSize, Math.min(maxPageSize, size));
+	}
+
+	/**
+	 * Read page size stored for space.
+	 *
+	 * @param esIntegrationComponent to read from
+	 * @param spaceKey to read page size for
+	 * @return stored page size or null if not available
+	 * @throws Exception
+	 * @see #store(IESIntegration, String)
+	 */
+	public static Integer readStoredPageSize(IESIntegration esIntegrationComponent, String spaceKey) throws Exception {
+		Map<String, Object> value = esIntegrationComponent.readObjectValue(spaceKey, STORE_PROPERTYNAME_PAGE_SIZE);
+		if (value == null)
+			return null;
+		return Utils.nodeIntegerValue(value.get(STORE_FIELD_PAGE_SIZE));
+	}
+
+	/**
+	 * Store current page size for space, so it can be used after restart.
+	 *
+	 * @param esIntegrationComponent to store into
+	 * @param spaceKey to store page size for
+	 * @throws Exception
+	 * @see #readStoredPageSize(IESIntegration, String)
+	 */
+	public void store(IESIntegration esIntegrationComponent, String spaceKey) throws Exception {
+		Map<String, Object> value = new HashMap<String, Object>();
+		value.put(STORE_FIELD_PAGE_SIZE, pageSize);
+		esIntegrationComponent.storeObjectValue(spaceKey, STORE_PROPERTYNAME_PAGE_SIZE, value);
+	}
+
+	@Override
+	public String toString() {
+		return "PageSizeController [pageSize=" + pageSize + ", minPageSize=" + minPageSize + ", maxPageSize="
+				+ maxPageSize + ", targetPageTime=" + targetPageTime + ", maxPageBytes=" + maxPageBytes + "]";
+	}
+
+}
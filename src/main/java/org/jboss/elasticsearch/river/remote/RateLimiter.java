@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+/**
+ * Token bucket rate limiter shared by all threads performing calls to the remote system. Permits are reserved in
+ * order of requests, so rate is kept exactly also for many concurrent threads. Calls may also be paused for given time,
+ * eg. due <code>Retry-After</code> header returned from remote system.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RateLimiter {
+
+	/**
+	 * Interval between permits in milliseconds, 0 means no limit.
+	 */
+	private final double intervalMillis;
+
+	private final int burst;
+
+	/**
+	 * Time when next permit is theoretically available if bucket is empty.
+	 */
+	private double nextPermitTime;
+
+	private long pausedTill = 0;
+
+	/**
+	 * Create rate limiter.
+	 *
+	 * @param permitsPerSecond maximal rate, 0 or less means no limit, so only pause is applied
+	 * @param burst maximal number of permits which can be provided immediately if limiter was not used for some time. 1
+	 *          or more.
+	 * @param startFull if true then burst permits are available immediately after creation, if false then first permit
+	 *          is available after one interval
+	 */
+	public RateLimiter(double permitsPerSecond, int burst, boolean startFull) {
+		this.intervalMillis = permitsPerSecond > 0 ? 1000d / permitsPerSecond : 0;
+		this.burst = Math.max(1, burst);
+		this.nextPermitTime = startFull ? 0 : System.currentTimeMillis() + this.burst * intervalMillis;
+	}
+
+	/**
+	 * Acquire permit for one call, wait if necessary.
+	 *
+	 * @return time waited for permit in milliseconds
+	 * @throws InterruptedException if waiting thread is interrupted
+	 */
+	public long acquire() throws InterruptedException {
+		long wait = reserve(System.currentTimeMillis());
+		if (wait > 0)
+			Thread.sleep(wait);
+		return wait;
+	}
+
+	/**
+	 * Reserve permit for one call without waiting, caller has to wait returned time before the call is performed.
+	 *
+	 * @return time in millis to wait before permit is available
+	 */
+	public long reserve() {
+		return reserve(System.currentTimeMillis());
+	}
+
+	/**
+	 * Reserve permit for one call.
+	 *
+	 * @param now current time in millis
+	 * @return time in millis to wait before permit is available
+	 */
+	protected synchronized long reserve(long now) {
+		long start = Math.max(now, pausedTill);
+		if (intervalMillis == 0)
+			return start - now;
+		if (nextPermitTime < start)
+			nextPermitTime = start;
+		double permitTime = Math.max(start, nextPermitTime - (burst - 1) * intervalMillis);
+		nextPermitTime += intervalMillis;
+		return (long) Math.ceil(permitTime) - now;
+	}
+
+	/**
+	 * Pause all calls till given time.
+	 *
+	 * @param timeMillis to pause calls till
+	 */
+	public synchronized void pauseUntil(long timeMillis) {
+		if (timeMillis > pausedTill)
+			pausedTill = timeMillis;
+	}
+
+	/**
+	 * @return true if rate is limited, false if only pause is applied
+	 */
+	public boolean isRateLimited() {
+		return intervalMillis > 0;
+	}
+
+}
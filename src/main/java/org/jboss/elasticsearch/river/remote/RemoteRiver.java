@@ -7,6 +7,7 @@ import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -22,6 +23,7 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -64,6 +66,11 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 	 */
 	protected static final long SPACES_REFRESH_TIME = 30 * 60 * 1000;
 
+	/**
+	 * Default maximal number of worker threads shared by all space indexers, see {@link WorkerThreadBudget}.
+	 */
+	protected static final int DEFAULT_MAX_WORKER_THREADS = 10;
+
 	public static final String INDEX_DOCUMENT_TYPE_NAME_DEFAULT = "remote_document";
 
 	public static final String INDEX_ACTIVITY_TYPE_NAME_DEFAULT = "remote_river_indexupdate";
@@ -98,6 +105,68 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 	 */
 	protected SpaceIndexingMode spaceIndexingMode = SpaceIndexingMode.UPDATE_TIMESTAMP;
 
+	/**
+	 * Config - maximal number of document details fetched in parallel by one space indexer
+	 */
+	protected int detailFetchConcurrency = 1;
+
+	/**
+	 * Config - number of next pages of documents prefetched by paginating space indexer
+	 */
+	protected int listPrefetchDepth = 0;
+
+	/**
+	 * Config - number of threads used by paginating space indexer to fetch and index pages in parallel
+	 */
+	protected int pageFetchConcurrency = 1;
+
+	/**
+	 * Config - number of threads used by update timestamp space indexer to process time windows of history in parallel
+	 */
+	protected int backfillConcurrency = 1;
+
+	/**
+	 * Config - size of time window [ms] used by update timestamp space indexer to split history
+	 */
+	protected long backfillWindowSize = 0;
+
+	/**
+	 * Config - number of documents per time window targeted by update timestamp space indexer
+	 */
+	protected int adaptiveWindowTargetSize = 0;
+
+	/**
+	 * Config - maximal average response time [ms] of remote system for one adaptive time window
+	 */
+	protected long adaptiveWindowMaxLatency = 0;
+
+	/**
+	 * Config - bounds of page size requested from remote system, page size is not tuned if max is 0
+	 */
+	protected int pageSizeMin = 10;
+
+	protected int pageSizeMax = 0;
+
+	/**
+	 * Config - time [ms] processing of one page of documents should take
+	 */
+	protected long pageSizeTargetTime = 5000;
+
+	/**
+	 * Config - maximal size of remote system response [bytes] used to tune page size, 0 means not limited
+	 */
+	protected long pageSizeMaxBytes = 0;
+
+	/**
+	 * Cache of document details shared by all space indexers, null if not used. Kept over river restarts.
+	 */
+	protected DocumentDetailCache detailCache;
+
+	/**
+	 * Budget of worker threads shared by all space indexers in addition to {@link #maxIndexingThreads}.
+	 */
+	protected WorkerThreadBudget workerThreadBudget = new WorkerThreadBudget(DEFAULT_MAX_WORKER_THREADS);
+
 	/**
 	 * Config - index full update period [ms]
 	 */
@@ -191,6 +260,7 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 	public RemoteRiver(RiverName riverName, RiverSettings settings, Client client) throws MalformedURLException {
 		super(riverName, settings);
 		this.client = client;
+		SharedHttpConnectionPool.configure(settings.globalSettings());
 		configure(settings.settings());
 	}
 
@@ -208,6 +278,44 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 		if (settings.containsKey("remote")) {
 			Map<String, Object> remoteSettings = (Map<String, Object>) settings.get("remote");
 			maxIndexingThreads = XContentMapValues.nodeIntegerValue(remoteSettings.get("maxIndexingThreads"), 1);
+			detailFetchConcurrency = XContentMapValues.nodeIntegerValue(remoteSettings.get("detailFetchConcurrency"), 1);
+			int maxWorkerThreads = XContentMapValues.nodeIntegerValue(remoteSettings.get("maxWorkerThreads"),
+					DEFAULT_MAX_WORKER_THREADS);
+			if (maxWorkerThreads < 0)
+				throw new SettingsException("remote/maxWorkerThreads must not be negative");
+			workerThreadBudget = new WorkerThreadBudget(maxWorkerThreads);
+			listPrefetchDepth = XContentMapValues.nodeIntegerValue(remoteSettings.get("listPrefetchDepth"), 0);
+			pageFetchConcurrency = XContentMapValues.nodeIntegerValue(remoteSettings.get("pageFetchConcurrency"), 1);
+			backfillConcurrency = XContentMapValues.nodeIntegerValue(remoteSettings.get("backfillConcurrency"), 1);
+			backfillWindowSize = Utils.parseTimeValue(remoteSettings, "backfillWindowSize", 0, null);
+			adaptiveWindowTargetSize = XContentMapValues.nodeIntegerValue(remoteSettings.get("adaptiveWindowTargetSize"), 0);
+			adaptiveWindowMaxLatency = Utils.parseTimeValue(remoteSettings, "adaptiveWindowMaxLatency", 0, null);
+			pageSizeMin = XContentMapValues.nodeIntegerValue(remoteSettings.get("pageSizeMin"), 10);
+			pageSizeMax = XContentMapValues.nodeIntegerValue(remoteSettings.get("pageSizeMax"), 0);
+			if (pageSizeMax > 0 && (pageSizeMin < 1 || pageSizeMin > pageSizeMax))
+				throw new SettingsException("remote/pageSizeMin must be between 1 and remote/pageSizeMax");
+			pageSizeTargetTime = Utils.parseTimeValue(remoteSettings, "pageSizeTargetTime", 5, TimeUnit.SECONDS);
+			String pageSizeMaxBytesStr = Utils.trimToNull(XContentMapValues.nodeStringValue(
+					remoteSettings.get("pageSizeMaxBytes"), null));
+			pageSizeMaxBytes = 0;
+			if (pageSizeMaxBytesStr != null) {
+				try {
+					pageSizeMaxBytes = ByteSizeValue.parseBytesSizeValue(pageSizeMaxBytesStr).bytes();
+				} catch (ElasticsearchParseException e) {
+					throw new SettingsException("remote/pageSizeMaxBytes is invalid: " + e.getMessage());
+				}
+			}
+			String detailCacheSize = Utils.trimToNull(XContentMapValues.nodeStringValue(remoteSettings.get("detailCacheSize"),
+					null));
+			long detailCacheSizeBytes = 0;
+			if (detailCacheSize != null) {
+				try {
+					detailCacheSizeBytes = ByteSizeValue.parseBytesSizeValue(detailCacheSize).bytes();
+				} catch (ElasticsearchParseException e) {
+					throw new SettingsException("remote/detailCacheSize is invalid: " + e.getMessage());
+				}
+			}
+			detailCache = detailCacheSizeBytes > 0 ? new DocumentDetailCache(detailCacheSizeBytes) : null;
 
 			SpaceIndexingMode sim = SpaceIndexingMode.parseConfiguration((String) remoteSettings.get("listDocumentsMode"));
 			if (sim != null)
@@ -226,12 +334,6 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 				}
 			}
 
-			if (spaceIndexingMode.isIncrementalUpdateSupported()
-					|| (indexFullUpdatePeriod < 1 && indexFullUpdateCronExpression == null))
-				indexUpdatePeriod = Utils.parseTimeValue(remoteSettings, "indexUpdatePeriod", 5, TimeUnit.MINUTES);
-			else
-				indexUpdatePeriod = 0;
-
 			if (remoteSettings.containsKey("spacesIndexed")) {
 				allIndexedSpacesKeys = Utils.parseCsvString(XContentMapValues.nodeStringValue(
 						remoteSettings.get("spacesIndexed"), null));
@@ -244,6 +346,8 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 				spaceKeysExcluded = Utils.parseCsvString(XContentMapValues.nodeStringValue(
 						remoteSettings.get("spaceKeysExcluded"), null));
 			}
+			// client from previous configuration is replaced
+			closeRemoteSystemClient();
 			String remoteClientClass = Utils.trimToNull(XContentMapValues.nodeStringValue(
 					remoteSettings.get("remoteClientClass"), null));
 			if (remoteClientClass != null) {
@@ -257,6 +361,13 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 				remoteSystemClient = new GetJSONClient();
 			}
 			remoteSystemClient.init(this, remoteSettings, allIndexedSpacesKeysNextRefresh != Long.MAX_VALUE, this);
+
+			if (spaceIndexingMode.isIncrementalUpdateSupported()
+					|| SpaceIndexerCoordinator.isClientIncrementalUpdateSupported(remoteSystemClient)
+					|| (indexFullUpdatePeriod < 1 && indexFullUpdateCronExpression == null))
+				indexUpdatePeriod = Utils.parseTimeValue(remoteSettings, "indexUpdatePeriod", 5, TimeUnit.MINUTES);
+			else
+				indexUpdatePeriod = 0;
 		} else {
 			throw new SettingsException("'remote' element of river configuration structure not found");
 		}
@@ -350,8 +461,22 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 		logger.info("starting Remote River indexing process");
 		closed = false;
 		lastRestartDate = new Date();
-		coordinatorInstance = new SpaceIndexerCoordinator(remoteSystemClient, this, documentIndexStructureBuilder,
-				indexUpdatePeriod, maxIndexingThreads, indexFullUpdatePeriod, indexFullUpdateCronExpression, spaceIndexingMode);
+		SpaceIndexerCoordinator coordinator = new SpaceIndexerCoordinator(remoteSystemClient, this,
+				documentIndexStructureBuilder, indexUpdatePeriod, maxIndexingThreads, indexFullUpdatePeriod,
+				indexFullUpdateCronExpression, spaceIndexingMode);
+		coordinator.setDetailFetchConcurrency(detailFetchConcurrency);
+		coordinator.setListPrefetchDepth(listPrefetchDepth);
+		coordinator.setPageFetchConcurrency(pageFetchConcurrency);
+		coordinator.setBackfillConcurrency(backfillConcurrency);
+		coordinator.setBackfillWindowSize(backfillWindowSize);
+		coordinator.setAdaptiveWindowTargetSize(adaptiveWindowTargetSize);
+		coordinator.setAdaptiveWindowMaxLatency(adaptiveWindowMaxLatency);
+		coordinator.setPageSizeBounds(pageSizeMin, pageSizeMax);
+		coordinator.setPageSizeTargetTime(pageSizeTargetTime);
+		coordinator.setPageSizeMaxBytes(pageSizeMaxBytes);
+		coordinator.setDetailCache(detailCache);
+		coordinator.setWorkerThreadBudget(workerThreadBudget);
+		coordinatorInstance = coordinator;
 		coordinatorThread = acquireIndexingThread("remote_river_coordinator", coordinatorInstance);
 		coordinatorThread.start();
 	}
@@ -366,11 +491,27 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 		// free instances created in #start()
 		coordinatorThread = null;
 		coordinatorInstance = null;
+		closeRemoteSystemClient();
 		synchronized (riverInstances) {
 			riverInstances.remove(riverName().getName());
 		}
 	}
 
+	/**
+	 * Release resources held by remote system client, if it supports it.
+	 * 
+	 * @see IRemoteSystemClientCloseable
+	 */
+	protected void closeRemoteSystemClient() {
+		if (remoteSystemClient instanceof IRemoteSystemClientCloseable) {
+			try {
+				((IRemoteSystemClientCloseable) remoteSystemClient).close();
+			} catch (Exception e) {
+				logger.warn("Remote system client close failed: {}", e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Stop remote river, but leave instance existing in {@link #riverInstances} so it can be found over management REST
 	 * calls and/or reconfigured and started later again. Note that standard ES river {@link #close()} method
@@ -388,6 +529,8 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 		// free instances created in #start()
 		coordinatorThread = null;
 		coordinatorInstance = null;
+		// new client is created by reconfiguration during restart
+		closeRemoteSystemClient();
 		if (permanent) {
 			try {
 				permanentStopDate = new Date();
@@ -539,6 +682,21 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 				builder.endArray();
 			}
 		}
+		if (remoteSystemClient instanceof IRemoteSystemClientStats) {
+			builder.startObject("remote_client");
+			((IRemoteSystemClientStats) remoteSystemClient).buildStats(builder);
+			builder.endObject();
+		}
+		if (detailCache != null) {
+			builder.startObject("detail_cache");
+			detailCache.buildStats(builder);
+			builder.endObject();
+		}
+		if (workerThreadBudget != null) {
+			builder.startObject("worker_threads");
+			workerThreadBudget.buildStats(builder);
+			builder.endObject();
+		}
 		List<String> pkeys = getAllIndexedSpaceKeys();
 		if (pkeys != null) {
 			builder.startArray("indexed_spaces");
@@ -776,6 +934,72 @@ public class RemoteRiver extends AbstractRiverComponent implements River, IESInt
 
 	}
 
+	/**
+	 * Constant for field in JSON document used to store structured values. Field is not indexed.
+	 * 
+	 * @see #storeObjectValue(String, String, Map)
+	 * @see #readObjectValue(String, String)
+	 */
+	protected static final String STORE_FIELD_OBJECT_VALUE = "objectValue";
+
+	/**
+	 * Flag if mapping for {@link #STORE_FIELD_OBJECT_VALUE} is prepared already.
+	 */
+	private volatile boolean objectValueMappingPrepared = false;
+
+	@Override
+	public void storeObjectValue(String spaceKey, String propertyName, Map<String, Object> value) throws IOException {
+		String documentName = prepareValueStoreDocumentName(spaceKey, propertyName);
+		if (logger.isDebugEnabled())
+			logger.debug("Going to write {} property with object value for space {}. Document name is {}.", propertyName,
+					spaceKey, documentName);
+		prepareObjectValueMapping();
+		XContentBuilder builder = jsonBuilder().startObject();
+		if (spaceKey != null)
+			builder.field("spaceKey", spaceKey);
+		builder.field("propertyName", propertyName).field(STORE_FIELD_OBJECT_VALUE, value);
+		builder.endObject();
+		client.prepareIndex(getRiverIndexName(), riverName.name(), documentName).setSource(builder).execute().actionGet();
+	}
+
+	/**
+	 * Put mapping which disables indexing of {@link #STORE_FIELD_OBJECT_VALUE} field, only once per river instance.
+	 * 
+	 * @throws IOException
+	 */
+	protected synchronized void prepareObjectValueMapping() throws IOException {
+		if (objectValueMappingPrepared)
+			return;
+		XContentBuilder mapping = jsonBuilder().startObject().startObject(riverName.name()).startObject("properties")
+				.startObject(STORE_FIELD_OBJECT_VALUE).field("type", "object").field("enabled", false).endObject()
+				.endObject().endObject().endObject();
+		client.admin().indices().preparePutMapping(getRiverIndexName()).setType(riverName.name()).setSource(mapping)
+				.execute().actionGet();
+		objectValueMappingPrepared = true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Map<String, Object> readObjectValue(String spaceKey, String propertyName) throws IOException {
+		String documentName = prepareValueStoreDocumentName(spaceKey, propertyName);
+
+		if (logger.isDebugEnabled())
+			logger.debug("Going to read object value from {} property for space {}. Document name is {}.", propertyName,
+					spaceKey, documentName);
+
+		GetResponse getResponse = client.prepareGet(getRiverIndexName(), riverName.name(), documentName).execute()
+				.actionGet();
+		if (getResponse.isExists()) {
+			Object value = getResponse.getSourceAsMap().get(STORE_FIELD_OBJECT_VALUE);
+			if (value instanceof Map)
+				return (Map<String, Object>) value;
+		} else {
+			if (logger.isDebugEnabled())
+				logger.debug("{} document doesn't exist in remote river persistent store", documentName);
+		}
+		return null;
+	}
+
 	/**
 	 * @return
 	 */
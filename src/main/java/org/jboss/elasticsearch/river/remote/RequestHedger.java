@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Policy of hedged requests. Duplicate (hedge) request is sent if original request is not answered within configured
+ * percentile of recent latencies. Number of hedges is limited by budget - each request adds configured fraction of one
+ * hedge into the budget (up to {@link #BUDGET_MAX}), each hedge takes one from it.
+ * <p>
+ * Thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RequestHedger {
+
+	/**
+	 * Number of recent latencies the percentile is computed from.
+	 */
+	protected static final int LATENCY_WINDOW_SIZE = 1000;
+
+	/**
+	 * Minimal number of recorded latencies necessary to send hedges.
+	 */
+	protected static final int LATENCY_MIN_SAMPLES = 20;
+
+	/**
+	 * Maximal number of hedges which can be accumulated in budget.
+	 */
+	protected static final double BUDGET_MAX = 10;
+
+	protected final int percentile;
+
+	protected final double budgetRatio;
+
+	protected final long minDelay;
+
+	private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+
+	private int latenciesCount = 0;
+
+	private int latenciesNext = 0;
+
+	private long delay = -1;
+
+	private double budget = 0;
+
+	private long requests = 0;
+
+	private long hedges = 0;
+
+	private long hedgeWins = 0;
+
+	private long budgetExhausted = 0;
+
+	/**
+	 * Create hedger.
+	 *
+	 * @param percentile of recent latencies to send hedge after, 1 to 99
+	 * @param budgetRatio maximal number of hedges per request, eg. 0.1 means at most 10% of requests are hedged
+	 * @param minDelay minimal time to send hedge after [ms]
+	 */
+	public RequestHedger(int percentile, double budgetRatio, long minDelay) {
+		if (percentile < 1 || percentile > 99)
+			throw new IllegalArgumentException("percentile must be between 1 and 99");
+		this.percentile = percentile;
+		this.budgetRatio = budgetRatio;
+		this.minDelay = minDelay;
+	}
+
+	/**
+	 * Record request which can be hedged, adds into budget.
+	 */
+	public synchronized void recordRequest() {
+		requests++;
+		budget = Math.min(BUDGET_MAX, budget + budgetRatio);
+	}
+
+	/**
+	 * Record latency of successful request.
+	 *
+	 * @param latency [ms]
+	 */
+	public synchronized void recordLatency(long latency) {
+		latencies[latenciesNext] = latency;
+		latenciesNext = (latenciesNext + 1) % LATENCY_WINDOW_SIZE;
+		if (latenciesCount < LATENCY_WINDOW_SIZE)
+			latenciesCount++;
+		delay = -1;
+	}
+
+	/**
+	 * Get time to wait for response before hedge is sent.
+	 *
+	 * @return delay [ms] or -1 if not enough latencies is recorded yet, so hedge is not sent
+	 */
+	public synchronized long getHedgeDelay() {
+		if (latenciesCount < LATENCY_MIN_SAMPLES)
+			return -1;
+		if (delay < 0) {
+			long[] sorted = Arrays.copyOf(latencies, latenciesCount);
+			Arrays.sort(sorted);
+			int idx = (int) Math.ceil(percentile / 100d * latenciesCount) - 1;
+			delay = Math.max(minDelay, sorted[Math.max(0, idx)]);
+		}
+		return delay;
+	}
+
+	/**
+	 * Take one hedge from budget.
+	 *
+	 * @return true if hedge may be sent, false if budget is exhausted
+	 */
+	public synchronized boolean tryAcquireHedge() {
+		if (budget >= 1) {
+			budget -= 1;
+			hedges++;
+			return true;
+		}
+		budgetExhausted++;
+		return false;
+	}
+
+	/**
+	 * Record that hedge responded before the original request.
+	 */
+	public synchronized void recordHedgeWin() {
+		hedgeWins++;
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	public synchronized long getHedges() {
+		return hedges;
+	}
+
+	public synchronized long getHedgeWins() {
+		return hedgeWins;
+	}
+
+	public synchronized long getBudgetExhausted() {
+		return budgetExhausted;
+	}
+
+	/**
+	 * Write hedging stats into <code>hedging</code> object.
+	 *
+	 * @param builder to write into
+	 * @throws IOException
+	 */
+	public synchronized void buildStats(XContentBuilder builder) throws IOException {
+		builder.startObject("hedging");
+		builder.field("requests", requests);
+		builder.field("hedges", hedges);
+		builder.field("hedge_wins", hedgeWins);
+		builder.field("budget_exhausted", budgetExhausted);
+		builder.field("delay", getHedgeDelay());
+		builder.endObject();
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.elasticsearch.common.jackson.core.JsonProcessingException;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
+
+/**
+ * Policy of retries for failed calls to the remote system. Only calls failed due transient problems are retried (I/O
+ * errors except protocol and JSON parsing errors, HTTP 408, 429, 500, 502, 503 and 504 codes), with exponential backoff and random jitter.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RetryPolicy {
+
+	/**
+	 * Policy without retries.
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+	protected final int maxRetries;
+
+	protected final long backoffMillis;
+
+	protected final long maxBackoffMillis;
+
+	/**
+	 * @param maxRetries maximal number of retries, 0 means no retry
+	 * @param backoffMillis backoff before first retry, doubled for each next retry
+	 * @param maxBackoffMillis maximal backoff
+	 */
+	public RetryPolicy(int maxRetries, long backoffMillis, long maxBackoffMillis) {
+		this.maxRetries = maxRetries;
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = Math.max(backoffMillis, maxBackoffMillis);
+	}
+
+	/**
+	 * @return maximal number of retries
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * Get time to wait before retry. Half of the exponential backoff is randomized to spread retries from parallel
+	 * indexing threads.
+	 *
+	 * @param retry number of retry, from 0
+	 * @return time to wait in millis
+	 */
+	public long getBackoffMillis(int retry) {
+		long backoff = backoffMillis;
+		for (int i = 0; i < retry && backoff < maxBackoffMillis; i++) {
+			backoff = backoff * 2;
+		}
+		backoff = Math.min(backoff, maxBackoffMillis);
+		long half = backoff / 2;
+		return backoff - half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+	}
+
+	/**
+	 * Check if failed call may be retried.
+	 *
+	 * @param e exception thrown from failed call
+	 * @return true if call may be retried
+	 */
+	public static boolean isRetryable(Exception e) {
+		if (e instanceof HttpCallException) {
+			switch (((HttpCallException) e).getStatusCode()) {
+			case HttpStatus.SC_REQUEST_TIMEOUT:
+			case HttpRemoteSystemClientBase.HTTP_STATUS_TOO_MANY_REQUESTS:
+			case HttpStatus.SC_INTERNAL_SERVER_ERROR:
+			case HttpStatus.SC_BAD_GATEWAY:
+			case HttpStatus.SC_SERVICE_UNAVAILABLE:
+			case HttpStatus.SC_GATEWAY_TIMEOUT:
+				return true;
+			default:
+				return false;
+			}
+		}
+		return e instanceof IOException && !(e instanceof JsonProcessingException)
+				&& !(e instanceof ClientProtocolException);
+	}
+
+	/**
+	 * Check if failed call means remote system failure, so it should be counted by circuit breaker. Same as
+	 * {@link #isRetryable(Exception)} except HTTP 429 which means remote system is alive.
+	 *
+	 * @param e exception thrown from failed call
+	 * @return true if failure of remote system
+	 */
+	public static boolean isRemoteSystemFailure(Exception e) {
+		if (e instanceof HttpCallException
+				&& ((HttpCallException) e).getStatusCode() == HttpRemoteSystemClientBase.HTTP_STATUS_TOO_MANY_REQUESTS)
+			return false;
+		return isRetryable(e);
+	}
+
+}
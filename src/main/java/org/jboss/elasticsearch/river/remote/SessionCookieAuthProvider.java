@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.client.BasicCookieStore;
+
+/**
+ * Authentication provider using session cookies. Cookies set by response of the login call to the
+ * <code>remote/authUrl</code> are sent in <code>Cookie</code> header of all requests. Session is renewed after
+ * <code>remote/authTtl</code> or after first request refused by remote system.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SessionCookieAuthProvider extends HttpAuthProviderBase {
+
+	@Override
+	protected String login(HttpClientContext context, long[] lifetime) throws Exception {
+		// own cookie store so session cookies are not mixed with cookies of other requests
+		CookieStore cookieStore = new BasicCookieStore();
+		context.setCookieStore(cookieStore);
+		performAuthCall(context);
+		StringBuilder sb = new StringBuilder();
+		for (Cookie c : cookieStore.getCookies()) {
+			if (sb.length() > 0)
+				sb.append("; ");
+			sb.append(c.getName()).append("=").append(c.getValue());
+		}
+		if (sb.length() == 0)
+			throw new Exception("Login response from " + authUrl + " doesn't set any cookie");
+		return sb.toString();
+	}
+
+	@Override
+	protected void applyCredential(HttpRequestBase request, String credential) {
+		request.setHeader("Cookie", credential);
+	}
+
+}
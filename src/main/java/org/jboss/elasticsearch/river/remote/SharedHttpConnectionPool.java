@@ -0,0 +1,272 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Pool of HTTP connections shared by all rivers running on the ES node which use <code>remote/httpSharedPool</code>.
+ * Limits are configured in node settings (<code>elasticsearch.yml</code>):
+ * <ul>
+ * <li><code>river.remote.http.pool.max_total</code> - maximal number of connections, default 200
+ * <li><code>river.remote.http.pool.max_per_route</code> - maximal number of connections to one remote host, default 20
+ * <li><code>river.remote.http.pool.idle_timeout</code> - time after which idle connection is closed, default 60s
+ * <li><code>river.remote.http.pool.keep_alive</code> - time connection is kept alive if remote system doesn't define it
+ * in <code>Keep-Alive</code> response header, default 30s
+ * </ul>
+ * Expired and idle connections are closed by background thread.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SharedHttpConnectionPool {
+
+	public static final String SETTING_MAX_TOTAL = "river.remote.http.pool.max_total";
+	public static final String SETTING_MAX_PER_ROUTE = "river.remote.http.pool.max_per_route";
+	public static final String SETTING_IDLE_TIMEOUT = "river.remote.http.pool.idle_timeout";
+	public static final String SETTING_KEEP_ALIVE = "river.remote.http.pool.keep_alive";
+
+	protected static final int DEFAULT_MAX_TOTAL = 200;
+	protected static final int DEFAULT_MAX_PER_ROUTE = 20;
+	protected static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+	protected static final long DEFAULT_KEEP_ALIVE = 30 * 1000;
+
+	/**
+	 * Period of expired and idle connections eviction [ms].
+	 */
+	protected static final long EVICTION_PERIOD = 5 * 1000;
+
+	private static SharedHttpConnectionPool instance;
+
+	private static Settings nodeSettings;
+
+	/**
+	 * Set node settings used to configure pool. Limits of already created pool are changed.
+	 *
+	 * @param settings of the ES node, can be null
+	 */
+	public static synchronized void configure(Settings settings) {
+		nodeSettings = settings;
+		if (instance != null)
+			instance.applySettings(settings);
+	}
+
+	/**
+	 * Get shared pool, create it if not created yet.
+	 *
+	 * @return pool
+	 */
+	public static synchronized SharedHttpConnectionPool getInstance() {
+		if (instance == null) {
+			instance = new SharedHttpConnectionPool(new PoolingHttpClientConnectionManager());
+			instance.applySettings(nodeSettings);
+			instance.startEvictor();
+		}
+		return instance;
+	}
+
+	protected final PoolingHttpClientConnectionManager pool;
+
+	protected final HttpClientConnectionManager meteredConnectionManager;
+
+	protected final AtomicLong leases = new AtomicLong();
+
+	protected final AtomicLong leaseWaitMillis = new AtomicLong();
+
+	protected final AtomicLong leaseWaitMaxMillis = new AtomicLong();
+
+	protected volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	protected volatile long keepAlive = DEFAULT_KEEP_ALIVE;
+
+	private final ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			long ret = super.getKeepAliveDuration(response, context);
+			return ret > 0 ? ret : keepAlive;
+		}
+	};
+
+	protected SharedHttpConnectionPool(PoolingHttpClientConnectionManager pool) {
+		this.pool = pool;
+		this.pool.setDefaultConnectionConfig(ConnectionConfig.custom().setCharset(Consts.UTF_8).build());
+		this.meteredConnectionManager = new MeteredConnectionManager();
+	}
+
+	protected void applySettings(Settings settings) {
+		pool.setMaxTotal(getInt(settings, SETTING_MAX_TOTAL, DEFAULT_MAX_TOTAL));
+		pool.setDefaultMaxPerRoute(getInt(settings, SETTING_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE));
+		idleTimeout = getTime(settings, SETTING_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+		keepAlive = getTime(settings, SETTING_KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+	}
+
+	private static int getInt(Settings settings, String key, int defaultValue) {
+		String value = settings != null ? Utils.trimToNull(settings.get(key)) : null;
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	private static long getTime(Settings settings, String key, long defaultValue) {
+		String value = settings != null ? Utils.trimToNull(settings.get(key)) : null;
+		return value != null ? TimeValue.parseTimeValue(value, null).millis() : defaultValue;
+	}
+
+	private void startEvictor() {
+		Thread evictor = EsExecutors.daemonThreadFactory("remote_river_http_pool_evictor").newThread(new Runnable() {
+			@Override
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					try {
+						Thread.sleep(EVICTION_PERIOD);
+					} catch (InterruptedException e) {
+						return;
+					}
+					evictConnections();
+				}
+			}
+		});
+		evictor.start();
+	}
+
+	/**
+	 * Close expired and idle connections.
+	 */
+	protected void evictConnections() {
+		pool.closeExpiredConnections();
+		pool.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Get connection manager to be used by HTTP client. Time spent waiting for connection lease is measured by it.
+	 *
+	 * @return connection manager
+	 */
+	public HttpClientConnectionManager getConnectionManager() {
+		return meteredConnectionManager;
+	}
+
+	/**
+	 * Get keep alive strategy to be used by HTTP client.
+	 *
+	 * @return strategy using <code>Keep-Alive</code> response header, or configured keep alive time if not present
+	 */
+	public ConnectionKeepAliveStrategy getKeepAliveStrategy() {
+		return keepAliveStrategy;
+	}
+
+	protected void leased(long waitMillis) {
+		leases.incrementAndGet();
+		leaseWaitMillis.addAndGet(waitMillis);
+		long max;
+		while ((max = leaseWaitMaxMillis.get()) < waitMillis) {
+			if (leaseWaitMaxMillis.compareAndSet(max, waitMillis))
+				break;
+		}
+	}
+
+	/**
+	 * Write pool utilization stats into <code>shared_pool</code> object.
+	 *
+	 * @param builder to write into
+	 * @throws IOException
+	 */
+	public void buildStats(XContentBuilder builder) throws IOException {
+		PoolStats stats = pool.getTotalStats();
+		builder.startObject("shared_pool");
+		builder.field("max_total", stats.getMax());
+		builder.field("max_per_route", pool.getDefaultMaxPerRoute());
+		builder.field("leased", stats.getLeased());
+		builder.field("available", stats.getAvailable());
+		builder.field("pending", stats.getPending());
+		builder.field("leases", leases.get());
+		builder.field("lease_wait_millis", leaseWaitMillis.get());
+		builder.field("lease_wait_max_millis", leaseWaitMaxMillis.get());
+		builder.endObject();
+	}
+
+	/**
+	 * Connection manager delegating to the pool, measures time spent waiting for connection lease.
+	 */
+	protected class MeteredConnectionManager implements HttpClientConnectionManager {
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ConnectionRequest request = pool.requestConnection(route, state);
+			return new ConnectionRequest() {
+
+				@Override
+				public boolean cancel() {
+					return request.cancel();
+				}
+
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException,
+						ExecutionException, ConnectionPoolTimeoutException {
+					long start = System.currentTimeMillis();
+					HttpClientConnection ret = request.get(timeout, tunit);
+					leased(System.currentTimeMillis() - start);
+					return ret;
+				}
+			};
+		}
+
+		@Override
+		public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+			pool.releaseConnection(conn, newState, validDuration, timeUnit);
+		}
+
+		@Override
+		public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+				throws IOException {
+			pool.connect(conn, route, connectTimeout, context);
+		}
+
+		@Override
+		public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+			pool.upgrade(conn, route, context);
+		}
+
+		@Override
+		public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+			pool.routeComplete(conn, route, context);
+		}
+
+		@Override
+		public void closeIdleConnections(long idletime, TimeUnit tunit) {
+			pool.closeIdleConnections(idletime, tunit);
+		}
+
+		@Override
+		public void closeExpiredConnections() {
+			pool.closeExpiredConnections();
+		}
+
+		@Override
+		public void shutdown() {
+			// shared pool is never shut down by one of clients
+		}
+	}
+
+}
@@ -6,8 +6,12 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 
@@ -32,6 +36,38 @@ public class SpaceByLastUpdateTimestampIndexer extends SpaceIndexerBase {
 	 */
 	protected static final String STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE = "lastIndexedDocumentUpdateDate";
 
+	/**
+	 * Number of threads used to process time windows in parallel. Value <= 1 means history is processed sequentially.
+	 */
+	protected int backfillConcurrency = 1;
+
+	/**
+	 * Size of time window [ms] used to split history for parallel processing. Value <= 0 means history is processed
+	 * sequentially.
+	 */
+	protected long backfillWindowSize = 0;
+
+	/**
+	 * Size of the first adaptive time window if not configured in remote system client [ms].
+	 */
+	protected static final long ADAPTIVE_WINDOW_DEFAULT_SIZE = 60L * 60L * 1000L;
+
+	protected static final long ADAPTIVE_WINDOW_MIN_SIZE = 1000L;
+
+	protected static final long ADAPTIVE_WINDOW_MAX_SIZE = 365L * 24L * 60L * 60L * 1000L;
+
+	/**
+	 * Number of documents per time window targeted by adaptive window sizing. Value <= 0 means adaptive windows are not
+	 * used.
+	 */
+	protected int adaptiveWindowTargetSize = 0;
+
+	/**
+	 * Maximal average response time [ms] of remote system for one time window, window is shrunk if exceeded. Value <= 0
+	 * means latency is not checked.
+	 */
+	protected long adaptiveWindowMaxLatency = 0;
+
 	/**
 	 * Create and configure indexer.
 	 * 
@@ -59,37 +95,86 @@ public class SpaceByLastUpdateTimestampIndexer extends SpaceIndexerBase {
 		Date updatedAfterStarting = updatedAfter;
 		if (updatedAfter == null)
 			indexingInfo.fullUpdate = true;
+
+		logger.info("Go to perform {} update for Space {}", indexingInfo.fullUpdate ? "full" : "incremental", spaceKey);
+
+		if (isBackfillEnabled()) {
+			Date backfillFrom = updatedAfter != null ? updatedAfter
+					: ((IRemoteSystemClientTimeWindows) remoteSystemClient).getUpdatedAfterInitialValue();
+			Date backfillTo = new Date();
+			if (backfillFrom != null && backfillTo.getTime() - backfillFrom.getTime() > backfillWindowSize) {
+				processBackfill(backfillFrom, backfillTo);
+				return;
+			}
+		}
+
+		if (isAdaptiveWindowEnabled()) {
+			Date from = updatedAfter != null ? updatedAfter : ((IRemoteSystemClientTimeWindows) remoteSystemClient)
+					.getUpdatedAfterInitialValue();
+			if (from != null) {
+				processAdaptiveWindows(from, new Date());
+				return;
+			}
+		}
+
+		Date lastDocumentUpdatedDate = processDocuments(updatedAfter, null, true, null);
+
+		if (indexingInfo.documentsUpdated > 0 && lastDocumentUpdatedDate != null && updatedAfterStarting != null
+				&& updatedAfterStarting.equals(lastDocumentUpdatedDate)) {
+			// no any new document during this update cycle, go to increment lastDocumentUpdatedDate in store by one second
+			// not to index last document again and again in next cycle
+			storeLastDocumentUpdatedDate(null, spaceKey, new Date(lastDocumentUpdatedDate.getTime() + 1000));
+		}
+	}
+
+	/**
+	 * Process documents updated after given date till the end of list returned from remote system.
+	 * 
+	 * @param updatedAfter to get documents updated after, null for whole history
+	 * @param updatedBefore end of time window, null if not limited
+	 * @param storeProgress true to store update date of last processed document with each bulk
+	 * @param stats to collect statistics of remote system calls into, may be null
+	 * @return update date of last processed document, null if no any processed
+	 * @throws Exception
+	 */
+	protected Date processDocuments(Date updatedAfter, Date updatedBefore, boolean storeProgress, WindowStats stats)
+			throws Exception {
 		Date lastDocumentUpdatedDate = null;
 
 		int startAt = 0;
-
-		logger.info("Go to perform {} update for Space {}", indexingInfo.fullUpdate ? "full" : "incremental", spaceKey);
+		String cursor = null;
 
 		boolean cont = true;
 		while (cont) {
-			if (isClosed())
-				throw new InterruptedException("Interrupted because River is closed");
+			checkWorkerInterrupted();
 
 			if (logger.isDebugEnabled())
-				logger.debug("Go to ask remote system for updated documents for space {} with startAt {} and updated {}",
-						spaceKey, startAt, (updatedAfter != null ? ("after " + updatedAfter) : "in whole history"));
+				logger.debug("Go to ask remote system for updated documents for space {} with startAt {} and updated {}{}",
+						spaceKey, startAt, (updatedAfter != null ? ("after " + updatedAfter) : "in whole history"),
+						(updatedBefore != null ? (" before " + updatedBefore) : ""));
 
-			ChangedDocumentsResults res = remoteSystemClient.getChangedDocuments(spaceKey, startAt, indexingInfo.fullUpdate,
-					updatedAfter);
+			long callStart = System.currentTimeMillis();
+			ChangedDocumentsResults res = getChangedDocuments(startAt, cursor, updatedAfter, updatedBefore);
+			long processingStart = System.currentTimeMillis();
+			if (stats != null) {
+				stats.calls++;
+				stats.latency += processingStart - callStart;
+				stats.documents += res.getDocumentsCount();
+			}
 
 			if (res.getDocumentsCount() == 0) {
 				cont = false;
 			} else {
-				if (isClosed())
-					throw new InterruptedException("Interrupted because River is closed");
+				checkWorkerInterrupted();
 
 				Date firstDocumentUpdatedDate = null;
 				int updatedInThisBulk = 0;
 				boolean deletedInThisBulk = false;
 				BulkRequestBuilder esBulk = esIntegrationComponent.prepareESBulkRequestBuilder();
+				DocumentDetailsFetch detailsFetch = startDocumentDetailsFetch(res.getDocuments());
 				for (Map<String, Object> document : res.getDocuments()) {
 					String documentId = getDocumentIdChecked(document);
-					if (getDocumentDetail(documentId, document)) {
+					if (detailsFetch.getDocumentDetail(documentId, document)) {
 						lastDocumentUpdatedDate = documentIndexStructureBuilder.extractDocumentUpdated(document);
 						logger.debug("Go to update index for document '{}' with updated {}", documentId, lastDocumentUpdatedDate);
 						if (lastDocumentUpdatedDate == null) {
@@ -106,21 +191,27 @@ public class SpaceByLastUpdateTimestampIndexer extends SpaceIndexerBase {
 							updatedInThisBulk++;
 						}
 					}
-					if (isClosed())
-						throw new InterruptedException("Interrupted because River is closed");
+					checkWorkerInterrupted();
 				}
 
-				if (lastDocumentUpdatedDate != null)
+				if (storeProgress && lastDocumentUpdatedDate != null)
 					storeLastDocumentUpdatedDate(esBulk, spaceKey, lastDocumentUpdatedDate);
 
 				if (updatedInThisBulk > 0 || deletedInThisBulk) {
 					executeBulkUpdate(esBulk);
-					indexingInfo.documentsUpdated += updatedInThisBulk;
+					synchronized (indexingInfo) {
+						indexingInfo.documentsUpdated += updatedInThisBulk;
+					}
 				}
+				updatePageSize(res, processingStart - callStart, System.currentTimeMillis() - processingStart);
 
-				// next logic depends on documents sorted by update timestamp ascending when returned from remote system
-				if (lastDocumentUpdatedDate != null && firstDocumentUpdatedDate != null
+				cursor = getNextCursor(res);
+				if (cursor != null) {
+					// cursor is bound to the current search, so we keep updatedAfter and go over it till the last page
+					startAt = res.getStartAt() + res.getDocumentsCount();
+				} else if (lastDocumentUpdatedDate != null && firstDocumentUpdatedDate != null
 						&& !lastDocumentUpdatedDate.equals(firstDocumentUpdatedDate)) {
+					// next logic depends on documents sorted by update timestamp ascending when returned from remote system
 					// processed documents updated in different times, so we can continue by document filtering based on latest
 					// time
 					// of update which is more safe for concurrent changes in the remote system
@@ -165,11 +256,252 @@ public class SpaceByLastUpdateTimestampIndexer extends SpaceIndexerBase {
 			}
 		}
 
-		if (indexingInfo.documentsUpdated > 0 && lastDocumentUpdatedDate != null && updatedAfterStarting != null
-				&& updatedAfterStarting.equals(lastDocumentUpdatedDate)) {
-			// no any new document during this update cycle, go to increment lastDocumentUpdatedDate in store by one second
-			// not to index last document again and again in next cycle
-			storeLastDocumentUpdatedDate(null, spaceKey, new Date(lastDocumentUpdatedDate.getTime() + 1000));
+		return lastDocumentUpdatedDate;
+	}
+
+	/**
+	 * Get page of changed documents, in time window if <code>updatedBefore</code> is provided.
+	 * 
+	 * @see #getChangedDocuments(int, String, Date)
+	 */
+	protected ChangedDocumentsResults getChangedDocuments(int startAt, String cursor, Date updatedAfter, Date updatedBefore)
+			throws Exception {
+		if (updatedBefore != null) {
+			applyPageSize();
+			return ((IRemoteSystemClientTimeWindows) remoteSystemClient).getChangedDocuments(spaceKey, startAt, cursor,
+					indexingInfo.fullUpdate, updatedAfter, updatedBefore);
+		}
+		return getChangedDocuments(startAt, cursor, updatedAfter);
+	}
+
+	/**
+	 * Check if history may be processed in parallel time windows.
+	 * 
+	 * @return true if backfill is configured and supported by remote system client
+	 */
+	protected boolean isBackfillEnabled() {
+		return backfillConcurrency > 1 && backfillWindowSize > 0
+				&& remoteSystemClient instanceof IRemoteSystemClientTimeWindows
+				&& ((IRemoteSystemClientTimeWindows) remoteSystemClient).isTimeWindowsSupported();
+	}
+
+	/**
+	 * Split time range into windows of {@link #backfillWindowSize} and process them on {@link #backfillConcurrency}
+	 * threads. Stored "last indexed document update date" is moved to the latest update date of document indexed in
+	 * window only when this window and all windows before it are processed, so no any gap is left in index if process
+	 * fails. End of window is never stored, as it is derived from local clock which may be ahead of the remote system,
+	 * so documents updated later with older timestamp would be skipped by the next run. Each thread takes next free
+	 * window when previous one is done, indexing thread processes windows too. Method returns when all windows are
+	 * processed, first failure stops other threads before their next page and is thrown once all of them ended, see
+	 * {@link #runWorkers(String, int, Callable)}.
+	 * <p>
+	 * Both window boundaries are inclusive (documents updated at or after window start and at or before window end are
+	 * listed), so adjacent windows share the boundary instant and documents updated exactly at it are listed and
+	 * indexed in both of them.
+	 * 
+	 * @param from start of time range
+	 * @param to end of time range
+	 * @throws Exception
+	 */
+	protected void processBackfill(Date from, Date to) throws Exception {
+		final List<Date> windowEnds = new ArrayList<Date>();
+		long t = from.getTime();
+		do {
+			t = Math.min(t + backfillWindowSize, to.getTime());
+			windowEnds.add(new Date(t));
+		} while (t < to.getTime());
+
+		logger.info("Go to backfill space {} from {} to {} in {} time windows on {} threads", spaceKey, from, to,
+				windowEnds.size(), backfillConcurrency);
+
+		final List<Date> windowStarts = new ArrayList<Date>();
+		windowStarts.add(from);
+		windowStarts.addAll(windowEnds.subList(0, windowEnds.size() - 1));
+		final BackfillProgress progress = new BackfillProgress(windowEnds);
+		final AtomicInteger nextWindow = new AtomicInteger();
+		runWorkers("remote_river_backfill_" + spaceKey + "_", backfillConcurrency, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				int window;
+				while ((window = nextWindow.getAndIncrement()) < windowEnds.size()) {
+					checkWorkerInterrupted();
+					Date lastDocumentUpdatedDate = processDocuments(windowStarts.get(window), windowEnds.get(window), false,
+							null);
+					windowProcessed(progress, window, lastDocumentUpdatedDate);
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Check if adaptive time windows may be used.
+	 * 
+	 * @return true if adaptive windows are configured and supported by remote system client
+	 */
+	protected boolean isAdaptiveWindowEnabled() {
+		return adaptiveWindowTargetSize > 0 && remoteSystemClient instanceof IRemoteSystemClientTimeWindows
+				&& ((IRemoteSystemClientTimeWindows) remoteSystemClient).isTimeWindowsSupported();
+	}
+
+	/**
+	 * Process time range sequentially in time windows. Size of the next window is computed from number of documents
+	 * and response time of the previous one, see {@link #computeNextWindowSize(long, int, long)}. Update date of the
+	 * latest document indexed so far is stored as "last indexed document update date" when window is processed. End of
+	 * window is never stored, as it is derived from local clock which may be ahead of the remote system. Window
+	 * boundaries are inclusive, see {@link #processBackfill(Date, Date)}. Decisions are recorded in {@link #indexingInfo}.
+	 * 
+	 * @param from start of time range
+	 * @param to end of time range
+	 * @throws Exception
+	 */
+	protected void processAdaptiveWindows(Date from, Date to) throws Exception {
+		Long span = ((IRemoteSystemClientTimeWindows) remoteSystemClient).getUpdatedBeforeTimeSpan();
+		long windowSize = span != null && span > 0 ? span : ADAPTIVE_WINDOW_DEFAULT_SIZE;
+		Date windowStart = from;
+		Date lastStoredDate = null;
+		while (windowStart.before(to)) {
+			if (isClosed())
+				throw new InterruptedException("Interrupted because River is closed");
+			Date windowEnd = new Date(Math.min(windowStart.getTime() + windowSize, to.getTime()));
+			WindowStats stats = new WindowStats();
+			Date lastDocumentUpdatedDate = processDocuments(windowStart, windowEnd, false, stats);
+			if (lastDocumentUpdatedDate != null
+					&& (lastStoredDate == null || lastDocumentUpdatedDate.after(lastStoredDate))) {
+				storeLastDocumentUpdatedDate(null, spaceKey, lastDocumentUpdatedDate);
+				lastStoredDate = lastDocumentUpdatedDate;
+			}
+
+			long processedSize = windowEnd.getTime() - windowStart.getTime();
+			long latency = stats.calls > 0 ? stats.latency / stats.calls : 0;
+			long nextWindowSize = computeNextWindowSize(processedSize, stats.documents, latency);
+			logger.debug("Time window for space {} from {} of {} ms contained {} documents with latency {} ms, next size {} ms",
+					spaceKey, windowStart, processedSize, stats.documents, latency, nextWindowSize);
+			synchronized (indexingInfo) {
+				indexingInfo.addTimeWindowDecision(windowStart, processedSize, stats.documents, latency, nextWindowSize);
+			}
+			windowSize = nextWindowSize;
+			windowStart = windowEnd;
+		}
+	}
+
+	/**
+	 * Compute size of the next time window so it contains {@link #adaptiveWindowTargetSize} documents, assuming similar
+	 * document density as in the previous window. Window is at most doubled or shrunk to quarter in one step, and shrunk
+	 * at least to half if {@link #adaptiveWindowMaxLatency} is exceeded.
+	 * 
+	 * @param windowSize size of the previous window [ms]
+	 * @param documents number of documents in the previous window
+	 * @param latency average response time for the previous window [ms]
+	 * @return size of the next window [ms]
+	 */
+	protected long computeNextWindowSize(long windowSize, int documents, long latency) {
+		long next;
+		if (documents <= 0) {
+			next = windowSize * 2;
+		} else {
+			next = (long) ((double) windowSize * adaptiveWindowTargetSize / documents);
+			next = Math.max(windowSize / 4, Math.min(windowSize * 2, next));
+		}
+		if (adaptiveWindowMaxLatency > 0 && latency > adaptiveWindowMaxLatency)
+			next = Math.min(next, windowSize / 2);
+		return Math.max(ADAPTIVE_WINDOW_MIN_SIZE, Math.min(ADAPTIVE_WINDOW_MAX_SIZE, next));
+	}
+
+	/**
+	 * Mark time window as processed and store the latest update date of document indexed in continuous sequence of
+	 * processed windows. Nothing is stored if no any document was indexed in these windows.
+	 * 
+	 * @param progress of backfill
+	 * @param window index of processed window
+	 * @param lastDocumentUpdatedDate update date of the last document indexed in window, null if no any
+	 * @throws Exception
+	 */
+	protected void windowProcessed(BackfillProgress progress, int window, Date lastDocumentUpdatedDate)
+			throws Exception {
+		synchronized (progress) {
+			progress.processed[window] = true;
+			progress.lastDocumentUpdatedDates[window] = lastDocumentUpdatedDate;
+			int firstUnprocessed = progress.firstUnprocessed;
+			Date latest = progress.lastStoredDate;
+			while (firstUnprocessed < progress.processed.length && progress.processed[firstUnprocessed]) {
+				Date d = progress.lastDocumentUpdatedDates[firstUnprocessed];
+				if (d != null && (latest == null || d.after(latest)))
+					latest = d;
+				firstUnprocessed++;
+			}
+			progress.firstUnprocessed = firstUnprocessed;
+			if (latest != null && !latest.equals(progress.lastStoredDate)) {
+				storeLastDocumentUpdatedDate(null, spaceKey, latest);
+				progress.lastStoredDate = latest;
+			}
+		}
+	}
+
+	/**
+	 * Configuration - set number of threads used to process time windows in parallel.
+	 * 
+	 * @param backfillConcurrency to set, value <= 1 means history is processed sequentially
+	 */
+	public void setBackfillConcurrency(int backfillConcurrency) {
+		this.backfillConcurrency = backfillConcurrency;
+	}
+
+	/**
+	 * Configuration - set size of time window used to split history for parallel processing.
+	 * 
+	 * @param backfillWindowSize to set [ms], value <= 0 means history is processed sequentially
+	 */
+	public void setBackfillWindowSize(long backfillWindowSize) {
+		this.backfillWindowSize = backfillWindowSize;
+	}
+
+	/**
+	 * Configuration - set number of documents per time window targeted by adaptive window sizing.
+	 * 
+	 * @param adaptiveWindowTargetSize to set, value <= 0 means adaptive windows are not used
+	 */
+	public void setAdaptiveWindowTargetSize(int adaptiveWindowTargetSize) {
+		this.adaptiveWindowTargetSize = adaptiveWindowTargetSize;
+	}
+
+	/**
+	 * Configuration - set maximal average response time of remote system for one adaptive time window.
+	 * 
+	 * @param adaptiveWindowMaxLatency to set [ms], value <= 0 means latency is not checked
+	 */
+	public void setAdaptiveWindowMaxLatency(long adaptiveWindowMaxLatency) {
+		this.adaptiveWindowMaxLatency = adaptiveWindowMaxLatency;
+	}
+
+	/**
+	 * Statistics of remote system calls for one time window.
+	 */
+	protected static class WindowStats {
+		protected int calls;
+		protected long latency;
+		protected int documents;
+	}
+
+	/**
+	 * Progress of time windows processed in parallel.
+	 */
+	protected static class BackfillProgress {
+
+		protected final List<Date> windowEnds;
+
+		protected final boolean[] processed;
+
+		protected final Date[] lastDocumentUpdatedDates;
+
+		protected int firstUnprocessed = 0;
+
+		protected Date lastStoredDate;
+
+		protected BackfillProgress(List<Date> windowEnds) {
+			this.windowEnds = windowEnds;
+			this.processed = new boolean[windowEnds.size()];
+			this.lastDocumentUpdatedDates = new Date[windowEnds.size()];
 		}
 	}
 
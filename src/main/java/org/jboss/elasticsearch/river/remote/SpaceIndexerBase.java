@@ -6,8 +6,24 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
@@ -53,6 +69,37 @@ public abstract class SpaceIndexerBase implements Runnable {
 	 */
 	protected SpaceIndexingInfo indexingInfo;
 
+	/**
+	 * Maximal number of document details fetched from remote system in parallel for one page of documents. Value 1 (or
+	 * less) means that details are fetched one by one in the indexing thread.
+	 */
+	protected int detailFetchConcurrency = 1;
+
+	/**
+	 * Cache of document details shared by space indexers, null if not used.
+	 */
+	protected DocumentDetailCache detailCache;
+
+	/**
+	 * Controller of page size requested from remote system for this space, null if not used.
+	 */
+	protected PageSizeController pageSizeController;
+
+	/**
+	 * Budget of worker threads shared by all space indexers of river, null means worker threads are not limited.
+	 */
+	protected WorkerThreadBudget workerThreadBudget;
+
+	/**
+	 * Executor used to fetch document details in parallel. Created lazily, shut down at the end of {@link #run()}.
+	 */
+	protected ExecutorService detailFetchExecutor;
+
+	/**
+	 * First failure of worker run by {@link #runWorkers(String, int, Callable)}, null if no any failed.
+	 */
+	protected final AtomicReference<Exception> workerFailure = new AtomicReference<Exception>();
+
 	/**
 	 * Create and configure indexer.
 	 * 
@@ -77,7 +124,10 @@ public abstract class SpaceIndexerBase implements Runnable {
 		indexingInfo.startDate = new Date(startTime);
 		try {
 			processUpdate();
+			shutdownDetailFetchExecutor();
+			storePageSize();
 			processDelete(new Date(startTime));
+			notifyIndexingFinished();
 			indexingInfo.timeElapsed = (System.currentTimeMillis() - startTime);
 			indexingInfo.finishedOK = true;
 			esIntegrationComponent.reportIndexingFinished(indexingInfo);
@@ -91,6 +141,8 @@ public abstract class SpaceIndexerBase implements Runnable {
 										+ indexingInfo.getErrorMessage(), spaceKey, indexingInfo.documentsWithError);
 			}
 		} catch (Throwable e) {
+			shutdownDetailFetchExecutor();
+			storePageSize();
 			indexingInfo.timeElapsed = (System.currentTimeMillis() - startTime);
 			indexingInfo.addErrorMessage(e.getMessage());
 			indexingInfo.finishedOK = false;
@@ -104,6 +156,17 @@ public abstract class SpaceIndexerBase implements Runnable {
 		}
 	}
 
+	/**
+	 * Notify remote system client that all changes are indexed, so it can persist its incremental update state.
+	 * 
+	 * @throws Exception
+	 * @see IRemoteSystemClientIncremental#indexingFinished(String)
+	 */
+	protected void notifyIndexingFinished() throws Exception {
+		if (remoteSystemClient instanceof IRemoteSystemClientIncremental)
+			((IRemoteSystemClientIncremental) remoteSystemClient).indexingFinished(spaceKey);
+	}
+
 	/**
 	 * Process update of search index for configured Space. A {@link #indexingInfo.updatedCount} field is updated inside of this
 	 * method. A {@link #indexingInfo.fullUpdate} field can be updated inside of this method also.
@@ -112,6 +175,87 @@ public abstract class SpaceIndexerBase implements Runnable {
 	 */
 	protected abstract void processUpdate() throws Exception;
 
+	/**
+	 * Get page of changed documents from remote system. Cursor based pagination over
+	 * {@link IRemoteSystemClientCursorPaging} is used if cursor is available from previous page and client supports it,
+	 * offset based pagination otherwise.
+	 * 
+	 * @param startAt index of first document to get
+	 * @param cursor returned in previous page, may be null
+	 * @param updatedAfter to get documents updated after, may be null
+	 * @return page of changed documents
+	 * @throws Exception in case of runtime problem
+	 */
+	protected ChangedDocumentsResults getChangedDocuments(int startAt, String cursor, Date updatedAfter)
+			throws Exception {
+		applyPageSize();
+		if (cursor != null && remoteSystemClient instanceof IRemoteSystemClientCursorPaging) {
+			return ((IRemoteSystemClientCursorPaging) remoteSystemClient).getChangedDocuments(spaceKey, startAt, cursor,
+					indexingInfo.fullUpdate, updatedAfter);
+		}
+		return remoteSystemClient.getChangedDocuments(spaceKey, startAt, indexingInfo.fullUpdate, updatedAfter);
+	}
+
+	/**
+	 * Check if page size requested from remote system is tuned by {@link #pageSizeController}.
+	 * 
+	 * @return true if controller is set and remote system client supports page size
+	 */
+	protected boolean isPageSizeControlled() {
+		return pageSizeController != null && remoteSystemClient instanceof IRemoteSystemClientPageSize
+				&& ((IRemoteSystemClientPageSize) remoteSystemClient).isPageSizeSupported();
+	}
+
+	/**
+	 * Pass current page size from {@link #pageSizeController} to the remote system client.
+	 */
+	protected void applyPageSize() {
+		if (isPageSizeControlled())
+			((IRemoteSystemClientPageSize) remoteSystemClient).setPageSize(spaceKey, pageSizeController.getPageSize());
+	}
+
+	/**
+	 * Tune page size based on processing of one page of documents.
+	 * 
+	 * @param res processed page
+	 * @param remoteLatency time of remote system call [ms]
+	 * @param processingTime time of page processing in river [ms]
+	 */
+	protected void updatePageSize(ChangedDocumentsResults res, long remoteLatency, long processingTime) {
+		if (isPageSizeControlled()) {
+			int pageSize = pageSizeController.update(res.getDocumentsCount(), remoteLatency, res.getResponseBytes(),
+					processingTime);
+			if (logger.isDebugEnabled())
+				logger.debug("Page of {} documents for space {} processed in {}+{} ms, next page size {}",
+						res.getDocumentsCount(), spaceKey, remoteLatency, processingTime, pageSize);
+		}
+	}
+
+	/**
+	 * Store page size tuned during this run, so next runs start with it. Failure is only logged.
+	 */
+	protected void storePageSize() {
+		if (isPageSizeControlled()) {
+			try {
+				pageSizeController.store(esIntegrationComponent, spaceKey);
+			} catch (Exception e) {
+				logger.warn("Page size for space {} not stored due: {}", spaceKey, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Return cursor from page of documents if it can be used to get next page.
+	 * 
+	 * @param res page of documents
+	 * @return cursor or null
+	 */
+	protected String getNextCursor(ChangedDocumentsResults res) {
+		if (remoteSystemClient instanceof IRemoteSystemClientCursorPaging)
+			return res.getNextCursor();
+		return null;
+	}
+
 	/**
 	 * Get document detail from remote system if configured, place it under <code>detail</code> key in data.
 	 * {@link IRemoteSystemClient#getChangedDocumentDetails(String, String, Map)} is used inside.
@@ -123,19 +267,372 @@ public abstract class SpaceIndexerBase implements Runnable {
 	 */
 	protected boolean getDocumentDetail(String documentId, Map<String, Object> document) throws Exception {
 		try {
-			Object detail = remoteSystemClient.getChangedDocumentDetails(spaceKey, documentId, document);
+			Object detail = readDetailCache(documentId, document);
+			if (detail == null) {
+				detail = remoteSystemClient.getChangedDocumentDetails(spaceKey, documentId, document);
+				writeDetailCache(documentId, document, detail);
+			}
 			if (detail != null) {
 				document.put(KEY_DETAIL, detail);
 			}
 			return true;
 		} catch (RemoteDocumentNotFoundException e) {
-			// skip rest of processing in this case
-			String msg = "Detail processing problem for document with id ' documentId', so we skip it: " + e.getMessage();
+			handleRemoteDocumentNotFound(documentId, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Get document detail from {@link #detailCache} if used.
+	 * 
+	 * @param documentId of document to get detail for
+	 * @param document data from List Documents call, used to get update timestamp
+	 * @return detail or null if not cached
+	 */
+	protected Object readDetailCache(String documentId, Map<String, Object> document) {
+		if (detailCache == null)
+			return null;
+		return detailCache.get(spaceKey, documentId, extractDetailCacheTimestamp(document));
+	}
+
+	/**
+	 * Put document detail into {@link #detailCache} if used.
+	 * 
+	 * @param documentId of document
+	 * @param document data from List Documents call, used to get update timestamp
+	 * @param detail to cache
+	 */
+	protected void writeDetailCache(String documentId, Map<String, Object> document, Object detail) {
+		if (detailCache != null && detail != null)
+			detailCache.put(spaceKey, documentId, extractDetailCacheTimestamp(document), detail);
+	}
+
+	private Date extractDetailCacheTimestamp(Map<String, Object> document) {
+		try {
+			return documentIndexStructureBuilder.extractDocumentUpdated(document);
+		} catch (RuntimeException e) {
+			// timestamp not configured or invalid, so detail is not cached
+			return null;
+		}
+	}
+
+	/**
+	 * Skip document whose detail is not found in remote system - report it into indexing info.
+	 * 
+	 * @param documentId of skipped document
+	 * @param e exception from remote system client
+	 */
+	protected void handleRemoteDocumentNotFound(String documentId, RemoteDocumentNotFoundException e) {
+		// skip rest of processing in this case
+		String msg = "Detail processing problem for document with id ' documentId', so we skip it: " + e.getMessage();
+		synchronized (indexingInfo) {
 			indexingInfo.addErrorMessage(msg);
 			indexingInfo.documentsWithError++;
-			logger.warn(msg);
-			return false;
 		}
+		logger.warn(msg);
+	}
+
+	/**
+	 * Start fetch of details for all documents from one page returned from remote system. Details are fetched in
+	 * parallel if {@link #detailFetchConcurrency} is bigger than 1, sequentially on demand otherwise. At most
+	 * {@link #detailFetchConcurrency} details are fetched ahead of indexing thread, next fetch is started when indexing
+	 * thread takes detail, so number of details held in memory is bounded even for big pages. Non blocking
+	 * {@link IRemoteSystemClientAsync} calls are used instead of fetching threads if remote system client supports them.
+	 * Fetching threads are taken from {@link #workerThreadBudget}, details are fetched sequentially if no any is
+	 * available. If remote system client supports {@link IRemoteSystemClientBatchDetails} then details for whole page are fetched
+	 * by one batch call here. Use {@link DocumentDetailsFetch#getDocumentDetail(String, Map)} then to obtain detail for each document in the page.
+	 * 
+	 * @param documents page of documents to fetch details for
+	 * @return fetch for given documents
+	 * @throws Exception in case of problem to start async fetch
+	 */
+	protected DocumentDetailsFetch startDocumentDetailsFetch(List<Map<String, Object>> documents) throws Exception {
+		DocumentDetailsFetch fetch = new DocumentDetailsFetch();
+		if (documents == null || documents.isEmpty())
+			return fetch;
+		boolean batch = remoteSystemClient instanceof IRemoteSystemClientBatchDetails
+				&& ((IRemoteSystemClientBatchDetails) remoteSystemClient).isBatchDetailsEnabled();
+		if (!batch && (detailFetchConcurrency <= 1 || documents.size() <= 1))
+			return fetch;
+
+		// cached details are not fetched
+		List<Map<String, Object>> documentsToFetch = new ArrayList<Map<String, Object>>();
+		List<String> documentIds = new ArrayList<String>();
+		for (Map<String, Object> document : documents) {
+			String documentId = documentIndexStructureBuilder.extractDocumentId(document);
+			if (Utils.isEmpty(documentId))
+				continue;
+			Object detail = readDetailCache(documentId, document);
+			if (detail != null) {
+				fetch.cachedDetails.put(document, detail);
+			} else {
+				documentsToFetch.add(document);
+				documentIds.add(documentId);
+			}
+		}
+
+		boolean async = !batch && remoteSystemClient instanceof IRemoteSystemClientAsync
+				&& ((IRemoteSystemClientAsync) remoteSystemClient).isAsyncTransportEnabled();
+		if (!batch && !async && getDetailFetchExecutor() == null) {
+			// no any worker thread available, details are fetched one by one in the indexing thread
+			return fetch;
+		}
+
+		if (batch) {
+			if (!documentIds.isEmpty())
+				fetch.batchDetails = ((IRemoteSystemClientBatchDetails) remoteSystemClient).getChangedDocumentDetails(
+						spaceKey, documentIds);
+			else
+				fetch.batchDetails = new HashMap<String, Object>();
+		} else {
+			if (async) {
+				fetch.asyncClient = (IRemoteSystemClientAsync) remoteSystemClient;
+			}
+			for (int i = 0; i < documentsToFetch.size(); i++) {
+				fetch.pendingDocuments.addLast(documentsToFetch.get(i));
+				fetch.pendingDocumentIds.put(documentsToFetch.get(i), documentIds.get(i));
+			}
+			fetch.startNextFetches();
+		}
+		return fetch;
+	}
+
+	/**
+	 * Details fetch for one page of documents. Details are handed over in the order requested by the indexing thread, so
+	 * document processing order is not affected by parallel fetching.
+	 * 
+	 * @see SpaceIndexerBase#startDocumentDetailsFetch(List)
+	 */
+	protected class DocumentDetailsFetch {
+
+		protected final Map<Map<String, Object>, Future<Object>> futures = new IdentityHashMap<Map<String, Object>, Future<Object>>();
+
+		/**
+		 * Details found in {@link SpaceIndexerBase#detailCache}.
+		 */
+		protected final Map<Map<String, Object>, Object> cachedDetails = new IdentityHashMap<Map<String, Object>, Object>();
+
+		/**
+		 * Details fetched by batch call, by document id. Null if batch call is not used.
+		 */
+		protected Map<String, Object> batchDetails;
+
+		/**
+		 * Documents waiting for start of detail fetch, in the order of indexing.
+		 */
+		protected final Deque<Map<String, Object>> pendingDocuments = new ArrayDeque<Map<String, Object>>();
+
+		/**
+		 * Ids of {@link #pendingDocuments}. Document is removed from here if its detail is obtained other way.
+		 */
+		protected final Map<Map<String, Object>, String> pendingDocumentIds = new IdentityHashMap<Map<String, Object>, String>();
+
+		/**
+		 * Client used for non blocking fetch, null if fetching threads are used.
+		 */
+		protected IRemoteSystemClientAsync asyncClient;
+
+		/**
+		 * Start fetches of next pending documents, so at most {@link SpaceIndexerBase#detailFetchConcurrency} fetches are
+		 * running or waiting for indexing thread.
+		 * 
+		 * @throws Exception in case of problem to start async fetch
+		 */
+		protected void startNextFetches() throws Exception {
+			while (futures.size() < detailFetchConcurrency && !pendingDocuments.isEmpty()) {
+				final Map<String, Object> document = pendingDocuments.pollFirst();
+				final String documentId = pendingDocumentIds.remove(document);
+				if (documentId == null)
+					continue;
+				if (asyncClient != null) {
+					futures.put(document, asyncClient.getChangedDocumentDetailsAsync(spaceKey, documentId, document));
+				} else {
+					futures.put(document, getDetailFetchExecutor().submit(new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							return remoteSystemClient.getChangedDocumentDetails(spaceKey, documentId, document);
+						}
+					}));
+				}
+			}
+		}
+
+		/**
+		 * Get document detail and place it under <code>detail</code> key in data. Waits for parallel fetch if started for
+		 * this document, fetch it directly otherwise.
+		 * 
+		 * @param documentId of document to get
+		 * @param document structure to get details for and place them into
+		 * @return true if document is found correctly, false if not found in remote system
+		 * @throws Exception in case of runtime problem
+		 * @see SpaceIndexerBase#getDocumentDetail(String, Map)
+		 */
+		public boolean getDocumentDetail(String documentId, Map<String, Object> document) throws Exception {
+			Object cached = cachedDetails.remove(document);
+			if (cached != null) {
+				document.put(KEY_DETAIL, cached);
+				return true;
+			}
+			if (batchDetails != null) {
+				if (!batchDetails.containsKey(documentId)) {
+					handleRemoteDocumentNotFound(documentId, new RemoteDocumentNotFoundException(
+							"Document detail not found in batch response"));
+					return false;
+				}
+				Object detail = batchDetails.get(documentId);
+				writeDetailCache(documentId, document, detail);
+				if (detail != null) {
+					document.put(KEY_DETAIL, detail);
+				}
+				return true;
+			}
+			Future<Object> future = futures.remove(document);
+			if (future == null) {
+				pendingDocumentIds.remove(document);
+				return SpaceIndexerBase.this.getDocumentDetail(documentId, document);
+			}
+			startNextFetches();
+			Object detail = null;
+			try {
+				detail = future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RemoteDocumentNotFoundException) {
+					handleRemoteDocumentNotFound(documentId, (RemoteDocumentNotFoundException) e.getCause());
+					return false;
+				}
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+			writeDetailCache(documentId, document, detail);
+			if (detail != null) {
+				document.put(KEY_DETAIL, detail);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Get executor used for parallel document details fetching, create it if not exists yet.
+	 * 
+	 * @return executor, null if no any worker thread is available in {@link #workerThreadBudget} now
+	 */
+	protected synchronized ExecutorService getDetailFetchExecutor() {
+		if (detailFetchExecutor == null) {
+			detailFetchExecutor = createWorkerExecutor("remote_river_detail_fetch_" + spaceKey + "_",
+					detailFetchConcurrency);
+		}
+		return detailFetchExecutor;
+	}
+
+	/**
+	 * Create executor with threads acquired from {@link #workerThreadBudget}. Threads are returned to the budget once
+	 * executor is terminated, so executor must be shut down.
+	 * 
+	 * @param threadNamePrefix prefix of thread names
+	 * @param requestedThreads number of threads requested
+	 * @return executor with at least one and at most requested threads, null if no any thread is available
+	 */
+	protected ThreadPoolExecutor createWorkerExecutor(final String threadNamePrefix, int requestedThreads) {
+		final int threads = workerThreadBudget != null ? workerThreadBudget.acquire(requestedThreads) : requestedThreads;
+		if (threads < requestedThreads)
+			logger.debug("Only {} of {} requested worker threads available for space {}", threads, requestedThreads,
+					spaceKey);
+		if (threads < 1)
+			return null;
+		final AtomicInteger threadCounter = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						return esIntegrationComponent.acquireIndexingThread(threadNamePrefix + threadCounter.incrementAndGet(), r);
+					}
+				}) {
+			@Override
+			protected void terminated() {
+				super.terminated();
+				if (workerThreadBudget != null)
+					workerThreadBudget.release(threads);
+			}
+		};
+	}
+
+	/**
+	 * Shut down executor used for parallel document details fetching if created. Running fetches are interrupted.
+	 */
+	protected synchronized void shutdownDetailFetchExecutor() {
+		if (detailFetchExecutor != null) {
+			detailFetchExecutor.shutdownNow();
+			detailFetchExecutor = null;
+		}
+	}
+
+	/**
+	 * Run worker on calling thread and on up to <code>concurrency - 1</code> other threads taken from
+	 * {@link #workerThreadBudget} in parallel (only on calling thread if no any is available). Worker takes next unit
+	 * of work from state shared by all threads till any remains, and calls {@link #checkWorkerInterrupted()} before each
+	 * of them. First failure of any worker is stored into {@link #workerFailure}, so other workers stop before their next
+	 * unit of work (their threads are interrupted too). Method returns when all workers ended, first failure is thrown.
+	 * 
+	 * @param threadNamePrefix prefix of names of worker threads
+	 * @param concurrency number of workers running in parallel
+	 * @param worker to run
+	 * @throws Exception first failure of worker
+	 */
+	protected void runWorkers(final String threadNamePrefix, int concurrency, final Callable<Object> worker)
+			throws Exception {
+		final ThreadPoolExecutor executor = concurrency > 1 ? createWorkerExecutor(threadNamePrefix, concurrency - 1) : null;
+		Callable<Object> task = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				try {
+					return worker.call();
+				} catch (Exception e) {
+					if (workerFailure.compareAndSet(null, e) && executor != null)
+						executor.shutdownNow();
+					throw e;
+				}
+			}
+		};
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		try {
+			if (executor != null) {
+				for (int i = 0; i < executor.getCorePoolSize(); i++) {
+					futures.add(executor.submit(task));
+				}
+			}
+			task.call();
+		} catch (Exception e) {
+			// stored in workerFailure
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+			for (Future<Object> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					// stored in workerFailure
+				}
+			}
+		}
+		Exception failure = workerFailure.get();
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Check if we must interrupt update process because River is closed, current thread is interrupted or other worker
+	 * of this indexer failed, see {@link #runWorkers(String, int, Callable)}.
+	 * 
+	 * @throws InterruptedException if update process must be interrupted
+	 */
+	protected void checkWorkerInterrupted() throws InterruptedException {
+		if (isClosed())
+			throw new InterruptedException("Interrupted because River is closed");
+		if (workerFailure.get() != null)
+			throw new InterruptedException("Interrupted because other indexing thread failed");
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedException("Interrupted because indexing thread is interrupted");
 	}
 
 	/**
@@ -158,9 +655,11 @@ public abstract class SpaceIndexerBase implements Runnable {
 		try {
 			esIntegrationComponent.executeESBulkRequest(esBulk);
 		} catch (BulkUpdatePartialFailureException e) {
-			indexingInfo.addErrorMessage(e.getMessage());
-			indexingInfo.documentsWithError += e.getNumOfFailures();
-			indexingInfo.documentsUpdated -= e.getNumOfFailures();
+			synchronized (indexingInfo) {
+				indexingInfo.addErrorMessage(e.getMessage());
+				indexingInfo.documentsWithError += e.getNumOfFailures();
+				indexingInfo.documentsUpdated -= e.getNumOfFailures();
+			}
 		}
 	}
 
@@ -241,10 +740,13 @@ public abstract class SpaceIndexerBase implements Runnable {
 			while (scrollResp.getHits().getHits().length > 0) {
 				for (SearchHit hit : scrollResp.getHits()) {
 					logger.debug("Go to delete indexed document for ES document id {}", hit.getId());
-					if (documentIndexStructureBuilder.deleteESDocument(esBulk, hit)) {
-						indexingInfo.documentsDeleted++;
-					} else {
-						indexingInfo.commentsDeleted++;
+					boolean documentDeleted = documentIndexStructureBuilder.deleteESDocument(esBulk, hit);
+					synchronized (indexingInfo) {
+						if (documentDeleted) {
+							indexingInfo.documentsDeleted++;
+						} else {
+							indexingInfo.commentsDeleted++;
+						}
 					}
 					deletedInThisBulk = true;
 				}
@@ -272,4 +774,40 @@ public abstract class SpaceIndexerBase implements Runnable {
 		return indexingInfo;
 	}
 
+	/**
+	 * Set maximal number of document details fetched from remote system in parallel for one page of documents.
+	 * 
+	 * @param detailFetchConcurrency to set, value 1 or less means sequential fetching
+	 */
+	public void setDetailFetchConcurrency(int detailFetchConcurrency) {
+		this.detailFetchConcurrency = detailFetchConcurrency;
+	}
+
+	/**
+	 * Set budget of worker threads shared by all space indexers of river.
+	 * 
+	 * @param workerThreadBudget to set, null means worker threads are not limited
+	 */
+	public void setWorkerThreadBudget(WorkerThreadBudget workerThreadBudget) {
+		this.workerThreadBudget = workerThreadBudget;
+	}
+
+	/**
+	 * Set cache of document details.
+	 * 
+	 * @param detailCache to set, null means no cache
+	 */
+	public void setDetailCache(DocumentDetailCache detailCache) {
+		this.detailCache = detailCache;
+	}
+
+	/**
+	 * Set controller of page size requested from remote system for this space.
+	 * 
+	 * @param pageSizeController to set, null means page size is not requested
+	 */
+	public void setPageSizeController(PageSizeController pageSizeController) {
+		this.pageSizeController = pageSizeController;
+	}
+
 }
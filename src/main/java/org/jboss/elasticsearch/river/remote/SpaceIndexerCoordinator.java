@@ -101,6 +101,76 @@ public class SpaceIndexerCoordinator implements ISpaceIndexerCoordinator {
 	 */
 	protected SpaceIndexingMode spaceIndexingMode;
 
+	/**
+	 * Maximal number of document details fetched in parallel by each space indexer. Value <= 1 means sequential fetching.
+	 */
+	protected int detailFetchConcurrency = 1;
+
+	/**
+	 * Number of next pages of documents prefetched by paginating space indexer. Value <= 0 means no prefetch.
+	 */
+	protected int listPrefetchDepth = 0;
+
+	/**
+	 * Number of threads used by paginating space indexer to fetch and index pages in parallel. Value <= 1 means pages
+	 * are processed one by one.
+	 */
+	protected int pageFetchConcurrency = 1;
+
+	/**
+	 * Number of threads used by update timestamp space indexer to process time windows of history in parallel. Value <=
+	 * 1 means history is processed sequentially.
+	 */
+	protected int backfillConcurrency = 1;
+
+	/**
+	 * Size of time window [ms] used by update timestamp space indexer to split history for parallel processing.
+	 */
+	protected long backfillWindowSize = 0;
+
+	/**
+	 * Number of documents per time window targeted by update timestamp space indexer. Value <= 0 means adaptive time
+	 * windows are not used.
+	 */
+	protected int adaptiveWindowTargetSize = 0;
+
+	/**
+	 * Maximal average response time [ms] of remote system for one adaptive time window.
+	 */
+	protected long adaptiveWindowMaxLatency = 0;
+
+	/**
+	 * Cache of document details shared by all space indexers, null if not used.
+	 */
+	protected DocumentDetailCache detailCache;
+
+	/**
+	 * Budget of worker threads shared by all space indexers, null means worker threads are not limited.
+	 */
+	protected WorkerThreadBudget workerThreadBudget;
+
+	/**
+	 * Bounds of page size requested from remote system. Value of {@link #pageSizeMax} <= 0 means page size is not tuned.
+	 */
+	protected int pageSizeMin = 10;
+
+	protected int pageSizeMax = 0;
+
+	/**
+	 * Time [ms] processing of one page of documents should take, used to tune page size.
+	 */
+	protected long pageSizeTargetTime = 5000;
+
+	/**
+	 * Maximal size of remote system response [bytes] used to tune page size, 0 means not limited.
+	 */
+	protected long pageSizeMaxBytes = 0;
+
+	/**
+	 * Controllers of page size per Space key, created when first used.
+	 */
+	protected final Map<String, PageSizeController> pageSizeControllers = new HashMap<String, PageSizeController>();
+
 	/**
 	 * Queue of Space keys which needs to be reindexed in near future.
 	 * 
@@ -204,6 +274,10 @@ public class SpaceIndexerCoordinator implements ISpaceIndexerCoordinator {
 		if (spaceKeysToIndexQueue.isEmpty()) {
 			// no spaces to process now, we can slow down looping
 			coordinatorThreadWaits = COORDINATOR_THREAD_WAITS_SLOW;
+		} else if (!isRemoteSystemAvailable()) {
+			// do not start indexers hammering remote system which is down, spaces wait in queue
+			logger.debug("Remote system is unavailable, indexing of spaces postponed");
+			coordinatorThreadWaits = COORDINATOR_THREAD_WAITS_SLOW;
 		} else {
 			// some spaces to process now, we need to loop quickly to process it
 			coordinatorThreadWaits = COORDINATOR_THREAD_WAITS_QUICK;
@@ -211,6 +285,41 @@ public class SpaceIndexerCoordinator implements ISpaceIndexerCoordinator {
 		}
 	}
 
+	/**
+	 * Check if remote system client supports incremental update in <code>simple</code> and <code>pagination</code>
+	 * modes.
+	 * 
+	 * @return true if client supports incremental update
+	 * @see IRemoteSystemClientIncremental
+	 */
+	protected boolean isClientIncrementalUpdateSupported() {
+		return isClientIncrementalUpdateSupported(remoteSystemClient);
+	}
+
+	/**
+	 * Check if remote system client supports incremental update in <code>simple</code> and <code>pagination</code>
+	 * modes.
+	 * 
+	 * @param remoteSystemClient to check
+	 * @return true if client supports incremental update
+	 * @see IRemoteSystemClientIncremental
+	 */
+	public static boolean isClientIncrementalUpdateSupported(IRemoteSystemClient remoteSystemClient) {
+		return remoteSystemClient instanceof IRemoteSystemClientIncremental
+				&& ((IRemoteSystemClientIncremental) remoteSystemClient).isIncrementalUpdateSupported();
+	}
+
+	/**
+	 * Check if remote system is available for indexing.
+	 * 
+	 * @return false if remote system client reports remote system is unavailable
+	 * @see IRemoteSystemClientAvailability
+	 */
+	protected boolean isRemoteSystemAvailable() {
+		return !(remoteSystemClient instanceof IRemoteSystemClientAvailability)
+				|| ((IRemoteSystemClientAvailability) remoteSystemClient).isRemoteSystemAvailable();
+	}
+
 	/**
 	 * Fill {@link #spaceKeysToIndexQueue} by spaces which needs to be indexed now.
 	 * 
@@ -286,18 +395,63 @@ public class SpaceIndexerCoordinator implements ISpaceIndexerCoordinator {
 	protected SpaceIndexerBase prepareSpaceIndexer(String spaceKey, boolean fullUpdateNecessary) {
 		if (spaceIndexingMode == null)
 			throw new SettingsException("undefined space indexing mode");
+		SpaceIndexerBase indexer = null;
 		switch (spaceIndexingMode) {
 		case SIMPLE:
-			return new SpaceSimpleIndexer(spaceKey, remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
+			indexer = new SpaceSimpleIndexer(spaceKey, fullUpdateNecessary || !isClientIncrementalUpdateSupported(),
+					remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
+			break;
 		case PAGINATION:
-			return new SpacePaginatingIndexer(spaceKey, remoteSystemClient, esIntegrationComponent,
+			SpacePaginatingIndexer paginatingIndexer = new SpacePaginatingIndexer(spaceKey, fullUpdateNecessary
+					|| !isClientIncrementalUpdateSupported(), remoteSystemClient, esIntegrationComponent,
 					documentIndexStructureBuilder);
+			paginatingIndexer.setListPrefetchDepth(listPrefetchDepth);
+			paginatingIndexer.setPageFetchConcurrency(pageFetchConcurrency);
+			indexer = paginatingIndexer;
+			break;
 		case UPDATE_TIMESTAMP:
-			return new SpaceByLastUpdateTimestampIndexer(spaceKey, fullUpdateNecessary, remoteSystemClient,
-					esIntegrationComponent, documentIndexStructureBuilder);
+			SpaceByLastUpdateTimestampIndexer timestampIndexer = new SpaceByLastUpdateTimestampIndexer(spaceKey,
+					fullUpdateNecessary, remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
+			timestampIndexer.setBackfillConcurrency(backfillConcurrency);
+			timestampIndexer.setBackfillWindowSize(backfillWindowSize);
+			timestampIndexer.setAdaptiveWindowTargetSize(adaptiveWindowTargetSize);
+			timestampIndexer.setAdaptiveWindowMaxLatency(adaptiveWindowMaxLatency);
+			indexer = timestampIndexer;
+			break;
 		default:
 			throw new SettingsException("unsupported space indexing mode");
 		}
+		indexer.setDetailFetchConcurrency(detailFetchConcurrency);
+		indexer.setDetailCache(detailCache);
+		indexer.setWorkerThreadBudget(workerThreadBudget);
+		if (pageSizeMax > 0 && spaceIndexingMode != SpaceIndexingMode.SIMPLE)
+			indexer.setPageSizeController(getPageSizeController(spaceKey));
+		return indexer;
+	}
+
+	/**
+	 * Get controller of page size for Space. It is created when first requested, with page size stored during previous
+	 * indexing runs.
+	 * 
+	 * @param spaceKey to get controller for
+	 * @return page size controller
+	 */
+	protected PageSizeController getPageSizeController(String spaceKey) {
+		synchronized (pageSizeControllers) {
+			PageSizeController controller = pageSizeControllers.get(spaceKey);
+			if (controller == null) {
+				Integer pageSize = null;
+				try {
+					pageSize = PageSizeController.readStoredPageSize(esIntegrationComponent, spaceKey);
+				} catch (Exception e) {
+					logger.warn("Stored page size for space {} not read due: {}", spaceKey, e.getMessage());
+				}
+				controller = new PageSizeController(pageSizeMin, pageSizeMax, pageSizeTargetTime, pageSizeMaxBytes,
+						pageSize != null ? pageSize : PageSizeController.DEFAULT_PAGE_SIZE);
+				pageSizeControllers.put(spaceKey, controller);
+			}
+			return controller;
+		}
 	}
 
 	/**
@@ -427,6 +581,118 @@ public class SpaceIndexerCoordinator implements ISpaceIndexerCoordinator {
 		this.indexFullUpdatePeriod = indexFullUpdatePeriod;
 	}
 
+	/**
+	 * Configuration - Set maximal number of document details fetched in parallel by each space indexer.
+	 * 
+	 * @param detailFetchConcurrency to set, value <= 1 means sequential fetching
+	 */
+	public void setDetailFetchConcurrency(int detailFetchConcurrency) {
+		this.detailFetchConcurrency = detailFetchConcurrency;
+	}
+
+	/**
+	 * Configuration - Set number of next pages of documents prefetched by paginating space indexer.
+	 * 
+	 * @param listPrefetchDepth to set, value <= 0 means no prefetch
+	 */
+	public void setListPrefetchDepth(int listPrefetchDepth) {
+		this.listPrefetchDepth = listPrefetchDepth;
+	}
+
+	/**
+	 * Configuration - Set number of threads used by paginating space indexer to fetch and index pages in parallel.
+	 * 
+	 * @param pageFetchConcurrency to set, value <= 1 means pages are processed one by one
+	 */
+	public void setPageFetchConcurrency(int pageFetchConcurrency) {
+		this.pageFetchConcurrency = pageFetchConcurrency;
+	}
+
+	/**
+	 * Configuration - Set number of threads used by update timestamp space indexer to process time windows of history in
+	 * parallel.
+	 * 
+	 * @param backfillConcurrency to set, value <= 1 means history is processed sequentially
+	 */
+	public void setBackfillConcurrency(int backfillConcurrency) {
+		this.backfillConcurrency = backfillConcurrency;
+	}
+
+	/**
+	 * Configuration - Set size of time window used by update timestamp space indexer to split history for parallel
+	 * processing.
+	 * 
+	 * @param backfillWindowSize to set [ms], value <= 0 means history is processed sequentially
+	 */
+	public void setBackfillWindowSize(long backfillWindowSize) {
+		this.backfillWindowSize = backfillWindowSize;
+	}
+
+	/**
+	 * Configuration - Set number of documents per time window targeted by update timestamp space indexer.
+	 * 
+	 * @param adaptiveWindowTargetSize to set, value <= 0 means adaptive time windows are not used
+	 */
+	public void setAdaptiveWindowTargetSize(int adaptiveWindowTargetSize) {
+		this.adaptiveWindowTargetSize = adaptiveWindowTargetSize;
+	}
+
+	/**
+	 * Configuration - Set maximal average response time of remote system for one adaptive time window.
+	 * 
+	 * @param adaptiveWindowMaxLatency to set [ms], value <= 0 means latency is not checked
+	 */
+	public void setAdaptiveWindowMaxLatency(long adaptiveWindowMaxLatency) {
+		this.adaptiveWindowMaxLatency = adaptiveWindowMaxLatency;
+	}
+
+	/**
+	 * Configuration - Set cache of document details shared by all space indexers.
+	 * 
+	 * @param detailCache to set, null means no cache
+	 */
+	public void setDetailCache(DocumentDetailCache detailCache) {
+		this.detailCache = detailCache;
+	}
+
+	/**
+	 * Configuration - Set budget of worker threads shared by all space indexers.
+	 * 
+	 * @param workerThreadBudget to set, null means worker threads are not limited
+	 */
+	public void setWorkerThreadBudget(WorkerThreadBudget workerThreadBudget) {
+		this.workerThreadBudget = workerThreadBudget;
+	}
+
+	/**
+	 * Configuration - Set bounds of page size requested from remote system by space indexers.
+	 * 
+	 * @param pageSizeMin minimal page size
+	 * @param pageSizeMax maximal page size, value <= 0 means page size is not tuned
+	 */
+	public void setPageSizeBounds(int pageSizeMin, int pageSizeMax) {
+		this.pageSizeMin = pageSizeMin;
+		this.pageSizeMax = pageSizeMax;
+	}
+
+	/**
+	 * Configuration - Set time processing of one page of documents should take.
+	 * 
+	 * @param pageSizeTargetTime to set [ms]
+	 */
+	public void setPageSizeTargetTime(long pageSizeTargetTime) {
+		this.pageSizeTargetTime = pageSizeTargetTime;
+	}
+
+	/**
+	 * Configuration - Set maximal size of remote system response used to tune page size.
+	 * 
+	 * @param pageSizeMaxBytes to set, 0 means not limited
+	 */
+	public void setPageSizeMaxBytes(long pageSizeMaxBytes) {
+		this.pageSizeMaxBytes = pageSizeMaxBytes;
+	}
+
 	@Override
 	public List<SpaceIndexingInfo> getCurrentSpaceIndexingInfo() {
 		List<SpaceIndexingInfo> ret = new ArrayList<SpaceIndexingInfo>();
@@ -6,7 +6,9 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -31,6 +33,15 @@ public class SpaceIndexingInfo {
 	public static final String DOCFIELD_START_DATE = "start_date";
 	public static final String DOCFIELD_SPACE_KEY = "space_key";
 	public static final String DOCFIELD_RIVER_NAME = "river_name";
+	public static final String DOCFIELD_TIME_WINDOWS = "time_windows";
+	private static final String DOCFIELD_TIME_WINDOWS_PROCESSED = "processed";
+	private static final String DOCFIELD_TIME_WINDOWS_NEXT_SIZE = "next_size";
+	private static final String DOCFIELD_TIME_WINDOWS_DECISIONS = "decisions";
+
+	/**
+	 * Maximal number of time window decisions kept in {@link #getTimeWindowDecisions()}, older are discarded.
+	 */
+	public static final int TIME_WINDOW_DECISIONS_MAX = 50;
 
 	/**
 	 * Key of Space this indexing is for.
@@ -74,6 +85,21 @@ public class SpaceIndexingInfo {
 	 */
 	private StringBuilder errorMessage = new StringBuilder();
 
+	/**
+	 * Number of adaptive time windows processed during this indexing run.
+	 */
+	public int timeWindowsProcessed;
+
+	/**
+	 * Size of the next time window [ms] as decided after the last processed one.
+	 */
+	public long timeWindowNextSize;
+
+	/**
+	 * Last decisions about adaptive time window size.
+	 */
+	private List<TimeWindowDecision> timeWindowDecisions = new ArrayList<TimeWindowDecision>();
+
 	/**
 	 * Partially filling constructor.
 	 * 
@@ -141,6 +167,32 @@ public class SpaceIndexingInfo {
 		return errorMessage.toString();
 	}
 
+	/**
+	 * Record decision about size of the next adaptive time window.
+	 * 
+	 * @param windowStart start of processed window
+	 * @param windowSize size of processed window [ms]
+	 * @param documents number of documents returned from remote system for processed window
+	 * @param latency average response time of remote system calls for processed window [ms]
+	 * @param nextWindowSize decided size of the next window [ms]
+	 */
+	public void addTimeWindowDecision(Date windowStart, long windowSize, int documents, long latency, long nextWindowSize) {
+		timeWindowsProcessed++;
+		timeWindowNextSize = nextWindowSize;
+		if (timeWindowDecisions.size() >= TIME_WINDOW_DECISIONS_MAX)
+			timeWindowDecisions.remove(0);
+		timeWindowDecisions.add(new TimeWindowDecision(windowStart, windowSize, documents, latency, nextWindowSize));
+	}
+
+	/**
+	 * Get last decisions about adaptive time window size.
+	 * 
+	 * @return list of decisions, oldest first. Never null.
+	 */
+	public List<TimeWindowDecision> getTimeWindowDecisions() {
+		return timeWindowDecisions;
+	}
+
 	/**
 	 * Add object with space indexing info to given document builder.
 	 * 
@@ -165,6 +217,23 @@ public class SpaceIndexingInfo {
 		builder.field(DOCFIELD_DOCUMENTS_DELETED, documentsDeleted);
 		builder.field(DOCFIELD_COMMENTS_DELETED, commentsDeleted);
 		builder.field(DOCFIELD_DOCUMENTS_WITH_ERROR, documentsWithError);
+		if (timeWindowsProcessed > 0) {
+			builder.startObject(DOCFIELD_TIME_WINDOWS);
+			builder.field(DOCFIELD_TIME_WINDOWS_PROCESSED, timeWindowsProcessed);
+			builder.field(DOCFIELD_TIME_WINDOWS_NEXT_SIZE, timeWindowNextSize);
+			builder.startArray(DOCFIELD_TIME_WINDOWS_DECISIONS);
+			for (TimeWindowDecision d : timeWindowDecisions) {
+				builder.startObject();
+				builder.field("start", d.windowStart);
+				builder.field("size", d.windowSize);
+				builder.field("documents", d.documents);
+				builder.field("latency", d.latency);
+				builder.field("next_size", d.nextWindowSize);
+				builder.endObject();
+			}
+			builder.endArray();
+			builder.endObject();
+		}
 		if (printFinalStatus) {
 			builder.field(DOCFIELD_RESULT, finishedOK ? DOCVAL_RESULT_OK : "ERROR");
 			builder.field(DOCFIELD_TIME_ELAPSED, timeElapsed + "ms");
@@ -195,9 +264,42 @@ public class SpaceIndexingInfo {
 		ret.finishedOK = DOCVAL_RESULT_OK.equals(document.get(DOCFIELD_RESULT));
 		ret.timeElapsed = Long.parseLong(((String) document.get(DOCFIELD_TIME_ELAPSED)).replace("ms", ""));
 		ret.addErrorMessage((String) document.get(DOCFIELD_ERROR_MESSAGE));
+		@SuppressWarnings("unchecked")
+		Map<String, Object> timeWindows = (Map<String, Object>) document.get(DOCFIELD_TIME_WINDOWS);
+		if (timeWindows != null) {
+			ret.timeWindowsProcessed = Utils.nodeIntegerValue(timeWindows.get(DOCFIELD_TIME_WINDOWS_PROCESSED));
+			Object nextSize = timeWindows.get(DOCFIELD_TIME_WINDOWS_NEXT_SIZE);
+			ret.timeWindowNextSize = nextSize instanceof Number ? ((Number) nextSize).longValue() : 0;
+		}
 		return ret;
 	}
 
+	/**
+	 * Decision about size of the next adaptive time window, based on the processed one.
+	 */
+	public static class TimeWindowDecision {
+
+		public final Date windowStart;
+		public final long windowSize;
+		public final int documents;
+		public final long latency;
+		public final long nextWindowSize;
+
+		public TimeWindowDecision(Date windowStart, long windowSize, int documents, long latency, long nextWindowSize) {
+			this.windowStart = windowStart;
+			this.windowSize = windowSize;
+			this.documents = documents;
+			this.latency = latency;
+			this.nextWindowSize = nextWindowSize;
+		}
+
+		@Override
+		public String toString() {
+			return "TimeWindowDecision [windowStart=" + windowStart + ", windowSize=" + windowSize + ", documents="
+					+ documents + ", latency=" + latency + ", nextWindowSize=" + nextWindowSize + "]";
+		}
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
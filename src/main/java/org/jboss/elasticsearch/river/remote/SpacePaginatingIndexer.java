@@ -5,13 +5,22 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 
 /**
  * Class used to run one index update process for one Space. Full update indexing process with paginating support.
- * Incremental indexing not supported.
+ * Incremental indexing supported only if remote system client supports it, see {@link IRemoteSystemClientIncremental}.
  * <p>
  * Can be used only for one run, then must be discarded and new instance created!
  * 
@@ -20,7 +29,7 @@ import org.elasticsearch.action.bulk.BulkRequestBuilder;
 public class SpacePaginatingIndexer extends SpaceIndexerBase {
 
 	/**
-	 * Create and configure indexer.
+	 * Create and configure indexer for full update.
 	 * 
 	 * @param spaceKey to be indexed by this indexer.
 	 * @param remoteSystemClient configured client to be used to obtain informations from remote system.
@@ -29,64 +38,331 @@ public class SpacePaginatingIndexer extends SpaceIndexerBase {
 	 */
 	public SpacePaginatingIndexer(String spaceKey, IRemoteSystemClient remoteSystemClient,
 			IESIntegration esIntegrationComponent, IDocumentIndexStructureBuilder documentIndexStructureBuilder) {
+		this(spaceKey, true, remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
+	}
+
+	/**
+	 * Create and configure indexer.
+	 * 
+	 * @param spaceKey to be indexed by this indexer.
+	 * @param fullUpdate true to request full index update, false for incremental update which must be supported by
+	 *          remote system client, see {@link IRemoteSystemClientIncremental}.
+	 * @param remoteSystemClient configured client to be used to obtain informations from remote system.
+	 * @param esIntegrationComponent to be used to call River component and ElasticSearch functions
+	 * @param documentIndexStructureBuilder to be used during indexing
+	 */
+	public SpacePaginatingIndexer(String spaceKey, boolean fullUpdate, IRemoteSystemClient remoteSystemClient,
+			IESIntegration esIntegrationComponent, IDocumentIndexStructureBuilder documentIndexStructureBuilder) {
 		super(spaceKey, remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
 		logger = esIntegrationComponent.createLogger(SpacePaginatingIndexer.class);
-		indexingInfo = new SpaceIndexingInfo(spaceKey, true);
+		indexingInfo = new SpaceIndexingInfo(spaceKey, fullUpdate);
 	}
 
+	/**
+	 * Number of next pages of documents fetched from remote system while current page is indexed. Value 0 (or less)
+	 * means no prefetch.
+	 */
+	protected int listPrefetchDepth = 0;
+
+	/**
+	 * Number of threads used to fetch and index pages of documents in parallel during full update if total number of
+	 * documents is known. Value 1 (or less) means pages are processed one by one.
+	 */
+	protected int pageFetchConcurrency = 1;
+
+	/**
+	 * Executor used to prefetch next pages. Created lazily, shut down at the end of {@link #processUpdate()}.
+	 */
+	protected ExecutorService listPrefetchExecutor;
+
 	@Override
 	protected void processUpdate() throws Exception {
 		indexingInfo.documentsUpdated = 0;
 
 		int startAt = 0;
+		String cursor = null;
+		Deque<PagePrefetch> prefetchQueue = new ArrayDeque<PagePrefetch>();
 
-		logger.info("Go to perform full update for Space {}", spaceKey);
-
-		boolean cont = true;
-		while (cont) {
-			if (isClosed())
-				throw new InterruptedException("Interrupted because River is closed");
-
-			if (logger.isDebugEnabled())
-				logger.debug("Go to ask remote system for updated documents for space {} with startAt {}", spaceKey, startAt);
-
-			ChangedDocumentsResults res = remoteSystemClient.getChangedDocuments(spaceKey, startAt, indexingInfo.fullUpdate,
-					null);
+		logger.info("Go to perform {} update for Space {}", indexingInfo.fullUpdate ? "full" : "incremental", spaceKey);
 
-			if (res.getDocumentsCount() == 0) {
-				cont = false;
-			} else {
+		try {
+			boolean cont = true;
+			while (cont) {
 				if (isClosed())
 					throw new InterruptedException("Interrupted because River is closed");
 
-				int updatedInThisBulk = 0;
-				boolean deletedInThisBulk = false;
-				BulkRequestBuilder esBulk = esIntegrationComponent.prepareESBulkRequestBuilder();
-				for (Map<String, Object> document : res.getDocuments()) {
-					String documentId = getDocumentIdChecked(document);
-					if (getDocumentDetail(documentId, document)) {
-						logger.debug("Go to update index for document '{}'", documentId);
-						if (documentIndexStructureBuilder.extractDocumentDeleted(document)) {
-							deletedInThisBulk = prepareDeleteByRemoteDocumentId(esBulk, documentId) || deletedInThisBulk;
-						} else {
-							documentIndexStructureBuilder.indexDocument(esBulk, spaceKey, document);
-							updatedInThisBulk++;
-						}
-					}
+				ChangedDocumentsResults res = null;
+				long remoteLatency = 0;
+				FetchedPage prefetched = takePrefetchedPage(prefetchQueue, startAt, cursor);
+				if (prefetched != null) {
+					res = prefetched.results;
+					remoteLatency = prefetched.remoteLatency;
+				} else {
+					if (logger.isDebugEnabled())
+						logger.debug("Go to ask remote system for updated documents for space {} with startAt {}", spaceKey,
+								startAt);
+					long callStart = System.currentTimeMillis();
+					res = getChangedDocuments(startAt, cursor, null);
+					remoteLatency = System.currentTimeMillis() - callStart;
+				}
+				long processingStart = System.currentTimeMillis();
+
+				if (res.getDocumentsCount() == 0) {
+					cont = false;
+				} else {
 					if (isClosed())
 						throw new InterruptedException("Interrupted because River is closed");
-				}
 
-				if (updatedInThisBulk > 0 || deletedInThisBulk) {
-					executeBulkUpdate(esBulk);
-					indexingInfo.documentsUpdated += updatedInThisBulk;
+					startAt = res.getStartAt() + res.getDocumentsCount();
+					cursor = getNextCursor(res);
+					boolean parallel = false;
+					if (cursor == null && res.getTotal() != null) {
+						cont = res.getTotal() > startAt;
+						parallel = cont && pageFetchConcurrency > 1;
+						if (cont && !parallel)
+							schedulePagePrefetch(prefetchQueue, startAt, res.getDocumentsCount(), res.getTotal());
+					}
+
+					processPage(res.getDocuments());
+					// page size must not change for parallel processing as chunks are based on it
+					if (!parallel)
+						updatePageSize(res, remoteLatency, System.currentTimeMillis() - processingStart);
+
+					if (parallel) {
+						processPagesInParallel(startAt, res.getDocumentsCount(), res.getTotal());
+						cont = false;
+					}
 				}
+			}
+		} finally {
+			cancelPagePrefetch(prefetchQueue);
+			shutdownListPrefetchExecutor();
+		}
+	}
 
-				startAt = res.getStartAt() + res.getDocumentsCount();
-				if (res.getTotal() != null) {
-					cont = res.getTotal() > startAt;
+	/**
+	 * Index one page of documents using own ES bulk request.
+	 * 
+	 * @param documents to index
+	 * @throws Exception
+	 */
+	protected void processPage(List<Map<String, Object>> documents) throws Exception {
+		int updatedInThisBulk = 0;
+		boolean deletedInThisBulk = false;
+		BulkRequestBuilder esBulk = esIntegrationComponent.prepareESBulkRequestBuilder();
+		DocumentDetailsFetch detailsFetch = startDocumentDetailsFetch(documents);
+		for (Map<String, Object> document : documents) {
+			String documentId = getDocumentIdChecked(document);
+			if (detailsFetch.getDocumentDetail(documentId, document)) {
+				logger.debug("Go to update index for document '{}'", documentId);
+				if (documentIndexStructureBuilder.extractDocumentDeleted(document)) {
+					deletedInThisBulk = prepareDeleteByRemoteDocumentId(esBulk, documentId) || deletedInThisBulk;
+				} else {
+					documentIndexStructureBuilder.indexDocument(esBulk, spaceKey, document);
+					updatedInThisBulk++;
 				}
 			}
+			checkWorkerInterrupted();
+		}
+
+		if (updatedInThisBulk > 0 || deletedInThisBulk) {
+			executeBulkUpdate(esBulk);
+			synchronized (indexingInfo) {
+				indexingInfo.documentsUpdated += updatedInThisBulk;
+			}
+		}
+	}
+
+	/**
+	 * Fetch and index rest of documents on {@link #pageFetchConcurrency} threads. Offset range is split into chunks of
+	 * page size, each thread takes next free chunk when previous one is done. Indexing thread processes chunks too.
+	 * Method returns when all chunks are processed, first failure stops other threads before their next page and is
+	 * thrown once all of them ended, see {@link #runWorkers(String, int, Callable)}.
+	 * 
+	 * @param startAt index of first document to process
+	 * @param chunkSize number of documents in one chunk, size of the first page returned from remote system
+	 * @param total number of documents
+	 * @throws Exception
+	 */
+	protected void processPagesInParallel(int startAt, final int chunkSize, final int total) throws Exception {
+		logger.debug("Go to fetch documents for space {} from index {} to {} on {} threads", spaceKey, startAt, total,
+				pageFetchConcurrency);
+		final AtomicInteger nextChunk = new AtomicInteger(startAt);
+		runWorkers("remote_river_page_fetch_" + spaceKey + "_", pageFetchConcurrency, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				processChunks(nextChunk, chunkSize, total);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Process chunks of documents till all are taken. Chunk is fetched by more pages if remote system returns less
+	 * documents than expected, documents over chunk end are left for the next chunk.
+	 * 
+	 * @param nextChunk index of first document in next free chunk, shared by all threads
+	 * @param chunkSize number of documents in one chunk
+	 * @param total number of documents
+	 * @throws Exception
+	 */
+	protected void processChunks(AtomicInteger nextChunk, int chunkSize, int total) throws Exception {
+		int chunkStart;
+		while ((chunkStart = nextChunk.getAndAdd(chunkSize)) < total) {
+			int chunkEnd = Math.min(chunkStart + chunkSize, total);
+			int startAt = chunkStart;
+			while (startAt < chunkEnd) {
+				checkWorkerInterrupted();
+				if (logger.isDebugEnabled())
+					logger.debug("Go to ask remote system for updated documents for space {} with startAt {}", spaceKey,
+							startAt);
+				ChangedDocumentsResults res = remoteSystemClient.getChangedDocuments(spaceKey, startAt,
+						indexingInfo.fullUpdate, null);
+				if (res.getDocumentsCount() == 0)
+					break;
+				List<Map<String, Object>> documents = res.getDocuments();
+				if (startAt + documents.size() > chunkEnd)
+					documents = documents.subList(0, chunkEnd - startAt);
+				processPage(documents);
+				startAt += documents.size();
+			}
+		}
+	}
+
+	/**
+	 * Start prefetch of next pages of documents, up to {@link #listPrefetchDepth} pages are prefetched at a time, so
+	 * indexing is never more than this number of pages behind the remote system. Pages are expected to have the same
+	 * size as the current one. Pages are requested over {@link #getChangedDocuments(int, String, Date)}, so the same
+	 * page size is applied as for pages requested directly. Latency of the remote call is measured in the prefetch
+	 * thread, so time the page waits in the queue is not counted into it.
+	 * 
+	 * @param prefetchQueue queue of running prefetches
+	 * @param nextStartAt index of first document of the next page
+	 * @param pageSize number of documents in the current page
+	 * @param total number of documents
+	 */
+	protected void schedulePagePrefetch(Deque<PagePrefetch> prefetchQueue, int nextStartAt, int pageSize, int total) {
+		if (listPrefetchDepth <= 0)
+			return;
+		ExecutorService executor = getListPrefetchExecutor();
+		if (executor == null)
+			return;
+		int startAt = prefetchQueue.isEmpty() ? nextStartAt : prefetchQueue.peekLast().startAt + pageSize;
+		while (prefetchQueue.size() < listPrefetchDepth && startAt < total) {
+			final int pageStartAt = startAt;
+			if (logger.isDebugEnabled())
+				logger.debug("Go to prefetch updated documents for space {} with startAt {}", spaceKey, pageStartAt);
+			prefetchQueue.addLast(new PagePrefetch(pageStartAt, executor.submit(new Callable<FetchedPage>() {
+				@Override
+				public FetchedPage call() throws Exception {
+					long callStart = System.currentTimeMillis();
+					ChangedDocumentsResults res = getChangedDocuments(pageStartAt, null, null);
+					return new FetchedPage(res, System.currentTimeMillis() - callStart);
+				}
+			})));
+			startAt += pageSize;
+		}
+	}
+
+	/**
+	 * Get prefetched page of documents if available. All prefetches are cancelled if the first one doesn't match
+	 * requested position, eg. because remote system returned shorter page than expected.
+	 * 
+	 * @param prefetchQueue queue of running prefetches
+	 * @param startAt index of first document requested
+	 * @param cursor requested, prefetch is never used for cursor based pagination
+	 * @return page of documents with latency of the remote call or null if not prefetched
+	 * @throws Exception from remote system call
+	 */
+	protected FetchedPage takePrefetchedPage(Deque<PagePrefetch> prefetchQueue, int startAt, String cursor)
+			throws Exception {
+		PagePrefetch prefetch = prefetchQueue.pollFirst();
+		if (prefetch == null)
+			return null;
+		if (cursor != null || prefetch.startAt != startAt) {
+			prefetch.future.cancel(true);
+			cancelPagePrefetch(prefetchQueue);
+			return null;
+		}
+		try {
+			return prefetch.future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	protected void cancelPagePrefetch(Deque<PagePrefetch> prefetchQueue) {
+		for (PagePrefetch prefetch : prefetchQueue) {
+			prefetch.future.cancel(true);
+		}
+		prefetchQueue.clear();
+	}
+
+	/**
+	 * Get executor used for page prefetch, create it if not exists yet. Only one thread is used, so pages are requested
+	 * from remote system in order. Thread is taken from {@link #workerThreadBudget}.
+	 * 
+	 * @return executor, null if no any worker thread is available now, so page is not prefetched
+	 */
+	protected synchronized ExecutorService getListPrefetchExecutor() {
+		if (listPrefetchExecutor == null) {
+			listPrefetchExecutor = createWorkerExecutor("remote_river_list_prefetch_" + spaceKey + "_", 1);
+		}
+		return listPrefetchExecutor;
+	}
+
+	protected synchronized void shutdownListPrefetchExecutor() {
+		if (listPrefetchExecutor != null) {
+			listPrefetchExecutor.shutdownNow();
+			listPrefetchExecutor = null;
+		}
+	}
+
+	/**
+	 * Configuration - set number of next pages of documents fetched from remote system while current page is indexed.
+	 * Prefetch is used only if total number of documents is returned from remote system.
+	 * 
+	 * @param listPrefetchDepth to set, value <= 0 means no prefetch
+	 */
+	public void setListPrefetchDepth(int listPrefetchDepth) {
+		this.listPrefetchDepth = listPrefetchDepth;
+	}
+
+	/**
+	 * Configuration - set number of threads used to fetch and index pages of documents in parallel during full update.
+	 * Used only if total number of documents is returned from remote system.
+	 * 
+	 * @param pageFetchConcurrency to set, value <= 1 means pages are processed one by one
+	 */
+	public void setPageFetchConcurrency(int pageFetchConcurrency) {
+		this.pageFetchConcurrency = pageFetchConcurrency;
+	}
+
+	/**
+	 * Prefetch of one page of documents.
+	 */
+	protected static class PagePrefetch {
+		protected final int startAt;
+		protected final Future<FetchedPage> future;
+
+		protected PagePrefetch(int startAt, Future<FetchedPage> future) {
+			this.startAt = startAt;
+			this.future = future;
+		}
+	}
+
+	/**
+	 * Page of documents fetched in advance with latency of the remote system call [ms].
+	 */
+	protected static class FetchedPage {
+		protected final ChangedDocumentsResults results;
+		protected final long remoteLatency;
+
+		protected FetchedPage(ChangedDocumentsResults results, long remoteLatency) {
+			this.results = results;
+			this.remoteLatency = remoteLatency;
 		}
 	}
 }
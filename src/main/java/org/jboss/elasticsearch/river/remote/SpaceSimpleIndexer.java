@@ -10,8 +10,9 @@ import java.util.Map;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 
 /**
- * Class used to run one index update process for one Space. Full indexing is done always with one call to get list of
- * documents from emote system.
+ * Class used to run one index update process for one Space. Indexing is done always with one call to get list of
+ * documents from emote system. Full update is performed unless remote system client supports incremental update, see
+ * {@link IRemoteSystemClientIncremental}.
  * <p>
  * Can be used only for one run, then must be discarded and new instance created!
  * 
@@ -24,7 +25,7 @@ public class SpaceSimpleIndexer extends SpaceIndexerBase {
 	protected int bulkSize = MAX_BULK_SIZE_IN_SIMPLE_GET;
 
 	/**
-	 * Create and configure indexer.
+	 * Create and configure indexer for full update.
 	 * 
 	 * @param spaceKey to be indexed by this indexer.
 	 * @param remoteSystemClient configured client to be used to obtain informations from remote system.
@@ -33,16 +34,31 @@ public class SpaceSimpleIndexer extends SpaceIndexerBase {
 	 */
 	public SpaceSimpleIndexer(String spaceKey, IRemoteSystemClient remoteSystemClient,
 			IESIntegration esIntegrationComponent, IDocumentIndexStructureBuilder documentIndexStructureBuilder) {
+		this(spaceKey, true, remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
+	}
+
+	/**
+	 * Create and configure indexer.
+	 * 
+	 * @param spaceKey to be indexed by this indexer.
+	 * @param fullUpdate true to request full index update, false for incremental update which must be supported by
+	 *          remote system client, see {@link IRemoteSystemClientIncremental}.
+	 * @param remoteSystemClient configured client to be used to obtain informations from remote system.
+	 * @param esIntegrationComponent to be used to call River component and ElasticSearch functions
+	 * @param documentIndexStructureBuilder to be used during indexing
+	 */
+	public SpaceSimpleIndexer(String spaceKey, boolean fullUpdate, IRemoteSystemClient remoteSystemClient,
+			IESIntegration esIntegrationComponent, IDocumentIndexStructureBuilder documentIndexStructureBuilder) {
 		super(spaceKey, remoteSystemClient, esIntegrationComponent, documentIndexStructureBuilder);
 		logger = esIntegrationComponent.createLogger(SpaceSimpleIndexer.class);
-		indexingInfo = new SpaceIndexingInfo(spaceKey, true);
+		indexingInfo = new SpaceIndexingInfo(spaceKey, fullUpdate);
 	}
 
 	@Override
 	protected void processUpdate() throws Exception {
 		indexingInfo.documentsUpdated = 0;
 
-		logger.info("Go to perform full simple update for Space {}", spaceKey);
+		logger.info("Go to perform {} simple update for Space {}", indexingInfo.fullUpdate ? "full" : "incremental", spaceKey);
 
 		ChangedDocumentsResults res = remoteSystemClient.getChangedDocuments(spaceKey, 0, indexingInfo.fullUpdate, null);
 
@@ -53,9 +69,10 @@ public class SpaceSimpleIndexer extends SpaceIndexerBase {
 			int updatedInThisBulk = 0;
 			boolean deletedInThisBulk = false;
 			BulkRequestBuilder esBulk = esIntegrationComponent.prepareESBulkRequestBuilder();
+			DocumentDetailsFetch detailsFetch = startDocumentDetailsFetch(res.getDocuments());
 			for (Map<String, Object> document : res.getDocuments()) {
 				String documentId = getDocumentIdChecked(document);
-				if (getDocumentDetail(documentId, document)) {
+				if (detailsFetch.getDocumentDetail(documentId, document)) {
 
 					if (documentIndexStructureBuilder.extractDocumentDeleted(document)) {
 						deletedInThisBulk = prepareDeleteByRemoteDocumentId(esBulk, documentId) || deletedInThisBulk;
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * URL template with <code>{name}</code> placeholders, compiled once into literal and placeholder segments so URL for
+ * each request is created by simple concatenation. Placeholder names are not fixed, so new ones may be used by callers
+ * without change of this class. Placeholder without value in expansion is kept in URL unchanged.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class UrlTemplate {
+
+	private final String template;
+
+	/**
+	 * Literal segments, one more than placeholders. Literal at index i is placed before placeholder at index i.
+	 */
+	private final String[] literals;
+
+	private final String[] placeholders;
+
+	private UrlTemplate(String template, String[] literals, String[] placeholders) {
+		this.template = template;
+		this.literals = literals;
+		this.placeholders = placeholders;
+	}
+
+	/**
+	 * Compile template.
+	 * 
+	 * @param template to compile
+	 * @return compiled template
+	 */
+	public static UrlTemplate compile(String template) {
+		List<String> literals = new ArrayList<String>();
+		List<String> placeholders = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < template.length()) {
+			char c = template.charAt(i);
+			if (c == '{') {
+				int end = template.indexOf('}', i + 1);
+				if (end > i + 1 && isPlaceholderName(template, i + 1, end)) {
+					literals.add(literal.toString());
+					literal.setLength(0);
+					placeholders.add(template.substring(i + 1, end));
+					i = end + 1;
+					continue;
+				}
+			}
+			literal.append(c);
+			i++;
+		}
+		literals.add(literal.toString());
+		return new UrlTemplate(template, literals.toArray(new String[literals.size()]),
+				placeholders.toArray(new String[placeholders.size()]));
+	}
+
+	private static boolean isPlaceholderName(String template, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isLetterOrDigit(template.charAt(i)) && template.charAt(i) != '_')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check if template contains placeholder.
+	 * 
+	 * @param name of placeholder (without braces)
+	 * @return true if placeholder is used in template
+	 */
+	public boolean hasPlaceholder(String name) {
+		for (String p : placeholders) {
+			if (p.equals(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Create URL from template.
+	 * 
+	 * @param values for placeholders, must be URL encoded already if necessary (see {@link #encode(String)}). Null
+	 *          value means empty string, placeholder without mapping is kept unchanged.
+	 * @return URL
+	 */
+	public String expand(Map<String, String> values) {
+		StringBuilder sb = new StringBuilder(template.length() + 32);
+		for (int i = 0; i < placeholders.length; i++) {
+			sb.append(literals[i]);
+			String value = values.get(placeholders[i]);
+			if (value != null) {
+				sb.append(value);
+			} else if (!values.containsKey(placeholders[i])) {
+				sb.append('{').append(placeholders[i]).append('}');
+			}
+		}
+		sb.append(literals[placeholders.length]);
+		return sb.toString();
+	}
+
+	/**
+	 * URL encode value for use in {@link #expand(Map)}.
+	 * 
+	 * @param value to encode
+	 * @return encoded value, null if value is null
+	 */
+	public static String encode(String value) {
+		if (value == null)
+			return null;
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Number of worker threads which may be used by all space indexers of one river in addition to indexing threads, eg.
+ * to fetch document details or pages of documents in parallel. Indexer acquires threads when it creates its executor
+ * and releases them once the executor is terminated. If less threads than requested are available then indexer uses
+ * less of them, and does the work in its indexing thread if no any is available.
+ * <p>
+ * Thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class WorkerThreadBudget {
+
+	protected final int maxThreads;
+
+	private int usedThreads = 0;
+
+	/**
+	 * Create budget.
+	 *
+	 * @param maxThreads maximal number of worker threads used in parallel, 0 means no any
+	 */
+	public WorkerThreadBudget(int maxThreads) {
+		if (maxThreads < 0)
+			throw new IllegalArgumentException("maxThreads must not be negative");
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Acquire threads from budget.
+	 *
+	 * @param requested number of threads
+	 * @return number of acquired threads, between 0 and requested. Must be released by {@link #release(int)}.
+	 */
+	public synchronized int acquire(int requested) {
+		int acquired = Math.max(0, Math.min(requested, maxThreads - usedThreads));
+		usedThreads += acquired;
+		return acquired;
+	}
+
+	/**
+	 * Return threads to budget.
+	 *
+	 * @param count number of threads to return, as acquired by {@link #acquire(int)}
+	 */
+	public synchronized void release(int count) {
+		usedThreads = Math.max(0, usedThreads - count);
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public synchronized int getUsedThreads() {
+		return usedThreads;
+	}
+
+	/**
+	 * Write budget stats into current object of builder.
+	 *
+	 * @param builder to write into
+	 * @throws IOException
+	 */
+	public synchronized void buildStats(XContentBuilder builder) throws IOException {
+		builder.field("max_threads", maxThreads);
+		builder.field("used_threads", usedThreads);
+	}
+
+}
@@ -0,0 +1,24 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote.exception;
+
+/**
+ * Exception used when call to remote system is not performed because remote system is considered unavailable (circuit
+ * breaker is open).
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RemoteSystemUnavailableException extends Exception {
+
+	public RemoteSystemUnavailableException(String message) {
+		super(message);
+	}
+
+	public RemoteSystemUnavailableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,30 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote.sitemap;
+
+/**
+ * Handler of entries emitted one by one by streaming {@link SiteMapParser}, so whole sitemap is never held in memory.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see SiteMapParser#parseSiteMap(String, java.io.InputStream, java.net.URL, SiteMapHandler)
+ */
+public interface SiteMapHandler {
+
+	/**
+	 * Handle URL from sitemap (<code>urlset</code>, text, RSS or Atom format).
+	 *
+	 * @param url from sitemap
+	 */
+	void handleSiteMapUrl(SiteMapURL url);
+
+	/**
+	 * Handle sitemap referenced from sitemap index.
+	 *
+	 * @param sitemap referenced from index, not processed yet
+	 */
+	void handleSitemap(SiteMap sitemap);
+
+}
@@ -24,26 +24,25 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.input.BOMInputStream;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.jboss.elasticsearch.river.remote.sitemap.AbstractSiteMap.SitemapType;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /**
+ * Streaming sitemap parser. XML formats (<code>urlset</code>, <code>sitemapindex</code>, RSS and Atom) are parsed by
+ * StAX, so entries may be emitted one by one into {@link SiteMapHandler} directly from input stream without building
+ * DOM of whole sitemap.
+ * 
  * @author http://code.google.com/p/crawler-commons
  */
 public class SiteMapParser {
@@ -51,7 +50,7 @@ public class SiteMapParser {
 	private static final ESLogger logger = Loggers.getLogger(SiteMapParser.class);
 
 	/** According to the specs, 50K URLs per Sitemap is the max */
-	private static final int MAX_URLS = 50000;
+	public static final int MAX_URLS = 50000;
 
 	/** Sitemap docs must be limited to 10MB (10,485,760 bytes) */
 	public static int MAX_BYTES_ALLOWED = 10485760;
@@ -59,12 +58,20 @@ public class SiteMapParser {
 	/** True (by default) if invalid URLs should be rejected */
 	private boolean strict;
 
+	/** Maximal number of entries read from one sitemap, rest is ignored */
+	private int maxUrls = MAX_URLS;
+
+	private final XMLInputFactory xmlInputFactory;
+
 	public SiteMapParser() {
 		this(true);
 	}
 
 	public SiteMapParser(boolean strict) {
 		this.strict = strict;
+		xmlInputFactory = XMLInputFactory.newInstance();
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
 	}
 
 	/**
@@ -74,11 +81,47 @@ public class SiteMapParser {
 		return strict;
 	}
 
+	/**
+	 * @return maximal number of entries read from one sitemap
+	 */
+	public int getMaxUrls() {
+		return maxUrls;
+	}
+
+	/**
+	 * @param maxUrls maximal number of entries read from one sitemap, rest of sitemap is ignored. Defaults to
+	 *          {@link #MAX_URLS}.
+	 */
+	public void setMaxUrls(int maxUrls) {
+		this.maxUrls = maxUrls;
+	}
+
 	/**
 	 * Returns a SiteMap or SiteMapIndex given a content type, byte content and the URL of a sitemap
 	 */
 	public AbstractSiteMap parseSiteMap(String contentType, byte[] content, URL url) throws UnknownFormatException,
 			IOException {
+		return parseSiteMap(contentType, new ByteArrayInputStream(content), url, null);
+	}
+
+	/**
+	 * Parse sitemap directly from stream given a content type and the URL of a sitemap. Entries are emitted into handler
+	 * one by one as they are read, so they are not stored in returned SiteMap or SiteMapIndex. Note that some entries may
+	 * be emitted already even if {@link UnknownFormatException} is thrown later for broken XML.
+	 * 
+	 * @param contentType of sitemap, can be null
+	 * @param content stream to read sitemap from, it is not closed
+	 * @param url of sitemap
+	 * @param handler to emit entries into, if null then entries are stored in returned SiteMap or SiteMapIndex
+	 * @return SiteMap or SiteMapIndex with type of sitemap
+	 * @throws UnknownFormatException if sitemap format is unknown or XML is broken
+	 * @throws IOException
+	 */
+	public AbstractSiteMap parseSiteMap(String contentType, InputStream content, URL url, SiteMapHandler handler)
+			throws UnknownFormatException, IOException {
+
+		if (contentType == null)
+			contentType = "";
 
 		// Use extension or MIME type to determine how we should try
 		// to process the response
@@ -87,58 +130,47 @@ public class SiteMapParser {
 				|| contentType.contains("application/rss+xml")) {
 
 			// Try parsing the XML which could be in a number of formats
-			return processXml(url, content);
+			return processXml(url, new BOMInputStream(content), handler);
 		} else if (url.getPath().endsWith(".txt") || contentType.contains("text/plain")) {
 			// plain text
-			return (AbstractSiteMap) processText(content, url.toString());
+			return processText(content, url.toString(), handler);
 		} else if (url.getPath().endsWith(".gz") || contentType.contains("application/gzip")
 				|| contentType.contains("application/x-gzip") || contentType.contains("application/x-gunzip")
 				|| contentType.contains("application/gzipped") || contentType.contains("application/gzip-compressed")
 				|| contentType.contains("application/x-compress") || contentType.contains("gzip/document")
 				|| contentType.contains("application/octet-stream")) {
-			return processGzip(url, content);
+			return processGzip(url, content, handler);
 		}
 		throw new UnknownFormatException("Unknown format " + contentType + " at " + url);
 	}
 
-	/**
-	 * Parse the given XML content.
-	 * 
-	 * @param sitemapUrl
-	 * @param xmlContent
-	 * @return
-	 * @throws UnknownFormatException
-	 */
-	private AbstractSiteMap processXml(URL sitemapUrl, byte[] xmlContent) throws UnknownFormatException {
-
-		BOMInputStream bomIs = new BOMInputStream(new ByteArrayInputStream(xmlContent));
-		InputSource is = new InputSource();
-		is.setCharacterStream(new BufferedReader(new InputStreamReader(bomIs)));
-		return processXml(sitemapUrl, is);
-	}
-
 	/**
 	 * Process a text-based Sitemap. Text sitemaps only list URLs but no priorities, last mods, etc.
 	 * 
 	 * @param content
 	 * @throws IOException
 	 */
-	private SiteMap processText(byte[] content, String sitemapUrl) throws IOException {
+	private SiteMap processText(InputStream content, String sitemapUrl, SiteMapHandler handler) throws IOException {
 
 		logger.debug("Processing textual Sitemap");
 
 		SiteMap textSiteMap = new SiteMap(sitemapUrl);
 		textSiteMap.setType(SitemapType.TEXT);
 
-		BOMInputStream bomIs = new BOMInputStream(new ByteArrayInputStream(content));
+		BOMInputStream bomIs = new BOMInputStream(content);
 		@SuppressWarnings("resource")
-		BufferedReader reader = new BufferedReader(new InputStreamReader(bomIs));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(bomIs, "UTF-8"));
 
 		String line;
 
 		int i = 1;
 		while ((line = reader.readLine()) != null) {
-			if (line.length() > 0 && i <= MAX_URLS) {
+			line = line.trim();
+			if (line.length() > 0) {
+				if (i > maxUrls) {
+					logMaxUrlsReached(sitemapUrl);
+					break;
+				}
 				try {
 					URL url = new URL(line);
 					boolean valid = urlIsLegal(textSiteMap.getBaseUrl(), url.toString());
@@ -150,8 +182,7 @@ public class SiteMapParser {
 							logger.debug(sb.toString());
 						}
 						i++;
-						SiteMapURL surl = new SiteMapURL(url, valid);
-						textSiteMap.addSiteMapUrl(surl);
+						emitSiteMapUrl(textSiteMap, new SiteMapURL(url, valid), handler);
 					}
 				} catch (MalformedURLException e) {
 					logger.debug("Bad URL [" + line + "].");
@@ -166,83 +197,68 @@ public class SiteMapParser {
 	 * Decompress the gzipped content and process the resulting XML Sitemap.
 	 * 
 	 * @param url - URL of the gzipped content
-	 * @param response - Gzipped content
-	 * @throws MalformedURLException
+	 * @param content - Gzipped content
 	 * @throws IOException
 	 * @throws UnknownFormatException
 	 */
-	private AbstractSiteMap processGzip(URL url, byte[] response) throws MalformedURLException, IOException,
+	private AbstractSiteMap processGzip(URL url, InputStream content, SiteMapHandler handler) throws IOException,
 			UnknownFormatException {
 
 		logger.debug("Processing gzip");
 
-		AbstractSiteMap smi;
-
-		InputStream is = new ByteArrayInputStream(response);
-
-		// Remove .gz ending
-		String xmlUrl = url.toString().replaceFirst("\\.gz$", "");
-
-		logger.debug("XML url = " + xmlUrl);
-
-		BOMInputStream decompressed = new BOMInputStream(new GZIPInputStream(is));
-		InputSource in = new InputSource(decompressed);
-		in.setSystemId(xmlUrl);
-		smi = processXml(url, in);
-		decompressed.close();
-		return smi;
+		return processXml(url, new BOMInputStream(new GZIPInputStream(content)), handler);
 	}
 
 	/**
-	 * Parse the given XML content.
+	 * Parse the given XML content. Format is determined from the root element.
 	 * 
 	 * @param sitemapUrl
-	 * @param is
+	 * @param is to read XML from
+	 * @param handler to emit entries into, can be null
 	 * @throws UnknownFormatException
 	 */
-	private AbstractSiteMap processXml(URL sitemapUrl, InputSource is) throws UnknownFormatException {
-
-		Document doc = null;
+	private AbstractSiteMap processXml(URL sitemapUrl, InputStream is, SiteMapHandler handler)
+			throws UnknownFormatException {
 
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			db.setErrorHandler(new ErrorHandler() {
-
-				@Override
-				public void warning(SAXParseException exception) throws SAXException {
-					logger.warn("Sitemap XML warning: " + exception.getMessage());
-				}
-
-				@Override
-				public void fatalError(SAXParseException exception) throws SAXException {
-					logger.warn("Sitemap XML fatalError: " + exception.getMessage());
-				}
-
-				@Override
-				public void error(SAXParseException exception) throws SAXException {
-					logger.warn("Sitemap XML error: " + exception.getMessage());
+			reader = xmlInputFactory.createXMLStreamReader(is);
+			String root = nextChildElement(reader);
+
+			AbstractSiteMap ret = null;
+			if ("sitemapindex".equals(root)) {
+				ret = parseSitemapIndex(sitemapUrl, reader, handler);
+			} else if ("urlset".equals(root)) {
+				// This is a regular Sitemap
+				ret = parseXmlSitemap(sitemapUrl, reader, handler);
+			} else if ("feed".equals(root)) {
+				ret = parseAtom(sitemapUrl, reader, handler);
+			} else if ("rss".equals(root)) {
+				ret = parseRSS(sitemapUrl, reader, handler);
+			} else {
+				throw new UnknownFormatException("Unknown XML format for " + sitemapUrl);
+			}
 
+			// read rest of the document so broken XML is detected, if not stopped on max URLs
+			if (ret.isProcessed()) {
+				while (reader.hasNext()) {
+					reader.next();
 				}
-			});
-			doc = db.parse(is);
-		} catch (Exception e) {
+			}
+			ret.setProcessed(true);
+			return ret;
+		} catch (XMLStreamException e) {
+			logger.warn("Sitemap XML error: " + e.getMessage());
 			throw new UnknownFormatException("Error parsing XML for " + sitemapUrl);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// nothing to do
+				}
+			}
 		}
-
-		// See if this is a sitemap index
-		NodeList nodeList = doc.getElementsByTagName("sitemapindex");
-		if (nodeList.getLength() > 0) {
-			nodeList = doc.getElementsByTagName("sitemap");
-			return parseSitemapIndex(sitemapUrl, nodeList);
-		} else if (doc.getElementsByTagName("urlset").getLength() > 0) {
-			// This is a regular Sitemap
-			return parseXmlSitemap(sitemapUrl, doc);
-		} else if (doc.getElementsByTagName("link").getLength() > 0) {
-			// Could be RSS or Atom
-			return parseSyndicationFormat(sitemapUrl, doc);
-		}
-		throw new UnknownFormatException("Unknown XML format for " + sitemapUrl);
 	}
 
 	/**
@@ -252,51 +268,46 @@ public class SiteMapParser {
 	 * >http://www.example.com/catalog?item=12&amp;desc=vacation_hawaii</loc> <changefreq>weekly</changefreq> </url>
 	 * </urlset>
 	 * 
-	 * @param doc
+	 * @param reader positioned at <code>urlset</code> element
 	 */
-	private SiteMap parseXmlSitemap(URL sitemapUrl, Document doc) {
+	private SiteMap parseXmlSitemap(URL sitemapUrl, XMLStreamReader reader, SiteMapHandler handler)
+			throws XMLStreamException {
 
 		SiteMap sitemap = new SiteMap(sitemapUrl);
 		sitemap.setType(SitemapType.XML);
-
-		NodeList list = doc.getElementsByTagName("url");
+		sitemap.setProcessed(true);
 
 		// Loop through the <url>s
-		for (int i = 0; i < list.getLength(); i++) {
-
-			Node n = list.item(i);
-
-			if (n.getNodeType() == Node.ELEMENT_NODE) {
-				Element elem = (Element) n;
-
-				String loc = getElementValue(elem, "loc");
-
-				URL url = null;
-				try {
-					url = new URL(loc);
-					String lastMod = getElementValue(elem, "lastmod");
-					String changeFreq = getElementValue(elem, "changefreq");
-					String priority = getElementValue(elem, "priority");
-					boolean valid = urlIsLegal(sitemap.getBaseUrl(), url.toString());
-
-					if (valid || !strict) {
-						SiteMapURL sUrl = new SiteMapURL(url.toString(), lastMod, changeFreq, priority, valid);
-						sitemap.addSiteMapUrl(sUrl);
-						if (logger.isDebugEnabled()) {
-							StringBuffer sb = new StringBuffer("  ");
-							sb.append(i + 1).append(". ").append(sUrl);
-							logger.debug(sb.toString());
-						}
-					}
-				} catch (MalformedURLException e) {
-					// e.printStackTrace();
-
-					// Can't create an entry with a bad URL
-					logger.debug("Bad url: [" + loc + "]");
+		int i = 0;
+		String name;
+		while ((name = nextChildElement(reader)) != null) {
+			if (!"url".equals(name)) {
+				readText(reader);
+				continue;
+			}
+			if (i >= maxUrls) {
+				logMaxUrlsReached(sitemapUrl);
+				sitemap.setProcessed(false);
+				break;
+			}
+			Map<String, String> values = readEntry(reader);
+			String loc = values.get("loc");
+			try {
+				URL url = new URL(loc);
+				boolean valid = urlIsLegal(sitemap.getBaseUrl(), url.toString());
+
+				if (valid || !strict) {
+					i++;
+					SiteMapURL sUrl = new SiteMapURL(url.toString(), values.get("lastmod"), values.get("changefreq"),
+							values.get("priority"), valid);
+					emitSiteMapUrl(sitemap, sUrl, handler);
+					logEntry(i, sUrl);
 				}
+			} catch (MalformedURLException e) {
+				// Can't create an entry with a bad URL
+				logger.debug("Bad url: [" + loc + "]");
 			}
 		}
-		sitemap.setProcessed(true);
 		return sitemap;
 	}
 
@@ -308,91 +319,58 @@ public class SiteMapParser {
 	 * <loc>http://www.example.com/sitemap2.xml.gz</loc> <lastmod>2005-01-01</lastmod> </sitemap> </sitemapindex>
 	 * 
 	 * @param url - URL of Sitemap Index
-	 * @param nodeList
+	 * @param reader positioned at <code>sitemapindex</code> element
 	 */
-	private SiteMapIndex parseSitemapIndex(URL url, NodeList nodeList) {
+	private SiteMapIndex parseSitemapIndex(URL url, XMLStreamReader reader, SiteMapHandler handler)
+			throws XMLStreamException {
 
 		logger.debug("Parsing Sitemap Index");
 
 		SiteMapIndex sitemapIndex = new SiteMapIndex(url);
 		sitemapIndex.setType(SitemapType.INDEX);
+		sitemapIndex.setProcessed(true);
 
 		// Loop through the <sitemap>s
-		for (int i = 0; i < nodeList.getLength() && i < MAX_URLS; i++) {
-
-			Node firstNode = nodeList.item(i);
-
-			URL sitemapUrl = null;
-			Date lastModified = null;
-
-			if (firstNode.getNodeType() == Node.ELEMENT_NODE) {
-				Element elem = (Element) firstNode;
-				String loc = getElementValue(elem, "loc");
-
-				// try the text content when no loc element
-				// has been specified
-				if (loc == null) {
-					loc = elem.getTextContent().trim();
-				}
-
-				try {
-					sitemapUrl = new URL(loc);
-					String lastmod = getElementValue(elem, "lastmod");
-					lastModified = SiteMap.convertToDate(lastmod);
+		int i = 0;
+		String name;
+		while ((name = nextChildElement(reader)) != null) {
+			if (!"sitemap".equals(name)) {
+				readText(reader);
+				continue;
+			}
+			if (i >= maxUrls) {
+				logMaxUrlsReached(url);
+				sitemapIndex.setProcessed(false);
+				break;
+			}
+			Map<String, String> values = readEntry(reader);
+			String loc = values.get("loc");
 
-					// Right now we are not worried about sitemapUrls that point
-					// to different websites.
+			// try the text content when no loc element
+			// has been specified
+			if (loc == null) {
+				loc = values.get(ENTRY_TEXT);
+			}
 
-					SiteMap s = new SiteMap(sitemapUrl, lastModified);
+			try {
+				// Right now we are not worried about sitemapUrls that point
+				// to different websites.
+				SiteMap s = new SiteMap(new URL(loc), SiteMap.convertToDate(values.get("lastmod")));
+				i++;
+				if (handler != null) {
+					handler.handleSitemap(s);
+				} else {
 					sitemapIndex.addSitemap(s);
-					if (logger.isDebugEnabled()) {
-						StringBuffer sb = new StringBuffer("  ");
-						sb.append(i + 1).append(". ").append(s);
-						logger.debug(sb.toString());
-					}
-				} catch (MalformedURLException e) {
-					// e.printStackTrace();
-
-					// Don't create an entry for a bad URL
-					logger.debug("Bad url: [" + loc + "]");
 				}
+				logEntry(i, s);
+			} catch (MalformedURLException e) {
+				// Don't create an entry for a bad URL
+				logger.debug("Bad url: [" + loc + "]");
 			}
 		}
-		sitemapIndex.setProcessed(true);
 		return sitemapIndex;
 	}
 
-	/**
-	 * Parse the XML document, looking for "feed" element to determine if it's an Atom doc and "rss" to determine if it's
-	 * an RSS doc.
-	 * 
-	 * @param sitemapUrl
-	 * @param doc - XML document to parse
-	 * @throws UnknownFormatException if XML does not appear to be Arom or RSS
-	 */
-	private SiteMap parseSyndicationFormat(URL sitemapUrl, Document doc) throws UnknownFormatException {
-
-		SiteMap sitemap = new SiteMap(sitemapUrl);
-
-		// See if this is an Atom feed by looking for "feed" element
-		NodeList list = doc.getElementsByTagName("feed");
-		if (list.getLength() > 0) {
-			parseAtom(sitemap, (Element) list.item(0), doc);
-			sitemap.setProcessed(true);
-			return sitemap;
-		} else {
-			// See if RSS feed by looking for "rss" element
-			list = doc.getElementsByTagName("rss");
-			if (list.getLength() > 0) {
-				parseRSS(sitemap, doc);
-				sitemap.setProcessed(true);
-				return sitemap;
-			} else {
-				throw new UnknownFormatException("Unknown syndication format at " + sitemapUrl);
-			}
-		}
-	}
-
 	/**
 	 * Parse the XML document which is assumed to be in Atom format. Atom 1.0 example:
 	 * 
@@ -408,55 +386,55 @@ public class SiteMapParser {
 	 * 
 	 * </feed>
 	 * 
-	 * @param elem
-	 * @param doc
+	 * @param reader positioned at <code>feed</code> element
 	 */
-	private void parseAtom(SiteMap sitemap, Element elem, Document doc) {
+	private SiteMap parseAtom(URL sitemapUrl, XMLStreamReader reader, SiteMapHandler handler)
+			throws XMLStreamException {
 
 		// Grab items from <feed><entry><link href="URL" /></entry></feed>
-		// Use lastmod date from <feed><modified>DATE</modified></feed>
+		// Use lastmod date from <entry><updated>DATE</updated></entry> or <feed><modified>DATE</modified></feed>
 
 		logger.debug("Parsing Atom XML");
 
+		SiteMap sitemap = new SiteMap(sitemapUrl);
 		sitemap.setType(SitemapType.ATOM);
+		sitemap.setProcessed(true);
 
-		String lastMod = getElementValue(elem, "modified");
-		logger.debug("lastMod=" + lastMod);
-
-		NodeList list = doc.getElementsByTagName("entry");
+		String feedLastMod = null;
 
 		// Loop through the <entry>s
-		for (int i = 0; i < list.getLength() && i < MAX_URLS; i++) {
-
-			Node n = list.item(i);
-
-			if (n.getNodeType() == Node.ELEMENT_NODE) {
-				elem = (Element) n;
-
-				String href = getElementAttributeValue(elem, "link", "href");
-				logger.debug("href=" + href);
-
-				URL url = null;
-				try {
-					url = new URL(href);
-					boolean valid = urlIsLegal(sitemap.getBaseUrl(), url.toString());
+		int i = 0;
+		String name;
+		while ((name = nextChildElement(reader)) != null) {
+			if ("modified".equals(name) || "updated".equals(name)) {
+				String lastMod = readText(reader);
+				if (feedLastMod == null || "modified".equals(name))
+					feedLastMod = lastMod;
+				logger.debug("lastMod=" + feedLastMod);
+				continue;
+			}
+			if (!"entry".equals(name)) {
+				readText(reader);
+				continue;
+			}
+			if (i >= maxUrls) {
+				logMaxUrlsReached(sitemapUrl);
+				sitemap.setProcessed(false);
+				break;
+			}
+			Map<String, String> values = readEntry(reader);
+			String href = values.get("link@href");
+			logger.debug("href=" + href);
 
-					if (valid || !strict) {
-						SiteMapURL sUrl = new SiteMapURL(url.toString(), lastMod, null, null, valid);
-						sitemap.addSiteMapUrl(sUrl);
-						if (logger.isDebugEnabled()) {
-							StringBuffer sb = new StringBuffer("  ");
-							sb.append(i + 1).append(". ").append(sUrl);
-							logger.debug(sb.toString());
-						}
-					}
-				} catch (MalformedURLException e) {
-					// Can't create an entry with a bad URL
-					logger.debug("Bad url: [" + href + "]");
-				}
+			String lastMod = values.get("updated");
+			if (lastMod == null)
+				lastMod = values.get("modified");
+			if (lastMod == null)
+				lastMod = feedLastMod;
 
-			}
+			i = emitSyndicationUrl(sitemap, href, lastMod, i, handler);
 		}
+		return sitemap;
 	}
 
 	/**
@@ -481,96 +459,181 @@ public class SiteMapParser {
 	 * 
 	 * </channel> </rss>
 	 * 
-	 * @param sitemap
-	 * @param doc
+	 * @param reader positioned at <code>rss</code> element
 	 */
-	private void parseRSS(SiteMap sitemap, Document doc) {
+	private SiteMap parseRSS(URL sitemapUrl, XMLStreamReader reader, SiteMapHandler handler)
+			throws XMLStreamException {
 
 		// Grab items from <item><link>URL</link></item>
-		// and last modified date from <pubDate>DATE</pubDate>
+		// and last modified date from <item><pubDate>DATE</pubDate></item> or <channel><pubDate>DATE</pubDate></channel>
 
 		logger.debug("Parsing RSS doc");
-		sitemap.setType(SitemapType.RSS);
-		NodeList list = doc.getElementsByTagName("channel");
-		Element elem = (Element) list.item(0);
 
-		// Treat publication date as last mod (Tue, 10 Jun 2003 04:00:00 GMT)
-		String lastMod = getElementValue(elem, "pubDate");
+		SiteMap sitemap = new SiteMap(sitemapUrl);
+		sitemap.setType(SitemapType.RSS);
+		sitemap.setProcessed(true);
 
-		logger.debug("lastMod=" + lastMod);
+		int i = 0;
+		String name;
+		while ((name = nextChildElement(reader)) != null) {
+			if (!"channel".equals(name)) {
+				readText(reader);
+				continue;
+			}
 
-		list = doc.getElementsByTagName("item");
+			// Treat publication date as last mod (Tue, 10 Jun 2003 04:00:00 GMT)
+			String channelLastMod = null;
 
-		// Loop through the <item>s
-		for (int i = 0; i < list.getLength() && i < MAX_URLS; i++) {
+			// Loop through the <item>s
+			while ((name = nextChildElement(reader)) != null) {
+				if ("pubDate".equals(name)) {
+					channelLastMod = readText(reader);
+					logger.debug("lastMod=" + channelLastMod);
+					continue;
+				}
+				if (!"item".equals(name)) {
+					readText(reader);
+					continue;
+				}
+				if (i >= maxUrls) {
+					logMaxUrlsReached(sitemapUrl);
+					sitemap.setProcessed(false);
+					return sitemap;
+				}
+				Map<String, String> values = readEntry(reader);
+				String link = values.get("link");
+				logger.debug("link=" + link);
 
-			Node n = list.item(i);
+				String lastMod = values.get("pubDate");
+				if (lastMod == null)
+					lastMod = channelLastMod;
 
-			if (n.getNodeType() == Node.ELEMENT_NODE) {
-				elem = (Element) n;
+				i = emitSyndicationUrl(sitemap, link, lastMod, i, handler);
+			}
+		}
+		return sitemap;
+	}
 
-				String link = getElementValue(elem, "link");
-				logger.debug("link=" + link);
+	private int emitSyndicationUrl(SiteMap sitemap, String link, String lastMod, int i, SiteMapHandler handler) {
+		try {
+			URL url = new URL(link);
+			boolean valid = urlIsLegal(sitemap.getBaseUrl(), url.toString());
+
+			if (valid || !strict) {
+				i++;
+				SiteMapURL sUrl = new SiteMapURL(url.toString(), lastMod, null, null, valid);
+				emitSiteMapUrl(sitemap, sUrl, handler);
+				logEntry(i, sUrl);
+			}
+		} catch (MalformedURLException e) {
+			// Can't create an entry with a bad URL
+			logger.debug("Bad url: [" + link + "]");
+		}
+		return i;
+	}
 
-				try {
-					URL url = new URL(link);
-					boolean valid = urlIsLegal(sitemap.getBaseUrl(), url.toString());
+	private void emitSiteMapUrl(SiteMap sitemap, SiteMapURL sUrl, SiteMapHandler handler) {
+		if (handler != null) {
+			handler.handleSiteMapUrl(sUrl);
+		} else {
+			sitemap.addSiteMapUrl(sUrl);
+		}
+	}
 
-					if (valid || !strict) {
-						SiteMapURL sUrl = new SiteMapURL(url.toString(), lastMod, null, null, valid);
-						sitemap.addSiteMapUrl(sUrl);
-						if (logger.isDebugEnabled()) {
-							StringBuffer sb = new StringBuffer("  ");
-							sb.append(i + 1).append(". ").append(sUrl);
-							logger.debug(sb.toString());
-						}
-					}
-				} catch (MalformedURLException e) {
-					// Can't create an entry with a bad URL
-					logger.debug("Bad url: [" + link + "]");
-				}
-			}
+	private void logEntry(int i, Object entry) {
+		if (logger.isDebugEnabled()) {
+			StringBuffer sb = new StringBuffer("  ");
+			sb.append(i).append(". ").append(entry);
+			logger.debug(sb.toString());
 		}
 	}
 
+	private void logMaxUrlsReached(Object sitemapUrl) {
+		logger.warn("Sitemap {} contains more than {} entries, rest of them is ignored", sitemapUrl, maxUrls);
+	}
+
 	/**
-	 * Get the element's textual content.
+	 * Key of text content of the entry element itself in map returned from {@link #readEntry(XMLStreamReader)}.
+	 */
+	private static final String ENTRY_TEXT = "";
+
+	/**
+	 * Move reader to the next child element of current element.
 	 * 
-	 * @param elem
-	 * @param elementName
-	 * @return
+	 * @param reader positioned at start of parent element or end of previous child element
+	 * @return local name of child element reader is positioned at, or null if end of parent element is reached
+	 * @throws XMLStreamException
 	 */
-	private String getElementValue(Element elem, String elementName) {
-
-		NodeList list = elem.getElementsByTagName(elementName);
-		Element e = (Element) list.item(0);
-		if (e != null) {
-			NodeList children = e.getChildNodes();
-			if (children.item(0) != null) {
-				return ((Node) children.item(0)).getNodeValue().trim();
-			}
+	private static String nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				return reader.getLocalName();
+			if (event == XMLStreamConstants.END_ELEMENT)
+				return null;
 		}
-
 		return null;
 	}
 
 	/**
-	 * Get the element's attribute value.
+	 * Read whole text content of current element including its descendants.
 	 * 
-	 * @param elem
-	 * @param elementName
-	 * @param attributeName
-	 * @return
+	 * @param reader positioned at start of element, it is positioned at end of this element after return
+	 * @return trimmed text or null if element has no text
+	 * @throws XMLStreamException
 	 */
-	private String getElementAttributeValue(Element elem, String elementName, String attributeName) {
+	private static String readText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				sb.append(reader.getText());
+			}
+		}
+		return trimToNull(sb);
+	}
 
-		NodeList list = elem.getElementsByTagName(elementName);
-		Element e = (Element) list.item(0);
-		if (e != null) {
-			return e.getAttribute(attributeName);
+	/**
+	 * Read entry element (<code>url</code>, <code>sitemap</code>, <code>entry</code>, <code>item</code>). Text of first
+	 * occurrence of each child element is stored under its local name, value of its <code>href</code> attribute under
+	 * <code>name@href</code> key, text of entry element itself under {@link #ENTRY_TEXT} key.
+	 * 
+	 * @param reader positioned at start of entry element, it is positioned at end of this element after return
+	 * @return values of entry
+	 * @throws XMLStreamException
+	 */
+	private static Map<String, String> readEntry(XMLStreamReader reader) throws XMLStreamException {
+		Map<String, String> values = new HashMap<String, String>();
+		StringBuilder text = new StringBuilder();
+		while (true) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				String href = reader.getAttributeValue(null, "href");
+				String value = readText(reader);
+				if (!values.containsKey(name)) {
+					values.put(name, value);
+					if (href != null)
+						values.put(name + "@href", href.trim());
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				text.append(reader.getText());
+			}
 		}
+		values.put(ENTRY_TEXT, trimToNull(text));
+		return values;
+	}
 
-		return null;
+	private static String trimToNull(CharSequence text) {
+		String ret = text.toString().trim();
+		return ret.isEmpty() ? null : ret;
 	}
 
 	/**
@@ -48,6 +48,13 @@ public class ChangedDocumentsResultsTest {
 		Assert.assertEquals(new Integer(300), tested.getTotal());
 		Assert.assertNotNull(tested.getDocuments());
 		Assert.assertEquals(1, tested.getDocumentsCount());
+		Assert.assertNull(tested.getNextCursor());
+
+		tested = new ChangedDocumentsResults(issues, 10, null, "abc");
+		Assert.assertEquals(10, tested.getStartAt());
+		Assert.assertNull(tested.getTotal());
+		Assert.assertEquals(1, tested.getDocumentsCount());
+		Assert.assertEquals("abc", tested.getNextCursor());
 	}
 
 	@Test
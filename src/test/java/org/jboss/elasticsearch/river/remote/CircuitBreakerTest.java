@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CircuitBreaker}
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void disabled() {
+		CircuitBreaker tested = new CircuitBreaker(0, 1000);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertTrue(tested.allowRequest());
+			tested.recordFailure();
+		}
+		Assert.assertFalse(tested.isOpen());
+		Assert.assertTrue(tested.allowRequest());
+	}
+
+	@Test
+	public void openAndClose() throws InterruptedException {
+		CircuitBreaker tested = new CircuitBreaker(3, 200);
+
+		// case - success resets consecutive failures count
+		tested.recordFailure();
+		tested.recordFailure();
+		tested.recordSuccess();
+		tested.recordFailure();
+		tested.recordFailure();
+		Assert.assertFalse(tested.isOpen());
+		Assert.assertTrue(tested.allowRequest());
+
+		// case - threshold reached
+		tested.recordFailure();
+		Assert.assertTrue(tested.isOpen());
+		Assert.assertFalse(tested.allowRequest());
+
+		// case - probe allowed after open time, only one
+		Thread.sleep(250);
+		Assert.assertFalse(tested.isOpen());
+		Assert.assertTrue(tested.allowRequest());
+		Assert.assertTrue(tested.isOpen());
+		Assert.assertFalse(tested.allowRequest());
+
+		// case - probe failed so open again
+		tested.recordFailure();
+		Assert.assertTrue(tested.isOpen());
+		Assert.assertFalse(tested.allowRequest());
+
+		// case - probe succeeded so closed
+		Thread.sleep(250);
+		Assert.assertTrue(tested.allowRequest());
+		tested.recordSuccess();
+		Assert.assertFalse(tested.isOpen());
+		Assert.assertTrue(tested.allowRequest());
+		Assert.assertTrue(tested.allowRequest());
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link DocumentDetailCache}.
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class DocumentDetailCacheTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getAndPut() throws Exception {
+		DocumentDetailCache tested = new DocumentDetailCache(100000);
+		Date updated = new Date(1000);
+
+		Map<String, Object> detail = new HashMap<String, Object>();
+		detail.put("title", "Document title");
+		List<Object> tags = new ArrayList<Object>();
+		tags.add("a");
+		tags.add("b");
+		detail.put("tags", tags);
+
+		Assert.assertNull(tested.get("space", "id1", updated));
+
+		// null values are not cached
+		tested.put("space", "id1", null, detail);
+		tested.put("space", "id1", updated, null);
+		Assert.assertNull(tested.get("space", "id1", null));
+		Assert.assertNull(tested.get("space", "id1", updated));
+
+		tested.put("space", "id1", updated, detail);
+		// cached data are not changed with original detail
+		detail.put("title", "changed");
+		Map<String, Object> cached = (Map<String, Object>) tested.get("space", "id1", new Date(1000));
+		Assert.assertEquals("Document title", cached.get("title"));
+		Assert.assertEquals(tags, cached.get("tags"));
+
+		// other timestamp, id or space is not hit
+		Assert.assertNull(tested.get("space", "id1", new Date(2000)));
+		Assert.assertNull(tested.get("space", "id2", updated));
+		Assert.assertNull(tested.get("space2", "id1", updated));
+
+		// simple value detail
+		tested.put("space", "id3", updated, "text detail");
+		Assert.assertEquals("text detail", tested.get("space", "id3", updated));
+
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		tested.buildStats(builder);
+		builder.endObject();
+		Map<String, Object> stats = XContentHelper.convertToMap(builder.bytes(), false).v2();
+		Assert.assertEquals(100000, stats.get("max_size_bytes"));
+		Assert.assertEquals(2, stats.get("entries"));
+		Assert.assertEquals(2, stats.get("hits"));
+		Assert.assertEquals(5, stats.get("misses"));
+		Assert.assertEquals(0, stats.get("evictions"));
+	}
+
+	@Test
+	public void sizeLimit() throws Exception {
+		DocumentDetailCache tested = new DocumentDetailCache(2000);
+		Date updated = new Date(1000);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+			sb.append("x");
+
+		for (int i = 0; i < 50; i++) {
+			tested.put("space", "id" + i, updated, sb.toString());
+		}
+		Assert.assertTrue(tested.cache.size() < 50);
+		Assert.assertTrue(tested.cache.stats().evictionCount() > 0);
+		// last one is kept
+		Assert.assertNotNull(tested.get("space", "id49", updated));
+	}
+
+}
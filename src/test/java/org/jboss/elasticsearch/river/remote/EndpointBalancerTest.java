@@ -0,0 +1,175 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.jboss.elasticsearch.river.remote.EndpointBalancer.Endpoint;
+import org.jboss.elasticsearch.river.remote.EndpointBalancer.Strategy;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link EndpointBalancer}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class EndpointBalancerTest {
+
+	private static final HttpHost H1 = new HttpHost("test.org", -1, "http");
+	private static final HttpHost H2 = new HttpHost("test2.org", 8080, "http");
+	private static final HttpHost H3 = new HttpHost("test3.org", -1, "https");
+
+	private static List<HttpHost> hosts() {
+		List<HttpHost> ret = new ArrayList<HttpHost>();
+		ret.add(H1);
+		ret.add(H2);
+		ret.add(H3);
+		ret.add(H1);
+		return ret;
+	}
+
+	@Test
+	public void strategy_parse() {
+		Assert.assertEquals(Strategy.ROUND_ROBIN, Strategy.parse("round_robin"));
+		Assert.assertEquals(Strategy.LEAST_OUTSTANDING, Strategy.parse("Least_Outstanding"));
+		Assert.assertNull(Strategy.parse("random"));
+		Assert.assertNull(Strategy.parse(null));
+	}
+
+	@Test
+	public void select_roundRobin() {
+		EndpointBalancer tested = new EndpointBalancer(hosts(), Strategy.ROUND_ROBIN, 0, 1000);
+		// duplicate host removed
+		Assert.assertEquals(3, tested.getEndpoints().size());
+
+		// other host is not balanced
+		Assert.assertNull(tested.select(new HttpHost("other.org")));
+
+		Assert.assertEquals(H1, tested.select(H1).getHost());
+		Assert.assertEquals(H2, tested.select(H1).getHost());
+		Assert.assertEquals(H3, tested.select(H1).getHost());
+		Assert.assertEquals(H1, tested.select(H1).getHost());
+		Assert.assertEquals(1, tested.getEndpoints().get(1).getOutstanding());
+	}
+
+	@Test
+	public void select_leastOutstanding() {
+		EndpointBalancer tested = new EndpointBalancer(hosts(), Strategy.LEAST_OUTSTANDING, 0, 1000);
+		Endpoint e1 = tested.select(H1);
+		Endpoint e2 = tested.select(H1);
+		Endpoint e3 = tested.select(H1);
+		Assert.assertEquals(H1, e1.getHost());
+		Assert.assertEquals(H2, e2.getHost());
+		Assert.assertEquals(H3, e3.getHost());
+
+		tested.finished(e2, 10, false);
+		Assert.assertEquals(0, e2.getOutstanding());
+		Assert.assertSame(e2, tested.select(H1));
+	}
+
+	@Test
+	public void finished_ejection() {
+		EndpointBalancer tested = new EndpointBalancer(hosts(), Strategy.ROUND_ROBIN, 2, 60000);
+		Endpoint e2 = tested.getEndpoints().get(1);
+		long now = System.currentTimeMillis();
+
+		tested.select(H1);
+		tested.select(H1);
+		tested.finished(e2, 100, true);
+		Assert.assertFalse(e2.isEjected(now));
+		tested.select(H1);
+		tested.select(H1);
+		tested.finished(e2, 300, true);
+		Assert.assertTrue(e2.isEjected(System.currentTimeMillis()));
+		Assert.assertEquals(2, e2.getCalls());
+		Assert.assertEquals(2, e2.getFailures());
+		Assert.assertEquals(200, e2.getLatencyAvg());
+
+		// ejected endpoint is skipped
+		for (int i = 0; i < 6; i++) {
+			Assert.assertNotSame(e2, tested.select(H1));
+		}
+
+		// all ejected, some endpoint is used anyway
+		EndpointBalancer tested2 = new EndpointBalancer(hosts(), Strategy.ROUND_ROBIN, 1, 60000);
+		for (int i = 0; i < 3; i++) {
+			tested2.finished(tested2.select(H1), 10, true);
+		}
+		Assert.assertNotNull(tested2.select(H1));
+
+		// success closes ejection
+		tested.finished(e2, 100, false);
+		Assert.assertFalse(e2.isEjected(System.currentTimeMillis()));
+	}
+
+	@Test
+	public void select_halfOpen() throws Exception {
+		EndpointBalancer tested = new EndpointBalancer(hosts(), Strategy.ROUND_ROBIN, 1, 50);
+		Endpoint e2 = tested.getEndpoints().get(1);
+		tested.select(H1);
+		tested.finished(tested.select(H1), 10, true);
+		Assert.assertTrue(e2.isEjected(System.currentTimeMillis()));
+		Thread.sleep(60);
+
+		// ejection time elapsed, exactly one probe call is admitted
+		Assert.assertFalse(e2.isEjected(System.currentTimeMillis()));
+		Endpoint probe = tested.select(H1);
+		Assert.assertSame(e2, probe);
+		Assert.assertTrue(e2.isEjected(System.currentTimeMillis()));
+		for (int i = 0; i < 6; i++) {
+			Assert.assertNotSame(e2, tested.select(H1));
+		}
+
+		// failed probe ejects endpoint again
+		tested.finished(probe, 10, true);
+		Assert.assertTrue(e2.isEjected(System.currentTimeMillis()));
+		Assert.assertNotSame(e2, tested.select(H1));
+		Assert.assertEquals(0, e2.getOutstanding());
+		Thread.sleep(60);
+
+		// successful probe closes ejection
+		probe = tested.select(H1);
+		Assert.assertSame(e2, probe);
+		tested.finished(probe, 10, false);
+		Assert.assertFalse(e2.isEjected(System.currentTimeMillis()));
+		boolean used = false;
+		for (int i = 0; i < 3; i++) {
+			used = used || tested.select(H1) == e2;
+		}
+		Assert.assertTrue(used);
+	}
+
+	@Test
+	public void rewriteUrl() throws Exception {
+		EndpointBalancer tested = new EndpointBalancer(hosts(), Strategy.ROUND_ROBIN, 0, 1000);
+		Endpoint e2 = tested.getEndpoints().get(1);
+		Endpoint e3 = tested.getEndpoints().get(2);
+		Assert.assertEquals("http://test2.org:8080/path/a%2Fb?q=a+b&c=%7Bx%7D#frag",
+				EndpointBalancer.rewriteUrl("http://test.org/path/a%2Fb?q=a+b&c=%7Bx%7D#frag", e2));
+		Assert.assertEquals("https://test3.org", EndpointBalancer.rewriteUrl("http://test.org", e3));
+	}
+
+	@Test
+	public void buildStats() throws Exception {
+		EndpointBalancer tested = new EndpointBalancer(hosts(), Strategy.LEAST_OUTSTANDING, 0, 1000);
+		tested.finished(tested.select(H1), 50, false);
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		tested.buildStats(builder);
+		builder.endObject();
+		String json = builder.string();
+		Assert.assertTrue(json, json.contains("\"balancing\":\"least_outstanding\""));
+		Assert.assertTrue(json, json.contains("{\"endpoint\":\"http://test.org\",\"available\":true,\"outstanding\":0,"
+				+ "\"calls\":1,\"failures\":0,\"ejections\":0,\"latency_avg\":50,\"latency_max\":50}"));
+		Assert.assertTrue(json, json.contains("\"endpoint\":\"http://test2.org:8080\""));
+	}
+
+}
@@ -5,12 +5,17 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
@@ -18,6 +23,8 @@ import org.apache.http.HttpStatus;
 import org.elasticsearch.common.jackson.core.JsonParseException;
 import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.util.concurrent.Futures;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
 import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
 import org.junit.Test;
@@ -435,9 +442,285 @@ public class GetJSONClientTest {
 		}
 	}
 
-	private IRemoteSystemClient createTestedInstance(Map<String, Object> config, final String returnJson,
-			final String expectadCallUrl) {
+	@Test
+	public void getChangedDocuments_streaming() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS,
+				"http://totallyrandomdomain.org/documents?docSpace={space}&startAtIndex={startAtIndex}");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_DOCUMENTS, "response.items");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_TOTALCOUNT, "response.total");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_STREAMING, true);
+		Map<String, Object> valueForRootResFields = new HashMap<String, Object>(1);
+		valueForRootResFields.put("dev", "response.container_info.dev");
+		config.put(GetJSONClient.CFG_GET_ROOT_RES_FIELDS_MAPPING, valueForRootResFields);
+
+		final String returnJson = "{\"response\": { \"total\":20 , \"ignored\" : [1,{\"a\":\"b\"}], \"container_info\": { \"dev\":\"false\"},"
+				+ "\"items\":[{\"key\" : \"a\"},{\"key\" : \"b\"}]}}";
 		IRemoteSystemClient tested = new GetJSONClient() {
+			@Override
+			protected HttpResponseContent performHttpCall(String url, Map<String, String> headers,
+					HttpMethodType methodType) throws Exception, HttpCallException {
+				throw new Exception("Streaming call expected");
+			}
+
+			@Override
+			protected <T> T performHttpCall(String url, Map<String, String> headers, HttpMethodType methodType,
+					HttpResponseStreamProcessor<T> processor) throws Exception, HttpCallException {
+				Assert.assertEquals("http://totallyrandomdomain.org/documents?docSpace=myspace&startAtIndex=12", url);
+				return processor.process("application/json", new ByteArrayInputStream(returnJson.getBytes("UTF-8")));
+			}
+		};
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+
+		ChangedDocumentsResults ret = tested.getChangedDocuments("myspace", 12, false, null);
+		Assert.assertEquals(2, ret.getDocumentsCount());
+		Assert.assertEquals(returnJson.getBytes("UTF-8").length, ret.getResponseBytes());
+		Assert.assertEquals(new Integer(20), ret.getTotal());
+		Assert.assertEquals("a", ret.getDocuments().get(0).get("key"));
+		Assert.assertEquals("b", ret.getDocuments().get(1).get("key"));
+		Assert.assertEquals("false", ret.getDocuments().get(1).get("dev"));
+	}
+
+	@Test
+	public void getChangedDocuments_cursor() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS,
+				"http://totallyrandomdomain.org/documents?docSpace={space}&cursor={cursor}");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_DOCUMENTS, "items");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_NEXT_CURSOR, "paging.next");
+
+		// first page, opaque cursor returned
+		GetJSONClient tested = createTestedInstance(config,
+				"{ \"paging\": {\"next\":\"a b\"}, \"items\":[{\"key\" : \"a\"},{\"key\" : \"b\"}] }",
+				"http://totallyrandomdomain.org/documents?docSpace=myspace&cursor=");
+		ChangedDocumentsResults ret = tested.getChangedDocuments("myspace", 0, true, null);
+		Assert.assertEquals(2, ret.getDocumentsCount());
+		Assert.assertEquals(0, ret.getStartAt());
+		Assert.assertNull(ret.getTotal());
+		Assert.assertEquals("a b", ret.getNextCursor());
+
+		// opaque cursor placed into url, last page so total is known
+		tested = createTestedInstance(config, "{ \"items\":[{\"key\" : \"c\"}] }",
+				"http://totallyrandomdomain.org/documents?docSpace=myspace&cursor=a+b");
+		ret = tested.getChangedDocuments("myspace", 2, "a b", true, null);
+		Assert.assertEquals(1, ret.getDocumentsCount());
+		Assert.assertEquals(2, ret.getStartAt());
+		Assert.assertEquals(new Integer(3), ret.getTotal());
+		Assert.assertNull(ret.getNextCursor());
+
+		// absolute next page url
+		tested = createTestedInstance(config,
+				"{ \"paging\": {\"next\":\"\"}, \"items\":[{\"key\" : \"c\"}] }",
+				"http://totallyrandomdomain.org/docs?page=2");
+		ret = tested.getChangedDocuments("myspace", 2, "http://totallyrandomdomain.org/docs?page=2", true, null);
+		Assert.assertEquals(new Integer(3), ret.getTotal());
+		Assert.assertNull(ret.getNextCursor());
+		Assert.assertEquals("http://TotallyRandomDomain.org:80/docs?page=2",
+				tested.prepareUrlGetDocuments("myspace", 2, "http://TotallyRandomDomain.org:80/docs?page=2", true, null));
+
+		// relative next page urls
+		Assert.assertEquals("http://totallyrandomdomain.org/documents?page=3",
+				tested.prepareUrlGetDocuments("myspace", 2, "?page=3", true, null));
+		Assert.assertEquals("http://totallyrandomdomain.org/docs/3",
+				tested.prepareUrlGetDocuments("myspace", 2, "/docs/3", true, null));
+
+		// next page urls pointing to other origin are rejected
+		for (String cursor : new String[] { "http://other.org/docs?page=2", "https://totallyrandomdomain.org/docs?page=2",
+				"http://totallyrandomdomain.org:8080/docs?page=2", "//other.org/docs?page=2" }) {
+			try {
+				tested.prepareUrlGetDocuments("myspace", 2, cursor, true, null);
+				Assert.fail("Exception expected for " + cursor);
+			} catch (Exception e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().contains("pointing to other scheme, host or port"));
+			}
+		}
+
+		// empty page ends cursor paging
+		tested = createTestedInstance(config, "{ \"paging\": {\"next\":\"c\"}, \"items\":[] }",
+				"http://totallyrandomdomain.org/documents?docSpace=myspace&cursor=b");
+		ret = tested.getChangedDocuments("myspace", 5, "b", true, null);
+		Assert.assertEquals(new Integer(5), ret.getTotal());
+		Assert.assertNull(ret.getNextCursor());
+	}
+
+	@Test
+	public void getChangedDocuments_rateLimitedRetry() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS, "http://totallyrandomdomain.org/documents?docSpace={space}");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_DOCUMENTS, "items");
+		config.put(GetJSONClient.CFG_MIN_GET_DOCUMENTS_DELAY, "200");
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RETRY_LIST, 1);
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RETRY_BACKOFF, "1ms");
+
+		// retry of failed call waits for rate limiter as every other call
+		final List<Long> attempts = new ArrayList<Long>();
+		GetJSONClient tested = new GetJSONClient() {
+			@Override
+			protected HttpResponseContent performConditionalHttpGetCall(String url, Map<String, String> headers)
+					throws Exception {
+				attempts.add(System.nanoTime());
+				if (attempts.size() == 1)
+					throw new HttpCallException(url, HttpStatus.SC_SERVICE_UNAVAILABLE, "unavailable");
+				return new HttpResponseContent("application/json", "{ \"items\":[{\"key\" : \"a\"}] }".getBytes("UTF-8"));
+			};
+		};
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+
+		ChangedDocumentsResults ret = tested.getChangedDocuments("myspace", 0, true, null);
+		Assert.assertEquals(1, ret.getDocumentsCount());
+		Assert.assertEquals(2, attempts.size());
+		long gap = (attempts.get(1) - attempts.get(0)) / 1000000;
+		Assert.assertTrue("Retry not rate limited, gap " + gap + "ms", gap >= 150);
+		Assert.assertTrue(tested.rateLimitWaitMillis.get() > 0);
+	}
+
+	@Test
+	public void getChangedDocuments_cursorReplicas() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS,
+				"http://totallyrandomdomain.org/documents?docSpace={space}&cursor={cursor}");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_DOCUMENTS, "items");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_NEXT_CURSOR, "paging.next");
+		config.put(HttpRemoteSystemClientBase.CFG_URL_REPLICAS, "https://replica1.org,http://replica2.org:8080");
+
+		// next page url may point to any replica which served previous page
+		GetJSONClient tested = createTestedInstance(config, "{ \"items\":[{\"key\" : \"c\"}] }",
+				"https://replica1.org/docs?page=2");
+		ChangedDocumentsResults ret = tested.getChangedDocuments("myspace", 2, "https://replica1.org/docs?page=2", true,
+				null);
+		Assert.assertEquals(1, ret.getDocumentsCount());
+		Assert.assertEquals("http://Replica2.org:8080/docs?page=2",
+				tested.prepareUrlGetDocuments("myspace", 2, "http://Replica2.org:8080/docs?page=2", true, null));
+		Assert.assertEquals("http://totallyrandomdomain.org/docs?page=2",
+				tested.prepareUrlGetDocuments("myspace", 2, "http://totallyrandomdomain.org/docs?page=2", true, null));
+
+		// other hosts, and replica hosts with other scheme or port are still rejected
+		for (String cursor : new String[] { "http://other.org/docs?page=2", "http://replica1.org/docs?page=2",
+				"http://replica2.org/docs?page=2" }) {
+			try {
+				tested.prepareUrlGetDocuments("myspace", 2, cursor, true, null);
+				Assert.fail("Exception expected for " + cursor);
+			} catch (Exception e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().contains("pointing to other scheme, host or port"));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getChangedDocuments_pageSize() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS, "http://totallyrandomdomain.org/documents?docSpace={space}");
+		config.put(GetJSONClient.CFG_GET_DOCS_RES_FIELD_DOCUMENTS, "items");
+		GetJSONClient tested = createTestedInstance(config, "{}", null);
+		Assert.assertFalse(tested.isPageSizeSupported());
+
+		String response = "{ \"items\":[{\"key\" : \"a\"}] }";
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS,
+				"http://totallyrandomdomain.org/documents?docSpace={space}&size={pageSize}");
+		tested = createTestedInstance(config, response,
+				"http://totallyrandomdomain.org/documents?docSpace=myspace&size=");
+		Assert.assertTrue(tested.isPageSizeSupported());
+		ChangedDocumentsResults ret = tested.getChangedDocuments("myspace", 0, true, null);
+		Assert.assertEquals(response.getBytes("UTF-8").length, ret.getResponseBytes());
+
+		tested = createTestedInstance(config, response,
+				"http://totallyrandomdomain.org/documents?docSpace=myspace&size=20");
+		tested.setPageSize("myspace", 20);
+		tested.setPageSize("otherspace", 30);
+		tested.getChangedDocuments("myspace", 0, true, null);
+	}
+
+	@Test
+	public void prepareUrlGetDocuments_timeWindow() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS, "http://totallyrandomdomain.org/documents?docSpace={space}");
+		config.put(GetJSONClient.CFG_UPDATED_AFTER_INITIAL_VALUE, "1000");
+		GetJSONClient tested = createTestedInstance(config, "{}", null);
+		Assert.assertFalse(tested.isTimeWindowsSupported());
+		Assert.assertEquals(new Date(1000), tested.getUpdatedAfterInitialValue());
+
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS,
+				"http://totallyrandomdomain.org/documents?docSpace={space}&after={updatedAfter}&before={updatedBefore}");
+		config.put(GetJSONClient.CFG_UPDATED_BEFORE_TIME_SPAN_FROM_UPDATED_AFTER, "100");
+		config.remove(GetJSONClient.CFG_UPDATED_AFTER_INITIAL_VALUE);
+		tested = createTestedInstance(config, "{}", null);
+		Assert.assertTrue(tested.isTimeWindowsSupported());
+		Assert.assertNull(tested.getUpdatedAfterInitialValue());
+
+		// time span used if window end is not provided
+		Assert.assertEquals("http://totallyrandomdomain.org/documents?docSpace=myspace&after=2000&before=2100",
+				tested.prepareUrlGetDocuments("myspace", 0, null, true, new Date(2000)));
+		// explicit window end
+		Assert.assertEquals("http://totallyrandomdomain.org/documents?docSpace=myspace&after=2000&before=5000",
+				tested.prepareUrlGetDocuments("myspace", 0, null, true, new Date(2000), new Date(5000)));
+	}
+
+	@Test
+	public void preparePathTree() {
+		Assert.assertTrue(GetJSONClient.preparePathTree(Arrays.asList((String) null)).isEmpty());
+
+		Map<String, Object> tree = GetJSONClient.preparePathTree(Arrays.asList("items", null, "response.total",
+				"response.info.dev", "response.info", "response.info.other", "other.a.b"));
+		Assert.assertEquals(3, tree.size());
+		Assert.assertEquals(Boolean.TRUE, tree.get("items"));
+		Map<String, Object> response = (Map<String, Object>) tree.get("response");
+		Assert.assertEquals(2, response.size());
+		Assert.assertEquals(Boolean.TRUE, response.get("total"));
+		// whole object wins over its subfields
+		Assert.assertEquals(Boolean.TRUE, response.get("info"));
+		Assert.assertEquals(Boolean.TRUE, ((Map<String, Object>) ((Map<String, Object>) tree.get("other")).get("a"))
+				.get("b"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void parseJSONResponse() throws Exception {
+		GetJSONClient tested = new GetJSONClient();
+
+		// whole response read
+		Assert.assertEquals("val", tested.parseJSONResponse("\"val\"".getBytes("UTF-8")));
+		Assert.assertEquals(10, tested.parseJSONResponse("10".getBytes("UTF-8")));
+		Assert.assertEquals(true, tested.parseJSONResponse("true".getBytes("UTF-8")));
+		Assert.assertEquals(null, tested.parseJSONResponse("null".getBytes("UTF-8")));
+		List<Object> list = (List<Object>) tested.parseJSONResponse("[1,\"a\",[true],{\"b\":null}]".getBytes("UTF-8"));
+		Assert.assertEquals(4, list.size());
+		Assert.assertEquals(1, list.get(0));
+		Assert.assertEquals("a", list.get(1));
+		Assert.assertEquals(Arrays.asList(true), list.get(2));
+		Assert.assertTrue(((Map<String, Object>) list.get(3)).containsKey("b"));
+		Map<String, Object> map = (Map<String, Object>) tested.parseJSONResponse("{\"a\":{\"b\":1},\"c\":[2]}"
+				.getBytes("UTF-8"));
+		Assert.assertEquals(2, map.size());
+
+		try {
+			tested.parseJSONResponse("".getBytes("UTF-8"));
+			Assert.fail("JsonParseException expected");
+		} catch (JsonParseException e) {
+			// OK
+		}
+
+		// only configured paths read
+		Map<String, Object> pathTree = GetJSONClient.preparePathTree(Arrays.asList("a.b", "d.e", "f"));
+		map = (Map<String, Object>) tested.parseJSONResponse(
+				"{\"a\":{\"b\":1,\"x\":{\"y\":2}},\"c\":[2,{\"z\":3}],\"d\":[{\"e\":4},{\"e\":5}],\"f\":{\"g\":6}}"
+						.getBytes("UTF-8"), pathTree);
+		Assert.assertEquals(3, map.size());
+		Assert.assertEquals(1, ((Map<String, Object>) map.get("a")).size());
+		Assert.assertEquals(1, XContentMapValues.extractValue("a.b", map));
+		// array on the path is read whole to keep dot notation semantics
+		Assert.assertEquals(Arrays.asList(4, 5), XContentMapValues.extractValue("d.e", map));
+		Assert.assertEquals(6, XContentMapValues.extractValue("f.g", map));
+
+		// same from stream, root array is read whole
+		list = (List<Object>) tested.parseJSONResponse(new ByteArrayInputStream("[{\"a\":1,\"b\":2}]".getBytes("UTF-8")),
+				pathTree);
+		Assert.assertEquals(2, ((Map<String, Object>) list.get(0)).size());
+	}
+
+	private GetJSONClient createTestedInstance(Map<String, Object> config, final String returnJson,
+			final String expectadCallUrl) {
+		GetJSONClient tested = new GetJSONClient() {
 			@Override
 			protected HttpResponseContent performHttpCall(String url, Map<String, String> headers, HttpMethodType methodType) throws Exception,
 					HttpCallException {
@@ -464,6 +747,65 @@ public class GetJSONClientTest {
 		return tested;
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getChangedDocumentDetails_batch() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS, "http://test.org/documents");
+
+		// case - batch not configured
+		{
+			GetJSONClient tested = new GetJSONClient();
+			tested.init(mockEsIntegrationComponent(), config, false, null);
+			Assert.assertFalse(tested.isBatchDetailsEnabled());
+		}
+
+		// case - configuration errors
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENT_DETAILS_BATCH, "http://test.org/document?docSpace={space}");
+		config.put(GetJSONClient.CFG_GET_DOC_DETAILS_BATCH_RES_FIELD_ID, "key");
+		try {
+			new GetJSONClient().init(mockEsIntegrationComponent(), config, false, null);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			// OK, {ids} missing
+		}
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENT_DETAILS_BATCH, "http://test.org/document?docSpace={space}&id={ids}");
+		config.remove(GetJSONClient.CFG_GET_DOC_DETAILS_BATCH_RES_FIELD_ID);
+		try {
+			new GetJSONClient().init(mockEsIntegrationComponent(), config, false, null);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			// OK, id field missing
+		}
+
+		// case - batch split by max size, details split by id field, 404 means no document found
+		config.put(GetJSONClient.CFG_GET_DOC_DETAILS_BATCH_RES_FIELD_ID, "info.key");
+		config.put(GetJSONClient.CFG_GET_DOC_DETAILS_BATCH_RES_FIELD, "items");
+		config.put(GetJSONClient.CFG_GET_DOC_DETAILS_BATCH_MAX_SIZE, 2);
+		final List<String> calledUrls = new ArrayList<String>();
+		GetJSONClient tested = new GetJSONClient() {
+			@Override
+			protected HttpResponseContent performHttpGetCall(String url, Map<String, String> headers) throws Exception,
+					HttpCallException {
+				calledUrls.add(url);
+				if (url.endsWith("id=a+1,b"))
+					return new HttpResponseContent("application/json",
+							"{\"items\":[{\"info\":{\"key\":\"b\"},\"v\":2},{\"info\":{\"key\":\"a 1\"},\"v\":1}]}"
+									.getBytes("UTF-8"));
+				throw new HttpCallException(url, HttpStatus.SC_NOT_FOUND, "");
+			}
+		};
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+		Assert.assertTrue(tested.isBatchDetailsEnabled());
+
+		Map<String, Object> ret = tested.getChangedDocumentDetails("my space", Arrays.asList("a 1", "b", "c"));
+		Assert.assertEquals(Arrays.asList("http://test.org/document?docSpace=my+space&id=a+1,b",
+				"http://test.org/document?docSpace=my+space&id=c"), calledUrls);
+		Assert.assertEquals(2, ret.size());
+		Assert.assertEquals(1, XContentMapValues.extractValue("v", (Map<String, Object>) ret.get("a 1")));
+		Assert.assertEquals(2, XContentMapValues.extractValue("v", (Map<String, Object>) ret.get("b")));
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void getChangedDocumentDetails_urlConfigured() throws Exception {
@@ -551,6 +893,86 @@ public class GetJSONClientTest {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getChangedDocumentDetailsAsync() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENTS,
+				"http://test.org/documents?docSpace={space}&docUpdatedAfter={updatedAfter}&startAtIndex={startAtIndex}");
+
+		// case - URL not configured so no call
+		{
+			IRemoteSystemClientAsync tested = (IRemoteSystemClientAsync) createTestedInstance(config, "invalid json",
+					"not called");
+			Assert.assertFalse(tested.isAsyncTransportEnabled());
+			Assert.assertNull(tested.getChangedDocumentDetailsAsync("myspace", "myid", null).get());
+		}
+
+		config.put(GetJSONClient.CFG_URL_GET_DOCUMENT_DETAILS, "http://test.org/document?docSpace={space}&id={id}");
+
+		// case - JSON object returned
+		{
+			IRemoteSystemClientAsync tested = (IRemoteSystemClientAsync) createTestedInstance(config,
+					"{\"item1\":\"val1\"}", "http://test.org/document?docSpace=myspace&id=myid");
+			Future<Object> ret = tested.getChangedDocumentDetailsAsync("myspace", "myid", null);
+			Assert.assertTrue(ret.isDone());
+			Map<String, Object> rm = (Map<String, Object>) ret.get();
+			Assert.assertEquals("val1", rm.get("item1"));
+			// result is processed only once
+			Assert.assertSame(rm, ret.get());
+		}
+
+		// case - bad JSON returned
+		{
+			IRemoteSystemClientAsync tested = (IRemoteSystemClientAsync) createTestedInstance(config, "invalid json",
+					"http://test.org/document?docSpace=myspace&id=myid");
+			try {
+				tested.getChangedDocumentDetailsAsync("myspace", "myid", null).get();
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof JsonParseException);
+			}
+		}
+
+		// case - HTTP code 404 must throw special exception
+		{
+			IRemoteSystemClientAsync tested = createTestedInstanceWithAsyncHttpCallException(config,
+					HttpStatus.SC_NOT_FOUND);
+			try {
+				tested.getChangedDocumentDetailsAsync("myspace", "myid", null).get();
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RemoteDocumentNotFoundException);
+			}
+		}
+
+		// case - other HTTP codes
+		{
+			IRemoteSystemClientAsync tested = createTestedInstanceWithAsyncHttpCallException(config,
+					HttpStatus.SC_FORBIDDEN);
+			try {
+				tested.getChangedDocumentDetailsAsync("myspace", "myid", null).get();
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof HttpCallException);
+			}
+		}
+	}
+
+	private IRemoteSystemClientAsync createTestedInstanceWithAsyncHttpCallException(Map<String, Object> config,
+			final int returnHttpCode) {
+		GetJSONClient tested = new GetJSONClient() {
+			@Override
+			protected Future<HttpResponseContent> performHttpCallAsync(String url, Map<String, String> headers,
+					HttpMethodType methodType) {
+				return Futures.immediateFailedFuture(new HttpCallException(url, returnHttpCode, "response content"));
+			};
+
+		};
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+		return tested;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void getChangedDocumentDetails_urlFieldConfigured() throws Exception {
@@ -5,15 +5,27 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.common.settings.SettingsException;
 import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpMethodType;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseContent;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseStreamProcessor;
 import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
+import org.jboss.elasticsearch.river.remote.sitemap.SiteMap;
+import org.jboss.elasticsearch.river.remote.sitemap.SiteMapParser;
 import org.jboss.elasticsearch.river.remote.sitemap.SiteMapParserTest;
 import org.jboss.elasticsearch.river.remote.sitemap.UnknownFormatException;
 import org.jsoup.Jsoup;
@@ -61,6 +73,8 @@ public class GetSitemapHtmlClientTest {
 			tested.init(esMock, config, false, null);
 			Assert.assertEquals("http://test.org/documents", tested.urlGetSitemap);
 			Assert.assertFalse(tested.isAuthConfigured);
+			Assert.assertFalse(tested.sitemapStreaming);
+			Assert.assertEquals(SiteMapParser.MAX_URLS, tested.sitemapParser.getMaxUrls());
 			Mockito.verify(esMock).createLogger(GetSitemapHtmlClient.class);
 		}
 
@@ -151,6 +165,60 @@ public class GetSitemapHtmlClientTest {
 			Assert.assertEquals("'remote/htmlMapping' configuration section is invalid", e.getMessage());
 		}
 
+		// case - invalid css selector in html mapping is reported at startup
+		try {
+			GetSitemapHtmlClient tested = new GetSitemapHtmlClient();
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/documents");
+			Map<String, Object> htmlMapping = new HashMap<>();
+			createMappingField(htmlMapping, "title", "head title[", null);
+			config.put(GetSitemapHtmlClient.CFG_HTML_MAPPING, htmlMapping);
+			tested.init(mockEsIntegrationComponent(), config, false, null);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			Assert.assertTrue(e.getMessage().startsWith("'remote/htmlMapping/title/cssSelector' is invalid css selector"));
+		}
+
+		// case - crawler not configured by default
+		{
+			GetSitemapHtmlClient tested = new GetSitemapHtmlClient();
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/documents");
+			tested.init(mockEsIntegrationComponent(), config, false, null);
+			Assert.assertNull(tested.crawler);
+			Assert.assertFalse(tested.isAsyncTransportEnabled());
+		}
+
+		// case - crawler configured
+		{
+			GetSitemapHtmlClient tested = new GetSitemapHtmlClient();
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/documents");
+			config.put(GetSitemapHtmlClient.CFG_CRAWLER_HOST_CONCURRENCY, 3);
+			config.put(GetSitemapHtmlClient.CFG_CRAWLER_POLITENESS_DELAY, "2s");
+			tested.init(mockEsIntegrationComponent(), config, false, null);
+			Assert.assertNotNull(tested.crawler);
+			Assert.assertEquals(3, tested.crawler.hostConcurrency);
+			Assert.assertEquals(2000, tested.crawler.politenessDelay);
+			Assert.assertTrue(tested.isAsyncTransportEnabled());
+			tested.crawler.shutdown();
+		}
+
+		// case - crawler threads invalid
+		try {
+			GetSitemapHtmlClient tested = new GetSitemapHtmlClient();
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/documents");
+			config.put(GetSitemapHtmlClient.CFG_CRAWLER_HOST_CONCURRENCY, 3);
+			config.put(GetSitemapHtmlClient.CFG_CRAWLER_PARSE_THREADS, 0);
+			tested.init(mockEsIntegrationComponent(), config, false, null);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals(
+					"remote/crawlerThreads and remote/crawlerParseThreads configuration parameters must be positive numbers.",
+					e.getMessage());
+		}
+
 	}
 
 	@Test(expected = UnsupportedOperationException.class)
@@ -257,18 +325,338 @@ public class GetSitemapHtmlClientTest {
 			Assert.assertEquals(0, chr.getStartAt());
 		}
 
-		// case - sitemap is index so we can't process it
-		try {
+	}
+
+	public static final String SITEMAP_INDEX = "<sitemapindex>"
+			+ "<sitemap><loc>http://www.example.com/sitemap1.xml</loc><lastmod>2004-10-01T18:23:17+00:00</lastmod></sitemap>"
+			+ "<sitemap><loc>http://www.example.com/sitemap2.xml</loc><lastmod>2005-01-01</lastmod></sitemap>"
+			+ "<sitemap><loc>http://www.example.com/sitemap3.xml</loc></sitemap>" + "</sitemapindex>";
+
+	private GetSitemapHtmlClient createTestedInstanceForIndex(Map<String, Object> config, IESIntegration esMock) {
+		return createTestedInstanceForIndex(config, esMock, createIndexSitemaps());
+	}
+
+	private Map<String, String> createIndexSitemaps() {
+		Map<String, String> sitemaps = new HashMap<String, String>();
+		sitemaps.put(SiteMapParserTest.URL_SITEMAP_XML, SITEMAP_INDEX);
+		sitemaps.put("http://www.example.com/sitemap1.xml", "<urlset><url><loc>http://www.example.com/a.html</loc></url>"
+				+ "<url><loc>http://www.example.com/b.html</loc></url></urlset>");
+		sitemaps.put("http://www.example.com/sitemap2.xml", "<urlset></urlset>");
+		sitemaps.put("http://www.example.com/sitemap3.xml",
+				"<urlset><url><loc>http://www.example.com/c.html</loc></url></urlset>");
+		return sitemaps;
+	}
+
+	private GetSitemapHtmlClient createTestedInstanceForIndex(Map<String, Object> config, IESIntegration esMock,
+			final Map<String, String> sitemaps) {
+		config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, SiteMapParserTest.URL_SITEMAP_XML);
+		GetSitemapHtmlClient tested = new GetSitemapHtmlClient() {
+			@Override
+			protected HttpResponseContent performHttpGetCall(String url, Map<String, String> headers) throws Exception {
+				String content = sitemaps.get(url);
+				if (content == null)
+					throw new HttpCallException(url, HttpStatus.SC_NOT_FOUND, "not found");
+				return new HttpResponseContent(CT_XML, content.getBytes("UTF-8"));
+			}
+		};
+		tested.init(esMock, config, false, null);
+		return tested;
+	}
+
+	@Test
+	public void getChangedDocuments_sitemapIndex() throws Exception {
+
+		String lastMod1 = DateTimeUtils.formatISODateTime(SiteMap.convertToDate("2004-10-01T18:23:17+00:00"));
+		String lastMod2 = DateTimeUtils.formatISODateTime(SiteMap.convertToDate("2005-01-01"));
+
+		// case - simple mode, documents from all child sitemaps returned at once
+		{
+			IESIntegration esMock = mockEsIntegrationComponent();
+			GetSitemapHtmlClient tested = createTestedInstanceForIndex(new HashMap<String, Object>(), esMock);
+			Assert.assertFalse(tested.sitemapIndexPaging);
+			Assert.assertEquals(4, tested.sitemapIndexConcurrency);
+			ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, true, null);
+			Assert.assertEquals(3, chr.getDocumentsCount());
+			Assert.assertEquals(new Integer(3), chr.getTotal());
+			Assert.assertNull(chr.getNextCursor());
+			Assert.assertEquals("http://www.example.com/a.html", chr.getDocuments().get(0).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+			Assert.assertEquals("http://www.example.com/b.html", chr.getDocuments().get(1).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+			Assert.assertEquals("http://www.example.com/c.html", chr.getDocuments().get(2).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+
+			// last modification dates are stored only once indexing run finishes
+			Mockito.verify(esMock, Mockito.never()).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+					Mockito.anyMap());
+			tested.indexingFinished("myspace");
+			Map<String, Object> expectedStored = new HashMap<String, Object>();
+			expectedStored.put("http://www.example.com/sitemap1.xml", lastMod1);
+			expectedStored.put("http://www.example.com/sitemap2.xml", lastMod2);
+			Mockito.verify(esMock).storeObjectValue("myspace", GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_INDEX,
+					expectedStored);
+			Assert.assertTrue(tested.sitemapIndexLastModified.isEmpty());
+			Mockito.verify(esMock, Mockito.never()).readObjectValue(Mockito.anyString(), Mockito.anyString());
+		}
+
+		// case - pagination mode, one page per child sitemap, empty child sitemap skipped
+		{
 			Map<String, Object> config = new HashMap<String, Object>();
-			config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, SiteMapParserTest.URL_SITEMAP_XML);
-			GetSitemapHtmlClient tested = createTestedInstance(config, SiteMapParserTest.SITEMAP_XML_INDEX, CT_XML,
-					SiteMapParserTest.URL_SITEMAP_XML);
-			tested.getChangedDocuments("myspace", 0, true, null);
-			Assert.fail("Exception expected");
-		} catch (Exception e) {
-			Assert.assertEquals("Sitemap index format is not supported by this river!", e.getMessage());
+			config.put(GetSitemapHtmlClient.CFG_LIST_DOCUMENTS_MODE, "pagination");
+			config.put(GetSitemapHtmlClient.CFG_SITEMAP_INDEX_CONCURRENCY, 2);
+			GetSitemapHtmlClient tested = createTestedInstanceForIndex(config, mockEsIntegrationComponent());
+			Assert.assertTrue(tested.sitemapIndexPaging);
+
+			ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, true, null);
+			Assert.assertEquals(2, chr.getDocumentsCount());
+			Assert.assertNull(chr.getTotal());
+			Assert.assertEquals("1", chr.getNextCursor());
+
+			chr = tested.getChangedDocuments("myspace", 2, "1", true, null);
+			Assert.assertEquals(1, chr.getDocumentsCount());
+			Assert.assertEquals(2, chr.getStartAt());
+			Assert.assertEquals(new Integer(3), chr.getTotal());
+			Assert.assertNull(chr.getNextCursor());
+			Assert.assertEquals("http://www.example.com/c.html", chr.getDocuments().get(0).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+			Assert.assertTrue(tested.sitemapIndexFetches.isEmpty());
+
+			try {
+				tested.getChangedDocuments("myspace", 3, "2", true, null);
+				Assert.fail("IllegalStateException expected");
+			} catch (IllegalStateException e) {
+				// OK
+			}
+		}
+
+		// case - incremental update, child sitemap not modified since last run is skipped
+		{
+			IESIntegration esMock = mockEsIntegrationComponent();
+			Map<String, Object> lastRun = new HashMap<String, Object>();
+			lastRun.put("http://www.example.com/sitemap1.xml", lastMod1);
+			lastRun.put("http://www.example.com/sitemap2.xml", "2004-01-01T00:00:00.0+0000");
+			Mockito.when(esMock.readObjectValue("myspace", GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_INDEX))
+					.thenReturn(lastRun);
+			GetSitemapHtmlClient tested = createTestedInstanceForIndex(new HashMap<String, Object>(), esMock);
+			ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, false, null);
+			Assert.assertEquals(1, chr.getDocumentsCount());
+			Assert.assertEquals("http://www.example.com/c.html", chr.getDocuments().get(0).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+		}
+
+		// case - child sitemap fetch error
+		{
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put(GetSitemapHtmlClient.CFG_LIST_DOCUMENTS_MODE, "pagination");
+			IESIntegration esMock = mockEsIntegrationComponent();
+			Map<String, String> sitemaps = createIndexSitemaps();
+			sitemaps.remove("http://www.example.com/sitemap3.xml");
+			GetSitemapHtmlClient tested = createTestedInstanceForIndex(config, esMock, sitemaps);
+			ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, true, null);
+			Assert.assertEquals("1", chr.getNextCursor());
+			try {
+				tested.getChangedDocuments("myspace", 2, "1", true, null);
+				Assert.fail("HttpCallException expected");
+			} catch (HttpCallException e) {
+				// OK
+			}
+			Assert.assertTrue(tested.sitemapIndexFetches.isEmpty());
+			Mockito.verify(esMock, Mockito.never()).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+					Mockito.anyMap());
 		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getChangedDocuments_incremental() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_SITEMAP_INCREMENTAL, true);
+		Map<String, String> sitemaps = new HashMap<String, String>();
+		sitemaps.put(SiteMapParserTest.URL_SITEMAP_XML, SITEMAP_XML_NO_DECLARATIONS_IGNORED_EXTENSIONS);
 
+		// case - full update returns all documents, state persisted when indexing finishes
+		Map<String, Object> state = null;
+		{
+			IESIntegration esMock = mockEsIntegrationComponent();
+			GetSitemapHtmlClient tested = createTestedInstanceForIndex(config, esMock, sitemaps);
+			Assert.assertTrue(tested.isIncrementalUpdateSupported());
+			ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, true, null);
+			Assert.assertEquals(3, chr.getDocumentsCount());
+			Mockito.verify(esMock, Mockito.never()).readObjectValue(Mockito.anyString(), Mockito.anyString());
+			Mockito.verify(esMock, Mockito.never()).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+					Mockito.anyMap());
+
+			state = tested.sitemapUrlsStates.get("myspace").current;
+			Map<String, Object> urls = (Map<String, Object>) ((Map<String, Object>) state
+					.get(SiteMapParserTest.URL_SITEMAP_XML)).get(GetSitemapHtmlClient.SitemapUrlsState.KEY_URLS);
+			Assert.assertEquals(3, urls.size());
+			Assert.assertEquals("2005-01-01T00:00:00.0+0000", urls.get("http://www.example.com/"));
+
+			tested.indexingFinished("myspace");
+			Mockito.verify(esMock).storeObjectValue("myspace", GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_URLS, state);
+			Assert.assertTrue(tested.sitemapUrlsStates.isEmpty());
+
+			// nothing stored if no indexing run is pending
+			tested.indexingFinished("myspace");
+			Mockito.verify(esMock).storeObjectValue(Mockito.anyString(), Mockito.anyString(), Mockito.anyMap());
+		}
+
+		// case - incremental update returns changed and deleted documents only
+		{
+			Map<String, Object> urls = (Map<String, Object>) ((Map<String, Object>) state
+					.get(SiteMapParserTest.URL_SITEMAP_XML)).get(GetSitemapHtmlClient.SitemapUrlsState.KEY_URLS);
+			urls.put("http://www.example.com/", "2004-01-01T00:00:00.0+0000");
+			urls.put("http://www.example.com/removed.html", "");
+			IESIntegration esMock = mockEsIntegrationComponent();
+			Mockito.when(esMock.readObjectValue("myspace", GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_URLS))
+					.thenReturn(state);
+			GetSitemapHtmlClient tested = createTestedInstanceForIndex(config, esMock, sitemaps);
+			ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, false, null);
+			Assert.assertEquals(2, chr.getDocumentsCount());
+			Assert.assertEquals(new Integer(2), chr.getTotal());
+			assertDoc(chr.getDocuments().get(0), "http://www.example.com/", "2005-01-01T00:00:00.0+0000", 0.8);
+			Map<String, Object> deleted = chr.getDocuments().get(1);
+			Assert.assertEquals("http://www.example.com/removed.html", deleted.get(GetSitemapHtmlClient.DOC_FIELD_URL));
+			Assert.assertEquals("true", deleted.get(GetSitemapHtmlClient.DOC_FIELD_DELETED));
+
+			// detail not fetched for deleted document
+			Assert.assertNull(tested.getChangedDocumentDetails("myspace", "id", deleted));
+			Assert.assertNull(tested.getChangedDocumentDetailsAsync("myspace", "id", deleted).get());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getChangedDocuments_incremental_sitemapIndex() throws Exception {
+		String lastMod1 = DateTimeUtils.formatISODateTime(SiteMap.convertToDate("2004-10-01T18:23:17+00:00"));
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_SITEMAP_INCREMENTAL, true);
+		// not modified child sitemap must not be fetched
+		Map<String, String> sitemaps = createIndexSitemaps();
+		sitemaps.remove("http://www.example.com/sitemap1.xml");
+
+		Map<String, Object> state = new HashMap<String, Object>();
+		state.put("http://www.example.com/sitemap1.xml",
+				createUrlsState(lastMod1, "http://www.example.com/a.html", "http://www.example.com/b.html"));
+		state.put("http://www.example.com/sitemap2.xml",
+				createUrlsState("2004-01-01T00:00:00.0+0000", "http://www.example.com/d.html"));
+		state.put("http://www.example.com/sitemap3.xml", createUrlsState(null, "http://www.example.com/c.html"));
+		IESIntegration esMock = mockEsIntegrationComponent();
+		Mockito.when(esMock.readObjectValue("myspace", GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_URLS)).thenReturn(
+				state);
+
+		GetSitemapHtmlClient tested = createTestedInstanceForIndex(config, esMock, sitemaps);
+		ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, false, null);
+		// c.html has no last modification date so is returned always, d.html is not in sitemap2 anymore
+		Assert.assertEquals(2, chr.getDocumentsCount());
+		Assert.assertEquals("http://www.example.com/c.html", chr.getDocuments().get(0).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+		Assert.assertEquals("http://www.example.com/d.html", chr.getDocuments().get(1).get(GetSitemapHtmlClient.DOC_FIELD_URL));
+		Assert.assertEquals("true", chr.getDocuments().get(1).get(GetSitemapHtmlClient.DOC_FIELD_DELETED));
+		Mockito.verify(esMock, Mockito.never()).readObjectValue("myspace",
+				GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_INDEX);
+
+		tested.indexingFinished("myspace");
+		Map<String, Object> expectedStored = new HashMap<String, Object>();
+		expectedStored.put("http://www.example.com/sitemap1.xml", state.get("http://www.example.com/sitemap1.xml"));
+		expectedStored.put("http://www.example.com/sitemap2.xml",
+				createUrlsState(DateTimeUtils.formatISODateTime(SiteMap.convertToDate("2005-01-01"))));
+		expectedStored.put("http://www.example.com/sitemap3.xml", createUrlsState(null, "http://www.example.com/c.html"));
+		Mockito.verify(esMock).storeObjectValue("myspace", GetSitemapHtmlClient.STORE_PROPERTYNAME_SITEMAP_URLS,
+				expectedStored);
+		// last modification dates of child sitemaps are not stored separately
+		Mockito.verify(esMock).storeObjectValue(Mockito.anyString(), Mockito.anyString(), Mockito.anyMap());
+	}
+
+	private Map<String, Object> createUrlsState(String lastModified, String... urls) {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		if (lastModified != null)
+			ret.put(GetSitemapHtmlClient.SitemapUrlsState.KEY_LAST_MODIFIED, lastModified);
+		Map<String, Object> urlsMap = new HashMap<String, Object>();
+		for (String url : urls) {
+			urlsMap.put(url, "");
+		}
+		ret.put(GetSitemapHtmlClient.SitemapUrlsState.KEY_URLS, urlsMap);
+		return ret;
+	}
+
+	@Test
+	public void init_sitemapStreaming() {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/sitemap.xml");
+		config.put(GetSitemapHtmlClient.CFG_SITEMAP_STREAMING, true);
+		config.put(GetSitemapHtmlClient.CFG_SITEMAP_MAX_URLS, 200000);
+		GetSitemapHtmlClient tested = new GetSitemapHtmlClient();
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+		Assert.assertTrue(tested.sitemapStreaming);
+		Assert.assertEquals(200000, tested.sitemapParser.getMaxUrls());
+
+		try {
+			config.put(GetSitemapHtmlClient.CFG_SITEMAP_MAX_URLS, 0);
+			new GetSitemapHtmlClient().init(mockEsIntegrationComponent(), config, false, null);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void close() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_CRAWLER_HOST_CONCURRENCY, 2);
+		GetSitemapHtmlClient tested = createTestedInstanceForIndex(config, mockEsIntegrationComponent());
+		tested.getChangedDocuments("myspace", 0, true, null);
+		ExecutorService executor = tested.sitemapIndexExecutor;
+		Assert.assertNotNull(executor);
+		PageCrawler crawler = tested.crawler;
+		Assert.assertNotNull(crawler);
+
+		// case - executor and crawler shut down on reinit, new crawler created
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+		Assert.assertTrue(executor.isShutdown());
+		Assert.assertNull(tested.sitemapIndexExecutor);
+		Assert.assertTrue(crawler.fetchExecutor.isShutdown());
+		Assert.assertTrue(crawler.processExecutor.isShutdown());
+		Assert.assertNotNull(tested.crawler);
+		Assert.assertNotSame(crawler, tested.crawler);
+
+		// case - executor and crawler shut down on close, safe to call more times
+		tested.getChangedDocuments("myspace", 0, true, null);
+		executor = tested.sitemapIndexExecutor;
+		crawler = tested.crawler;
+		tested.close();
+		Assert.assertTrue(executor.isShutdown());
+		Assert.assertNull(tested.sitemapIndexExecutor);
+		Assert.assertTrue(crawler.fetchExecutor.isShutdown());
+		Assert.assertTrue(crawler.processExecutor.isShutdown());
+		Assert.assertNull(tested.crawler);
+		tested.close();
+	}
+
+	@Test
+	public void getChangedDocuments_streaming() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, SiteMapParserTest.URL_SITEMAP_XML);
+		config.put(GetSitemapHtmlClient.CFG_SITEMAP_STREAMING, true);
+		config.put(GetSitemapHtmlClient.CFG_SITEMAP_MAX_URLS, 4);
+		GetSitemapHtmlClient tested = new GetSitemapHtmlClient() {
+			@Override
+			protected HttpResponseContent performHttpGetCall(String url, Map<String, String> headers) throws Exception {
+				throw new Exception("Streaming call expected");
+			}
+
+			@Override
+			protected <T> T performHttpCall(String url, Map<String, String> headers, HttpMethodType methodType,
+					HttpResponseStreamProcessor<T> processor) throws Exception, HttpCallException {
+				Assert.assertEquals(SiteMapParserTest.URL_SITEMAP_XML, url);
+				Assert.assertEquals(HttpMethodType.GET, methodType);
+				return processor.process(CT_XML,
+						new ByteArrayInputStream(SITEMAP_XML_NO_DECLARATIONS_IGNORED_EXTENSIONS.getBytes("UTF-8")));
+			}
+		};
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+
+		// max 4 URLs read from sitemap, two of them ignored due extension
+		ChangedDocumentsResults chr = tested.getChangedDocuments("myspace", 0, true, null);
+		Assert.assertEquals(2, chr.getDocumentsCount());
+		Assert.assertEquals(new Integer(2), chr.getTotal());
+		assertDoc(chr.getDocuments().get(0), "http://www.example.com/", "2005-01-01T00:00:00.0+0000", 0.8);
+		assertDoc(chr.getDocuments().get(1), "http://www.example.com/catalog.html", "2004-12-23T18:00:15.0+0000", 0.3);
 	}
 
 	private void assertDoc(Map<String, Object> map, String expectedUrl, String expectedDateLastModified,
@@ -338,6 +726,64 @@ public class GetSitemapHtmlClientTest {
 		Assert.assertEquals("<html>\n <head></head>\n <body>\n  my html body\n </body>\n</html>", o);
 	}
 
+	@Test
+	public void getChangedDocumentDetails_crawler() throws Exception {
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/sitemap.xml");
+		config.put(GetSitemapHtmlClient.CFG_CRAWLER_HOST_CONCURRENCY, 2);
+		GetSitemapHtmlClient tested = new GetSitemapHtmlClient() {
+			@Override
+			protected HttpResponseContent performHttpGetCall(String url, Map<String, String> headers) throws Exception {
+				if (url.endsWith("missing"))
+					throw new HttpCallException(url, HttpStatus.SC_NOT_FOUND, "not found");
+				return new HttpResponseContent(CT_HTML, ("<body>" + url + "</body>").getBytes("UTF-8"));
+			};
+		};
+		tested.init(mockEsIntegrationComponent(), config, false, null);
+		try {
+			// case - sync call goes through crawler
+			Map<String, Object> document = new HashMap<>();
+			document.put(GetSitemapHtmlClient.DOC_FIELD_URL, "http://test.org/doc");
+			Assert.assertEquals("<html>\n <head></head>\n <body>\n  http://test.org/doc\n </body>\n</html>",
+					tested.getChangedDocumentDetails("myspace", "myid", document));
+
+			try {
+				document.put(GetSitemapHtmlClient.DOC_FIELD_URL, "http://test.org/missing");
+				tested.getChangedDocumentDetails("myspace", "myid", document);
+				Assert.fail("RemoteDocumentNotFoundException expected");
+			} catch (RemoteDocumentNotFoundException e) {
+				// OK
+			}
+
+			// case - async calls go through crawler, results are returned in order of documents
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 5; i++) {
+				Map<String, Object> doc = new HashMap<>();
+				doc.put(GetSitemapHtmlClient.DOC_FIELD_URL, "http://test" + (i % 2) + ".org/doc" + i);
+				futures.add(tested.getChangedDocumentDetailsAsync("myspace", "myid" + i, doc));
+			}
+			for (int i = 0; i < 5; i++) {
+				Assert.assertEquals("<html>\n <head></head>\n <body>\n  http://test" + (i % 2) + ".org/doc" + i
+						+ "\n </body>\n</html>", futures.get(i).get(5, TimeUnit.SECONDS));
+			}
+
+			Map<String, Object> doc = new HashMap<>();
+			doc.put(GetSitemapHtmlClient.DOC_FIELD_URL, "http://test.org/missing");
+			try {
+				tested.getChangedDocumentDetailsAsync("myspace", "myid", doc).get(5, TimeUnit.SECONDS);
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RemoteDocumentNotFoundException);
+			}
+
+			Assert.assertEquals(8, tested.crawler.getFetched());
+			Assert.assertEquals(2, tested.crawler.getFetchFailures());
+		} finally {
+			tested.crawler.shutdown();
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void getChangedDocumentDetails_htmlMappingDefined() throws Exception {
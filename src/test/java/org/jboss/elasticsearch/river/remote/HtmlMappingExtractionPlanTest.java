@@ -0,0 +1,171 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.jboss.elasticsearch.river.remote.HtmlMappingExtractionPlan.FieldExtractor;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link HtmlMappingExtractionPlan}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HtmlMappingExtractionPlanTest {
+
+	private static final String PAGE = "<html><head><title>My page</title>"
+			+ "<meta name=\"description\" content=\"my description\"><meta name=\"keywords\" content=\"a, b\"></head>"
+			+ "<body><div class=\"nav\"><a href=\"/one\">one</a><a href=\"/two\">two</a></div>"
+			+ "<div class=\"article\"><h1>Title <b>1</b></h1><p>first</p>"
+			+ "<div class=\"article\"><h1>Nested title</h1><p>nested <a href=\"/three\">three</a></p></div><p>last</p></div>"
+			+ "<div class=\"article\"><p>second <span>span</span></p></div>"
+			+ "<div class=\"footer\"><p>footer</p></div></body></html>";
+
+	@Test
+	public void compile_invalid() {
+		// case - field config is not map
+		try {
+			Map<String, Object> htmlMapping = new HashMap<String, Object>();
+			htmlMapping.put("field", "no map");
+			HtmlMappingExtractionPlan.compile(htmlMapping);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("'remote/htmlMapping/field' configuration section is invalid", e.getMessage());
+		}
+
+		// case - config value is not string
+		try {
+			Map<String, Object> htmlMapping = new HashMap<String, Object>();
+			addField(htmlMapping, "field", "div", null, false).put(GetSitemapHtmlClient.CFG_HM_VALUE_ATTRIBUTE, 10);
+			HtmlMappingExtractionPlan.compile(htmlMapping);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("'remote/htmlMapping/field/valueAttribute' configuration value must be string",
+					e.getMessage());
+		}
+
+		// case - invalid selector
+		try {
+			Map<String, Object> htmlMapping = new HashMap<String, Object>();
+			addField(htmlMapping, "field", "div[", null, false);
+			HtmlMappingExtractionPlan.compile(htmlMapping);
+			Assert.fail("SettingsException not thrown");
+		} catch (SettingsException e) {
+			Assert.assertTrue(e.getMessage().startsWith("'remote/htmlMapping/field/cssSelector' is invalid css selector"));
+		}
+	}
+
+	@Test
+	public void splitAncestor() {
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor(null));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("div.article"));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("div > p"));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("div p, span"));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("div p + span"));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("div p ~ span"));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("div p:eq(1)"));
+		Assert.assertNull(HtmlMappingExtractionPlan.splitAncestor("meta[name=a b]"));
+		Assert.assertArrayEquals(new String[] { "head", "title" }, HtmlMappingExtractionPlan.splitAncestor("head title"));
+		Assert.assertArrayEquals(new String[] { "div.article", "p  a[href]" },
+				HtmlMappingExtractionPlan.splitAncestor("div.article  p  a[href]"));
+		Assert.assertArrayEquals(new String[] { "head", "meta[content='a > b: c']" },
+				HtmlMappingExtractionPlan.splitAncestor("head meta[content='a > b: c']"));
+	}
+
+	@Test
+	public void compile() {
+		Map<String, Object> htmlMapping = new LinkedHashMap<String, Object>();
+		addField(htmlMapping, "title", "head title", null, true);
+		addField(htmlMapping, "description", "head meta[name=description]", "content", false);
+		addField(htmlMapping, "content", "body div.article", null, true);
+		addField(htmlMapping, "html", null, null, false);
+		HtmlMappingExtractionPlan tested = HtmlMappingExtractionPlan.compile(htmlMapping);
+
+		Assert.assertEquals(4, tested.fields.size());
+		FieldExtractor title = tested.fields.get(0);
+		Assert.assertEquals("title", title.field);
+		Assert.assertTrue(title.stripHtml);
+		Assert.assertNull(title.valueAttribute);
+		Assert.assertNotNull(title.selector.evaluator);
+		Assert.assertEquals("head", title.ancestor.selector);
+		Assert.assertEquals("title", title.relative.selector);
+
+		FieldExtractor description = tested.fields.get(1);
+		Assert.assertEquals("content", description.valueAttribute);
+		Assert.assertSame(title.ancestor, description.ancestor);
+
+		// ancestor not shared with other field
+		FieldExtractor content = tested.fields.get(2);
+		Assert.assertNull(content.ancestor);
+		Assert.assertNull(content.relative);
+
+		Assert.assertNull(tested.fields.get(3).selector);
+	}
+
+	@Test
+	public void extract() {
+		Map<String, Object> htmlMapping = new LinkedHashMap<String, Object>();
+		addField(htmlMapping, "title", "head title", null, true);
+		addField(htmlMapping, "description", "head meta[name=description]", "content", false);
+		addField(htmlMapping, "keywords", "head meta[name=keywords]", "content", false);
+		addField(htmlMapping, "unknown", "head link", null, false);
+		addField(htmlMapping, "text", null, null, true);
+		addField(htmlMapping, "html", null, null, false);
+		Document doc = Jsoup.parse(PAGE);
+
+		Map<String, String> ret = HtmlMappingExtractionPlan.compile(htmlMapping).extract(doc);
+		Assert.assertEquals(6, ret.size());
+		Assert.assertEquals("My page", ret.get("title"));
+		Assert.assertEquals("my description", ret.get("description"));
+		Assert.assertEquals("a, b", ret.get("keywords"));
+		Assert.assertTrue(ret.containsKey("unknown"));
+		Assert.assertNull(ret.get("unknown"));
+		Assert.assertEquals(GetSitemapHtmlClient.convertNodeToText(doc), ret.get("text"));
+		Assert.assertEquals(doc.html(), ret.get("html"));
+	}
+
+	@Test
+	public void extract_sharedAncestorSameAsDocumentSelect() {
+		String[] selectors = new String[] { "div.article p", "div.article h1", "div.article a", "div.article div p",
+				"div.article p span", "div.article div.article", "div div", "body p", "body a[href]", "html body div p",
+				"div.article" };
+		Map<String, Object> htmlMapping = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < selectors.length; i++) {
+			addField(htmlMapping, "field" + i, selectors[i], null, false);
+		}
+		HtmlMappingExtractionPlan tested = HtmlMappingExtractionPlan.compile(htmlMapping);
+		Assert.assertNotNull(tested.fields.get(0).ancestor);
+
+		Document doc = Jsoup.parse(PAGE);
+		Map<String, String> ret = tested.extract(doc);
+		for (int i = 0; i < selectors.length; i++) {
+			Elements expected = doc.select(selectors[i]);
+			Assert.assertEquals(selectors[i], expected.size() == 1 ? expected.html() : expected.outerHtml(),
+					ret.get("field" + i));
+		}
+	}
+
+	private Map<String, Object> addField(Map<String, Object> htmlMapping, String field, String cssSelector,
+			String valueAttribute, boolean stripHtml) {
+		Map<String, Object> hm = new HashMap<String, Object>();
+		if (cssSelector != null)
+			hm.put(GetSitemapHtmlClient.CFG_HM_CSS_SELECTOR, cssSelector);
+		if (valueAttribute != null)
+			hm.put(GetSitemapHtmlClient.CFG_HM_VALUE_ATTRIBUTE, valueAttribute);
+		hm.put(GetSitemapHtmlClient.CFG_HM_STRIP_HTML, stripHtml);
+		htmlMapping.put(field, hm);
+		return hm;
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.SettingsException;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit test for {@link HttpAuthProviderBase} and its implementations {@link BearerTokenAuthProvider} and
+ * {@link SessionCookieAuthProvider}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpAuthProviderBaseTest {
+
+	@Test
+	public void init() {
+		BearerTokenAuthProvider tested = new BearerTokenAuthProvider();
+		Map<String, Object> config = new HashMap<String, Object>();
+		try {
+			tested.init(Loggers.getLogger("test logger"), config, null, null, null);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+
+		config.put(HttpAuthProviderBase.CFG_AUTH_URL, "http://test.org/token");
+		tested.init(Loggers.getLogger("test logger"), config, "user", "pass", null);
+		Assert.assertEquals("http://test.org/token", tested.authUrl);
+		Assert.assertTrue(tested.authParams.isEmpty());
+		Assert.assertEquals(60000, tested.refreshAhead);
+		Assert.assertEquals(30 * 60000, tested.ttl);
+
+		Map<String, Object> params = new LinkedHashMap<String, Object>();
+		params.put("grant_type", "client_credentials");
+		params.put("client_id", "{username}");
+		params.put("client_secret", "{pwd}");
+		config.put(HttpAuthProviderBase.CFG_AUTH_PARAMS, params);
+		config.put(HttpAuthProviderBase.CFG_AUTH_REFRESH_AHEAD, "10s");
+		config.put(HttpAuthProviderBase.CFG_AUTH_TTL, "1h");
+		tested.init(Loggers.getLogger("test logger"), config, "user", "pass", null);
+		Assert.assertEquals("{grant_type=client_credentials, client_id=user, client_secret=pass}",
+				tested.authParams.toString());
+		Assert.assertEquals(10000, tested.refreshAhead);
+		Assert.assertEquals(3600000, tested.ttl);
+
+		config.put(HttpAuthProviderBase.CFG_AUTH_PARAMS, "a=b");
+		try {
+			tested.init(Loggers.getLogger("test logger"), config, null, null, null);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void bearerToken() throws Exception {
+		CloseableHttpClient httpclient = Mockito.mock(CloseableHttpClient.class);
+		final List<String> requestBodies = new ArrayList<String>();
+		final List<String> responses = new ArrayList<String>();
+		Mockito.when(
+				httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpPost.class), Mockito.any(HttpContext.class)))
+				.thenAnswer(new Answer<CloseableHttpResponse>() {
+					@Override
+					public CloseableHttpResponse answer(InvocationOnMock invocation) throws Throwable {
+						HttpPost post = (HttpPost) invocation.getArguments()[1];
+						Assert.assertEquals("http://test.org/token", post.getURI().toString());
+						requestBodies.add(IOUtils.toString(post.getEntity().getContent()));
+						return prepareResponse(HttpStatus.SC_OK, responses.remove(0));
+					}
+				});
+
+		BearerTokenAuthProvider tested = new BearerTokenAuthProvider();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpAuthProviderBase.CFG_AUTH_URL, "http://test.org/token");
+		Map<String, Object> params = new LinkedHashMap<String, Object>();
+		params.put("client_id", "{username}");
+		params.put("client_secret", "{pwd}");
+		config.put(HttpAuthProviderBase.CFG_AUTH_PARAMS, params);
+		tested.init(Loggers.getLogger("test logger"), config, "user", "p&ss", httpclient);
+
+		// token obtained and cached
+		responses.add("{\"access_token\":\"token1\",\"expires_in\":3600}");
+		HttpGet request = new HttpGet("http://test.org/doc");
+		Assert.assertEquals("token1", tested.authenticate(request));
+		Assert.assertEquals("Bearer token1", request.getFirstHeader("Authorization").getValue());
+		request = new HttpGet("http://test.org/doc");
+		Assert.assertEquals("token1", tested.authenticate(request));
+		Assert.assertEquals("Bearer token1", request.getFirstHeader("Authorization").getValue());
+		Assert.assertEquals(1, tested.getLogins());
+		Assert.assertEquals("client_id=user&client_secret=p%26ss", requestBodies.get(0));
+
+		// invalidation of old token doesn't throw away new one
+		tested.invalidate("token0");
+		Assert.assertEquals("token1", tested.authenticate(new HttpGet("http://test.org/doc")));
+		Assert.assertEquals(1, tested.getLogins());
+
+		// refreshed after invalidation
+		responses.add("{\"access_token\":\"token2\",\"expires_in\":1}");
+		tested.invalidate("token1");
+		Assert.assertEquals("token2", tested.authenticate(new HttpGet("http://test.org/doc")));
+		Assert.assertEquals(2, tested.getLogins());
+
+		// refreshed ahead of expiry (half of short lifetime)
+		Thread.sleep(600);
+		responses.add("{\"access_token\":\"token3\"}");
+		Assert.assertEquals("token3", tested.authenticate(new HttpGet("http://test.org/doc")));
+		Assert.assertEquals(3, tested.getLogins());
+
+		// invalid response
+		responses.add("{\"token\":\"token4\"}");
+		tested.invalidate("token3");
+		try {
+			tested.authenticate(new HttpGet("http://test.org/doc"));
+			Assert.fail("Exception expected");
+		} catch (Exception e) {
+			Assert.assertEquals("Authentication response from http://test.org/token doesn't contain 'access_token'",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void bearerToken_error() throws Exception {
+		CloseableHttpClient httpclient = Mockito.mock(CloseableHttpClient.class);
+		CloseableHttpResponse response = prepareResponse(HttpStatus.SC_FORBIDDEN, "denied");
+		Mockito.when(
+				httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpPost.class), Mockito.any(HttpContext.class)))
+				.thenReturn(response);
+		BearerTokenAuthProvider tested = new BearerTokenAuthProvider();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpAuthProviderBase.CFG_AUTH_URL, "http://test.org/token");
+		tested.init(Loggers.getLogger("test logger"), config, null, null, httpclient);
+		try {
+			tested.authenticate(new HttpGet("http://test.org/doc"));
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_FORBIDDEN, e.getStatusCode());
+		}
+	}
+
+	@Test
+	public void sessionCookie() throws Exception {
+		CloseableHttpClient httpclient = Mockito.mock(CloseableHttpClient.class);
+		final List<String> sessions = new ArrayList<String>();
+		Mockito.when(
+				httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpPost.class), Mockito.any(HttpContext.class)))
+				.thenAnswer(new Answer<CloseableHttpResponse>() {
+					@Override
+					public CloseableHttpResponse answer(InvocationOnMock invocation) throws Throwable {
+						HttpClientContext context = (HttpClientContext) invocation.getArguments()[2];
+						if (!sessions.isEmpty()) {
+							context.getCookieStore().addCookie(new BasicClientCookie("JSESSIONID", sessions.remove(0)));
+							context.getCookieStore().addCookie(new BasicClientCookie("lb", "node1"));
+						}
+						return prepareResponse(HttpStatus.SC_OK, "");
+					}
+				});
+
+		SessionCookieAuthProvider tested = new SessionCookieAuthProvider();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpAuthProviderBase.CFG_AUTH_URL, "http://test.org/login");
+		tested.init(Loggers.getLogger("test logger"), config, "user", "pass", httpclient);
+
+		sessions.add("s1");
+		HttpGet request = new HttpGet("http://test.org/doc");
+		Assert.assertEquals("JSESSIONID=s1; lb=node1", tested.authenticate(request));
+		Assert.assertEquals("JSESSIONID=s1; lb=node1", request.getFirstHeader("Cookie").getValue());
+		Assert.assertEquals("JSESSIONID=s1; lb=node1", tested.authenticate(new HttpGet("http://test.org/doc")));
+		Assert.assertEquals(1, tested.getLogins());
+
+		sessions.add("s2");
+		tested.invalidate("JSESSIONID=s1; lb=node1");
+		Assert.assertEquals("JSESSIONID=s2; lb=node1", tested.authenticate(new HttpGet("http://test.org/doc")));
+
+		// no cookie set by login
+		tested.invalidate("JSESSIONID=s2; lb=node1");
+		try {
+			tested.authenticate(new HttpGet("http://test.org/doc"));
+			Assert.fail("Exception expected");
+		} catch (Exception e) {
+			Assert.assertEquals("Login response from http://test.org/login doesn't set any cookie", e.getMessage());
+		}
+	}
+
+	private static CloseableHttpResponse prepareResponse(int statusCode, String content) throws Exception {
+		CloseableHttpResponse ret = Mockito.mock(CloseableHttpResponse.class);
+		StatusLine sl = Mockito.mock(StatusLine.class);
+		Mockito.when(sl.getStatusCode()).thenReturn(statusCode);
+		Mockito.when(ret.getStatusLine()).thenReturn(sl);
+		Mockito.when(ret.getEntity()).thenReturn(new StringEntity(content));
+		return ret;
+	}
+
+}
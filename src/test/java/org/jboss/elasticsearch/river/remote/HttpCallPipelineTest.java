@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.http.concurrent.Cancellable;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.SettingsException;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpMethodType;
+import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link HttpCallPipeline}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpCallPipelineTest {
+
+	@Test
+	public void startAttempt_balance() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_URL_REPLICAS, "http://replica.org:8080");
+		TestClient client = getTested(config);
+		HttpCallPipeline tested = client.callPipeline;
+
+		List<String> urls = new ArrayList<String>();
+		for (int i = 0; i < 2; i++) {
+			HttpCallPipeline.Attempt attempt = tested.startAttempt("http://test.org/path?a=b", null, HttpMethodType.GET);
+			urls.add(attempt.url);
+			Assert.assertEquals(attempt.url, attempt.method.getURI().toString());
+			Assert.assertEquals(1, attempt.endpoint.getOutstanding());
+			attempt.finished(new IOException("connection reset"));
+			// next finish is ignored
+			attempt.finished(null);
+			Assert.assertEquals(0, attempt.endpoint.getOutstanding());
+			Assert.assertEquals(1, attempt.endpoint.getFailures());
+		}
+		Assert.assertTrue(urls.contains("http://test.org/path?a=b"));
+		Assert.assertTrue(urls.contains("http://replica.org:8080/path?a=b"));
+
+		// other host is not balanced
+		HttpCallPipeline.Attempt attempt = tested.startAttempt("http://other.org/path", null, HttpMethodType.GET);
+		Assert.assertNull(attempt.endpoint);
+		Assert.assertEquals("http://other.org/path", attempt.url);
+		attempt.finished(null);
+	}
+
+	@Test
+	public void startAsync_rateLimit() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RATE_LIMIT, "5");
+		TestClient client = getTested(config);
+		HttpCallPipeline tested = client.callPipeline;
+
+		// case - first request is started immediately in calling thread
+		TestExecution first = new TestExecution();
+		tested.startAsync(tested.startAttempt("http://test.org/1", null, HttpMethodType.GET), first);
+		Assert.assertEquals(Thread.currentThread().getName(), first.startThread);
+
+		// case - next one is delayed by rate limiter without blocking of calling thread
+		TestExecution second = new TestExecution();
+		long start = System.currentTimeMillis();
+		tested.startAsync(tested.startAttempt("http://test.org/2", null, HttpMethodType.GET), second);
+		Assert.assertTrue(System.currentTimeMillis() - start < 100);
+		Assert.assertTrue(second.started.await(1, TimeUnit.SECONDS));
+		Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+		Assert.assertTrue(second.startThread, second.startThread.contains("remote_river_http_rate_limit"));
+		Assert.assertTrue(client.rateLimitWaitMillis.get() > 0);
+		Assert.assertNull(second.notStarted);
+
+		// case - failure of start is reported
+		TestExecution failing = new TestExecution();
+		failing.failure = new IOException("closed");
+		tested.startAsync(tested.startAttempt("http://test2.org/1", null, HttpMethodType.GET), failing);
+		Assert.assertEquals(Collections.singletonList(failing.failure), failing.notStarted);
+
+		tested.close();
+	}
+
+	@Test
+	public void startAsync_cancel() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RATE_LIMIT, "1");
+		TestClient client = getTested(config);
+		HttpCallPipeline tested = client.callPipeline;
+
+		// case - started request is cancelled
+		TestExecution first = new TestExecution();
+		tested.startAsync(tested.startAttempt("http://test.org/1", null, HttpMethodType.GET), first);
+		client.hedgedCall.cancel();
+		Mockito.verify(first.request).cancel(true);
+
+		// case - request delayed by rate limiter is not started if cancelled
+		TestExecution second = new TestExecution();
+		tested.startAsync(tested.startAttempt("http://test.org/2", null, HttpMethodType.GET), second);
+		Assert.assertTrue(client.hedgedCall.cancel());
+		Assert.assertEquals(1, second.notStarted.size());
+		Assert.assertNull(second.notStarted.get(0));
+		Assert.assertFalse(second.started.await(1500, TimeUnit.MILLISECONDS));
+
+		tested.close();
+	}
+
+	private static class TestExecution implements HttpCallPipeline.AsyncExecution {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final Future<?> request = Mockito.mock(Future.class);
+		volatile String startThread;
+		volatile List<Exception> notStarted;
+		Exception failure;
+
+		@Override
+		public Future<?> start() throws Exception {
+			if (failure != null)
+				throw failure;
+			startThread = Thread.currentThread().getName();
+			started.countDown();
+			return request;
+		}
+
+		@Override
+		public void notStarted(Exception e) {
+			notStarted = Collections.singletonList(e);
+		}
+	}
+
+	private static class TestClient extends HttpRemoteSystemClientBase {
+
+		Cancellable hedgedCall;
+
+		@Override
+		protected void registerHedgedCall(Cancellable request) {
+			hedgedCall = request;
+		}
+
+		@Override
+		public void init(IESIntegration es, Map<String, Object> config, boolean spaceListLoadingEnabled,
+				IPwdLoader pwdLoader) throws SettingsException {
+		}
+
+		@Override
+		public List<String> getAllSpaces() throws Exception {
+			return null;
+		}
+
+		@Override
+		public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, boolean fullUpdate,
+				Date updatedAfter) throws Exception {
+			return null;
+		}
+
+		@Override
+		public Object getChangedDocumentDetails(String spaceKey, String documentId, Map<String, Object> document)
+				throws RemoteDocumentNotFoundException, Exception {
+			return null;
+		}
+	}
+
+	private TestClient getTested(Map<String, Object> config) {
+		TestClient ret = new TestClient();
+		ret.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		return ret;
+	}
+
+}
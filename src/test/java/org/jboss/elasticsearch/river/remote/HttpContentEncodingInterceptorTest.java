@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link HttpContentEncodingInterceptor}
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpContentEncodingInterceptorTest {
+
+	private static final String CONTENT = "response content response content response content response content";
+
+	@Test
+	public void process_request() throws Exception {
+		HttpContentEncodingInterceptor tested = new HttpContentEncodingInterceptor(true, new AtomicLong(), new AtomicLong());
+		HttpGet request = new HttpGet("http://test.org");
+		tested.process(request, null);
+		Assert.assertEquals("gzip,deflate", request.getFirstHeader("Accept-Encoding").getValue());
+
+		// case - header already defined is not changed
+		request = new HttpGet("http://test.org");
+		request.addHeader("Accept-Encoding", "identity");
+		tested.process(request, null);
+		Assert.assertEquals(1, request.getHeaders("Accept-Encoding").length);
+		Assert.assertEquals("identity", request.getFirstHeader("Accept-Encoding").getValue());
+
+		// case - compression disabled
+		tested = new HttpContentEncodingInterceptor(false, new AtomicLong(), new AtomicLong());
+		request = new HttpGet("http://test.org");
+		tested.process(request, null);
+		Assert.assertNull(request.getFirstHeader("Accept-Encoding"));
+	}
+
+	@Test
+	public void process_response() throws Exception {
+		AtomicLong bytesReceived = new AtomicLong();
+		AtomicLong bytesDecoded = new AtomicLong();
+		HttpContentEncodingInterceptor tested = new HttpContentEncodingInterceptor(true, bytesReceived, bytesDecoded);
+
+		// case - no entity
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NO_CONTENT, "No Content");
+		tested.process(response, null);
+		Assert.assertNull(response.getEntity());
+
+		// case - not compressed
+		response = prepareResponse(CONTENT.getBytes("UTF-8"), null);
+		tested.process(response, null);
+		Assert.assertEquals(CONTENT, EntityUtils.toString(response.getEntity(), "UTF-8"));
+		Assert.assertEquals(CONTENT.length(), bytesReceived.get());
+		Assert.assertEquals(CONTENT.length(), bytesDecoded.get());
+
+		// case - gzip
+		bytesReceived.set(0);
+		bytesDecoded.set(0);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(CONTENT.getBytes("UTF-8"));
+		gzos.close();
+		response = prepareResponse(baos.toByteArray(), "gzip");
+		tested.process(response, null);
+		Assert.assertNull(response.getFirstHeader("Content-Encoding"));
+		Assert.assertNull(response.getFirstHeader("Content-Length"));
+		Assert.assertEquals(CONTENT, EntityUtils.toString(response.getEntity(), "UTF-8"));
+		Assert.assertEquals(baos.size(), bytesReceived.get());
+		Assert.assertEquals(CONTENT.length(), bytesDecoded.get());
+
+		// case - deflate
+		bytesReceived.set(0);
+		bytesDecoded.set(0);
+		baos = new ByteArrayOutputStream();
+		DeflaterOutputStream dos = new DeflaterOutputStream(baos);
+		dos.write(CONTENT.getBytes("UTF-8"));
+		dos.close();
+		response = prepareResponse(baos.toByteArray(), "deflate");
+		tested.process(response, null);
+		Assert.assertEquals(CONTENT, EntityUtils.toString(response.getEntity(), "UTF-8"));
+		Assert.assertEquals(baos.size(), bytesReceived.get());
+		Assert.assertEquals(CONTENT.length(), bytesDecoded.get());
+
+		// case - unsupported encoding
+		try {
+			tested.process(prepareResponse(CONTENT.getBytes("UTF-8"), "br"), null);
+			Assert.fail("HttpException expected");
+		} catch (HttpException e) {
+			Assert.assertEquals("Unsupported Content-Encoding: br", e.getMessage());
+		}
+	}
+
+	private HttpResponse prepareResponse(byte[] content, String contentEncoding) {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+		ByteArrayEntity entity = new ByteArrayEntity(content);
+		if (contentEncoding != null) {
+			entity.setContentEncoding(contentEncoding);
+			response.addHeader("Content-Encoding", contentEncoding);
+		}
+		response.addHeader("Content-Length", "" + content.length);
+		response.setEntity(entity);
+		return response;
+	}
+
+}
@@ -5,13 +5,22 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
@@ -25,15 +34,24 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.protocol.BasicHttpContext;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpMethodType;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseStreamProcessor;
 import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseContent;
 import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
+import org.jboss.elasticsearch.river.remote.exception.RemoteSystemUnavailableException;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -216,8 +234,1071 @@ public class HttpRemoteSystemClientBaseTest {
 	    Mockito.verifyNoMoreInteractions(tested.httpclient);
 	}
 
+	@Test
+	public void isAsyncTransportConfigured() {
+		Map<String, Object> config = new HashMap<String, Object>();
+		Assert.assertFalse(HttpRemoteSystemClientBase.isAsyncTransportConfigured(config));
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, " ");
+		Assert.assertFalse(HttpRemoteSystemClientBase.isAsyncTransportConfigured(config));
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, "sync");
+		Assert.assertFalse(HttpRemoteSystemClientBase.isAsyncTransportConfigured(config));
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, "async");
+		Assert.assertTrue(HttpRemoteSystemClientBase.isAsyncTransportConfigured(config));
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, "Async");
+		Assert.assertTrue(HttpRemoteSystemClientBase.isAsyncTransportConfigured(config));
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, "nio");
+		try {
+			HttpRemoteSystemClientBase.isAsyncTransportConfigured(config);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void initHttpClient_transport() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		{
+			HttpRemoteSystemClientBase tested = getTested();
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+			Assert.assertNotNull(tested.httpclient);
+			Assert.assertNull(tested.httpAsyncClient);
+			Assert.assertFalse(tested.isAsyncTransportEnabled());
+		}
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, "async");
+		config.put(HttpRemoteSystemClientBase.CFG_USERNAME, "user");
+		config.put(HttpRemoteSystemClientBase.CFG_PASSWORD, "pwd");
+		{
+			HttpRemoteSystemClientBase tested = getTested();
+			Assert.assertEquals("user",
+					tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org"));
+			try {
+				Assert.assertNotNull(tested.httpclient);
+				Assert.assertNotNull(tested.httpAsyncClient);
+				Assert.assertTrue(tested.httpAsyncClient.isRunning());
+				Assert.assertTrue(tested.isAsyncTransportEnabled());
+				Assert.assertTrue(tested.isAuthConfigured);
+			} finally {
+				tested.httpAsyncClient.close();
+			}
+		}
+	}
+
+	@Test
+	public void close() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_TRANSPORT, "async");
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		CloseableHttpAsyncClient firstAsyncClient = tested.httpAsyncClient;
+		Assert.assertTrue(firstAsyncClient.isRunning());
+
+		// case - previous clients are closed by next init
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertFalse(firstAsyncClient.isRunning());
+		Assert.assertNotSame(firstAsyncClient, tested.httpAsyncClient);
+		Assert.assertTrue(tested.httpAsyncClient.isRunning());
+
+		// case - async client is dropped by init with sync transport
+		CloseableHttpAsyncClient secondAsyncClient = tested.httpAsyncClient;
+		tested.initHttpClient(Loggers.getLogger("test logger"), new HashMap<String, Object>(), null, "http://test.org");
+		Assert.assertFalse(secondAsyncClient.isRunning());
+		Assert.assertNull(tested.httpAsyncClient);
+		Assert.assertNotNull(tested.httpclient);
+
+		// case - close
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		CloseableHttpAsyncClient thirdAsyncClient = tested.httpAsyncClient;
+		tested.close();
+		Assert.assertFalse(thirdAsyncClient.isRunning());
+		Assert.assertNull(tested.httpAsyncClient);
+		Assert.assertNull(tested.httpclient);
+		Assert.assertFalse(tested.isAsyncTransportEnabled());
+
+		// case - close more times
+		tested.close();
+	}
+
+	@Test
+	public void performHttpCallAsync_syncTransport() throws HttpCallException, Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+
+		// case - success
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/plain", null, false));
+
+		Future<HttpResponseContent> ret = tested.performHttpCallAsync("http://test.org", null, HttpMethodType.GET);
+		Assert.assertTrue(ret.isDone());
+		Assert.assertEquals("response", new String(ret.get().content));
+		Mockito.verify(tested.httpclient).execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+				Mockito.any(BasicHttpContext.class));
+
+		// case - error
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_NOT_FOUND, "response", "text/plain", null, false));
+		ret = tested.performHttpCallAsync("http://test.org", null, HttpMethodType.GET);
+		Assert.assertTrue(ret.isDone());
+		try {
+			HttpRemoteSystemClientBase.waitForHttpCall(ret);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_NOT_FOUND, e.getStatusCode());
+		}
+	}
+
+	@Test
+	public void performHttpCallAsync_asyncTransport() throws HttpCallException, Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+		tested.httpAsyncClient = Mockito.mock(CloseableHttpAsyncClient.class);
+		tested.isAuthConfigured = true;
+
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("Accept", "application/json");
+
+		// case - success
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				prepereAsyncHttpResponseAnswer(prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/any", headers,
+						true)));
+
+		Future<HttpResponseContent> ret = tested.performHttpCallAsync("http://test.org", headers, HttpMethodType.GET);
+		Assert.assertEquals("response", new String(ret.get().content));
+		Assert.assertEquals("text/any", ret.get().contentType);
+
+		// case - blocking call uses async transport also
+		HttpResponseContent retSync = tested.performHttpGetCall("http://test.org", headers);
+		Assert.assertEquals("response", new String(retSync.content));
+		Mockito.verify(tested.httpAsyncClient, Mockito.times(2)).execute(Mockito.any(HttpHost.class),
+				Mockito.any(HttpGet.class), Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class));
+		Mockito.verifyZeroInteractions(tested.httpclient);
+
+		// case - HTTP error
+		Mockito.reset(tested.httpAsyncClient);
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				prepereAsyncHttpResponseAnswer(prepereHttpResponseAnswer(HttpStatus.SC_NOT_FOUND, "response", "text/any",
+						headers, true)));
+		try {
+			tested.performHttpCall("http://test.org", headers, HttpMethodType.GET);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_NOT_FOUND, e.getStatusCode());
+		}
+
+		// case - transport error
+		Mockito.reset(tested.httpAsyncClient);
+		final IOException ioe = new IOException("connection refused");
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				new Answer<Future<HttpResponse>>() {
+					@SuppressWarnings("unchecked")
+					@Override
+					public Future<HttpResponse> answer(InvocationOnMock invocation) throws Throwable {
+						((FutureCallback<HttpResponse>) invocation.getArguments()[3]).failed(ioe);
+						return null;
+					}
+				});
+		try {
+			tested.performHttpCallAsync("http://test.org", headers, HttpMethodType.GET).get();
+			Assert.fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			Assert.assertEquals(ioe, e.getCause());
+		}
+	}
+
+	@Test
+	public void performHttpCallAsync_rateLimit() throws HttpCallException, Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RATE_LIMIT, "5");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		tested.httpAsyncClient = Mockito.mock(CloseableHttpAsyncClient.class);
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				prepereAsyncHttpResponseAnswer(prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/any", null,
+						false)));
+
+		// request delayed by rate limiter doesn't block calling thread
+		long start = System.currentTimeMillis();
+		Future<HttpResponseContent> first = tested.performHttpCallAsync("http://test.org/1", null, HttpMethodType.GET);
+		Future<HttpResponseContent> second = tested.performHttpCallAsync("http://test.org/2", null, HttpMethodType.GET);
+		Assert.assertTrue(System.currentTimeMillis() - start < 100);
+		Assert.assertTrue(first.isDone());
+		Assert.assertEquals("response", new String(second.get().content));
+		Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+		Assert.assertTrue(tested.rateLimitWaitMillis.get() > 0);
+		Mockito.verify(tested.httpAsyncClient, Mockito.times(2)).execute(Mockito.any(HttpHost.class),
+				Mockito.any(HttpGet.class), Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class));
+		tested.close();
+	}
+
+	@Test
+	public void performHttpCall_streamProcessor() throws HttpCallException, Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+
+		HttpResponseStreamProcessor<String> processor = new HttpResponseStreamProcessor<String>() {
+			@Override
+			public String process(String contentType, InputStream content) throws Exception {
+				return contentType + ":" + IOUtils.toString(content, "UTF-8");
+			}
+		};
+
+		// case - success
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/plain", null, false));
+		Assert.assertEquals("text/plain:response",
+				tested.performHttpCall("http://test.org", null, HttpMethodType.GET, processor));
+
+		// case - error, processor not called
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_NOT_FOUND, "response", "text/plain", null, false));
+		try {
+			tested.performHttpCall("http://test.org", null, HttpMethodType.GET, processor);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(
+					"Failed remote system HTTP GET request to the url 'http://test.org'. HTTP error code: 404 Response body: response",
+					e.getMessage());
+		}
+
+		// case - async transport
+		tested.httpAsyncClient = Mockito.mock(CloseableHttpAsyncClient.class);
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				prepereAsyncHttpResponseAnswer(prepereHttpResponseAnswer(HttpStatus.SC_OK, "response async", "text/any",
+						null, false)));
+		Assert.assertEquals("text/any:response async",
+				tested.performHttpCall("http://test.org", null, HttpMethodType.GET, processor));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void performConditionalHttpGetCall() throws HttpCallException, Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+		IESIntegration esIntegration = Mockito.mock(IESIntegration.class);
+		final Map<String, Map<String, Object>> store = new HashMap<String, Map<String, Object>>();
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				store.put((String) invocation.getArguments()[1], (Map<String, Object>) invocation.getArguments()[2]);
+				return null;
+			}
+		}).when(esIntegration).storeObjectValue(Mockito.anyString(), Mockito.anyString(), Mockito.anyMap());
+		Mockito.when(esIntegration.readObjectValue(Mockito.anyString(), Mockito.anyString())).thenAnswer(
+				new Answer<Map<String, Object>>() {
+					@Override
+					public Map<String, Object> answer(InvocationOnMock invocation) throws Throwable {
+						return store.get(invocation.getArguments()[1]);
+					}
+				});
+
+		// case - disabled by default, so no validators stored
+		Map<String, Object> config = new HashMap<String, Object>();
+		tested.initHttpClient(tested.myLogger, config, null, "http://test.org", esIntegration);
+		Assert.assertNull(tested.validatorCache);
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_CONDITIONAL_GET, true);
+		tested.initHttpClient(tested.myLogger, config, null, "http://test.org", null);
+		Assert.assertNull(tested.validatorCache);
+		tested.initHttpClient(tested.myLogger, config, null, "http://test.org", esIntegration);
+		Assert.assertNotNull(tested.validatorCache);
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+
+		// case - first call is unconditional, validators are stored
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/plain", null, false, "ETag", "\"v1\""));
+		HttpResponseContent ret = tested.performConditionalHttpGetCall("http://test.org", null);
+		Assert.assertEquals("response", new String(ret.content));
+		Assert.assertEquals("\"v1\"", ret.etag);
+		Assert.assertEquals(1, store.size());
+
+		// case - same validators are not persisted again
+		Mockito.verify(esIntegration, Mockito.times(1)).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyMap());
+		tested.validatorCache = new HttpValidatorCache(tested.myLogger, esIntegration);
+		Mockito.reset(tested.httpclient);
+		Map<String, String> headersV1 = new HashMap<String, String>();
+		headersV1.put("If-None-Match", "\"v1\"");
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/plain", headersV1, false, "ETag", "\"v1\""));
+		tested.performConditionalHttpGetCall("http://test.org", null);
+		Mockito.verify(esIntegration, Mockito.times(1)).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyMap());
+
+		// case - plain call is never conditional and doesn't touch store
+		Mockito.reset(esIntegration);
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "detail", "text/plain", null, false,
+						"ETag", "\"d1\""));
+		ret = tested.performHttpCall("http://test.org/detail", null, HttpMethodType.GET);
+		Assert.assertEquals("detail", new String(ret.content));
+		Mockito.verifyZeroInteractions(esIntegration);
+		Assert.assertEquals(1, store.size());
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				store.put((String) invocation.getArguments()[1], (Map<String, Object>) invocation.getArguments()[2]);
+				return null;
+			}
+		}).when(esIntegration).storeObjectValue(Mockito.anyString(), Mockito.anyString(), Mockito.anyMap());
+		Mockito.when(esIntegration.readObjectValue(Mockito.anyString(), Mockito.anyString())).thenAnswer(
+				new Answer<Map<String, Object>>() {
+					@Override
+					public Map<String, Object> answer(InvocationOnMock invocation) throws Throwable {
+						return store.get(invocation.getArguments()[1]);
+					}
+				});
+
+		// case - 304 returns persisted content, also after "restart" with empty memory cache
+		tested.validatorCache = new HttpValidatorCache(tested.myLogger, esIntegration);
+		Mockito.reset(tested.httpclient);
+		Map<String, String> headersExpected = new HashMap<String, String>();
+		headersExpected.put("If-None-Match", "\"v1\"");
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_NOT_MODIFIED, null, null, headersExpected, false));
+		ret = tested.performConditionalHttpGetCall("http://test.org", null);
+		Assert.assertEquals("response", new String(ret.content));
+		Assert.assertEquals("text/plain", ret.contentType);
+		Mockito.verify(tested.httpclient, Mockito.times(1)).execute(Mockito.any(HttpHost.class),
+				Mockito.any(HttpGet.class), Mockito.any(BasicHttpContext.class));
+
+		// case - changed content with Last-Modified only replaces stored entry
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response 2", "text/plain", headersExpected, false, "Last-Modified",
+						"Wed, 21 Oct 2015 07:28:00 GMT"));
+		ret = tested.performConditionalHttpGetCall("http://test.org", null);
+		Assert.assertEquals("response 2", new String(ret.content));
+		Assert.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", tested.validatorCache.get("http://test.org").lastModified);
+		Assert.assertNull(tested.validatorCache.get("http://test.org").etag);
+
+		// case - persisted content lost, so unconditional request is repeated
+		store.clear();
+		Mockito.reset(tested.httpclient);
+		headersExpected.clear();
+		headersExpected.put("If-Modified-Since", "Wed, 21 Oct 2015 07:28:00 GMT");
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_NOT_MODIFIED, null, null, headersExpected, false)).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response 3", "text/plain", null, false));
+		ret = tested.performConditionalHttpGetCall("http://test.org", null);
+		Assert.assertEquals("response 3", new String(ret.content));
+		Assert.assertNull(tested.validatorCache.get("http://test.org"));
+		Assert.assertTrue(store.isEmpty());
+
+		// case - other errors are thrown
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_NOT_FOUND, "", null, null, false));
+		try {
+			tested.performConditionalHttpGetCall("http://test.org", null);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_NOT_FOUND, e.getStatusCode());
+		}
+	}
+
+	@Test
+	public void parseRetryAfter() {
+		Assert.assertNull(HttpRemoteSystemClientBase.parseRetryAfter(null, 1000));
+		Assert.assertNull(HttpRemoteSystemClientBase.parseRetryAfter(" ", 1000));
+		Assert.assertNull(HttpRemoteSystemClientBase.parseRetryAfter("bad", 1000));
+		Assert.assertEquals(new Long(120000), HttpRemoteSystemClientBase.parseRetryAfter(" 120 ", 1000));
+		Assert.assertEquals(new Long(0), HttpRemoteSystemClientBase.parseRetryAfter("-5", 1000));
+		long now = DateUtils.parseDate("Wed, 21 Oct 2015 07:28:00 GMT").getTime();
+		Assert.assertEquals(new Long(10000),
+				HttpRemoteSystemClientBase.parseRetryAfter("Wed, 21 Oct 2015 07:28:10 GMT", now));
+		Assert.assertEquals(new Long(0), HttpRemoteSystemClientBase.parseRetryAfter("Wed, 21 Oct 2015 07:28:10 GMT", now
+				+ 20000));
+	}
+
+	@Test
+	public void initHttpClient_rateLimit() {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertFalse(tested.getRateLimiter(new HttpHost("test.org")).isRateLimited());
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RATE_LIMIT, "0.5");
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RATE_LIMIT_BURST, 5);
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertEquals(0.5d, tested.rateLimit);
+		Assert.assertEquals(5, tested.rateLimitBurst);
+		RateLimiter rl = tested.getRateLimiter(new HttpHost("test.org"));
+		Assert.assertTrue(rl.isRateLimited());
+		Assert.assertSame(rl, tested.getRateLimiter(new HttpHost("test.org")));
+		Assert.assertNotSame(rl, tested.getRateLimiter(new HttpHost("test2.org")));
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RATE_LIMIT_BURST, 0);
+		try {
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void performHttpCall_retryAfter() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(429, "slow down", null, null, false, "Retry-After", "1"));
+		try {
+			tested.performHttpCall("http://test.org/path", null, HttpMethodType.GET);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(429, e.getStatusCode());
+			Assert.assertEquals(new Long(1000), e.getRetryAfter());
+		}
+
+		// next call to same host is paused
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", null, null, false));
+		long start = System.currentTimeMillis();
+		tested.performHttpCall("http://test.org/other", null, HttpMethodType.GET);
+		Assert.assertTrue(System.currentTimeMillis() - start >= 900);
+		Assert.assertTrue(tested.rateLimitWaitMillis.get() >= 900);
+
+		// other host is not paused
+		start = System.currentTimeMillis();
+		tested.performHttpCall("http://test2.org/other", null, HttpMethodType.GET);
+		Assert.assertTrue(System.currentTimeMillis() - start < 900);
+
+		// 404 with Retry-After doesn't pause
+		Mockito.reset(tested.httpclient);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(
+				prepereHttpResponseAnswer(HttpStatus.SC_NOT_FOUND, "", null, null, false, "Retry-After", "1"));
+		try {
+			tested.performHttpCall("http://test3.org/path", null, HttpMethodType.GET);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertNull(e.getRetryAfter());
+		}
+	}
+
+	@Test
+	public void initHttpClient_retry() {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertEquals(0, tested.listCallRetryPolicy.getMaxRetries());
+		Assert.assertEquals(0, tested.detailCallRetryPolicy.getMaxRetries());
+		Assert.assertEquals(0, tested.circuitBreakerThreshold);
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RETRY_LIST, 5);
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RETRY_DETAIL, "2");
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RETRY_BACKOFF, "200ms");
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_RETRY_BACKOFF_MAX, "1s");
+		config.put(HttpRemoteSystemClientBase.CFG_CIRCUIT_BREAKER_THRESHOLD, 10);
+		config.put(HttpRemoteSystemClientBase.CFG_CIRCUIT_BREAKER_OPEN_TIME, "2m");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertEquals(5, tested.listCallRetryPolicy.getMaxRetries());
+		Assert.assertEquals(2, tested.detailCallRetryPolicy.getMaxRetries());
+		Assert.assertEquals(200, tested.detailCallRetryPolicy.backoffMillis);
+		Assert.assertEquals(1000, tested.detailCallRetryPolicy.maxBackoffMillis);
+		Assert.assertEquals(10, tested.circuitBreakerThreshold);
+		Assert.assertEquals(120000, tested.circuitBreakerOpenTime);
+	}
+
+	@Test
+	public void initHttpClient_authType() {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_USERNAME, "user");
+		config.put(HttpRemoteSystemClientBase.CFG_PASSWORD, "pwd");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertNull(tested.authProvider);
+		Assert.assertTrue(tested.isAuthConfigured);
+
+		config.put(HttpRemoteSystemClientBase.CFG_AUTH_TYPE, "basic");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertNull(tested.authProvider);
+		Assert.assertTrue(tested.isAuthConfigured);
+
+		config.put(HttpRemoteSystemClientBase.CFG_AUTH_TYPE, "bearer");
+		config.put(HttpAuthProviderBase.CFG_AUTH_URL, "http://test.org/token");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertTrue(tested.authProvider instanceof BearerTokenAuthProvider);
+		Assert.assertFalse(tested.isAuthConfigured);
+		Assert.assertSame(tested.httpclient, ((BearerTokenAuthProvider) tested.authProvider).httpclient);
+
+		config.put(HttpRemoteSystemClientBase.CFG_AUTH_TYPE, "Session");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertTrue(tested.authProvider instanceof SessionCookieAuthProvider);
+
+		config.put(HttpRemoteSystemClientBase.CFG_AUTH_TYPE, SessionCookieAuthProvider.class.getName());
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertTrue(tested.authProvider instanceof SessionCookieAuthProvider);
+
+		config.put(HttpRemoteSystemClientBase.CFG_AUTH_TYPE, "unknown");
+		try {
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void prepareHttpContext_authCacheReused() {
+		HttpRemoteSystemClientBase tested = getTested();
+		HttpHost host = new HttpHost("test.org");
+		Assert.assertNull(tested.prepareHttpContext(host).getAuthCache());
+
+		tested.isAuthConfigured = true;
+		HttpClientContext c1 = tested.prepareHttpContext(host);
+		HttpClientContext c2 = tested.prepareHttpContext(host);
+		Assert.assertNotSame(c1, c2);
+		Assert.assertSame(c1.getAuthCache(), c2.getAuthCache());
+		Assert.assertNotNull(c1.getAuthCache().get(host));
+		Assert.assertNotSame(c1.getAuthCache(), tested.prepareHttpContext(new HttpHost("test2.org")).getAuthCache());
+
+		// preemptive scheme is kept also after failed authentication
+		c1.getAuthCache().remove(host);
+		Assert.assertNotNull(c2.getAuthCache().get(host));
+	}
+
+	@Test
+	public void authenticateRequest_hosts() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_URL_REPLICAS, "https://replica1.test.org,http://replica2.test.org:8080");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org/rest");
+		IHttpAuthProvider authProvider = Mockito.mock(IHttpAuthProvider.class);
+		tested.authProvider = authProvider;
+		Mockito.when(authProvider.authenticate(Mockito.any(HttpRequestBase.class))).thenReturn("token");
+
+		// configured host and replicas are authenticated
+		Assert.assertEquals("token", tested.authenticateRequest(new HttpGet("http://test.org/doc")));
+		Assert.assertEquals("token", tested.authenticateRequest(new HttpGet("http://TEST.org:80/doc")));
+		Assert.assertEquals("token", tested.authenticateRequest(new HttpGet("https://replica1.test.org/doc")));
+		Assert.assertEquals("token", tested.authenticateRequest(new HttpGet("http://replica2.test.org:8080/doc")));
+		Mockito.verify(authProvider, Mockito.times(4)).authenticate(Mockito.any(HttpRequestBase.class));
+
+		// credential is not sent to other hosts
+		Mockito.reset(authProvider);
+		Assert.assertNull(tested.authenticateRequest(new HttpGet("http://other.org/doc")));
+		Assert.assertNull(tested.authenticateRequest(new HttpGet("https://test.org/doc")));
+		Assert.assertNull(tested.authenticateRequest(new HttpGet("http://test.org:8080/doc")));
+		Assert.assertNull(tested.authenticateRequest(new HttpGet("http://replica2.test.org/doc")));
+		Mockito.verifyZeroInteractions(authProvider);
+
+		// configured url may contain placeholders
+		Assert.assertEquals(Collections.singleton("https://test.org:443"),
+				HttpRemoteSystemClientBase.prepareAuthHosts("https://Test.org/rest?space={space}", null));
+	}
+
+	@Test
+	public void performHttpCall_authRetry() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+		IHttpAuthProvider authProvider = Mockito.mock(IHttpAuthProvider.class);
+		tested.authProvider = authProvider;
+		tested.authHosts = HttpRemoteSystemClientBase.prepareAuthHosts("http://test.org", null);
+		Mockito.when(authProvider.authenticate(Mockito.any(HttpRequestBase.class))).thenReturn("token1", "token2",
+				"token3", "token4");
+
+		final List<Integer> statuses = new ArrayList<Integer>();
+		final Answer<HttpResponse> ok = prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", null, null, false);
+		final Answer<HttpResponse> unauthorized = prepereHttpResponseAnswer(HttpStatus.SC_UNAUTHORIZED, "", null, null,
+				false);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(new Answer<HttpResponse>() {
+
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				if (statuses.remove(0) == HttpStatus.SC_UNAUTHORIZED)
+					return unauthorized.answer(invocation);
+				return ok.answer(invocation);
+			}
+		});
+
+		// 401 leads to one transparent refresh
+		statuses.add(HttpStatus.SC_UNAUTHORIZED);
+		statuses.add(HttpStatus.SC_OK);
+		Assert.assertEquals("response", new String(tested.performHttpGetCall("http://test.org/doc", null).content));
+		Mockito.verify(authProvider).invalidate("token1");
+		Assert.assertEquals(1, tested.authRetries.get());
+
+		// second 401 is not repeated
+		statuses.add(HttpStatus.SC_UNAUTHORIZED);
+		statuses.add(HttpStatus.SC_UNAUTHORIZED);
+		try {
+			tested.performHttpGetCall("http://test.org/doc", null);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, e.getStatusCode());
+		}
+		Mockito.verify(authProvider).invalidate("token3");
+		Mockito.verify(authProvider).invalidate("token4");
+		Assert.assertEquals(2, tested.authRetries.get());
+		Assert.assertTrue(statuses.isEmpty());
+	}
+
+	@Test
+	public void initHttpClient_sharedPool() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertNull(tested.sharedConnectionPool);
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_SHARED_POOL, true);
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertSame(SharedHttpConnectionPool.getInstance(), tested.sharedConnectionPool);
+
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		tested.buildStats(builder);
+		builder.endObject();
+		Assert.assertTrue(builder.string(), builder.string().contains("\"shared_pool\":{\"max_total\":"));
+	}
+
+	@Test
+	public void initHttpClient_replicas() {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org/rest");
+		Assert.assertNull(tested.endpointBalancer);
+
+		config.put(HttpRemoteSystemClientBase.CFG_URL_REPLICAS, "http://test2.org:8080, https://test3.org/rest");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org/rest");
+		Assert.assertEquals(3, tested.endpointBalancer.getEndpoints().size());
+		Assert.assertEquals(new HttpHost("test3.org", -1, "https"), tested.endpointBalancer.getEndpoints().get(2).getHost());
+		Assert.assertEquals(EndpointBalancer.Strategy.ROUND_ROBIN, tested.endpointBalancer.strategy);
+		Assert.assertEquals(3, tested.endpointBalancer.failureThreshold);
+		Assert.assertEquals(30000, tested.endpointBalancer.ejectTime);
+
+		List<String> replicas = new ArrayList<String>();
+		replicas.add("http://test2.org");
+		config.put(HttpRemoteSystemClientBase.CFG_URL_REPLICAS, replicas);
+		config.put(HttpRemoteSystemClientBase.CFG_LOAD_BALANCING, "least_outstanding");
+		config.put(HttpRemoteSystemClientBase.CFG_REPLICA_FAILURE_THRESHOLD, 5);
+		config.put(HttpRemoteSystemClientBase.CFG_REPLICA_EJECT_TIME, "2m");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org/rest");
+		Assert.assertEquals(2, tested.endpointBalancer.getEndpoints().size());
+		Assert.assertEquals(EndpointBalancer.Strategy.LEAST_OUTSTANDING, tested.endpointBalancer.strategy);
+		Assert.assertEquals(5, tested.endpointBalancer.failureThreshold);
+		Assert.assertEquals(120000, tested.endpointBalancer.ejectTime);
+
+		// configured url may contain placeholders
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null,
+				"http://test.org/rest?space={space}&from={updatedAfter}");
+		Assert.assertEquals(new HttpHost("test.org", -1, "http"), tested.endpointBalancer.primaryHost);
+		Assert.assertNotNull(tested.endpointBalancer.select(new HttpHost("test.org", -1, "http")));
+
+		config.put(HttpRemoteSystemClientBase.CFG_LOAD_BALANCING, "random");
+		try {
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org/rest");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		config.remove(HttpRemoteSystemClientBase.CFG_LOAD_BALANCING);
+		config.put(HttpRemoteSystemClientBase.CFG_URL_REPLICAS, "test2.org");
+		try {
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org/rest");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void initHttpClient_hedging() {
+		HttpRemoteSystemClientBase tested = getTested();
+		Map<String, Object> config = new HashMap<String, Object>();
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertNull(tested.requestHedger);
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_DETAIL_PERCENTILE, 95);
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertEquals(95, tested.requestHedger.percentile);
+		Assert.assertEquals(0.1d, tested.requestHedger.budgetRatio);
+		Assert.assertEquals(20, tested.requestHedger.minDelay);
+		ExecutorService firstExecutor = tested.hedgeExecutor;
+		Assert.assertNotNull(firstExecutor);
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_BUDGET, "5");
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_MIN_DELAY, "100ms");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+		Assert.assertEquals(0.05d, tested.requestHedger.budgetRatio);
+		Assert.assertEquals(100, tested.requestHedger.minDelay);
+		// executor from previous init is shut down
+		Assert.assertTrue(firstExecutor.isShutdown());
+		Assert.assertNotSame(firstExecutor, tested.hedgeExecutor);
+		Assert.assertFalse(tested.hedgeExecutor.isShutdown());
+
+		// executor is shut down on close
+		ExecutorService secondExecutor = tested.hedgeExecutor;
+		tested.close();
+		Assert.assertTrue(secondExecutor.isShutdown());
+		Assert.assertNull(tested.hedgeExecutor);
+
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_BUDGET, 0);
+		try {
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		config.remove(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_BUDGET);
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_DETAIL_PERCENTILE, 100);
+		try {
+			tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void performHedgedHttpGetCall() throws Exception {
+		final List<String> calls = new ArrayList<String>();
+		final List<Long> sleeps = new ArrayList<Long>();
+		final List<Long> aborted = Collections.synchronizedList(new ArrayList<Long>());
+		HttpRemoteSystemClientBase tested = new HttpRemoteSystemClientBase() {
+
+			@Override
+			protected HttpResponseContent performHttpGetCall(String url, Map<String, String> headers) throws Exception,
+					HttpCallException {
+				final long sleep;
+				synchronized (calls) {
+					calls.add(url);
+					sleep = sleeps.isEmpty() ? 0 : sleeps.remove(0);
+				}
+				registerHedgedCall(new Cancellable() {
+					@Override
+					public boolean cancel() {
+						aborted.add(sleep);
+						return true;
+					}
+				});
+				if (sleep < 0)
+					throw new HttpCallException(url, HttpStatus.SC_SERVICE_UNAVAILABLE, "");
+				Thread.sleep(sleep);
+				return new HttpResponseContent(null, ("response " + sleep).getBytes());
+			}
+
+			@Override
+			public void init(IESIntegration es, Map<String, Object> config, boolean spaceListLoadingEnabled,
+					IPwdLoader pwdLoader) throws SettingsException {
+			}
+
+			@Override
+			public List<String> getAllSpaces() throws Exception {
+				return null;
+			}
+
+			@Override
+			public ChangedDocumentsResults getChangedDocuments(String spaceKey, int startAt, boolean fullUpdate,
+					Date updatedAfter) throws Exception {
+				return null;
+			}
+
+			@Override
+			public Object getChangedDocumentDetails(String spaceKey, String documentId, Map<String, Object> document)
+					throws RemoteDocumentNotFoundException, Exception {
+				return null;
+			}
+		};
+
+		// hedging disabled
+		Assert.assertEquals("response 0", new String(tested.performHedgedHttpGetCall("http://test.org/1", null).content));
+		Assert.assertEquals(1, calls.size());
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_DETAIL_PERCENTILE, 90);
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_BUDGET, 50);
+		config.put(HttpRemoteSystemClientBase.CFG_HTTP_HEDGE_MIN_DELAY, "50ms");
+		tested.initHttpClient(Loggers.getLogger("test logger"), config, null, "http://test.org");
+
+		// not enough latencies recorded so no hedge
+		for (int i = 0; i < RequestHedger.LATENCY_MIN_SAMPLES; i++)
+			tested.performHedgedHttpGetCall("http://test.org/2", null);
+		Assert.assertEquals(0, tested.requestHedger.getHedges());
+		Assert.assertEquals(50, tested.requestHedger.getHedgeDelay());
+
+		// fast response, no hedge
+		calls.clear();
+		tested.performHedgedHttpGetCall("http://test.org/3", null);
+		Assert.assertEquals(1, calls.size());
+
+		// slow response, hedge wins
+		calls.clear();
+		sleeps.add(2000L);
+		sleeps.add(0L);
+		long start = System.currentTimeMillis();
+		Assert.assertEquals("response 0", new String(tested.performHedgedHttpGetCall("http://test.org/4", null).content));
+		Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+		Assert.assertEquals(2, calls.size());
+		Assert.assertEquals(1, tested.requestHedger.getHedges());
+		Assert.assertEquals(1, tested.requestHedger.getHedgeWins());
+		// request of the slow original call which lost is aborted
+		Assert.assertTrue(aborted.contains(2000L));
+
+		// slow response, failed hedge, original response used
+		calls.clear();
+		sleeps.add(200L);
+		sleeps.add(-1L);
+		Assert.assertEquals("response 200", new String(tested.performHedgedHttpGetCall("http://test.org/5", null).content));
+		Assert.assertEquals(2, calls.size());
+		Assert.assertEquals(2, tested.requestHedger.getHedges());
+		Assert.assertEquals(1, tested.requestHedger.getHedgeWins());
+
+		// failed original without hedge
+		sleeps.add(-1L);
+		try {
+			tested.performHedgedHttpGetCall("http://test.org/6", null);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+		}
+
+		// budget exhausted
+		calls.clear();
+		tested.requestHedger = new RequestHedger(90, 0.01, 50);
+		for (int i = 0; i < RequestHedger.LATENCY_MIN_SAMPLES; i++)
+			tested.requestHedger.recordLatency(10);
+		sleeps.add(200L);
+		Assert.assertEquals("response 200", new String(tested.performHedgedHttpGetCall("http://test.org/7", null).content));
+		Assert.assertEquals(1, calls.size());
+		Assert.assertEquals(1, tested.requestHedger.getBudgetExhausted());
+	}
+
+	@Test
+	public void performHttpCall_replicas() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+		List<HttpHost> hosts = new ArrayList<HttpHost>();
+		hosts.add(new HttpHost("test.org", -1, "http"));
+		hosts.add(new HttpHost("test2.org", -1, "http"));
+		tested.endpointBalancer = new EndpointBalancer(hosts, EndpointBalancer.Strategy.ROUND_ROBIN, 2, 60000);
+
+		final List<String> calledUrls = new ArrayList<String>();
+		final Answer<HttpResponse> ok = prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", null, null, false);
+		final Answer<HttpResponse> failed = prepereHttpResponseAnswer(HttpStatus.SC_SERVICE_UNAVAILABLE, "", null, null,
+				false);
+		Mockito.when(
+				tested.httpclient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class))).thenAnswer(new Answer<HttpResponse>() {
+
+			@Override
+			public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				HttpHost host = (HttpHost) invocation.getArguments()[0];
+				HttpRequestBase method = (HttpRequestBase) invocation.getArguments()[1];
+				Assert.assertEquals(host, HttpRemoteSystemClientBase.getTargetHost(method));
+				calledUrls.add(method.getURI().toString());
+				if ("test2.org".equals(host.getHostName()))
+					return failed.answer(invocation);
+				return ok.answer(invocation);
+			}
+		});
+
+		// calls spread across replicas
+		tested.performHttpCall("http://test.org/path?a=1", null, HttpMethodType.GET);
+		try {
+			tested.performHttpCall("http://test.org/path?a=2", null, HttpMethodType.GET);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			Assert.assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+		}
+		Assert.assertEquals("http://test.org/path?a=1", calledUrls.get(0));
+		Assert.assertEquals("http://test2.org/path?a=2", calledUrls.get(1));
+
+		// other host is not balanced
+		tested.performHttpCall("http://other.org/path", null, HttpMethodType.GET);
+		Assert.assertEquals("http://other.org/path", calledUrls.get(2));
+
+		// failing replica is ejected after second failure
+		tested.performHttpCall("http://test.org/path?a=3", null, HttpMethodType.GET);
+		try {
+			tested.performHttpCall("http://test.org/path?a=4", null, HttpMethodType.GET);
+			Assert.fail("HttpCallException expected");
+		} catch (HttpCallException e) {
+			// OK
+		}
+		EndpointBalancer.Endpoint e2 = tested.endpointBalancer.getEndpoints().get(1);
+		Assert.assertTrue(e2.isEjected(System.currentTimeMillis()));
+		Assert.assertEquals(2, e2.getFailures());
+		Assert.assertEquals(0, e2.getOutstanding());
+		calledUrls.clear();
+		for (int i = 0; i < 4; i++)
+			tested.performHttpCall("http://test.org/path", null, HttpMethodType.GET);
+		for (String url : calledUrls)
+			Assert.assertEquals("http://test.org/path", url);
+		Assert.assertEquals(4, calledUrls.size());
+		Assert.assertEquals(6, tested.endpointBalancer.getEndpoints().get(0).getCalls());
+	}
+
+	@Test
+	public void performWithRetry() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.circuitBreakerThreshold = 3;
+		tested.circuitBreakerOpenTime = 60000;
+		RetryPolicy policy = new RetryPolicy(2, 10, 20);
+
+		// case - success after retries
+		{
+			Callable<String> call = prepareFailingCall(2, new HttpCallException("http://test.org", 502, ""));
+			Assert.assertEquals("OK", tested.performWithRetry(policy, "http://test.org/a", call));
+			Assert.assertEquals(2, tested.retries.get());
+			Assert.assertTrue(tested.isRemoteSystemAvailable());
+		}
+
+		// case - not retryable error thrown immediately
+		{
+			tested.retries.set(0);
+			Callable<String> call = prepareFailingCall(2, new HttpCallException("http://test.org", 404, ""));
+			try {
+				tested.performWithRetry(policy, "http://test.org/a", call);
+				Assert.fail("HttpCallException expected");
+			} catch (HttpCallException e) {
+				Assert.assertEquals(404, e.getStatusCode());
+			}
+			Assert.assertEquals(0, tested.retries.get());
+		}
+
+		// case - retries exhausted, circuit breaker opens for the host
+		{
+			Callable<String> call = prepareFailingCall(5, new IOException("connection refused"));
+			try {
+				tested.performWithRetry(policy, "http://test.org/a", call);
+				Assert.fail("IOException expected");
+			} catch (IOException e) {
+				Assert.assertEquals("connection refused", e.getMessage());
+			}
+			Assert.assertEquals(2, tested.retries.get());
+			Assert.assertFalse(tested.isRemoteSystemAvailable());
+
+			try {
+				tested.performWithRetry(policy, "http://test.org/b", prepareFailingCall(0, null));
+				Assert.fail("RemoteSystemUnavailableException expected");
+			} catch (RemoteSystemUnavailableException e) {
+				// OK
+			}
+			// other host is not affected
+			Assert.assertEquals("OK", tested.performWithRetry(policy, "http://test2.org/b", prepareFailingCall(0, null)));
+
+			// async call is rejected also
+			try {
+				waitForHttpCallOrFail(tested.performHttpCallAsync(policy, "http://test.org/b", null, HttpMethodType.GET));
+			} catch (RemoteSystemUnavailableException e) {
+				// OK
+			}
+		}
+	}
+
+	@Test
+	public void performHttpCallAsync_retry() throws Exception {
+		HttpRemoteSystemClientBase tested = getTested();
+		tested.myLogger = Loggers.getLogger("test logger");
+		tested.httpclient = Mockito.mock(CloseableHttpClient.class);
+		tested.httpAsyncClient = Mockito.mock(CloseableHttpAsyncClient.class);
+
+		Mockito.when(
+				tested.httpAsyncClient.execute(Mockito.any(HttpHost.class), Mockito.any(HttpGet.class),
+						Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class))).thenAnswer(
+				prepereAsyncHttpResponseAnswer(prepereHttpResponseAnswer(HttpStatus.SC_SERVICE_UNAVAILABLE, "down",
+						"text/plain", null, false))).thenAnswer(
+				prepereAsyncHttpResponseAnswer(prepereHttpResponseAnswer(HttpStatus.SC_OK, "response", "text/plain", null,
+						false)));
+
+		Future<HttpResponseContent> ret = tested.performHttpCallAsync(new RetryPolicy(1, 10, 10), "http://test.org/a",
+				null, HttpMethodType.GET);
+		Assert.assertEquals("response", new String(ret.get().content));
+		Assert.assertEquals(1, tested.retries.get());
+		Mockito.verify(tested.httpAsyncClient, Mockito.times(2)).execute(Mockito.any(HttpHost.class),
+				Mockito.any(HttpGet.class), Mockito.any(BasicHttpContext.class), Mockito.any(FutureCallback.class));
+	}
+
+	private static void waitForHttpCallOrFail(Future<HttpResponseContent> call) throws Exception {
+		HttpRemoteSystemClientBase.waitForHttpCall(call);
+		Assert.fail("Exception expected");
+	}
+
+	private static Callable<String> prepareFailingCall(final int failures, final Exception e) {
+		return new Callable<String>() {
+			int count = 0;
+
+			@Override
+			public String call() throws Exception {
+				if (count++ < failures)
+					throw e;
+				return "OK";
+			}
+		};
+	}
+
+	private Answer<Future<HttpResponse>> prepereAsyncHttpResponseAnswer(final Answer<HttpResponse> responseAnswer) {
+		return new Answer<Future<HttpResponse>>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws Throwable {
+				((FutureCallback<HttpResponse>) invocation.getArguments()[3]).completed(responseAnswer.answer(invocation));
+				return null;
+			}
+		};
+	}
+
 	private Answer<HttpResponse> prepereHttpResponseAnswer(final int statusCode, final String responseContent,
 			final String responseContentType, final Map<String, String> headersExpected, final boolean authExpected) {
+		return prepereHttpResponseAnswer(statusCode, responseContent, responseContentType, headersExpected, authExpected,
+				new String[0]);
+	}
+
+	private Answer<HttpResponse> prepereHttpResponseAnswer(final int statusCode, final String responseContent,
+			final String responseContentType, final Map<String, String> headersExpected, final boolean authExpected,
+			final String... responseHeaders) {
 		return new Answer<HttpResponse>() {
 
 			@Override
@@ -251,23 +1332,11 @@ public class HttpRemoteSystemClientBaseTest {
 				Mockito.when(ret.getEntity()).thenReturn(entity);
 
 				if (responseContentType != null) {
-					Mockito.when(ret.getFirstHeader("Content-Type")).thenReturn(new Header() {
-
-						@Override
-						public String getValue() {
-							return responseContentType;
-						}
-
-						@Override
-						public String getName() {
-							return "Content-Type";
-						}
-
-						@Override
-						public HeaderElement[] getElements() throws ParseException {
-							return null;
-						}
-					});
+					Mockito.when(ret.getFirstHeader("Content-Type")).thenReturn(prepareHeader("Content-Type", responseContentType));
+				}
+				for (int i = 0; i < responseHeaders.length; i += 2) {
+					Mockito.when(ret.getFirstHeader(responseHeaders[i])).thenReturn(
+							prepareHeader(responseHeaders[i], responseHeaders[i + 1]));
 				}
 
 				return ret;
@@ -276,6 +1345,26 @@ public class HttpRemoteSystemClientBaseTest {
 		};
 	}
 
+	private static Header prepareHeader(final String name, final String value) {
+		return new Header() {
+
+			@Override
+			public String getValue() {
+				return value;
+			}
+
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public HeaderElement[] getElements() throws ParseException {
+				return null;
+			}
+		};
+	}
+
 	private HttpRemoteSystemClientBase getTested() {
 		HttpRemoteSystemClientBase ret = new HttpRemoteSystemClientBase() {
 
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.logging.Loggers;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseContent;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link HttpValidatorCache}
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class HttpValidatorCacheTest {
+
+	@Test
+	public void preparePropertyName() {
+		HttpValidatorCache tested = new HttpValidatorCache(Loggers.getLogger("test logger"),
+				Mockito.mock(IESIntegration.class));
+		Assert.assertEquals("httpCache_57", tested.preparePropertyName("test"));
+		Assert.assertEquals(tested.preparePropertyName("http://test.org/a"), tested.preparePropertyName("http://test.org/a"));
+
+		// case - number of property names is bounded by max entries
+		tested = new HttpValidatorCache(Loggers.getLogger("test logger"), Mockito.mock(IESIntegration.class), 3, 100);
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < 100; i++) {
+			names.add(tested.preparePropertyName("http://test.org/" + i));
+		}
+		Assert.assertEquals(3, names.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void get_put_getContent() throws Exception {
+		IESIntegration esIntegration = Mockito.mock(IESIntegration.class);
+		HttpValidatorCache tested = new HttpValidatorCache(Loggers.getLogger("test logger"), esIntegration);
+		String url = "http://test.org";
+		String propertyName = tested.preparePropertyName(url);
+
+		// case - nothing stored, store is asked only once
+		Assert.assertNull(tested.get(url));
+		Assert.assertNull(tested.get(url));
+		Mockito.verify(esIntegration, Mockito.times(1)).readObjectValue(null, propertyName);
+
+		// case - response without validators is not stored if there was nothing before
+		tested.put(url, new HttpResponseContent("text/plain", "content".getBytes()));
+		Mockito.verify(esIntegration, Mockito.never()).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyMap());
+
+		// case - response with validators is stored
+		HttpResponseContent response = new HttpResponseContent("text/plain", "content".getBytes());
+		response.etag = "\"1\"";
+		tested.put(url, response);
+		Map<String, Object> expected = new HashMap<String, Object>();
+		expected.put("url", url);
+		expected.put("etag", "\"1\"");
+		expected.put("lastModified", null);
+		expected.put("contentType", "text/plain");
+		expected.put("content", "Y29udGVudA==");
+		Mockito.verify(esIntegration).storeObjectValue(null, propertyName, expected);
+		Assert.assertEquals("\"1\"", tested.get(url).etag);
+
+		// case - content read from store
+		Mockito.when(esIntegration.readObjectValue(null, propertyName)).thenReturn(expected);
+		HttpResponseContent content = tested.getContent(url);
+		Assert.assertEquals("content", new String(content.content));
+		Assert.assertEquals("text/plain", content.contentType);
+		Assert.assertEquals("\"1\"", content.etag);
+
+		// case - stored value for other url (hash collision) is ignored
+		expected.put("url", "http://other.org");
+		Assert.assertNull(tested.getContent(url));
+		expected.put("url", url);
+
+		// case - response without validators invalidates stored one
+		Mockito.reset(esIntegration);
+		tested.put(url, new HttpResponseContent("text/plain", "content".getBytes()));
+		Map<String, Object> expectedInvalid = new HashMap<String, Object>();
+		expectedInvalid.put("url", url);
+		Mockito.verify(esIntegration).storeObjectValue(null, propertyName, expectedInvalid);
+		Assert.assertNull(tested.get(url));
+
+		// case - store failure is not thrown out
+		Mockito.reset(esIntegration);
+		Mockito.when(esIntegration.readObjectValue(null, tested.preparePropertyName("test"))).thenThrow(
+				new RuntimeException("ES failure"));
+		Assert.assertNull(tested.get("test"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void put_limits() throws Exception {
+		IESIntegration esIntegration = Mockito.mock(IESIntegration.class);
+		HttpValidatorCache tested = new HttpValidatorCache(Loggers.getLogger("test logger"), esIntegration, 10, 5);
+		String url = "http://test.org";
+
+		// case - too big content is not stored
+		HttpResponseContent response = new HttpResponseContent("text/plain", "content".getBytes());
+		response.etag = "\"1\"";
+		tested.put(url, response);
+		Mockito.verify(esIntegration, Mockito.never()).storeObjectValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyMap());
+		Assert.assertNull(tested.get(url));
+
+		// case - content within limit is stored only once for same validators
+		response = new HttpResponseContent("text/plain", "small".getBytes());
+		response.etag = "\"1\"";
+		tested.put(url, response);
+		tested.put(url, response);
+		Mockito.verify(esIntegration, Mockito.times(1)).storeObjectValue(Mockito.eq((String) null),
+				Mockito.eq(tested.preparePropertyName(url)), Mockito.anyMap());
+
+		// case - changed validators are stored
+		response.etag = "\"2\"";
+		tested.put(url, response);
+		Mockito.verify(esIntegration, Mockito.times(2)).storeObjectValue(Mockito.eq((String) null),
+				Mockito.eq(tested.preparePropertyName(url)), Mockito.anyMap());
+	}
+
+}
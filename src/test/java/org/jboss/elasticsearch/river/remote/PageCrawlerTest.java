@@ -0,0 +1,314 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PageCrawler}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class PageCrawlerTest {
+
+	private static final PageCrawler.PageProcessor<String, String> PROCESSOR = new PageCrawler.PageProcessor<String, String>() {
+		@Override
+		public String process(String url, String content) throws Exception {
+			return url + ":" + content + ":" + Thread.currentThread().getName().contains("test_process");
+		}
+	};
+
+	@Test
+	public void constructor() {
+		try {
+			new PageCrawler(0, 0, 1, 1, "test");
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new PageCrawler(1, 0, 0, 1, "test");
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new PageCrawler(1, 0, 1, 0, "test");
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void getHost() {
+		Assert.assertEquals("test.org", PageCrawler.getHost("http://test.org/doc"));
+		Assert.assertEquals("test.org", PageCrawler.getHost("https://TEST.org:8443/doc?a=b"));
+		Assert.assertEquals("www.test.org", PageCrawler.getHost("http://www.test.org"));
+		Assert.assertEquals("invalid url", PageCrawler.getHost("invalid url"));
+		Assert.assertEquals("/relative", PageCrawler.getHost("/relative"));
+	}
+
+	@Test
+	public void submit() throws Exception {
+		PageCrawler tested = new PageCrawler(2, 0, 4, 2, "test");
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 10; i++) {
+				final String content = "content" + i;
+				futures.add(tested.submit("http://test" + (i % 3) + ".org/doc" + i, new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return content;
+					}
+				}, PROCESSOR));
+			}
+			for (int i = 0; i < 10; i++) {
+				Assert.assertEquals("http://test" + (i % 3) + ".org/doc" + i + ":content" + i + ":true", futures.get(i)
+						.get(5, TimeUnit.SECONDS));
+			}
+			Assert.assertEquals(10, tested.getFetched());
+			Assert.assertEquals(0, tested.getFetchFailures());
+			Assert.assertEquals(0, tested.getQueued());
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	@Test
+	public void submit_hostConcurrency() throws Exception {
+		PageCrawler tested = new PageCrawler(2, 0, 10, 1, "test");
+		try {
+			final AtomicInteger runningHost1 = new AtomicInteger();
+			final AtomicInteger maxHost1 = new AtomicInteger();
+			final AtomicInteger runningHost2 = new AtomicInteger();
+			final AtomicInteger maxHost2 = new AtomicInteger();
+			final CountDownLatch release = new CountDownLatch(1);
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				boolean host1 = i % 2 == 0;
+				final AtomicInteger running = host1 ? runningHost1 : runningHost2;
+				final AtomicInteger max = host1 ? maxHost1 : maxHost2;
+				futures.add(tested.submit("http://" + (host1 ? "test1" : "test2") + ".org/doc" + i, new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						int r = running.incrementAndGet();
+						synchronized (max) {
+							if (r > max.get())
+								max.set(r);
+						}
+						release.await(5, TimeUnit.SECONDS);
+						Thread.sleep(10);
+						running.decrementAndGet();
+						return "content";
+					}
+				}, PROCESSOR));
+			}
+			// wait for all allowed fetches to start
+			for (int i = 0; i < 100 && tested.getRunning() < 4; i++) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(4, tested.getRunning());
+			Assert.assertEquals(4, tested.getQueued());
+			release.countDown();
+			for (Future<String> f : futures) {
+				f.get(5, TimeUnit.SECONDS);
+			}
+			Assert.assertEquals(2, maxHost1.get());
+			Assert.assertEquals(2, maxHost2.get());
+			Assert.assertEquals(8, tested.getFetched());
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	@Test
+	public void submit_politenessDelay() throws Exception {
+		PageCrawler tested = new PageCrawler(2, 100, 4, 1, "test");
+		try {
+			final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(tested.submit("http://test.org/doc" + i, new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						starts.add(System.nanoTime());
+						return "content";
+					}
+				}, PROCESSOR));
+			}
+			for (Future<String> f : futures) {
+				f.get(5, TimeUnit.SECONDS);
+			}
+			assertStartGaps(starts, 4, 90);
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	@Test
+	public void submit_politenessDelay_lateStart() throws Exception {
+		// one fetch thread shared by two hosts, so fetch from first host is started late
+		PageCrawler tested = new PageCrawler(1, 100, 1, 1, "test");
+		try {
+			final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			futures.add(tested.submit("http://other.org/doc", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					Thread.sleep(150);
+					return "content";
+				}
+			}, PROCESSOR));
+			for (int i = 0; i < 3; i++) {
+				futures.add(tested.submit("http://test.org/doc" + i, new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						starts.add(System.nanoTime());
+						return "content";
+					}
+				}, PROCESSOR));
+			}
+			for (Future<String> f : futures) {
+				f.get(5, TimeUnit.SECONDS);
+			}
+			assertStartGaps(starts, 3, 90);
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	/**
+	 * Starts are taken in fetch callable a bit later than crawler records them, so small tolerance is used in tests.
+	 */
+	private void assertStartGaps(List<Long> starts, int expectedCount, long minGapMillis) {
+		Assert.assertEquals(expectedCount, starts.size());
+		List<Long> sorted = new ArrayList<Long>(starts);
+		Collections.sort(sorted);
+		for (int i = 1; i < sorted.size(); i++) {
+			long gap = TimeUnit.NANOSECONDS.toMillis(sorted.get(i) - sorted.get(i - 1));
+			Assert.assertTrue("Fetches started too early, gap " + gap + "ms", gap >= minGapMillis);
+		}
+	}
+
+	@Test
+	public void submit_exceptions() throws Exception {
+		PageCrawler tested = new PageCrawler(1, 0, 1, 1, "test");
+		try {
+			// case - fetch exception
+			Future<String> f = tested.submit("http://test.org/doc1", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					throw new IllegalStateException("fetch failed");
+				}
+			}, PROCESSOR);
+			try {
+				f.get(5, TimeUnit.SECONDS);
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+				Assert.assertEquals("fetch failed", e.getCause().getMessage());
+			}
+			Assert.assertEquals(1, tested.getFetched());
+			Assert.assertEquals(1, tested.getFetchFailures());
+
+			// case - processing exception
+			f = tested.submit("http://test.org/doc2", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return "content";
+				}
+			}, new PageCrawler.PageProcessor<String, String>() {
+				@Override
+				public String process(String url, String content) throws Exception {
+					throw new UnsupportedOperationException("process failed");
+				}
+			});
+			try {
+				f.get(5, TimeUnit.SECONDS);
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+			}
+			Assert.assertEquals(2, tested.getFetched());
+			Assert.assertEquals(1, tested.getFetchFailures());
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	@Test
+	public void submit_cancelled() throws Exception {
+		PageCrawler tested = new PageCrawler(1, 0, 1, 1, "test");
+		try {
+			final CountDownLatch release = new CountDownLatch(1);
+			final AtomicInteger fetchCount = new AtomicInteger();
+			Future<String> f1 = tested.submit("http://test.org/doc1", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					fetchCount.incrementAndGet();
+					release.await(5, TimeUnit.SECONDS);
+					return "content";
+				}
+			}, PROCESSOR);
+			Future<String> f2 = tested.submit("http://test.org/doc2", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					fetchCount.incrementAndGet();
+					return "content";
+				}
+			}, PROCESSOR);
+			Assert.assertTrue(f2.cancel(false));
+			release.countDown();
+			Assert.assertEquals("http://test.org/doc1:content:true", f1.get(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 100 && tested.getRunning() > 0; i++) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(1, fetchCount.get());
+			Assert.assertEquals(1, tested.getFetched());
+			Assert.assertEquals(0, tested.getQueued());
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	@Test
+	public void buildStats() throws Exception {
+		PageCrawler tested = new PageCrawler(3, 500, 1, 1, "test");
+		try {
+			tested.submit("http://test.org/doc1", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return "content";
+				}
+			}, PROCESSOR).get(5, TimeUnit.SECONDS);
+
+			XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+			tested.buildStats(builder);
+			builder.endObject();
+			// host is kept until politeness delay elapses
+			Assert.assertEquals(
+					"{\"crawler\":{\"host_concurrency\":3,\"politeness_delay\":500,\"hosts\":1,\"queued\":0,\"running\":0,\"fetched\":1,\"fetch_failures\":0}}",
+					builder.string());
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+}
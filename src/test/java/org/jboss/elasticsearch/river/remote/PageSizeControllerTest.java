@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link PageSizeController}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class PageSizeControllerTest {
+
+	@Test
+	public void constructor() {
+		Assert.assertEquals(50, new PageSizeController(10, 100, 1000, 0, 50).getPageSize());
+		Assert.assertEquals(10, new PageSizeController(10, 100, 1000, 0, 1).getPageSize());
+		Assert.assertEquals(100, new PageSizeController(10, 100, 1000, 0, 1000).getPageSize());
+
+		try {
+			new PageSizeController(0, 100, 1000, 0, 50);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new PageSizeController(10, 9, 1000, 0, 50);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void update() {
+		PageSizeController tested = new PageSizeController(10, 1000, 1000, 0, 100);
+
+		// empty page does not change anything
+		Assert.assertEquals(100, tested.update(0, 100, 100, 100));
+
+		// page processed in target time
+		Assert.assertEquals(100, tested.update(100, 400, -1, 600));
+
+		// slow page shrinks, fast page grows
+		Assert.assertEquals(80, tested.update(100, 600, -1, 650));
+		Assert.assertEquals(160, tested.update(80, 100, -1, 100));
+
+		// at most two times in one step
+		Assert.assertEquals(320, tested.update(160, 0, -1, 0));
+		Assert.assertEquals(160, tested.update(320, 100000, -1, 0));
+
+		// bounds
+		tested = new PageSizeController(10, 100, 1000, 0, 80);
+		Assert.assertEquals(100, tested.update(80, 10, -1, 10));
+		tested = new PageSizeController(10, 100, 1000, 0, 15);
+		Assert.assertEquals(10, tested.update(15, 10000, -1, 10000));
+
+		// response size limit
+		tested = new PageSizeController(10, 1000, 1000, 10000, 100);
+		Assert.assertEquals(100, tested.update(100, 10, 10000, 10));
+		Assert.assertEquals(50, tested.update(100, 10, 40000, 10));
+	}
+
+	@Test
+	public void storeAndRead() throws Exception {
+		IESIntegration esIntegrationMock = Mockito.mock(IESIntegration.class);
+		Assert.assertNull(PageSizeController.readStoredPageSize(esIntegrationMock, "ORG"));
+
+		new PageSizeController(10, 1000, 1000, 0, 120).store(esIntegrationMock, "ORG");
+		Map<String, Object> value = new HashMap<String, Object>();
+		value.put(PageSizeController.STORE_FIELD_PAGE_SIZE, 120);
+		Mockito.verify(esIntegrationMock).storeObjectValue("ORG", PageSizeController.STORE_PROPERTYNAME_PAGE_SIZE, value);
+
+		Mockito.when(esIntegrationMock.readObjectValue("ORG", PageSizeController.STORE_PROPERTYNAME_PAGE_SIZE))
+				.thenReturn(value);
+		Assert.assertEquals(new Integer(120), PageSizeController.readStoredPageSize(esIntegrationMock, "ORG"));
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RateLimiter}
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RateLimiterTest {
+
+	@Test
+	public void reserve_noLimit() {
+		RateLimiter tested = new RateLimiter(0, 1, false);
+		Assert.assertFalse(tested.isRateLimited());
+		Assert.assertEquals(0, tested.reserve(1000));
+		Assert.assertEquals(0, tested.reserve(1000));
+
+		// case - pause
+		tested.pauseUntil(1500);
+		Assert.assertEquals(500, tested.reserve(1000));
+		Assert.assertEquals(100, tested.reserve(1400));
+		// older pause is ignored
+		tested.pauseUntil(1200);
+		Assert.assertEquals(100, tested.reserve(1400));
+		Assert.assertEquals(0, tested.reserve(1500));
+	}
+
+	@Test
+	public void reserve_rate() {
+		RateLimiter tested = new RateLimiter(10, 1, true);
+		Assert.assertTrue(tested.isRateLimited());
+		// case - permits are reserved in order for concurrent callers
+		Assert.assertEquals(0, tested.reserve(1000));
+		Assert.assertEquals(100, tested.reserve(1000));
+		Assert.assertEquals(200, tested.reserve(1000));
+		Assert.assertEquals(250, tested.reserve(1050));
+
+		// case - no accumulation over burst after inactivity
+		Assert.assertEquals(0, tested.reserve(5000));
+		Assert.assertEquals(100, tested.reserve(5000));
+
+		// case - pause shifts permits
+		tested.pauseUntil(6000);
+		Assert.assertEquals(1000, tested.reserve(5000));
+		Assert.assertEquals(1100, tested.reserve(5000));
+	}
+
+	@Test
+	public void reserve_burst() {
+		RateLimiter tested = new RateLimiter(10, 3, true);
+		Assert.assertEquals(0, tested.reserve(1000));
+		Assert.assertEquals(0, tested.reserve(1000));
+		Assert.assertEquals(0, tested.reserve(1000));
+		Assert.assertEquals(100, tested.reserve(1000));
+		Assert.assertEquals(200, tested.reserve(1000));
+
+		// case - bucket is refilled partially
+		Assert.assertEquals(0, tested.reserve(1450));
+		Assert.assertEquals(0, tested.reserve(1450));
+		Assert.assertEquals(50, tested.reserve(1450));
+	}
+
+	@Test
+	public void acquire_startEmpty() throws InterruptedException {
+		RateLimiter tested = new RateLimiter(10, 5, false);
+		long start = System.currentTimeMillis();
+		tested.acquire();
+		Assert.assertTrue(System.currentTimeMillis() >= start + 90);
+	}
+
+}
@@ -27,6 +27,8 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.common.transport.DummyTransportAddress;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.river.RiverName;
 import org.elasticsearch.river.RiverSettings;
 import org.jboss.elasticsearch.river.remote.testtools.DataPreprocessorMock;
@@ -88,6 +90,7 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		RemoteRiver tested = prepareRiverInstanceForTest("https://issues.jboss.org", remoteSettingsAdd,
 				toplevelSettingsAdd, false);
 		Assert.assertEquals(1, tested.maxIndexingThreads);
+		Assert.assertEquals(RemoteRiver.DEFAULT_MAX_WORKER_THREADS, tested.workerThreadBudget.getMaxThreads());
 		Assert.assertEquals(5 * 60 * 1000, tested.indexUpdatePeriod);
 		Assert.assertEquals(12 * 60 * 60 * 1000, tested.indexFullUpdatePeriod);
 		Assert.assertNull(tested.indexFullUpdateCronExpression);
@@ -98,6 +101,7 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 
 		// case - test river configuration reading
 		remoteSettingsAdd.put("maxIndexingThreads", "5");
+		remoteSettingsAdd.put("maxWorkerThreads", "4");
 		remoteSettingsAdd.put("indexUpdatePeriod", "20m");
 		remoteSettingsAdd.put("indexFullUpdatePeriod", "5h");
 		remoteSettingsAdd.put("indexFullUpdateCronExpression", "0 0 10 * * ?");
@@ -110,6 +114,7 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		tested = prepareRiverInstanceForTest("https://issues.jboss.org", remoteSettingsAdd, toplevelSettingsAdd, false);
 
 		Assert.assertEquals(5, tested.maxIndexingThreads);
+		Assert.assertEquals(4, tested.workerThreadBudget.getMaxThreads());
 		Assert.assertEquals(20 * 60 * 1000, tested.indexUpdatePeriod);
 		Assert.assertEquals(5 * 60 * 60 * 1000, tested.indexFullUpdatePeriod);
 		Assert.assertEquals("0 0 10 * * ?", tested.indexFullUpdateCronExpression.toString());
@@ -218,6 +223,8 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		Assert.assertNotNull(tested.coordinatorInstance);
 		RemoteRiver.riverInstances.put(tested.riverName().getName(), tested);
 		Assert.assertTrue(RemoteRiver.riverInstances.containsKey(tested.riverName().getName()));
+		HttpRemoteSystemClientBase remoteClientMock = mock(HttpRemoteSystemClientBase.class);
+		tested.remoteSystemClient = remoteClientMock;
 
 		tested.close();
 		Assert.assertTrue(tested.isClosed());
@@ -225,6 +232,7 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		Assert.assertNull(tested.coordinatorThread);
 		Assert.assertNull(tested.coordinatorInstance);
 		Assert.assertFalse(RemoteRiver.riverInstances.containsKey(tested.riverName().getName()));
+		Mockito.verify(remoteClientMock).close();
 
 		// case - no exception when coordinatorThread and coordinatorInstance is null
 		tested = prepareRiverInstanceForTest(null);
@@ -256,6 +264,8 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		Assert.assertNotNull(tested.coordinatorInstance);
 		RemoteRiver.riverInstances.put(tested.riverName().getName(), tested);
 		Assert.assertTrue(RemoteRiver.riverInstances.containsKey(tested.riverName().getName()));
+		HttpRemoteSystemClientBase remoteClientMock = mock(HttpRemoteSystemClientBase.class);
+		tested.remoteSystemClient = remoteClientMock;
 
 		tested.stop(false);
 		Assert.assertTrue(tested.isClosed());
@@ -263,6 +273,7 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		Assert.assertNull(tested.coordinatorThread);
 		Assert.assertNull(tested.coordinatorInstance);
 		Assert.assertTrue(RemoteRiver.riverInstances.containsKey(tested.riverName().getName()));
+		Mockito.verify(remoteClientMock).close();
 
 		// case - no exception when coordinatorThread and coordinatorInstance is null
 		tested = prepareRiverInstanceForTest(null);
@@ -496,6 +507,44 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public void readAndStoreObjectValue() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			RemoteRiver tested = prepareRiverInstanceForTest(null);
+			tested.client = client;
+
+			indexCreate("_river");
+
+			Assert.assertNull(tested.readObjectValue(null, "testProperty_1"));
+
+			Map<String, Object> value = new HashMap<String, Object>();
+			value.put("etag", "\"abc\"");
+			value.put("content", "dGVzdA==");
+			tested.storeObjectValue(null, "testProperty_1", value);
+			Map<String, Object> value2 = new HashMap<String, Object>();
+			value2.put("etag", 10);
+			tested.storeObjectValue("ORG1", "testProperty_1", value2);
+
+			Assert.assertEquals(value, tested.readObjectValue(null, "testProperty_1"));
+			Assert.assertEquals(value2, tested.readObjectValue("ORG1", "testProperty_1"));
+			Assert.assertNull(tested.readObjectValue("ORG2", "testProperty_1"));
+
+			// rewrite
+			value.put("etag", "\"def\"");
+			tested.storeObjectValue(null, "testProperty_1", value);
+			Assert.assertEquals(value, tested.readObjectValue(null, "testProperty_1"));
+
+			// object value is mixed with datetime values in same type, so check both works
+			tested.storeDatetimeValue("ORG1", "testProperty_2", DateTimeUtils.parseISODateTime("2012-09-03T18:12:45"), null);
+			Assert.assertEquals(DateTimeUtils.parseISODateTime("2012-09-03T18:12:45"),
+					tested.readDatetimeValue("ORG1", "testProperty_2"));
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
 	@Test
 	public void storeDatetimeValue_Bulk() throws Exception {
 		RemoteRiver tested = prepareRiverInstanceForTest(null);
@@ -620,6 +669,44 @@ public class RemoteRiverTest extends ESRealClientTestBase {
 
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getRiverOperationInfo_remoteClientStats() throws Exception {
+
+		RemoteRiver tested = prepareRiverInstanceForTest(null);
+		tested.allIndexedSpacesKeysNextRefresh = Long.MAX_VALUE;
+		tested.allIndexedSpacesKeys = new ArrayList<String>();
+
+		GetJSONClient remoteClient = new GetJSONClient();
+		remoteClient.bytesReceived.set(100);
+		remoteClient.bytesDecoded.set(700);
+		tested.remoteSystemClient = remoteClient;
+
+		String info = tested.getRiverOperationInfo(null, DateTimeUtils.parseISODateTime("2012-09-27T09:21:26.422Z"));
+		Map<String, Object> infoMap = XContentHelper.convertToMap(info.getBytes("UTF-8"), false).v2();
+		Map<String, Object> http = (Map<String, Object>) XContentMapValues.extractValue("remote_client.http", infoMap);
+		Assert.assertEquals(100, http.get("bytes_received"));
+		Assert.assertEquals(700, http.get("bytes_decoded"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getRiverOperationInfo_detailCacheStats() throws Exception {
+
+		RemoteRiver tested = prepareRiverInstanceForTest(null);
+		tested.allIndexedSpacesKeysNextRefresh = Long.MAX_VALUE;
+		tested.allIndexedSpacesKeys = new ArrayList<String>();
+
+		tested.detailCache = new DocumentDetailCache(1000);
+		tested.detailCache.get("space", "id", new Date(1000));
+
+		String info = tested.getRiverOperationInfo(null, DateTimeUtils.parseISODateTime("2012-09-27T09:21:26.422Z"));
+		Map<String, Object> infoMap = XContentHelper.convertToMap(info.getBytes("UTF-8"), false).v2();
+		Map<String, Object> cache = (Map<String, Object>) infoMap.get("detail_cache");
+		Assert.assertEquals(1000, cache.get("max_size_bytes"));
+		Assert.assertEquals(1, cache.get("misses"));
+	}
+
 	@Test
 	public void getRiverOperationInfo_activityLogEnabled() throws Exception {
 		try {
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RequestHedger}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RequestHedgerTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new RequestHedger(0, 0.1, 10);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new RequestHedger(100, 0.1, 10);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void getHedgeDelay() {
+		RequestHedger tested = new RequestHedger(90, 0.1, 5);
+		for (int i = 1; i < RequestHedger.LATENCY_MIN_SAMPLES; i++) {
+			tested.recordLatency(i);
+		}
+		// not enough samples
+		Assert.assertEquals(-1, tested.getHedgeDelay());
+
+		tested.recordLatency(RequestHedger.LATENCY_MIN_SAMPLES);
+		Assert.assertEquals(18, tested.getHedgeDelay());
+
+		// recomputed after new latency
+		tested.recordLatency(1000);
+		tested.recordLatency(1000);
+		tested.recordLatency(1000);
+		Assert.assertEquals(1000, tested.getHedgeDelay());
+
+		// min delay
+		tested = new RequestHedger(50, 0.1, 50);
+		for (int i = 0; i < RequestHedger.LATENCY_MIN_SAMPLES; i++) {
+			tested.recordLatency(10);
+		}
+		Assert.assertEquals(50, tested.getHedgeDelay());
+
+		// only recent latencies are used
+		for (int i = 0; i < RequestHedger.LATENCY_WINDOW_SIZE; i++) {
+			tested.recordLatency(100);
+		}
+		Assert.assertEquals(100, tested.getHedgeDelay());
+	}
+
+	@Test
+	public void tryAcquireHedge() {
+		RequestHedger tested = new RequestHedger(90, 0.25, 5);
+		Assert.assertFalse(tested.tryAcquireHedge());
+		for (int i = 0; i < 4; i++)
+			tested.recordRequest();
+		Assert.assertTrue(tested.tryAcquireHedge());
+		Assert.assertFalse(tested.tryAcquireHedge());
+
+		// budget is capped
+		for (int i = 0; i < 100; i++)
+			tested.recordRequest();
+		for (int i = 0; i < RequestHedger.BUDGET_MAX; i++)
+			Assert.assertTrue(tested.tryAcquireHedge());
+		Assert.assertFalse(tested.tryAcquireHedge());
+
+		Assert.assertEquals(104, tested.getRequests());
+		Assert.assertEquals(11, tested.getHedges());
+		Assert.assertEquals(3, tested.getBudgetExhausted());
+	}
+
+	@Test
+	public void buildStats() throws Exception {
+		RequestHedger tested = new RequestHedger(90, 0.5, 5);
+		tested.recordRequest();
+		tested.recordRequest();
+		tested.tryAcquireHedge();
+		tested.recordHedgeWin();
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		tested.buildStats(builder);
+		builder.endObject();
+		Assert.assertEquals(
+				"{\"hedging\":{\"requests\":2,\"hedges\":1,\"hedge_wins\":1,\"budget_exhausted\":0,\"delay\":-1}}",
+				builder.string());
+	}
+
+}
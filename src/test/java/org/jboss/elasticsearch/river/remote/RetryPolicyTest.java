@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import junit.framework.Assert;
+
+import org.apache.http.client.ClientProtocolException;
+import org.elasticsearch.common.jackson.core.JsonParseException;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpCallException;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RetryPolicy}
+ * 
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class RetryPolicyTest {
+
+	@Test
+	public void getBackoffMillis() {
+		RetryPolicy tested = new RetryPolicy(5, 1000, 5000);
+		for (int i = 0; i < 20; i++) {
+			assertBetween(500, 1000, tested.getBackoffMillis(0));
+			assertBetween(1000, 2000, tested.getBackoffMillis(1));
+			assertBetween(2000, 4000, tested.getBackoffMillis(2));
+			assertBetween(2500, 5000, tested.getBackoffMillis(3));
+			assertBetween(2500, 5000, tested.getBackoffMillis(30));
+		}
+		Assert.assertEquals(0, RetryPolicy.NONE.getBackoffMillis(0));
+		Assert.assertEquals(0, RetryPolicy.NONE.getMaxRetries());
+	}
+
+	private void assertBetween(long min, long max, long value) {
+		Assert.assertTrue(value + " not between " + min + " and " + max, value >= min && value <= max);
+	}
+
+	@Test
+	public void isRetryable() {
+		Assert.assertTrue(RetryPolicy.isRetryable(new HttpCallException("url", 408, "")));
+		Assert.assertTrue(RetryPolicy.isRetryable(new HttpCallException("url", 429, "")));
+		Assert.assertTrue(RetryPolicy.isRetryable(new HttpCallException("url", 500, "")));
+		Assert.assertTrue(RetryPolicy.isRetryable(new HttpCallException("url", 502, "")));
+		Assert.assertTrue(RetryPolicy.isRetryable(new HttpCallException("url", 503, "")));
+		Assert.assertTrue(RetryPolicy.isRetryable(new HttpCallException("url", 504, "")));
+		Assert.assertFalse(RetryPolicy.isRetryable(new HttpCallException("url", 400, "")));
+		Assert.assertFalse(RetryPolicy.isRetryable(new HttpCallException("url", 403, "")));
+		Assert.assertFalse(RetryPolicy.isRetryable(new HttpCallException("url", 404, "")));
+		Assert.assertFalse(RetryPolicy.isRetryable(new HttpCallException("url", 501, "")));
+		Assert.assertTrue(RetryPolicy.isRetryable(new IOException()));
+		Assert.assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException()));
+		Assert.assertFalse(RetryPolicy.isRetryable(new ClientProtocolException()));
+		Assert.assertFalse(RetryPolicy.isRetryable(new JsonParseException("bad", null)));
+		Assert.assertFalse(RetryPolicy.isRetryable(new Exception()));
+	}
+
+	@Test
+	public void isRemoteSystemFailure() {
+		Assert.assertTrue(RetryPolicy.isRemoteSystemFailure(new HttpCallException("url", 503, "")));
+		Assert.assertTrue(RetryPolicy.isRemoteSystemFailure(new IOException()));
+		Assert.assertFalse(RetryPolicy.isRemoteSystemFailure(new HttpCallException("url", 429, "")));
+		Assert.assertFalse(RetryPolicy.isRemoteSystemFailure(new HttpCallException("url", 404, "")));
+	}
+
+}
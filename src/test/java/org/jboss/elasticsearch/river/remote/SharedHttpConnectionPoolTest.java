@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SharedHttpConnectionPool}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class SharedHttpConnectionPoolTest {
+
+	@Test
+	public void applySettings() {
+		SharedHttpConnectionPool tested = new SharedHttpConnectionPool(new PoolingHttpClientConnectionManager());
+		tested.applySettings(null);
+		Assert.assertEquals(SharedHttpConnectionPool.DEFAULT_MAX_TOTAL, tested.pool.getMaxTotal());
+		Assert.assertEquals(SharedHttpConnectionPool.DEFAULT_MAX_PER_ROUTE, tested.pool.getDefaultMaxPerRoute());
+		Assert.assertEquals(SharedHttpConnectionPool.DEFAULT_IDLE_TIMEOUT, tested.idleTimeout);
+		Assert.assertEquals(SharedHttpConnectionPool.DEFAULT_KEEP_ALIVE, tested.keepAlive);
+
+		tested.applySettings(ImmutableSettings.settingsBuilder().put(SharedHttpConnectionPool.SETTING_MAX_TOTAL, 500)
+				.put(SharedHttpConnectionPool.SETTING_MAX_PER_ROUTE, 50).put(SharedHttpConnectionPool.SETTING_IDLE_TIMEOUT, "2m")
+				.put(SharedHttpConnectionPool.SETTING_KEEP_ALIVE, "10s").build());
+		Assert.assertEquals(500, tested.pool.getMaxTotal());
+		Assert.assertEquals(50, tested.pool.getDefaultMaxPerRoute());
+		Assert.assertEquals(120000, tested.idleTimeout);
+		Assert.assertEquals(10000, tested.keepAlive);
+	}
+
+	@Test
+	public void getInstance() {
+		SharedHttpConnectionPool.configure(ImmutableSettings.settingsBuilder()
+				.put(SharedHttpConnectionPool.SETTING_MAX_PER_ROUTE, 30).build());
+		SharedHttpConnectionPool tested = SharedHttpConnectionPool.getInstance();
+		Assert.assertSame(tested, SharedHttpConnectionPool.getInstance());
+		Assert.assertEquals(30, tested.pool.getDefaultMaxPerRoute());
+
+		// limits of existing pool are changed
+		SharedHttpConnectionPool.configure(null);
+		Assert.assertEquals(SharedHttpConnectionPool.DEFAULT_MAX_PER_ROUTE, tested.pool.getDefaultMaxPerRoute());
+	}
+
+	@Test
+	public void getKeepAliveStrategy() {
+		SharedHttpConnectionPool tested = new SharedHttpConnectionPool(new PoolingHttpClientConnectionManager());
+		tested.applySettings(null);
+
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		Assert.assertEquals(SharedHttpConnectionPool.DEFAULT_KEEP_ALIVE, tested.getKeepAliveStrategy()
+				.getKeepAliveDuration(response, new BasicHttpContext()));
+
+		response.addHeader("Keep-Alive", "timeout=5, max=100");
+		Assert.assertEquals(5000, tested.getKeepAliveStrategy().getKeepAliveDuration(response, new BasicHttpContext()));
+	}
+
+	@Test
+	public void leaseMetricsAndStats() throws Exception {
+		SharedHttpConnectionPool tested = new SharedHttpConnectionPool(new PoolingHttpClientConnectionManager());
+		tested.applySettings(ImmutableSettings.settingsBuilder().put(SharedHttpConnectionPool.SETTING_MAX_TOTAL, 10)
+				.put(SharedHttpConnectionPool.SETTING_MAX_PER_ROUTE, 1).build());
+
+		HttpRoute route = new HttpRoute(new HttpHost("test.org"));
+		ConnectionRequest request = tested.getConnectionManager().requestConnection(route, null);
+		HttpClientConnection conn = request.get(1, TimeUnit.SECONDS);
+		Assert.assertNotNull(conn);
+		Assert.assertEquals(1, tested.leases.get());
+
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		tested.buildStats(builder);
+		builder.endObject();
+		Assert.assertTrue(builder.string(), builder.string().startsWith(
+				"{\"shared_pool\":{\"max_total\":10,\"max_per_route\":1,\"leased\":1,\"available\":0,\"pending\":0,\"leases\":1,"));
+
+		tested.getConnectionManager().releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(0, tested.pool.getTotalStats().getLeased());
+
+		// shutdown by one client doesn't close shared pool
+		tested.getConnectionManager().shutdown();
+		Assert.assertNotNull(tested.getConnectionManager().requestConnection(route, null).get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void leased() {
+		SharedHttpConnectionPool tested = new SharedHttpConnectionPool(new PoolingHttpClientConnectionManager());
+		tested.leased(10);
+		tested.leased(30);
+		tested.leased(20);
+		Assert.assertEquals(3, tested.leases.get());
+		Assert.assertEquals(60, tested.leaseWaitMillis.get());
+		Assert.assertEquals(30, tested.leaseWaitMaxMillis.get());
+	}
+
+}
@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -48,6 +49,10 @@ import static org.mockito.Mockito.when;
  */
 public class SpaceByLastUpdateTimestampIndexerTest {
 
+	private static final long HOUR = 60L * 60 * 1000;
+
+	private static final long DAY = 24 * HOUR;
+
 	/**
 	 * Main method used to run integration tests with real remote call.
 	 * 
@@ -632,6 +637,326 @@ public class SpaceByLastUpdateTimestampIndexerTest {
 		Mockito.verifyNoMoreInteractions(esIntegrationMock);
 	}
 
+	@Test
+	public void processUpdate_PagedByCursor() throws Exception {
+
+		// cursor returned from remote system is used to go over all pages with the same updatedAfter, then indexing
+		// finishes as last page has no cursor
+		IRemoteSystemClientCursorPaging remoteClientMock = mock(IRemoteSystemClientCursorPaging.class);
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		IDocumentIndexStructureBuilder documentIndexStructureBuilderMock = mock(IDocumentIndexStructureBuilder.class);
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false, remoteClientMock,
+				esIntegrationMock, documentIndexStructureBuilderMock);
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "ORG-45", "2012-08-14T08:00:00.000-0400");
+		addDocumentMock(docs, "ORG-46", "2012-08-14T08:01:00.000-0400");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "ORG-47", "2012-08-14T08:02:00.000-0400");
+		addDocumentMock(docs2, "ORG-48", "2012-08-14T08:03:00.000-0400");
+		when(
+				esIntegrationMock.readDatetimeValue("ORG",
+						SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE)).thenReturn(null);
+		when(remoteClientMock.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, null, "c1"));
+		when(remoteClientMock.getChangedDocuments("ORG", 2, "c1", true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, 4, null));
+		when(esIntegrationMock.prepareESBulkRequestBuilder()).thenReturn(brb);
+		configureStructureBuilderMockDefaults(documentIndexStructureBuilderMock);
+
+		tested.processUpdate();
+		Assert.assertEquals(4, tested.indexingInfo.documentsUpdated);
+		verify(remoteClientMock, times(1)).getChangedDocuments("ORG", 0, true, null);
+		verify(remoteClientMock, times(1)).getChangedDocuments("ORG", 2, "c1", true, null);
+		verify(remoteClientMock, times(4)).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.anyString(),
+				Mockito.anyMap());
+		verify(esIntegrationMock, times(1)).storeDatetimeValue(Mockito.eq("ORG"),
+				Mockito.eq(SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE),
+				Mockito.eq(DateTimeUtils.parseISODateTime("2012-08-14T08:03:00.000-0400")),
+				Mockito.any(BulkRequestBuilder.class));
+		Mockito.verifyNoMoreInteractions(remoteClientMock);
+	}
+
+	@Test
+	public void processUpdate_Backfill() throws Exception {
+		// history from last indexed date to now is split into three one day windows processed in parallel
+		processUpdate_Backfill(null, 1);
+		// windows are processed by indexing thread only if no worker thread is available
+		WorkerThreadBudget budget = new WorkerThreadBudget(0);
+		processUpdate_Backfill(budget, 0);
+		Assert.assertEquals(0, budget.getUsedThreads());
+	}
+
+	private void processUpdate_Backfill(WorkerThreadBudget budget, int expectedThreads) throws Exception {
+		IRemoteSystemClientTimeWindows remoteClientMock = mock(IRemoteSystemClientTimeWindows.class);
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		SpacePaginatingIndexerTest.mockAcquireIndexingThread(esIntegrationMock);
+		IDocumentIndexStructureBuilder documentIndexStructureBuilderMock = mock(IDocumentIndexStructureBuilder.class);
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false, remoteClientMock,
+				esIntegrationMock, documentIndexStructureBuilderMock);
+		tested.setBackfillConcurrency(2);
+		tested.setBackfillWindowSize(DAY);
+		tested.setWorkerThreadBudget(budget);
+		final Client client = Mockito.mock(Client.class);
+
+		Date from = new Date(System.currentTimeMillis() - 2 * DAY - DAY / 2);
+		when(
+				esIntegrationMock.readDatetimeValue("ORG",
+						SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE)).thenReturn(from);
+		when(remoteClientMock.isTimeWindowsSupported()).thenReturn(true);
+		when(
+				remoteClientMock.getChangedDocuments(Mockito.eq("ORG"), Mockito.eq(0), Mockito.anyString(), Mockito.eq(false),
+						Mockito.any(Date.class), Mockito.any(Date.class))).thenAnswer(new Answer<ChangedDocumentsResults>() {
+			@Override
+			public ChangedDocumentsResults answer(InvocationOnMock invocation) throws Throwable {
+				Date updatedAfter = (Date) invocation.getArguments()[4];
+				List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+				addDocumentMock(docs, "ORG-" + updatedAfter.getTime(), ISODateTimeFormat.dateTime().print(updatedAfter.getTime()));
+				return new ChangedDocumentsResults(docs, 0, 1);
+			}
+		});
+		when(esIntegrationMock.prepareESBulkRequestBuilder()).thenAnswer(new Answer<BulkRequestBuilder>() {
+			@Override
+			public BulkRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+				return new BulkRequestBuilder(client);
+			}
+		});
+		final List<Date> stored = new ArrayList<Date>();
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Assert.assertNull(invocation.getArguments()[3]);
+				stored.add((Date) invocation.getArguments()[2]);
+				return null;
+			}
+		}).when(esIntegrationMock).storeDatetimeValue(Mockito.eq("ORG"),
+				Mockito.eq(SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE),
+				Mockito.any(Date.class), Mockito.any(BulkRequestBuilder.class));
+		configureStructureBuilderMockDefaults(documentIndexStructureBuilderMock);
+
+		tested.processUpdate();
+		Assert.assertEquals(3, tested.indexingInfo.documentsUpdated);
+		Assert.assertFalse(tested.indexingInfo.fullUpdate);
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, null, false, from, new Date(from.getTime() + DAY));
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, null, false, new Date(from.getTime() + DAY),
+				new Date(from.getTime() + 2 * DAY));
+		verify(remoteClientMock).getChangedDocuments(Mockito.eq("ORG"), Mockito.eq(0), Mockito.anyString(),
+				Mockito.eq(false), Mockito.eq(new Date(from.getTime() + 2 * DAY)), Mockito.any(Date.class));
+		verify(remoteClientMock, times(3)).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.anyString(),
+				Mockito.anyMap());
+		verify(esIntegrationMock, times(expectedThreads)).acquireIndexingThread(Mockito.anyString(),
+				Mockito.any(Runnable.class));
+		verify(esIntegrationMock, times(3)).executeESBulkRequest(Mockito.any(BulkRequestBuilder.class));
+
+		// last stored date is update date of the latest indexed document, not end of the last window taken from local
+		// clock, so next run continues from it
+		Assert.assertFalse(stored.isEmpty());
+		Assert.assertEquals(new Date(from.getTime() + 2 * DAY), stored.get(stored.size() - 1));
+	}
+
+	@Test
+	public void processUpdate_BackfillFailure() throws Exception {
+
+		// failure of one window stops other threads before their next window
+		IRemoteSystemClientTimeWindows remoteClientMock = mock(IRemoteSystemClientTimeWindows.class);
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		SpacePaginatingIndexerTest.mockAcquireIndexingThread(esIntegrationMock);
+		IDocumentIndexStructureBuilder documentIndexStructureBuilderMock = mock(IDocumentIndexStructureBuilder.class);
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false, remoteClientMock,
+				esIntegrationMock, documentIndexStructureBuilderMock);
+		tested.setBackfillConcurrency(2);
+		tested.setBackfillWindowSize(DAY);
+		final Client client = Mockito.mock(Client.class);
+
+		final Date from = new Date(System.currentTimeMillis() - 20 * DAY);
+		when(
+				esIntegrationMock.readDatetimeValue("ORG",
+						SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE)).thenReturn(from);
+		when(remoteClientMock.isTimeWindowsSupported()).thenReturn(true);
+		final List<Date> calls = Collections.synchronizedList(new ArrayList<Date>());
+		when(
+				remoteClientMock.getChangedDocuments(Mockito.eq("ORG"), Mockito.eq(0), Mockito.anyString(), Mockito.eq(false),
+						Mockito.any(Date.class), Mockito.any(Date.class))).thenAnswer(new Answer<ChangedDocumentsResults>() {
+			@Override
+			public ChangedDocumentsResults answer(InvocationOnMock invocation) throws Throwable {
+				Date updatedAfter = (Date) invocation.getArguments()[4];
+				calls.add(updatedAfter);
+				if (updatedAfter.equals(from))
+					throw new Exception("remote failure");
+				Thread.sleep(50);
+				List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+				addDocumentMock(docs, "ORG-" + updatedAfter.getTime(), ISODateTimeFormat.dateTime().print(updatedAfter.getTime()));
+				return new ChangedDocumentsResults(docs, 0, 1);
+			}
+		});
+		when(esIntegrationMock.prepareESBulkRequestBuilder()).thenAnswer(new Answer<BulkRequestBuilder>() {
+			@Override
+			public BulkRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+				return new BulkRequestBuilder(client);
+			}
+		});
+		configureStructureBuilderMockDefaults(documentIndexStructureBuilderMock);
+
+		try {
+			tested.processUpdate();
+			Assert.fail("Exception expected");
+		} catch (Exception e) {
+			Assert.assertEquals("remote failure", e.getMessage());
+		}
+		int callsAfterFailure = calls.size();
+		Assert.assertTrue("Too many windows fetched after failure: " + calls, callsAfterFailure <= 3);
+		Thread.sleep(200);
+		Assert.assertEquals(callsAfterFailure, calls.size());
+		// nothing stored as the first window failed
+		verify(esIntegrationMock, Mockito.never()).storeDatetimeValue(Mockito.eq("ORG"),
+				Mockito.eq(SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE),
+				Mockito.any(Date.class), Mockito.any(BulkRequestBuilder.class));
+	}
+
+	@Test
+	public void processUpdate_BackfillShortHistory() throws Exception {
+
+		// history shorter than one window is processed sequentially
+		IRemoteSystemClientTimeWindows remoteClientMock = mock(IRemoteSystemClientTimeWindows.class);
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		IDocumentIndexStructureBuilder documentIndexStructureBuilderMock = mock(IDocumentIndexStructureBuilder.class);
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false, remoteClientMock,
+				esIntegrationMock, documentIndexStructureBuilderMock);
+		tested.setBackfillConcurrency(2);
+		tested.setBackfillWindowSize(DAY);
+
+		Date from = new Date(System.currentTimeMillis() - DAY / 2);
+		when(
+				esIntegrationMock.readDatetimeValue("ORG",
+						SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE)).thenReturn(from);
+		when(remoteClientMock.isTimeWindowsSupported()).thenReturn(true);
+		when(remoteClientMock.getChangedDocuments("ORG", 0, false, from)).thenReturn(
+				new ChangedDocumentsResults(new ArrayList<Map<String, Object>>(), 0, 0));
+
+		tested.processUpdate();
+		Assert.assertEquals(0, tested.indexingInfo.documentsUpdated);
+		verify(remoteClientMock).isTimeWindowsSupported();
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, false, from);
+		Mockito.verifyNoMoreInteractions(remoteClientMock);
+	}
+
+	@Test
+	public void processUpdate_AdaptiveWindows() throws Exception {
+
+		// only one document in quiet period so window is doubled each time
+		IRemoteSystemClientTimeWindows remoteClientMock = mock(IRemoteSystemClientTimeWindows.class);
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		IDocumentIndexStructureBuilder documentIndexStructureBuilderMock = mock(IDocumentIndexStructureBuilder.class);
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false, remoteClientMock,
+				esIntegrationMock, documentIndexStructureBuilderMock);
+		tested.setAdaptiveWindowTargetSize(10);
+		configureStructureBuilderMockDefaults(documentIndexStructureBuilderMock);
+		BulkRequestBuilder brb = new BulkRequestBuilder(Mockito.mock(Client.class));
+		when(esIntegrationMock.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		final Date from = new Date(System.currentTimeMillis() - 10 * HOUR);
+		when(
+				esIntegrationMock.readDatetimeValue("ORG",
+						SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE)).thenReturn(from);
+		when(remoteClientMock.isTimeWindowsSupported()).thenReturn(true);
+		when(remoteClientMock.getUpdatedBeforeTimeSpan()).thenReturn(HOUR);
+		when(
+				remoteClientMock.getChangedDocuments(Mockito.eq("ORG"), Mockito.eq(0), Mockito.anyString(), Mockito.eq(false),
+						Mockito.any(Date.class), Mockito.any(Date.class))).thenAnswer(new Answer<ChangedDocumentsResults>() {
+			@Override
+			public ChangedDocumentsResults answer(InvocationOnMock invocation) throws Throwable {
+				List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+				if (new Date(from.getTime() + HOUR).equals(invocation.getArguments()[4]))
+					addDocumentMock(docs, "ORG-1", ISODateTimeFormat.dateTime().print(from.getTime() + 2 * HOUR));
+				return new ChangedDocumentsResults(docs, 0, docs.size());
+			}
+		});
+
+		tested.processUpdate();
+		Assert.assertEquals(1, tested.indexingInfo.documentsUpdated);
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, null, false, from, new Date(from.getTime() + HOUR));
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, null, false, new Date(from.getTime() + HOUR),
+				new Date(from.getTime() + 3 * HOUR));
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, null, false, new Date(from.getTime() + 3 * HOUR),
+				new Date(from.getTime() + 7 * HOUR));
+		verify(remoteClientMock).getChangedDocuments(Mockito.eq("ORG"), Mockito.eq(0), Mockito.anyString(),
+				Mockito.eq(false), Mockito.eq(new Date(from.getTime() + 7 * HOUR)), Mockito.any(Date.class));
+		// update date of indexed document is stored, not ends of windows taken from local clock
+		verify(esIntegrationMock).storeDatetimeValue("ORG",
+				SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE,
+				new Date(from.getTime() + 2 * HOUR), null);
+		verify(esIntegrationMock, times(1)).storeDatetimeValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.any(Date.class), Mockito.any(BulkRequestBuilder.class));
+
+		Assert.assertEquals(4, tested.indexingInfo.timeWindowsProcessed);
+		Assert.assertEquals(4, tested.indexingInfo.getTimeWindowDecisions().size());
+		SpaceIndexingInfo.TimeWindowDecision first = tested.indexingInfo.getTimeWindowDecisions().get(0);
+		Assert.assertEquals(from, first.windowStart);
+		Assert.assertEquals(HOUR, first.windowSize);
+		Assert.assertEquals(0, first.documents);
+		Assert.assertEquals(2 * HOUR, first.nextWindowSize);
+	}
+
+	@Test
+	public void computeNextWindowSize() {
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false,
+				mock(IRemoteSystemClient.class), mockEsIntegrationComponent(), mock(IDocumentIndexStructureBuilder.class));
+		tested.setAdaptiveWindowTargetSize(100);
+
+		// empty window grows
+		Assert.assertEquals(2 * HOUR, tested.computeNextWindowSize(HOUR, 0, 10));
+		// sized to target
+		Assert.assertEquals(HOUR / 2, tested.computeNextWindowSize(HOUR, 200, 10));
+		Assert.assertEquals(HOUR * 2, tested.computeNextWindowSize(HOUR, 50, 10));
+		Assert.assertEquals(HOUR, tested.computeNextWindowSize(HOUR, 100, 10));
+		// change limited in one step
+		Assert.assertEquals(HOUR / 4, tested.computeNextWindowSize(HOUR, 10000, 10));
+		Assert.assertEquals(HOUR * 2, tested.computeNextWindowSize(HOUR, 1, 10));
+		// limits
+		Assert.assertEquals(SpaceByLastUpdateTimestampIndexer.ADAPTIVE_WINDOW_MIN_SIZE,
+				tested.computeNextWindowSize(1000, 10000, 10));
+		Assert.assertEquals(SpaceByLastUpdateTimestampIndexer.ADAPTIVE_WINDOW_MAX_SIZE,
+				tested.computeNextWindowSize(SpaceByLastUpdateTimestampIndexer.ADAPTIVE_WINDOW_MAX_SIZE, 0, 10));
+
+		// latency
+		tested.setAdaptiveWindowMaxLatency(1000);
+		Assert.assertEquals(2 * HOUR, tested.computeNextWindowSize(HOUR, 0, 1000));
+		Assert.assertEquals(HOUR / 2, tested.computeNextWindowSize(HOUR, 0, 1001));
+		Assert.assertEquals(HOUR / 4, tested.computeNextWindowSize(HOUR, 10000, 1001));
+	}
+
+	@Test
+	public void windowProcessed() throws Exception {
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		SpaceByLastUpdateTimestampIndexer tested = new SpaceByLastUpdateTimestampIndexer("ORG", false,
+				mock(IRemoteSystemClient.class), esIntegrationMock, mock(IDocumentIndexStructureBuilder.class));
+
+		List<Date> windowEnds = new ArrayList<Date>();
+		windowEnds.add(new Date(1000));
+		windowEnds.add(new Date(2000));
+		windowEnds.add(new Date(3000));
+		SpaceByLastUpdateTimestampIndexer.BackfillProgress progress = new SpaceByLastUpdateTimestampIndexer.BackfillProgress(
+				windowEnds);
+
+		// later window done, nothing stored as earlier is not done yet
+		tested.windowProcessed(progress, 1, new Date(1900));
+		verify(esIntegrationMock, Mockito.never()).storeDatetimeValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.any(Date.class), Mockito.any(BulkRequestBuilder.class));
+
+		// first window done, so the last document of second is stored
+		tested.windowProcessed(progress, 0, new Date(800));
+		verify(esIntegrationMock).storeDatetimeValue("ORG",
+				SpaceByLastUpdateTimestampIndexer.STORE_PROPERTYNAME_LAST_INDEXED_DOC_UPDATE_DATE, new Date(1900), null);
+
+		// no document in the last window, so nothing new is stored
+		tested.windowProcessed(progress, 2, null);
+		verify(esIntegrationMock, times(1)).storeDatetimeValue(Mockito.anyString(), Mockito.anyString(),
+				Mockito.any(Date.class), Mockito.any(BulkRequestBuilder.class));
+		Assert.assertEquals(3, progress.firstUnprocessed);
+	}
+
 	@Test
 	public void run() throws Exception {
 		IRemoteSystemClient remoteClientMock = mock(IRemoteSystemClient.class);
@@ -5,14 +5,25 @@
  */
 package org.jboss.elasticsearch.river.remote;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.util.concurrent.Futures;
+import org.jboss.elasticsearch.river.remote.HttpRemoteSystemClientBase.HttpResponseContent;
 import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.mockito.Mockito.mock;
 
@@ -146,6 +157,396 @@ public class SpaceIndexerBaseTest {
 
 	}
 
+	@Test
+	public void startDocumentDetailsFetch_sequential() throws Exception {
+		TestIndexer tested = getTested();
+		List<Map<String, Object>> documents = prepareDocuments(tested, 3);
+		Map<String, Object> detail = new HashMap<String, Object>();
+		Mockito.when(tested.remoteSystemClient.getChangedDocumentDetails(SPACE, "id1", documents.get(1))).thenReturn(detail);
+
+		SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertTrue(fetch.futures.isEmpty());
+		Mockito.verifyZeroInteractions(tested.remoteSystemClient);
+		Assert.assertNull(tested.detailFetchExecutor);
+
+		Assert.assertTrue(fetch.getDocumentDetail("id1", documents.get(1)));
+		Assert.assertEquals(detail, documents.get(1).get(SpaceIndexerBase.KEY_DETAIL));
+		Mockito.verify(tested.remoteSystemClient).getChangedDocumentDetails(SPACE, "id1", documents.get(1));
+		Mockito.verifyNoMoreInteractions(tested.remoteSystemClient);
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_concurrent() throws Exception {
+		TestIndexer tested = getTested();
+		tested.setDetailFetchConcurrency(3);
+		Mockito.when(tested.esIntegrationComponent.acquireIndexingThread(Mockito.anyString(), Mockito.any(Runnable.class)))
+				.thenAnswer(new Answer<Thread>() {
+					@Override
+					public Thread answer(InvocationOnMock invocation) throws Throwable {
+						return new Thread((Runnable) invocation.getArguments()[1], (String) invocation.getArguments()[0]);
+					}
+				});
+
+		List<Map<String, Object>> documents = prepareDocuments(tested, 5);
+		// document without id is not fetched in parallel
+		Mockito.when(tested.documentIndexStructureBuilder.extractDocumentId(documents.get(4))).thenReturn(null);
+		Map<String, Object> detail0 = new HashMap<String, Object>();
+		Map<String, Object> detail3 = new HashMap<String, Object>();
+		Exception e = new Exception();
+		Mockito.when(tested.remoteSystemClient.getChangedDocumentDetails(SPACE, "id0", documents.get(0))).thenReturn(detail0);
+		Mockito.when(tested.remoteSystemClient.getChangedDocumentDetails(SPACE, "id1", documents.get(1))).thenThrow(
+				new RemoteDocumentNotFoundException("msg"));
+		Mockito.when(tested.remoteSystemClient.getChangedDocumentDetails(SPACE, "id2", documents.get(2))).thenThrow(e);
+		Mockito.when(tested.remoteSystemClient.getChangedDocumentDetails(SPACE, "id3", documents.get(3))).thenReturn(detail3);
+
+		try {
+			SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+			// at most detailFetchConcurrency fetches are started ahead
+			Assert.assertEquals(3, fetch.futures.size());
+			Assert.assertEquals(1, fetch.pendingDocuments.size());
+			Assert.assertNotNull(tested.detailFetchExecutor);
+
+			// case - remote document OK
+			Assert.assertTrue(fetch.getDocumentDetail("id0", documents.get(0)));
+			Assert.assertEquals(detail0, documents.get(0).get(SpaceIndexerBase.KEY_DETAIL));
+
+			// case - RemoteDocumentNotFoundException handled in indexer thread
+			Assert.assertFalse(fetch.getDocumentDetail("id1", documents.get(1)));
+			Assert.assertNull(documents.get(1).get(SpaceIndexerBase.KEY_DETAIL));
+			Assert.assertEquals(1, tested.indexingInfo.documentsWithError);
+			Mockito.verify(tested.indexingInfo).addErrorMessage(Mockito.anyString());
+
+			// case - other exception is unwrapped and rethrown
+			try {
+				fetch.getDocumentDetail("id2", documents.get(2));
+				Assert.fail("Exception expected");
+			} catch (Exception ex) {
+				Assert.assertEquals(e, ex);
+			}
+
+			Assert.assertTrue(fetch.getDocumentDetail("id3", documents.get(3)));
+			Assert.assertEquals(detail3, documents.get(3).get(SpaceIndexerBase.KEY_DETAIL));
+			Assert.assertTrue(fetch.futures.isEmpty());
+
+			Mockito.verify(tested.esIntegrationComponent, Mockito.times(3)).acquireIndexingThread(Mockito.anyString(),
+					Mockito.any(Runnable.class));
+		} finally {
+			tested.shutdownDetailFetchExecutor();
+		}
+		Assert.assertNull(tested.detailFetchExecutor);
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_workerThreadBudget() throws Exception {
+		TestIndexer tested = getTested();
+		tested.setDetailFetchConcurrency(3);
+		SpacePaginatingIndexerTest.mockAcquireIndexingThread(tested.esIntegrationComponent);
+		List<Map<String, Object>> documents = prepareDocuments(tested, 3);
+		Map<String, Object> detail = new HashMap<String, Object>();
+		Mockito.when(
+				tested.remoteSystemClient.getChangedDocumentDetails(Mockito.eq(SPACE), Mockito.anyString(), Mockito.anyMap()))
+				.thenReturn(detail);
+
+		// case - no any worker thread available, details fetched in indexing thread
+		WorkerThreadBudget budget = new WorkerThreadBudget(3);
+		Assert.assertEquals(3, budget.acquire(3));
+		tested.setWorkerThreadBudget(budget);
+		SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertTrue(fetch.futures.isEmpty());
+		Assert.assertNull(tested.detailFetchExecutor);
+		Assert.assertTrue(fetch.getDocumentDetail("id0", documents.get(0)));
+		Assert.assertEquals(detail, documents.get(0).get(SpaceIndexerBase.KEY_DETAIL));
+		Mockito.verify(tested.esIntegrationComponent, Mockito.never()).acquireIndexingThread(Mockito.anyString(),
+				Mockito.any(Runnable.class));
+
+		// case - less threads available than requested, all documents still fetched ahead over them
+		budget.release(2);
+		try {
+			fetch = tested.startDocumentDetailsFetch(documents);
+			Assert.assertEquals(3, fetch.futures.size());
+			Assert.assertEquals(3, budget.getUsedThreads());
+			for (int i = 0; i < 3; i++) {
+				Assert.assertTrue(fetch.getDocumentDetail("id" + i, documents.get(i)));
+			}
+			Mockito.verify(tested.esIntegrationComponent, Mockito.times(2)).acquireIndexingThread(Mockito.anyString(),
+					Mockito.any(Runnable.class));
+		} finally {
+			tested.shutdownDetailFetchExecutor();
+		}
+		// threads are returned to budget once executor terminates
+		for (int i = 0; i < 100 && budget.getUsedThreads() > 1; i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(1, budget.getUsedThreads());
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_asyncClient() throws Exception {
+		IRemoteSystemClientAsync remoteClientMock = mock(IRemoteSystemClientAsync.class);
+		TestIndexer tested = new TestIndexer(SPACE, remoteClientMock, mock(IESIntegration.class),
+				mock(IDocumentIndexStructureBuilder.class));
+		tested.indexingInfo = Mockito.mock(SpaceIndexingInfo.class);
+		tested.logger = Mockito.mock(ESLogger.class);
+		tested.setDetailFetchConcurrency(2);
+		Mockito.when(remoteClientMock.isAsyncTransportEnabled()).thenReturn(true);
+
+		List<Map<String, Object>> documents = prepareDocuments(tested, 2);
+		Map<String, Object> detail0 = new HashMap<String, Object>();
+		Mockito.when(remoteClientMock.getChangedDocumentDetailsAsync(SPACE, "id0", documents.get(0))).thenReturn(
+				Futures.<Object> immediateFuture(detail0));
+		Mockito.when(remoteClientMock.getChangedDocumentDetailsAsync(SPACE, "id1", documents.get(1))).thenReturn(
+				Futures.<Object> immediateFailedFuture(new RemoteDocumentNotFoundException("msg")));
+
+		SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertEquals(2, fetch.futures.size());
+		// no threads used for async client
+		Assert.assertNull(tested.detailFetchExecutor);
+		Mockito.verifyZeroInteractions(tested.esIntegrationComponent);
+
+		Assert.assertTrue(fetch.getDocumentDetail("id0", documents.get(0)));
+		Assert.assertEquals(detail0, documents.get(0).get(SpaceIndexerBase.KEY_DETAIL));
+		Assert.assertFalse(fetch.getDocumentDetail("id1", documents.get(1)));
+		Assert.assertEquals(1, tested.indexingInfo.documentsWithError);
+		Mockito.verify(remoteClientMock, Mockito.times(0)).getChangedDocumentDetails(Mockito.anyString(),
+				Mockito.anyString(), Mockito.anyMap());
+
+		// sync client path used if async transport is not enabled
+		Mockito.when(remoteClientMock.isAsyncTransportEnabled()).thenReturn(false);
+		Mockito.when(tested.esIntegrationComponent.acquireIndexingThread(Mockito.anyString(), Mockito.any(Runnable.class)))
+				.thenAnswer(new Answer<Thread>() {
+					@Override
+					public Thread answer(InvocationOnMock invocation) throws Throwable {
+						return new Thread((Runnable) invocation.getArguments()[1], (String) invocation.getArguments()[0]);
+					}
+				});
+		try {
+			fetch = tested.startDocumentDetailsFetch(documents);
+			Assert.assertNotNull(tested.detailFetchExecutor);
+		} finally {
+			tested.shutdownDetailFetchExecutor();
+		}
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_asyncClient_window() throws Exception {
+		IRemoteSystemClientAsync remoteClientMock = mock(IRemoteSystemClientAsync.class);
+		TestIndexer tested = new TestIndexer(SPACE, remoteClientMock, mock(IESIntegration.class),
+				mock(IDocumentIndexStructureBuilder.class));
+		tested.indexingInfo = Mockito.mock(SpaceIndexingInfo.class);
+		tested.logger = Mockito.mock(ESLogger.class);
+		tested.setDetailFetchConcurrency(2);
+		Mockito.when(remoteClientMock.isAsyncTransportEnabled()).thenReturn(true);
+
+		List<Map<String, Object>> documents = prepareDocuments(tested, 5);
+		List<Map<String, Object>> details = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < 5; i++) {
+			Map<String, Object> detail = new HashMap<String, Object>();
+			details.add(detail);
+			Mockito.when(remoteClientMock.getChangedDocumentDetailsAsync(SPACE, "id" + i, documents.get(i))).thenReturn(
+					Futures.<Object> immediateFuture(detail));
+		}
+
+		SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertEquals(2, fetch.futures.size());
+		Mockito.verify(remoteClientMock).getChangedDocumentDetailsAsync(SPACE, "id0", documents.get(0));
+		Mockito.verify(remoteClientMock).getChangedDocumentDetailsAsync(SPACE, "id1", documents.get(1));
+		Mockito.verify(remoteClientMock, Mockito.never()).getChangedDocumentDetailsAsync(SPACE, "id2", documents.get(2));
+
+		// next fetch is started when detail is taken
+		Assert.assertTrue(fetch.getDocumentDetail("id0", documents.get(0)));
+		Assert.assertEquals(details.get(0), documents.get(0).get(SpaceIndexerBase.KEY_DETAIL));
+		Assert.assertEquals(2, fetch.futures.size());
+		Mockito.verify(remoteClientMock).getChangedDocumentDetailsAsync(SPACE, "id2", documents.get(2));
+		Mockito.verify(remoteClientMock, Mockito.never()).getChangedDocumentDetailsAsync(SPACE, "id3", documents.get(3));
+
+		// case - detail of pending document requested out of order is fetched directly and not fetched again
+		Mockito.when(remoteClientMock.getChangedDocumentDetails(SPACE, "id4", documents.get(4))).thenReturn(details.get(4));
+		Assert.assertTrue(fetch.getDocumentDetail("id4", documents.get(4)));
+		Assert.assertEquals(details.get(4), documents.get(4).get(SpaceIndexerBase.KEY_DETAIL));
+
+		for (int i = 1; i < 4; i++) {
+			Assert.assertTrue(fetch.getDocumentDetail("id" + i, documents.get(i)));
+			Assert.assertEquals(details.get(i), documents.get(i).get(SpaceIndexerBase.KEY_DETAIL));
+		}
+		Assert.assertTrue(fetch.futures.isEmpty());
+		Assert.assertTrue(fetch.pendingDocuments.isEmpty());
+		Mockito.verify(remoteClientMock, Mockito.never()).getChangedDocumentDetailsAsync(SPACE, "id4", documents.get(4));
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_crawlerWindow() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(GetSitemapHtmlClient.CFG_URL_GET_SITEMAP, "http://test.org/sitemap.xml");
+		config.put(GetSitemapHtmlClient.CFG_CRAWLER_HOST_CONCURRENCY, 10);
+		GetSitemapHtmlClient remoteClient = new GetSitemapHtmlClient() {
+			@Override
+			protected HttpResponseContent performHttpGetCall(String url, Map<String, String> headers) throws Exception {
+				release.await(5, TimeUnit.SECONDS);
+				return new HttpResponseContent("text/html", "<body>doc</body>".getBytes("UTF-8"));
+			};
+		};
+		remoteClient.init(GetSitemapHtmlClientTest.mockEsIntegrationComponent(), config, false, null);
+		try {
+			TestIndexer tested = new TestIndexer(SPACE, remoteClient, mock(IESIntegration.class),
+					mock(IDocumentIndexStructureBuilder.class));
+			tested.indexingInfo = Mockito.mock(SpaceIndexingInfo.class);
+			tested.logger = Mockito.mock(ESLogger.class);
+			tested.setDetailFetchConcurrency(3);
+			List<Map<String, Object>> documents = prepareDocuments(tested, 10);
+			for (int i = 0; i < documents.size(); i++) {
+				documents.get(i).put(GetSitemapHtmlClient.DOC_FIELD_URL, "http://test.org/doc" + i);
+			}
+
+			// only window of documents is submitted to crawler, not whole page
+			SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+			for (int i = 0; i < 100 && remoteClient.crawler.getRunning() < 3; i++) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(3, remoteClient.crawler.getRunning());
+			Assert.assertEquals(0, remoteClient.crawler.getQueued());
+			Assert.assertEquals(7, fetch.pendingDocuments.size());
+
+			release.countDown();
+			for (int i = 0; i < documents.size(); i++) {
+				Assert.assertTrue(fetch.getDocumentDetail("id" + i, documents.get(i)));
+				Assert.assertNotNull(documents.get(i).get(SpaceIndexerBase.KEY_DETAIL));
+				Assert.assertTrue(fetch.futures.size() <= 3);
+				Assert.assertTrue(remoteClient.crawler.getQueued() + remoteClient.crawler.getRunning() <= 3);
+			}
+			Assert.assertEquals(10, remoteClient.crawler.getFetched());
+		} finally {
+			remoteClient.close();
+		}
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_batchClient() throws Exception {
+		IRemoteSystemClientBatchDetails remoteClientMock = mock(IRemoteSystemClientBatchDetails.class);
+		TestIndexer tested = new TestIndexer(SPACE, remoteClientMock, mock(IESIntegration.class),
+				mock(IDocumentIndexStructureBuilder.class));
+		tested.indexingInfo = Mockito.mock(SpaceIndexingInfo.class);
+		tested.logger = Mockito.mock(ESLogger.class);
+		tested.setDetailFetchConcurrency(2);
+		Mockito.when(remoteClientMock.isBatchDetailsEnabled()).thenReturn(true);
+
+		List<Map<String, Object>> documents = prepareDocuments(tested, 3);
+		Map<String, Object> details = new HashMap<String, Object>();
+		Map<String, Object> detail0 = new HashMap<String, Object>();
+		details.put("id0", detail0);
+		details.put("id2", null);
+		Mockito.when(remoteClientMock.getChangedDocumentDetails(SPACE, Arrays.asList("id0", "id1", "id2"))).thenReturn(
+				details);
+
+		SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertEquals(0, fetch.futures.size());
+		Assert.assertNull(tested.detailFetchExecutor);
+
+		Assert.assertTrue(fetch.getDocumentDetail("id0", documents.get(0)));
+		Assert.assertEquals(detail0, documents.get(0).get(SpaceIndexerBase.KEY_DETAIL));
+		// missing in batch response means not found
+		Assert.assertFalse(fetch.getDocumentDetail("id1", documents.get(1)));
+		Assert.assertEquals(1, tested.indexingInfo.documentsWithError);
+		Assert.assertTrue(fetch.getDocumentDetail("id2", documents.get(2)));
+		Assert.assertFalse(documents.get(2).containsKey(SpaceIndexerBase.KEY_DETAIL));
+
+		Mockito.verify(remoteClientMock).isBatchDetailsEnabled();
+		Mockito.verify(remoteClientMock).getChangedDocumentDetails(Mockito.eq(SPACE), Mockito.anyList());
+		Mockito.verifyNoMoreInteractions(remoteClientMock);
+
+		// per document calls used if batch is not enabled
+		Mockito.when(remoteClientMock.isBatchDetailsEnabled()).thenReturn(false);
+		tested.setDetailFetchConcurrency(1);
+		fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertNull(fetch.batchDetails);
+	}
+
+	@Test
+	public void getDocumentDetail_cache() throws Exception {
+		TestIndexer tested = getTested();
+		tested.setDetailCache(new DocumentDetailCache(10000));
+		Date updated = new Date(1000);
+
+		Map<String, Object> document = new HashMap<String, Object>();
+		Mockito.when(tested.documentIndexStructureBuilder.extractDocumentUpdated(document)).thenReturn(updated);
+		Map<String, Object> detail = new HashMap<String, Object>();
+		detail.put("a", "b");
+		Mockito.when(tested.remoteSystemClient.getChangedDocumentDetails(SPACE, DOC_ID, document)).thenReturn(detail);
+
+		// fetched from remote system first, then from cache
+		Assert.assertTrue(tested.getDocumentDetail(DOC_ID, document));
+		Assert.assertEquals(detail, document.get(SpaceIndexerBase.KEY_DETAIL));
+		document.remove(SpaceIndexerBase.KEY_DETAIL);
+		Assert.assertTrue(tested.getDocumentDetail(DOC_ID, document));
+		Assert.assertEquals(detail, document.get(SpaceIndexerBase.KEY_DETAIL));
+		Mockito.verify(tested.remoteSystemClient, Mockito.times(1)).getChangedDocumentDetails(SPACE, DOC_ID, document);
+
+		// document updated so fetched again
+		document.remove(SpaceIndexerBase.KEY_DETAIL);
+		Mockito.when(tested.documentIndexStructureBuilder.extractDocumentUpdated(document)).thenReturn(new Date(2000));
+		Assert.assertTrue(tested.getDocumentDetail(DOC_ID, document));
+		Mockito.verify(tested.remoteSystemClient, Mockito.times(2)).getChangedDocumentDetails(SPACE, DOC_ID, document);
+
+		// timestamp extraction problem means no cache
+		document.remove(SpaceIndexerBase.KEY_DETAIL);
+		Mockito.when(tested.documentIndexStructureBuilder.extractDocumentUpdated(document)).thenThrow(
+				new SettingsException("no timestamp"));
+		Assert.assertTrue(tested.getDocumentDetail(DOC_ID, document));
+		Mockito.verify(tested.remoteSystemClient, Mockito.times(3)).getChangedDocumentDetails(SPACE, DOC_ID, document);
+	}
+
+	@Test
+	public void startDocumentDetailsFetch_batchClientWithCache() throws Exception {
+		IRemoteSystemClientBatchDetails remoteClientMock = mock(IRemoteSystemClientBatchDetails.class);
+		TestIndexer tested = new TestIndexer(SPACE, remoteClientMock, mock(IESIntegration.class),
+				mock(IDocumentIndexStructureBuilder.class));
+		tested.indexingInfo = Mockito.mock(SpaceIndexingInfo.class);
+		tested.logger = Mockito.mock(ESLogger.class);
+		tested.setDetailCache(new DocumentDetailCache(10000));
+		Mockito.when(remoteClientMock.isBatchDetailsEnabled()).thenReturn(true);
+
+		List<Map<String, Object>> documents = prepareDocuments(tested, 2);
+		for (Map<String, Object> document : documents)
+			Mockito.when(tested.documentIndexStructureBuilder.extractDocumentUpdated(document)).thenReturn(new Date(1000));
+		tested.detailCache.put(SPACE, "id0", new Date(1000), "detail0");
+		Map<String, Object> details = new HashMap<String, Object>();
+		details.put("id1", "detail1");
+		Mockito.when(remoteClientMock.getChangedDocumentDetails(SPACE, Arrays.asList("id1"))).thenReturn(details);
+
+		SpaceIndexerBase.DocumentDetailsFetch fetch = tested.startDocumentDetailsFetch(documents);
+		Assert.assertTrue(fetch.getDocumentDetail("id0", documents.get(0)));
+		Assert.assertEquals("detail0", documents.get(0).get(SpaceIndexerBase.KEY_DETAIL));
+		Assert.assertTrue(fetch.getDocumentDetail("id1", documents.get(1)));
+		Assert.assertEquals("detail1", documents.get(1).get(SpaceIndexerBase.KEY_DETAIL));
+		// fetched detail is cached
+		Assert.assertEquals("detail1", tested.detailCache.get(SPACE, "id1", new Date(1000)));
+		Mockito.verify(remoteClientMock).getChangedDocumentDetails(SPACE, Arrays.asList("id1"));
+	}
+
+	@Test
+	public void notifyIndexingFinished() throws Exception {
+		// case - client without incremental update support
+		getTested().notifyIndexingFinished();
+
+		// case - client with incremental update support
+		GetSitemapHtmlClient remoteClientMock = mock(GetSitemapHtmlClient.class);
+		TestIndexer tested = new TestIndexer(SPACE, remoteClientMock, mock(IESIntegration.class),
+				mock(IDocumentIndexStructureBuilder.class));
+		tested.notifyIndexingFinished();
+		Mockito.verify(remoteClientMock).indexingFinished(SPACE);
+	}
+
+	private List<Map<String, Object>> prepareDocuments(TestIndexer tested, int count) {
+		List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> document = new HashMap<String, Object>();
+			document.put("id", "id" + i);
+			documents.add(document);
+			Mockito.when(tested.documentIndexStructureBuilder.extractDocumentId(document)).thenReturn("id" + i);
+		}
+		return documents;
+	}
+
 	/**
 	 * @return
 	 */
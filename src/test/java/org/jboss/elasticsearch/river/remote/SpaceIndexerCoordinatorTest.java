@@ -7,7 +7,9 @@ package org.jboss.elasticsearch.river.remote;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.common.logging.ESLoggerFactory;
@@ -32,6 +34,62 @@ public class SpaceIndexerCoordinatorTest {
 
 	private static final String SPACE_KEY = "ORG";
 
+	@Test
+	public void prepareSpaceIndexer_pageSizeController() throws Exception {
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		SpaceIndexerCoordinator tested = new SpaceIndexerCoordinator(Mockito.mock(IRemoteSystemClient.class),
+				esIntegrationMock, Mockito.mock(IDocumentIndexStructureBuilder.class), 10, 2, -1, null,
+				SpaceIndexingMode.PAGINATION);
+
+		// not used by default
+		Assert.assertNull(tested.prepareSpaceIndexer(SPACE_KEY, true).pageSizeController);
+
+		tested.setPageSizeBounds(5, 500);
+		tested.setPageSizeTargetTime(2000);
+		tested.setPageSizeMaxBytes(1000);
+		Map<String, Object> stored = new HashMap<String, Object>();
+		stored.put(PageSizeController.STORE_FIELD_PAGE_SIZE, 120);
+		Mockito.when(esIntegrationMock.readObjectValue(SPACE_KEY, PageSizeController.STORE_PROPERTYNAME_PAGE_SIZE))
+				.thenReturn(stored);
+
+		// stored page size is used, controller is shared by indexers of the same space
+		PageSizeController controller = tested.prepareSpaceIndexer(SPACE_KEY, true).pageSizeController;
+		Assert.assertEquals(120, controller.getPageSize());
+		Assert.assertEquals(5, controller.minPageSize);
+		Assert.assertEquals(500, controller.maxPageSize);
+		Assert.assertEquals(2000, controller.targetPageTime);
+		Assert.assertEquals(1000, controller.maxPageBytes);
+		Assert.assertSame(controller, tested.prepareSpaceIndexer(SPACE_KEY, false).pageSizeController);
+		Mockito.verify(esIntegrationMock, Mockito.times(1)).readObjectValue(SPACE_KEY,
+				PageSizeController.STORE_PROPERTYNAME_PAGE_SIZE);
+
+		// not stored
+		Assert.assertEquals(PageSizeController.DEFAULT_PAGE_SIZE,
+				tested.prepareSpaceIndexer("OTHER", true).pageSizeController.getPageSize());
+
+		// not used for simple indexer as it gets all documents in one call
+		tested.spaceIndexingMode = SpaceIndexingMode.SIMPLE;
+		Assert.assertNull(tested.prepareSpaceIndexer(SPACE_KEY, true).pageSizeController);
+	}
+
+	@Test
+	public void prepareSpaceIndexer_clientIncremental() {
+		GetSitemapHtmlClient remoteSystemClientMock = Mockito.mock(GetSitemapHtmlClient.class);
+		SpaceIndexerCoordinator tested = new SpaceIndexerCoordinator(remoteSystemClientMock, mockEsIntegrationComponent(),
+				Mockito.mock(IDocumentIndexStructureBuilder.class), 10, 2, -1, null, SpaceIndexingMode.SIMPLE);
+
+		// case - incremental update not supported by client so full update is performed always
+		Assert.assertTrue(tested.prepareSpaceIndexer(SPACE_KEY, false).indexingInfo.fullUpdate);
+
+		// case - incremental update supported by client
+		Mockito.when(remoteSystemClientMock.isIncrementalUpdateSupported()).thenReturn(true);
+		Assert.assertFalse(tested.prepareSpaceIndexer(SPACE_KEY, false).indexingInfo.fullUpdate);
+		Assert.assertTrue(tested.prepareSpaceIndexer(SPACE_KEY, true).indexingInfo.fullUpdate);
+		tested.spaceIndexingMode = SpaceIndexingMode.PAGINATION;
+		Assert.assertFalse(tested.prepareSpaceIndexer(SPACE_KEY, false).indexingInfo.fullUpdate);
+		Assert.assertTrue(tested.prepareSpaceIndexer(SPACE_KEY, true).indexingInfo.fullUpdate);
+	}
+
 	@Test
 	public void prepareSpaceIndexer() {
 		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
@@ -41,8 +99,11 @@ public class SpaceIndexerCoordinatorTest {
 				documentIndexStructureBuilder, 10, 2, -1, null, SpaceIndexingMode.SIMPLE);
 
 		{
+			WorkerThreadBudget workerThreadBudget = new WorkerThreadBudget(3);
+			tested.setWorkerThreadBudget(workerThreadBudget);
 			SpaceIndexerBase indexer = tested.prepareSpaceIndexer(SPACE_KEY, true);
 			Assert.assertTrue(indexer instanceof SpaceSimpleIndexer);
+			Assert.assertEquals(workerThreadBudget, indexer.workerThreadBudget);
 			Assert.assertEquals(esIntegrationMock, indexer.esIntegrationComponent);
 			Assert.assertEquals(documentIndexStructureBuilder, indexer.documentIndexStructureBuilder);
 			Assert.assertEquals(remoteSystemClientMock, indexer.remoteSystemClient);
@@ -51,8 +112,12 @@ public class SpaceIndexerCoordinatorTest {
 
 		{
 			tested.spaceIndexingMode = SpaceIndexingMode.PAGINATION;
+			tested.setListPrefetchDepth(3);
+			tested.setPageFetchConcurrency(4);
 			SpaceIndexerBase indexer = tested.prepareSpaceIndexer(SPACE_KEY, true);
 			Assert.assertTrue(indexer instanceof SpacePaginatingIndexer);
+			Assert.assertEquals(3, ((SpacePaginatingIndexer) indexer).listPrefetchDepth);
+			Assert.assertEquals(4, ((SpacePaginatingIndexer) indexer).pageFetchConcurrency);
 			Assert.assertEquals(esIntegrationMock, indexer.esIntegrationComponent);
 			Assert.assertEquals(documentIndexStructureBuilder, indexer.documentIndexStructureBuilder);
 			Assert.assertEquals(remoteSystemClientMock, indexer.remoteSystemClient);
@@ -61,8 +126,16 @@ public class SpaceIndexerCoordinatorTest {
 
 		{
 			tested.spaceIndexingMode = SpaceIndexingMode.UPDATE_TIMESTAMP;
+			tested.setBackfillConcurrency(3);
+			tested.setBackfillWindowSize(1000L);
+			tested.setAdaptiveWindowTargetSize(50);
+			tested.setAdaptiveWindowMaxLatency(2000L);
 			SpaceIndexerBase indexer = tested.prepareSpaceIndexer(SPACE_KEY, true);
 			Assert.assertTrue(indexer instanceof SpaceByLastUpdateTimestampIndexer);
+			Assert.assertEquals(3, ((SpaceByLastUpdateTimestampIndexer) indexer).backfillConcurrency);
+			Assert.assertEquals(1000L, ((SpaceByLastUpdateTimestampIndexer) indexer).backfillWindowSize);
+			Assert.assertEquals(50, ((SpaceByLastUpdateTimestampIndexer) indexer).adaptiveWindowTargetSize);
+			Assert.assertEquals(2000L, ((SpaceByLastUpdateTimestampIndexer) indexer).adaptiveWindowMaxLatency);
 			Assert.assertEquals(esIntegrationMock, indexer.esIntegrationComponent);
 			Assert.assertEquals(documentIndexStructureBuilder, indexer.documentIndexStructureBuilder);
 			Assert.assertEquals(remoteSystemClientMock, indexer.remoteSystemClient);
@@ -936,6 +1009,34 @@ public class SpaceIndexerCoordinatorTest {
 		}
 	}
 
+	@Test
+	public void processLoopTask_remoteSystemUnavailable() throws Exception {
+		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
+		GetJSONClient remoteClientMock = Mockito.mock(GetJSONClient.class);
+		SpaceIndexerCoordinator tested = new SpaceIndexerCoordinator(remoteClientMock, esIntegrationMock, null, 100000, 2,
+				-1, null, SpaceIndexingMode.SIMPLE);
+		when(esIntegrationMock.acquireIndexingThread(Mockito.eq("remote_river_indexer_ORG"), Mockito.any(Runnable.class)))
+				.thenReturn(new MockThread());
+		tested.lastQueueFillTime = System.currentTimeMillis();
+
+		// case - remote system unavailable so space waits in queue
+		tested.spaceKeysToIndexQueue.add(SPACE_KEY);
+		when(remoteClientMock.isRemoteSystemAvailable()).thenReturn(false);
+		tested.processLoopTask();
+		Assert.assertEquals(0, tested.spaceIndexerThreads.size());
+		Assert.assertTrue(tested.spaceKeysToIndexQueue.contains(SPACE_KEY));
+		verify(esIntegrationMock, times(0)).acquireIndexingThread(Mockito.eq("remote_river_indexer_ORG"),
+				Mockito.any(Runnable.class));
+		Assert.assertEquals(SpaceIndexerCoordinator.COORDINATOR_THREAD_WAITS_SLOW, tested.coordinatorThreadWaits);
+
+		// case - remote system available again so indexing is started
+		when(remoteClientMock.isRemoteSystemAvailable()).thenReturn(true);
+		tested.processLoopTask();
+		Assert.assertEquals(1, tested.spaceIndexerThreads.size());
+		Assert.assertTrue(tested.spaceKeysToIndexQueue.isEmpty());
+		Assert.assertEquals(SpaceIndexerCoordinator.COORDINATOR_THREAD_WAITS_QUICK, tested.coordinatorThreadWaits);
+	}
+
 	@Test
 	public void reportIndexingFinished() throws Exception {
 		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.io.IOException;
+import java.util.Date;
 
 import junit.framework.Assert;
 
@@ -22,6 +23,19 @@ import org.junit.Test;
  */
 public class SpaceIndexingInfoTest {
 
+	@Test
+	public void addTimeWindowDecision() {
+		SpaceIndexingInfo tested = new SpaceIndexingInfo("ORG", false);
+		Assert.assertTrue(tested.getTimeWindowDecisions().isEmpty());
+		for (int i = 0; i < SpaceIndexingInfo.TIME_WINDOW_DECISIONS_MAX + 5; i++) {
+			tested.addTimeWindowDecision(new Date(i), 1000, i, 10, 2000 + i);
+		}
+		Assert.assertEquals(SpaceIndexingInfo.TIME_WINDOW_DECISIONS_MAX + 5, tested.timeWindowsProcessed);
+		Assert.assertEquals(2000 + SpaceIndexingInfo.TIME_WINDOW_DECISIONS_MAX + 4, tested.timeWindowNextSize);
+		Assert.assertEquals(SpaceIndexingInfo.TIME_WINDOW_DECISIONS_MAX, tested.getTimeWindowDecisions().size());
+		Assert.assertEquals(5, tested.getTimeWindowDecisions().get(0).documents);
+	}
+
 	@Test
 	public void addErrorMessage() {
 		SpaceIndexingInfo tested = new SpaceIndexingInfo("KEY", true);
@@ -67,6 +81,13 @@ public class SpaceIndexingInfoTest {
 		TestUtils.assertJsonEqual(TestUtils.readStringFromClasspathFile("/asserts/SpaceIndexingInfoTest_4.json"),
 				new SpaceIndexingInfo("ORG", true, 10, 1, 1, DateTimeUtils.parseISODateTime("2012-09-10T12:55:58Z"), true,
 						1250, null).buildDocument(XContentFactory.jsonBuilder(), null, false, false).string());
+
+		sit = new SpaceIndexingInfo("ORG", false, 10, 0, 0, DateTimeUtils.parseISODateTime("2012-09-10T12:55:58Z"), true,
+				1250, null);
+		sit.addTimeWindowDecision(DateTimeUtils.parseISODateTime("2012-09-10T10:00:00Z"), 3600000, 0, 120, 7200000);
+		sit.addTimeWindowDecision(DateTimeUtils.parseISODateTime("2012-09-10T11:00:00Z"), 7200000, 40, 250, 3600000);
+		TestUtils.assertJsonEqual(TestUtils.readStringFromClasspathFile("/asserts/SpaceIndexingInfoTest_5.json"), sit
+				.buildDocument(XContentFactory.jsonBuilder(), null, false, false).string());
 	}
 
 	@Test
@@ -75,6 +96,10 @@ public class SpaceIndexingInfoTest {
 				DateTimeUtils.parseISODateTime("2012-09-10T12:55:58Z"), true, 1250, null));
 		readFromDocumentInternalTest(new SpaceIndexingInfo("ORGA", false, 10, 0, 1,
 				DateTimeUtils.parseISODateTime("2012-09-11T02:55:58Z"), false, 125, "Error"));
+		SpaceIndexingInfo sit = new SpaceIndexingInfo("ORGA", false, 10, 0, 1,
+				DateTimeUtils.parseISODateTime("2012-09-11T02:55:58Z"), false, 125, "Error");
+		sit.addTimeWindowDecision(DateTimeUtils.parseISODateTime("2012-09-10T10:00:00Z"), 3600000, 0, 120, 7200000);
+		readFromDocumentInternalTest(sit);
 	}
 
 	private void readFromDocumentInternalTest(SpaceIndexingInfo src) throws IOException {
@@ -91,6 +116,8 @@ public class SpaceIndexingInfoTest {
 		Assert.assertEquals(src.finishedOK, result.finishedOK);
 		Assert.assertEquals(src.timeElapsed, result.timeElapsed);
 		Assert.assertEquals(src.getErrorMessage(), result.getErrorMessage());
+		Assert.assertEquals(src.timeWindowsProcessed, result.timeWindowsProcessed);
+		Assert.assertEquals(src.timeWindowNextSize, result.timeWindowNextSize);
 	}
 
 }
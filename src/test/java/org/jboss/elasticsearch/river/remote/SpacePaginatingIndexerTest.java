@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.river.remote;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -15,6 +16,8 @@ import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.logging.ESLoggerFactory;
 import org.elasticsearch.river.RiverName;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
 import org.jboss.elasticsearch.river.remote.exception.RemoteDocumentNotFoundException;
 import org.junit.Assert;
 import org.junit.Test;
@@ -265,6 +268,440 @@ public class SpacePaginatingIndexerTest {
 		Mockito.verifyNoMoreInteractions(tested.documentIndexStructureBuilder);
 	}
 
+	@Test
+	public void processUpdate_morePages_cursor() throws Exception {
+		IRemoteSystemClientCursorPaging remoteClientMock = mock(IRemoteSystemClientCursorPaging.class);
+		SpacePaginatingIndexer tested = new SpacePaginatingIndexer("ORG", remoteClientMock, mockEsIntegrationComponent(),
+				mock(IDocumentIndexStructureBuilder.class));
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		addDocumentMock(docs2, "AA4");
+		List<Map<String, Object>> docs3 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs3, "AA5");
+
+		when(remoteClientMock.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, null, "c1"));
+		when(remoteClientMock.getChangedDocuments("ORG", 2, "c1", true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, null, "c2"));
+		when(remoteClientMock.getChangedDocuments("ORG", 4, "c2", true, null)).thenReturn(
+				new ChangedDocumentsResults(docs3, 4, 5, null));
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		tested.processUpdate();
+		Assert.assertEquals(5, tested.getIndexingInfo().documentsUpdated);
+		verify(remoteClientMock, times(1)).getChangedDocuments("ORG", 0, true, null);
+		verify(remoteClientMock, times(1)).getChangedDocuments("ORG", 2, "c1", true, null);
+		verify(remoteClientMock, times(1)).getChangedDocuments("ORG", 4, "c2", true, null);
+		verify(remoteClientMock, times(5)).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.anyString(),
+				Mockito.anyMap());
+		Mockito.verifyNoMoreInteractions(remoteClientMock);
+	}
+
+	@Test
+	public void processUpdate_morePages_pageSize() throws Exception {
+		IRemoteSystemClientPageSize remoteClientMock = mock(IRemoteSystemClientPageSize.class);
+		SpacePaginatingIndexer tested = new SpacePaginatingIndexer("ORG", remoteClientMock, mockEsIntegrationComponent(),
+				mock(IDocumentIndexStructureBuilder.class));
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		// pages are processed much faster than target time so page size is doubled after each page
+		tested.setPageSizeController(new PageSizeController(1, 100, 3600000, 0, 2));
+		when(remoteClientMock.isPageSizeSupported()).thenReturn(true);
+		final List<Integer> pageSizes = new ArrayList<Integer>();
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Assert.assertEquals("ORG", invocation.getArguments()[0]);
+				pageSizes.add((Integer) invocation.getArguments()[1]);
+				return null;
+			}
+		}).when(remoteClientMock).setPageSize(Mockito.anyString(), Mockito.anyInt());
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		addDocumentMock(docs2, "AA4");
+		addDocumentMock(docs2, "AA5");
+		addDocumentMock(docs2, "AA6");
+
+		when(remoteClientMock.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, null));
+		when(remoteClientMock.getChangedDocuments("ORG", 2, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, null));
+		when(remoteClientMock.getChangedDocuments("ORG", 6, true, null)).thenReturn(
+				new ChangedDocumentsResults(new ArrayList<Map<String, Object>>(), 6, null));
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		tested.processUpdate();
+		Assert.assertEquals(6, tested.getIndexingInfo().documentsUpdated);
+		Assert.assertEquals("[2, 4, 8]", pageSizes.toString());
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, true, null);
+		verify(remoteClientMock).getChangedDocuments("ORG", 2, true, null);
+		verify(remoteClientMock).getChangedDocuments("ORG", 6, true, null);
+
+		// tuned page size is stored for next run
+		tested.storePageSize();
+		Map<String, Object> stored = new HashMap<String, Object>();
+		stored.put(PageSizeController.STORE_FIELD_PAGE_SIZE, 8);
+		verify(tested.esIntegrationComponent).storeObjectValue("ORG", PageSizeController.STORE_PROPERTYNAME_PAGE_SIZE,
+				stored);
+	}
+
+	@Test
+	public void processUpdate_morePages_prefetch() throws Exception {
+		SpacePaginatingIndexer tested = getTested();
+		tested.setListPrefetchDepth(2);
+		WorkerThreadBudget budget = new WorkerThreadBudget(1);
+		tested.setWorkerThreadBudget(budget);
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		addDocumentMock(docs2, "AA4");
+		List<Map<String, Object>> docs3 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs3, "AA5");
+
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 5));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 2, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, 5));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 4, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs3, 4, 5));
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		tested.processUpdate();
+		Assert.assertEquals(5, tested.getIndexingInfo().documentsUpdated);
+		Assert.assertNull(tested.listPrefetchExecutor);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 0, true, null);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 2, true, null);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 4, true, null);
+		verify(tested.remoteSystemClient, times(5)).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.anyString(),
+				Mockito.anyMap());
+		verify(tested.esIntegrationComponent, times(1)).acquireIndexingThread(Mockito.anyString(),
+				Mockito.any(Runnable.class));
+		Mockito.verifyNoMoreInteractions(tested.remoteSystemClient);
+		// prefetch thread is returned to budget
+		for (int i = 0; i < 100 && budget.getUsedThreads() > 0; i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(0, budget.getUsedThreads());
+	}
+
+	@Test
+	public void processUpdate_morePages_prefetchNoWorkerThread() throws Exception {
+		SpacePaginatingIndexer tested = getTested();
+		tested.setListPrefetchDepth(2);
+		tested.setWorkerThreadBudget(new WorkerThreadBudget(0));
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 3));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 2, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, 3));
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		// pages are fetched by indexing thread if no any worker thread is available for prefetch
+		tested.processUpdate();
+		Assert.assertEquals(3, tested.getIndexingInfo().documentsUpdated);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 0, true, null);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 2, true, null);
+		verify(tested.esIntegrationComponent, Mockito.never()).acquireIndexingThread(Mockito.anyString(),
+				Mockito.any(Runnable.class));
+	}
+
+	@Test
+	public void processUpdate_morePages_prefetchPageSize() throws Exception {
+		IRemoteSystemClientPageSize remoteClientMock = mock(IRemoteSystemClientPageSize.class);
+		SpacePaginatingIndexer tested = new SpacePaginatingIndexer("ORG", remoteClientMock, mockEsIntegrationComponent(),
+				mock(IDocumentIndexStructureBuilder.class));
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+		tested.setListPrefetchDepth(1);
+		tested.setPageSizeController(new PageSizeController(1, 100, 3600000, 0, 2));
+		when(remoteClientMock.isPageSizeSupported()).thenReturn(true);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		addDocumentMock(docs2, "AA4");
+
+		when(remoteClientMock.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 4));
+		when(remoteClientMock.getChangedDocuments("ORG", 2, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, 4));
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		tested.processUpdate();
+		Assert.assertEquals(4, tested.getIndexingInfo().documentsUpdated);
+		// page size is passed to the client also for prefetched page
+		verify(remoteClientMock, times(2)).setPageSize(Mockito.eq("ORG"), Mockito.anyInt());
+		verify(remoteClientMock).getChangedDocuments("ORG", 0, true, null);
+		verify(remoteClientMock).getChangedDocuments("ORG", 2, true, null);
+	}
+
+	@Test
+	public void processUpdate_morePages_prefetchLatency() throws Exception {
+		final List<Long> latencies = new ArrayList<Long>();
+		SpacePaginatingIndexer tested = new SpacePaginatingIndexer("ORG", mock(IRemoteSystemClient.class),
+				mockEsIntegrationComponent(), mock(IDocumentIndexStructureBuilder.class)) {
+			@Override
+			protected void updatePageSize(ChangedDocumentsResults res, long remoteLatency, long processingTime) {
+				latencies.add(remoteLatency);
+			}
+		};
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+		tested.setListPrefetchDepth(1);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		final List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		addDocumentMock(docs2, "AA4");
+
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 4));
+		// prefetch of second page is slow, but it is finished before the first page is processed
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 2, true, null)).thenAnswer(
+				new Answer<ChangedDocumentsResults>() {
+					@Override
+					public ChangedDocumentsResults answer(InvocationOnMock invocation) throws Throwable {
+						Thread.sleep(100);
+						return new ChangedDocumentsResults(docs2, 2, 4);
+					}
+				});
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Thread.sleep(300);
+				return null;
+			}
+		}).when(tested.remoteSystemClient).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.eq("AA1"),
+				Mockito.anyMap());
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		tested.processUpdate();
+		Assert.assertEquals(4, tested.getIndexingInfo().documentsUpdated);
+		Assert.assertEquals(2, latencies.size());
+		// latency of prefetched page is measured in prefetch thread, not as time of queue take
+		Assert.assertTrue("Latency " + latencies.get(1), latencies.get(1) >= 90);
+		Assert.assertTrue("Latency " + latencies.get(1), latencies.get(1) < 300);
+	}
+
+	@Test
+	public void processUpdate_morePages_prefetchShorterPage() throws Exception {
+		SpacePaginatingIndexer tested = getTested();
+		tested.setListPrefetchDepth(2);
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		List<Map<String, Object>> docs3 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs3, "AA4");
+		addDocumentMock(docs3, "AA5");
+
+		// second page is shorter than expected, so prefetch from index 4 is thrown away
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 5));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 2, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, 5));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 3, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs3, 3, 5));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 4, true, null)).thenReturn(
+				new ChangedDocumentsResults(new ArrayList<Map<String, Object>>(), 4, 5));
+
+		Client client = Mockito.mock(Client.class);
+		BulkRequestBuilder brb = new BulkRequestBuilder(client);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenReturn(brb);
+
+		tested.processUpdate();
+		Assert.assertEquals(5, tested.getIndexingInfo().documentsUpdated);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 0, true, null);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 2, true, null);
+		verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", 3, true, null);
+		verify(tested.remoteSystemClient, Mockito.atMost(1)).getChangedDocuments("ORG", 4, true, null);
+		verify(tested.remoteSystemClient, times(5)).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.anyString(),
+				Mockito.anyMap());
+		Mockito.verifyNoMoreInteractions(tested.remoteSystemClient);
+	}
+
+	@Test
+	public void processUpdate_morePages_parallel() throws Exception {
+		// indexing thread processes chunks too
+		processUpdate_morePages_parallel(null, 2);
+		// only threads available in budget are used, indexing thread processes all chunks if no any
+		processUpdate_morePages_parallel(new WorkerThreadBudget(1), 1);
+		processUpdate_morePages_parallel(new WorkerThreadBudget(0), 0);
+	}
+
+	private void processUpdate_morePages_parallel(WorkerThreadBudget budget, int expectedThreads) throws Exception {
+		SpacePaginatingIndexer tested = getTested();
+		tested.setPageFetchConcurrency(3);
+		tested.setWorkerThreadBudget(budget);
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		addDocumentMock(docs, "AA2");
+		List<Map<String, Object>> docs2 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs2, "AA3");
+		addDocumentMock(docs2, "AA4");
+		List<Map<String, Object>> docs3 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs3, "AA5");
+		List<Map<String, Object>> docs4 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs4, "AA6");
+		addDocumentMock(docs4, "AA7");
+		List<Map<String, Object>> docs5 = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs5, "AA7");
+
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 7));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 2, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs2, 2, 7));
+		// shorter page, so rest of the chunk is fetched by next call, document over chunk end is skipped
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 4, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs3, 4, 7));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 5, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs4, 5, 7));
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 6, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs5, 6, 7));
+
+		final Client client = Mockito.mock(Client.class);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenAnswer(new Answer<BulkRequestBuilder>() {
+			@Override
+			public BulkRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+				return new BulkRequestBuilder(client);
+			}
+		});
+
+		tested.processUpdate();
+		Assert.assertEquals(7, tested.getIndexingInfo().documentsUpdated);
+		for (int i : new int[] { 0, 2, 4, 5, 6 })
+			verify(tested.remoteSystemClient, times(1)).getChangedDocuments("ORG", i, true, null);
+		verify(tested.remoteSystemClient, times(7)).getChangedDocumentDetails(Mockito.eq("ORG"), Mockito.anyString(),
+				Mockito.anyMap());
+		verify(tested.documentIndexStructureBuilder, times(7)).indexDocument(Mockito.any(BulkRequestBuilder.class),
+				Mockito.eq("ORG"), Mockito.any(Map.class));
+		verify(tested.esIntegrationComponent, times(5)).executeESBulkRequest(Mockito.any(BulkRequestBuilder.class));
+		verify(tested.esIntegrationComponent, times(expectedThreads)).acquireIndexingThread(Mockito.anyString(),
+				Mockito.any(Runnable.class));
+		Mockito.verifyNoMoreInteractions(tested.remoteSystemClient);
+		if (budget != null) {
+			for (int i = 0; i < 100 && budget.getUsedThreads() > 0; i++) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, budget.getUsedThreads());
+		}
+	}
+
+	@Test
+	public void processUpdate_morePages_parallelFailure() throws Exception {
+		final SpacePaginatingIndexer tested = getTested();
+		tested.setPageFetchConcurrency(2);
+		configureStructureBuilderMockDefaults(tested.documentIndexStructureBuilder);
+		mockAcquireIndexingThread(tested.esIntegrationComponent);
+
+		List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+		addDocumentMock(docs, "AA1");
+		when(tested.remoteSystemClient.getChangedDocuments("ORG", 0, true, null)).thenReturn(
+				new ChangedDocumentsResults(docs, 0, 20));
+		final List<Integer> calls = Collections.synchronizedList(new ArrayList<Integer>());
+		when(tested.remoteSystemClient.getChangedDocuments(Mockito.eq("ORG"), Mockito.intThat(new BaseMatcher<Integer>() {
+			@Override
+			public boolean matches(Object item) {
+				return ((Integer) item) > 0;
+			}
+
+			@Override
+			public void describeTo(Description description) {
+			}
+		}), Mockito.eq(true), Mockito.any(Date.class))).thenAnswer(new Answer<ChangedDocumentsResults>() {
+			@Override
+			public ChangedDocumentsResults answer(InvocationOnMock invocation) throws Throwable {
+				int startAt = (Integer) invocation.getArguments()[1];
+				calls.add(startAt);
+				if (startAt == 1)
+					throw new Exception("remote failure");
+				Thread.sleep(50);
+				List<Map<String, Object>> page = new ArrayList<Map<String, Object>>();
+				addDocumentMock(page, "AA" + startAt);
+				return new ChangedDocumentsResults(page, startAt, 20);
+			}
+		});
+		final Client client = Mockito.mock(Client.class);
+		when(tested.esIntegrationComponent.prepareESBulkRequestBuilder()).thenAnswer(new Answer<BulkRequestBuilder>() {
+			@Override
+			public BulkRequestBuilder answer(InvocationOnMock invocation) throws Throwable {
+				return new BulkRequestBuilder(client);
+			}
+		});
+
+		try {
+			tested.processUpdate();
+			Assert.fail("Exception expected");
+		} catch (Exception e) {
+			Assert.assertEquals("remote failure", e.getMessage());
+		}
+		// other thread stops before its next page, and no any thread runs after failure is thrown
+		int callsAfterFailure = calls.size();
+		Assert.assertTrue("Too many pages fetched after failure: " + calls, callsAfterFailure <= 3);
+		Thread.sleep(200);
+		Assert.assertEquals(callsAfterFailure, calls.size());
+	}
+
+	protected static void mockAcquireIndexingThread(IESIntegration esIntegrationMock) {
+		when(esIntegrationMock.acquireIndexingThread(Mockito.anyString(), Mockito.any(Runnable.class))).thenAnswer(
+				new Answer<Thread>() {
+					@Override
+					public Thread answer(InvocationOnMock invocation) throws Throwable {
+						return new Thread((Runnable) invocation.getArguments()[1], (String) invocation.getArguments()[0]);
+					}
+				});
+	}
+
 	protected SpacePaginatingIndexer getTested() {
 		IRemoteSystemClient remoteClientMock = mock(IRemoteSystemClient.class);
 		IESIntegration esIntegrationMock = mockEsIntegrationComponent();
@@ -48,6 +48,13 @@ public class SpaceSimpleIndexerTest {
 		Assert.assertNotNull(tested.logger);
 	}
 
+	@Test
+	public void init_incremental() {
+		SpaceSimpleIndexer tested = new SpaceSimpleIndexer("ORG", false, new GetJSONClient(), mockEsIntegrationComponent(),
+				mock(IDocumentIndexStructureBuilder.class));
+		Assert.assertFalse(tested.indexingInfo.fullUpdate);
+	}
+
 	@Test
 	public void processUpdate_emptyList() throws Exception {
 
@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2012 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link UrlTemplate}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class UrlTemplateTest {
+
+	@Test
+	public void expand() {
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("space", "myspace");
+		values.put("id", "a%2Fb");
+		values.put("empty", null);
+
+		Assert.assertEquals("http://test.org/doc", UrlTemplate.compile("http://test.org/doc").expand(values));
+		Assert.assertEquals("http://test.org/myspace/a%2Fb?x=&y=myspace",
+				UrlTemplate.compile("http://test.org/{space}/{id}?x={empty}&y={space}").expand(values));
+		Assert.assertEquals("myspacemyspace", UrlTemplate.compile("{space}{space}").expand(values));
+
+		// unknown placeholder is kept
+		Assert.assertEquals("http://test.org/myspace?c={cursor}",
+				UrlTemplate.compile("http://test.org/{space}?c={cursor}").expand(values));
+
+		// no valid placeholders
+		Assert.assertEquals("http://test.org/{}/{a b}/{x/{", UrlTemplate.compile("http://test.org/{}/{a b}/{x/{").expand(values));
+		Assert.assertEquals("http://test.org/{myspace}", UrlTemplate.compile("http://test.org/{{space}}").expand(values));
+	}
+
+	@Test
+	public void hasPlaceholder() {
+		UrlTemplate tested = UrlTemplate.compile("http://test.org/{space}?a={updatedAfter}&b={a b}");
+		Assert.assertTrue(tested.hasPlaceholder("space"));
+		Assert.assertTrue(tested.hasPlaceholder("updatedAfter"));
+		Assert.assertFalse(tested.hasPlaceholder("updatedBefore"));
+		Assert.assertFalse(tested.hasPlaceholder("a b"));
+		Assert.assertEquals("http://test.org/{space}?a={updatedAfter}&b={a b}", tested.toString());
+	}
+
+	@Test
+	public void encode() {
+		Assert.assertNull(UrlTemplate.encode(null));
+		Assert.assertEquals("", UrlTemplate.encode(""));
+		Assert.assertEquals("a+b%2Fc%C3%A1", UrlTemplate.encode("a b/cá"));
+	}
+
+}
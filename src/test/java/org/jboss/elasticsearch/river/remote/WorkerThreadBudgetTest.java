@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.river.remote;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link WorkerThreadBudget}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class WorkerThreadBudgetTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new WorkerThreadBudget(-1);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		Assert.assertEquals(0, new WorkerThreadBudget(0).acquire(3));
+	}
+
+	@Test
+	public void acquireRelease() {
+		WorkerThreadBudget tested = new WorkerThreadBudget(5);
+		Assert.assertEquals(3, tested.acquire(3));
+		// only rest of budget is acquired
+		Assert.assertEquals(2, tested.acquire(3));
+		Assert.assertEquals(0, tested.acquire(1));
+		Assert.assertEquals(5, tested.getUsedThreads());
+
+		tested.release(3);
+		Assert.assertEquals(2, tested.getUsedThreads());
+		Assert.assertEquals(1, tested.acquire(1));
+		Assert.assertEquals(0, tested.acquire(0));
+
+		// used threads never go negative
+		tested.release(10);
+		Assert.assertEquals(0, tested.getUsedThreads());
+	}
+
+	@Test
+	public void buildStats() throws Exception {
+		WorkerThreadBudget tested = new WorkerThreadBudget(4);
+		tested.acquire(3);
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		tested.buildStats(builder);
+		builder.endObject();
+		Assert.assertEquals("{\"max_threads\":4,\"used_threads\":3}", builder.string());
+	}
+
+}
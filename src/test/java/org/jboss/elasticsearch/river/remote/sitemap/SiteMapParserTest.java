@@ -17,9 +17,12 @@
 
 package org.jboss.elasticsearch.river.remote.sitemap;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.GZIPOutputStream;
 
 import org.jboss.elasticsearch.river.remote.DateTimeUtils;
@@ -317,6 +320,127 @@ public class SiteMapParserTest {
 
 	}
 
+	/**
+	 * Handler collecting emitted entries.
+	 */
+	private static class CollectingHandler implements SiteMapHandler {
+
+		List<SiteMapURL> urls = new ArrayList<SiteMapURL>();
+		List<SiteMap> sitemaps = new ArrayList<SiteMap>();
+
+		@Override
+		public void handleSiteMapUrl(SiteMapURL url) {
+			urls.add(url);
+		}
+
+		@Override
+		public void handleSitemap(SiteMap sitemap) {
+			sitemaps.add(sitemap);
+		}
+	}
+
+	@Test
+	public void parseSiteMap_streaming() throws UnknownFormatException, IOException {
+		SiteMapParser parser = new SiteMapParser();
+
+		// case - urlset, entries emitted into handler, not stored in returned sitemap
+		{
+			CollectingHandler handler = new CollectingHandler();
+			AbstractSiteMap asm = parser.parseSiteMap("text/xml", new ByteArrayInputStream(SITEMAP_XML.getBytes()), new URL(
+					URL_SITEMAP_XML), handler);
+			assertEquals(AbstractSiteMap.SitemapType.XML, asm.getType());
+			Assert.assertTrue(asm.isProcessed());
+			assertEquals(0, ((SiteMap) asm).getSiteMapUrls().size());
+			assertEquals(5, handler.urls.size());
+			assertEquals(0, handler.sitemaps.size());
+			assertEquals("http://www.example.com/catalog?item=12&desc=vacation_hawaii", handler.urls.get(1).getUrl()
+					.toString());
+			assertEquals(0.3, handler.urls.get(3).getPriority(), 0.001);
+		}
+
+		// case - sitemap index
+		{
+			CollectingHandler handler = new CollectingHandler();
+			AbstractSiteMap asm = parser.parseSiteMap("text/xml", new ByteArrayInputStream(SITEMAP_XML_INDEX.getBytes()),
+					new URL(URL_SITEMAP_XML), handler);
+			Assert.assertTrue(asm.isIndex());
+			assertEquals(0, ((SiteMapIndex) asm).getSitemaps().size());
+			assertEquals(0, handler.urls.size());
+			assertEquals(2, handler.sitemaps.size());
+			assertEquals("http://www.example.com/sitemap2.xml.gz", handler.sitemaps.get(1).getUrl().toString());
+			assertEquals(SiteMap.convertToDate("2005-01-01"), handler.sitemaps.get(1).getLastModified());
+		}
+
+		// case - gzip stream
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			GZIPOutputStream gos = new GZIPOutputStream(bos);
+			gos.write(SITEMAP_RSS.getBytes());
+			gos.close();
+			CollectingHandler handler = new CollectingHandler();
+			AbstractSiteMap asm = parser.parseSiteMap("application/x-gzip", new ByteArrayInputStream(bos.toByteArray()),
+					new URL(URL_SITEMAP_RSS + ".gz"), handler);
+			assertEquals(AbstractSiteMap.SitemapType.RSS, asm.getType());
+			assertEquals(5, handler.urls.size());
+		}
+
+		// case - broken xml
+		try {
+			parser.parseSiteMap("text/xml", new ByteArrayInputStream("<urlset><url><loc>http://www.example.com/</loc></url>"
+					.getBytes()), new URL(URL_SITEMAP_XML), new CollectingHandler());
+			Assert.fail("UnknownFormatException expected");
+		} catch (UnknownFormatException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void parseSiteMap_maxUrls() throws UnknownFormatException, IOException {
+		SiteMapParser parser = new SiteMapParser();
+		assertEquals(SiteMapParser.MAX_URLS, parser.getMaxUrls());
+		parser.setMaxUrls(2);
+
+		SiteMap sm = (SiteMap) parser.parseSiteMap("text/xml", SITEMAP_XML.getBytes(), new URL(URL_SITEMAP_XML));
+		assertEquals(2, sm.getSiteMapUrls().size());
+
+		sm = (SiteMap) parser.parseSiteMap("application/atom+xml", SITEMAP_ATOM.getBytes(), new URL(URL_SITEMAP_ATOM));
+		assertEquals(2, sm.getSiteMapUrls().size());
+
+		sm = (SiteMap) parser.parseSiteMap("text/plain",
+				"http://www.example.com/1\nhttp://www.example.com/2\nhttp://www.example.com/3".getBytes(), new URL(
+						"http://www.example.com/sitemap.txt"));
+		assertEquals(2, sm.getSiteMapUrls().size());
+
+		SiteMapIndex smi = (SiteMapIndex) parser.parseSiteMap("text/xml", SITEMAP_XML_INDEX.getBytes(), new URL(
+				URL_SITEMAP_XML));
+		assertEquals(2, smi.getSitemaps().size());
+	}
+
+	@Test
+	public void parseSiteMap_syndicationEntryLastMod() throws UnknownFormatException, IOException {
+		SiteMapParser parser = new SiteMapParser();
+
+		// entry date takes precedence over feed date
+		SiteMap sm = (SiteMap) parser.parseSiteMap("application/atom+xml", ("<feed><updated>2005-01-01</updated>"
+				+ "<entry><link href=\"http://www.example.com/a\"/><updated>2006-02-02</updated></entry>"
+				+ "<entry><link href=\"http://www.example.com/b\"/></entry></feed>").getBytes(), new URL(URL_SITEMAP_ATOM));
+		assertEquals(2, sm.getSiteMapUrls().size());
+		for (SiteMapURL u : sm.getSiteMapUrls()) {
+			if (u.getUrl().toString().endsWith("/a"))
+				assertEquals(SiteMap.convertToDate("2006-02-02"), u.getLastModified());
+			else
+				assertEquals(SiteMap.convertToDate("2005-01-01"), u.getLastModified());
+		}
+
+		sm = (SiteMap) parser.parseSiteMap("application/rss+xml", ("<rss><channel>"
+				+ "<pubDate>Tue, 10 Jun 2003 04:00:00 GMT</pubDate><item><link>http://www.example.com/a</link>"
+				+ "<pubDate>Tue, 03 Jun 2003 09:39:21 GMT</pubDate></item></channel></rss>").getBytes(), new URL(
+				URL_SITEMAP_RSS));
+		assertEquals(1, sm.getSiteMapUrls().size());
+		assertEquals("2003-06-03T09:39:21.0+0000",
+				DateTimeUtils.formatISODateTime(sm.getSiteMapUrls().iterator().next().getLastModified()));
+	}
+
 	@Test
 	public void urlIsLegal() {
 		Assert.assertTrue(SiteMapParser.urlIsLegal("http://aaa.cz", "http://aaa.cz"));